@@ -214,6 +214,11 @@ public class EmbedActionHandler
       ActionMakers.TARGET_DEFAULT);
   }
   
+  @Override
+  protected EmbedActionHandler.Builder newBuilder() {
+    return ActionMakers.embedAction();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
@@ -100,6 +100,11 @@ public final class HtmlForm
     return this.<ParametersValue>get("parameters");
   }
   
+  @Override
+  protected HtmlForm.Builder newBuilder() {
+    return ActionMakers.htmlForm();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
@@ -117,6 +117,11 @@ public class HttpActionHandler
       ActionMakers.TARGET_DEFAULT;
   }
   
+  @Override
+  protected HttpActionHandler.Builder newBuilder() {
+    return ActionMakers.httpAction();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
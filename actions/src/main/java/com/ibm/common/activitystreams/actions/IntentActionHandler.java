@@ -78,6 +78,11 @@ public class IntentActionHandler
     super(builder);
   }
 
+  @Override
+  protected IntentActionHandler.Builder newBuilder() {
+    return ActionMakers.intentAction();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
@@ -159,6 +159,11 @@ public final class TypedPayload
     return this.<TypeValue>get("type");
   }
   
+  @Override
+  protected TypedPayload.Builder newBuilder() {
+    return ActionMakers.typedPayload(mediaType().toString());
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
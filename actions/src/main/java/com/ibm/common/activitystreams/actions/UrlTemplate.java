@@ -113,6 +113,11 @@ public final class UrlTemplate
     return this.getString("template");
   }
   
+  @Override
+  protected UrlTemplate.Builder newBuilder() {
+    return ActionMakers.urlTemplate();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
@@ -76,6 +76,7 @@ import com.google.common.net.MediaType;
 import com.ibm.common.activitystreams.NLV.MapNLV;
 import com.ibm.common.activitystreams.NLV.SimpleNLV;
 import com.ibm.common.activitystreams.util.AbstractWritable;
+import com.ibm.common.activitystreams.util.Sizes;
 
 /**
  * The Base for all Activity Streams objects.
@@ -112,6 +113,27 @@ public class ASObject
     public ASObject get() {
       return new ASObject(this);
     }
+    
+    /**
+     * Clear all properties and actions so that this builder, and its
+     * backing storage, can be reused
+     * @return Builder
+     */
+    public Builder reset() {
+      clear();
+      return this;
+    }
+    
+    /**
+     * Build the ASObject and reset this builder so that it can be 
+     * immediately reused
+     * @return ASObject
+     */
+    public ASObject getAndReset() {
+      ASObject obj = get();
+      reset();
+      return obj;
+    }
   }
   
   /**
@@ -156,6 +178,18 @@ public class ASObject
       newLinkedHashMap();
     private final ActionsValue.Builder actions = 
       Makers.actions();
+    
+    /**
+     * Clear all properties, actions and the writer IO so that this 
+     * builder, and its backing storage, can be reused. Builders that
+     * set defaults in their constructor or hold state of their own do
+     * not expose this; see Builder#reset()
+     **/
+    protected void clear() {
+      map.clear();
+      actions.clear();
+      writeUsing(null);
+    }
       
     /**
      * Method _dt.
@@ -1534,6 +1568,7 @@ public class ASObject
   
   protected final ImmutableMap<String,Object> map;
   private transient int hash = 1;
+  private transient long size = -1;
   
   /**
    * Constructor for ASObject.
@@ -1546,6 +1581,19 @@ public class ASObject
     this.map = ImmutableMap.copyOf(builder.map);
   }
   
+  /**
+   * Returns the approximate retained size of this object, including
+   * all nested objects and values, in bytes. The value is computed 
+   * once and memoized.
+   * @return long
+   * @see com.ibm.common.activitystreams.util.Sizes
+   */
+  public long estimatedSize() {
+    if (size < 0)
+      size = Sizes.OBJECT + Sizes.estimate(map);
+    return size;
+  }
+  
   /**
    * Returns true if the given property exists, does not 
    * determine if the value is non-null
@@ -2583,6 +2631,34 @@ public class ASObject
   }
   
   
+  /**
+   * Returns a copy of this object, of the same type, in which the 
+   * given properties are replaced. Properties mapped to null are 
+   * removed. The values of all other properties are shared with this
+   * object rather than copied.
+   * @param properties Map&lt;String,?>
+   * @return A
+   */
+  public <A extends ASObject>A with(Map<String,?> properties) {
+    ASObject.AbstractBuilder<?,?> builder = newBuilder();
+    for (Map.Entry<String,Object> entry : map.entrySet())
+      if (!properties.containsKey(entry.getKey()))
+        builder.set(entry.getKey(), entry.getValue());
+    for (Map.Entry<String,?> entry : properties.entrySet())
+      builder.set(entry.getKey(), entry.getValue());
+    return (A)builder.get();
+  }
+  
+  /**
+   * Returns a new, empty builder for objects of the same type as this
+   * one. Subclasses must override this so that with(Map) preserves 
+   * their type.
+   * @return ASObject.AbstractBuilder&lt;?,?>
+   */
+  protected ASObject.AbstractBuilder<?,?> newBuilder() {
+    return Makers.object();
+  }
+  
   // Java Serialization support... 
   
   Object writeReplace() throws java.io.ObjectStreamException {
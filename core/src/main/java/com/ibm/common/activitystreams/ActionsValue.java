@@ -101,6 +101,11 @@ public final class ActionsValue
 
     protected Builder() {}
     
+    @Override
+    protected void clear() {
+      super.clear();
+    }
+    
     /**
      * Add an action handler for the given verb.
      * Calling this multiple times results in 
@@ -158,6 +158,27 @@ public class Activity
       return new Activity(this);
     }
     
+    /**
+     * Clear all properties and actions so that this builder, and its
+     * backing storage, can be reused
+     * @return Builder
+     */
+    public Builder reset() {
+      clear();
+      return this;
+    }
+    
+    /**
+     * Build the Activity and reset this builder so that it can be 
+     * immediately reused
+     * @return Activity
+     */
+    public Activity getAndReset() {
+      Activity activity = get();
+      reset();
+      return activity;
+    }
+    
   }
 
   /**
@@ -833,6 +854,11 @@ public class Activity
   
   // Java Serialization Support
 
+  @Override
+  protected Activity.Builder newBuilder() {
+    return Makers.activity();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
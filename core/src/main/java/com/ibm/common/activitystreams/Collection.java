@@ -27,6 +27,7 @@ import static com.google.common.collect.Iterables.filter;
 
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.joda.time.DateTime;
@@ -37,6 +38,7 @@ import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 
 /**
  * 
@@ -145,6 +147,26 @@ public class Collection
       return new Collection(this);
     }
     
+    /**
+     * Clear all properties and items so that this builder can be reused
+     * @return Builder
+     */
+    public Builder reset() {
+      clear();
+      return this;
+    }
+    
+    /**
+     * Build the Collection and reset this builder so that it can be 
+     * immediately reused
+     * @return Collection
+     */
+    public Collection getAndReset() {
+      Collection collection = get();
+      reset();
+      return collection;
+    }
+    
   }
   
   /**
@@ -155,8 +177,14 @@ public class Collection
     <A extends Collection, B extends Collection.AbstractBuilder<A,B>>
       extends ASObject.AbstractBuilder<A, B> {
     
-    protected final ImmutableList.Builder<ASObject> list = 
-      ImmutableList.builder();
+    protected final List<ASObject> list = 
+      Lists.newArrayList();
+    
+    @Override
+    protected void clear() {
+      list.clear();
+      super.clear();
+    }
     
     /**
      * Method create.
@@ -167,13 +195,14 @@ public class Collection
     @Override
     public B set(String key, Object value) {
       if (key.equals("items")) {
-        if (value instanceof ArrayLinkValue) {
-          ArrayLinkValue alv = (ArrayLinkValue) value;
-          for (LinkValue lv : alv) {
-            list.add((ASObject)lv);
-          }
-        } else if (value instanceof ASObject)
+        if (value instanceof ASObject)
           list.add((ASObject) value);
+        else if (value instanceof Iterable) {
+          for (Object obj : (Iterable<?>) value) {
+            if (obj instanceof ASObject)
+              list.add((ASObject)obj);
+          }
+        }
         return (B)this;
       } else return super.set(key,value);
     }
@@ -185,7 +214,7 @@ public class Collection
      * @see com.google.common.base.Supplier#get() 
      **/
     public A get() {
-      super.set("items", list.build());
+      super.set("items", ImmutableList.copyOf(list));
       return create();
     }
     
@@ -520,6 +549,11 @@ public class Collection
   
   // Java Serialization Support
   
+  @Override
+  protected Collection.Builder newBuilder() {
+    return Makers.collection();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.activitystreams;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Collects the problems encountered while leniently reading a 
+ * document. When a Diagnostics instance is passed to one of the 
+ * IO read or stream methods, properties and items that fail to parse
+ * are dropped from the result and recorded here rather than causing
+ * the entire read to fail. Each Diagnostic records the JSON path of
+ * the offending value (e.g. "$.items[3].published"), a truncated 
+ * copy of the offending JSON and the exception that was thrown.
+ * 
+ * <pre>
+ *   Diagnostics diag = Diagnostics.skip();
+ *   Collection col = io.readAsCollection(in, diag);
+ *   for (Diagnostics.Diagnostic d : diag)
+ *     log(d);
+ * </pre>
+ * 
+ * <p>In QUARANTINE mode the complete JSON of each dropped value is 
+ * also retained so that it can be corrected and reprocessed later.</p>
+ * 
+ * <p>Malformed JSON syntax and exceeded read limits are never 
+ * recoverable and still cause the read to fail.</p>
+ * @author james
+ * @version $Revision: 1.0 $
+ */
+public final class Diagnostics 
+  implements Iterable<Diagnostics.Diagnostic> {
+
+  /**
+   * How dropped values are recorded
+   */
+  public static enum Mode {
+    /** Record only the path, a truncated token and the error **/
+    SKIP,
+    /** Also retain the complete JSON of the dropped value **/
+    QUARANTINE
+  }
+  
+  private static final int MAX_TOKEN = 64;
+  
+  /**
+   * Create a new Diagnostics collector that skips bad values
+   * @return Diagnostics
+   */
+  public static Diagnostics skip() {
+    return new Diagnostics(Mode.SKIP);
+  }
+  
+  /**
+   * Create a new Diagnostics collector that quarantines bad values
+   * @return Diagnostics
+   */
+  public static Diagnostics quarantine() {
+    return new Diagnostics(Mode.QUARANTINE);
+  }
+  
+  /**
+   * A single recorded problem
+   * @author james
+   * @version $Revision: 1.0 $
+   */
+  public static final class Diagnostic {
+    private final String path;
+    private final String token;
+    private final String raw;
+    private final Throwable error;
+    
+    Diagnostic(
+      String path, 
+      String token, 
+      String raw, 
+      Throwable error) {
+      this.path = path;
+      this.token = token;
+      this.raw = raw;
+      this.error = error;
+    }
+    
+    /**
+     * The JSON path of the value that could not be read
+     * @return String
+     */
+    public String path() {
+      return path;
+    }
+    
+    /**
+     * The offending JSON, truncated
+     * @return String
+     */
+    public String token() {
+      return token;
+    }
+    
+    /**
+     * The complete JSON of the dropped value. Only available in 
+     * QUARANTINE mode, null otherwise.
+     * @return String
+     */
+    public String raw() {
+      return raw;
+    }
+    
+    /**
+     * The error that caused the value to be dropped
+     * @return Throwable
+     */
+    public Throwable error() {
+      return error;
+    }
+    
+    public String toString() {
+      return String.format("%s: %s (%s)", path, token, error);
+    }
+  }
+  
+  private final Mode mode;
+  private final List<Diagnostic> list = 
+    Lists.newArrayList();
+  
+  private Diagnostics(Mode mode) {
+    this.mode = checkNotNull(mode);
+  }
+  
+  /**
+   * The mode
+   * @return Mode
+   */
+  public Mode mode() {
+    return mode;
+  }
+  
+  /**
+   * Record a problem.
+   * @param path String The JSON path of the offending value
+   * @param json String The offending JSON
+   * @param error Throwable
+   */
+  public synchronized void report(
+    String path, 
+    String json, 
+    Throwable error) {
+    String token = 
+      json.length() > MAX_TOKEN ? 
+        json.substring(0, MAX_TOKEN) + "..." : 
+        json;
+    list.add(
+      new Diagnostic(
+        path, 
+        token, 
+        mode == Mode.QUARANTINE ? json : null, 
+        error));
+  }
+  
+  /**
+   * True if no problems have been recorded
+   * @return boolean
+   */
+  public synchronized boolean isEmpty() {
+    return list.isEmpty();
+  }
+  
+  /**
+   * The number of problems recorded
+   * @return int
+   */
+  public synchronized int size() {
+    return list.size();
+  }
+  
+  /**
+   * The problems recorded so far
+   * @return ImmutableList&lt;Diagnostic>
+   */
+  public synchronized ImmutableList<Diagnostic> diagnostics() {
+    return ImmutableList.copyOf(list);
+  }
+  
+  public java.util.Iterator<Diagnostic> iterator() {
+    return diagnostics().iterator();
+  }
+  
+  public String toString() {
+    return diagnostics().toString();
+  }
+}
@@ -23,19 +23,29 @@ package com.ibm.common.activitystreams;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.ibm.common.activitystreams.internal.Adapter;
 import com.ibm.common.activitystreams.internal.GsonWrapper;
+import com.ibm.common.activitystreams.internal.IteratorPublisher;
 import com.ibm.common.activitystreams.internal.Schema;
+import com.ibm.common.activitystreams.internal.WritableSubscriber;
+import com.ibm.common.activitystreams.util.Flow;
 import com.ibm.common.activitystreams.util.Module;
 
 /**
@@ -77,6 +87,23 @@ import com.ibm.common.activitystreams.util.Module;
  *  Activity activity = io.readAsActivity(in);
  * </pre>
  * 
+ * <p>Streams containing many objects (a JSON array, newline delimited
+ * objects or a Collection with a large "items" array) can be consumed
+ * incrementally, with backpressure, using a Flow.Publisher:</p>
+ * 
+ * <pre>
+ *  InputStream in = ...
+ *  Flow.Publisher&lt;ASObject> publisher = io.publisher(in, executor);
+ * </pre>
+ * 
+ * <p>Limits can be placed on the documents an IO instance will parse.
+ * Documents exceeding a limit are rejected with a 
+ * LimitExceededException as soon as the limit is reached:</p>
+ * 
+ * <pre>
+ *   IO io = IO.make().maxDepth(32).maxDocumentBytes(1 &lt;&lt; 20).get();
+ * </pre>
+ * 
  * <p>Or can use the IO instance to serialize:</p>
  * 
  * <pre>
@@ -171,6 +198,59 @@ public final class IO {
       return prettyPrint(true);
     }
     
+    /**
+     * Set the maximum nesting depth of objects and arrays
+     * @param max int
+     * @return Builder
+     **/
+    public Builder maxDepth(int max) {
+      inner.maxDepth(max);
+      return this;
+    }
+    
+    /**
+     * Set the maximum size of a parsed document. When reading from an
+     * InputStream the size is measured in bytes, when reading from a
+     * Reader it is measured in characters.
+     * @param max long
+     * @return Builder
+     **/
+    public Builder maxDocumentBytes(long max) {
+      inner.maxDocumentBytes(max);
+      return this;
+    }
+    
+    /**
+     * Set the maximum length of any single string, property name
+     * or number
+     * @param max int
+     * @return Builder
+     **/
+    public Builder maxStringLength(int max) {
+      inner.maxStringLength(max);
+      return this;
+    }
+    
+    /**
+     * Set the maximum number of members of any single array
+     * @param max int
+     * @return Builder
+     **/
+    public Builder maxArrayItems(int max) {
+      inner.maxArrayItems(max);
+      return this;
+    }
+    
+    /**
+     * Set the maximum number of members of a Collection's items array
+     * @param max int
+     * @return Builder
+     **/
+    public Builder maxCollectionItems(int max) {
+      inner.maxCollectionItems(max);
+      return this;
+    }
+    
     /**
      * Add an adapter
      * @param type Class<? extends T>
@@ -260,6 +340,15 @@ public final class IO {
     this.gson = 
       builder.inner.get();
   }
+  
+  /**
+   * Returns the number of times each of the configured read limits
+   * has been exceeded by documents parsed using this IO instance
+   * @return ImmutableMap&lt;LimitExceededException.Limit,Long>
+   */
+  public ImmutableMap<LimitExceededException.Limit,Long> limitViolations() {
+    return gson.limitViolations();
+  }
  
   /**
    * Write the given object
@@ -626,4 +715,286 @@ public final class IO {
   public Collection readAsCollection(Reader in) {
     return readAs(in, Collection.class);
   }
+  
+  /**
+   * Leniently read the given input stream and return a parsed object
+   * of the given type. Properties and items that cannot be read are 
+   * dropped from the result and recorded in the given Diagnostics
+   * @param in InputStream
+   * @param type Class<? extends A>
+   * @param diagnostics Diagnostics
+   * @return A 
+   **/
+  public <A extends ASObject>A readAs(
+    InputStream in, 
+    Class<? extends A> type,
+    Diagnostics diagnostics) {
+      return gson.<A>readAs(in, type, diagnostics);
+  }
+  
+  /**
+   * Leniently read the given reader and return a parsed object
+   * of the given type.
+   * @param in Reader
+   * @param type Class<? extends A>
+   * @param diagnostics Diagnostics
+   * @return A 
+   * @see IO#readAs(InputStream, Class, Diagnostics)
+   **/
+  public <A extends ASObject>A readAs(
+    Reader in, 
+    Class<? extends A> type,
+    Diagnostics diagnostics) {
+      return gson.<A>readAs(in, type, diagnostics);
+  }
+  
+  /**
+   * Leniently read the given string and return a parsed object
+   * of the given type.
+   * @param in String
+   * @param type Class<? extends A>
+   * @param diagnostics Diagnostics
+   * @return A 
+   * @see IO#readAs(InputStream, Class, Diagnostics)
+   **/
+  public <A extends ASObject>A readAs(
+    String in, 
+    Class<? extends A> type,
+    Diagnostics diagnostics) {
+      return readAs(new StringReader(in), type, diagnostics);
+  }
+  
+  /**
+   * Leniently read the given input stream
+   * @param in InputStream
+   * @param diagnostics Diagnostics
+   * @return ASObject 
+   * @see IO#readAs(InputStream, Class, Diagnostics)
+   **/
+  public ASObject read(InputStream in, Diagnostics diagnostics) {
+    return readAs(in, ASObject.class, diagnostics);
+  }
+  
+  /**
+   * Leniently read the given reader
+   * @param in Reader
+   * @param diagnostics Diagnostics
+   * @return ASObject 
+   * @see IO#readAs(InputStream, Class, Diagnostics)
+   **/
+  public ASObject read(Reader in, Diagnostics diagnostics) {
+    return readAs(in, ASObject.class, diagnostics);
+  }
+  
+  /**
+   * Leniently read the given string
+   * @param in String
+   * @param diagnostics Diagnostics
+   * @return ASObject 
+   * @see IO#readAs(InputStream, Class, Diagnostics)
+   **/
+  public ASObject read(String in, Diagnostics diagnostics) {
+    return readAs(in, ASObject.class, diagnostics);
+  }
+  
+  /**
+   * Leniently read the given input stream as a Collection. Items that
+   * cannot be read are dropped from the Collection and recorded in the
+   * given Diagnostics
+   * @param in InputStream
+   * @param diagnostics Diagnostics
+   * @return Collection 
+   **/
+  public Collection readAsCollection(InputStream in, Diagnostics diagnostics) {
+    return readAs(in, Collection.class, diagnostics);
+  }
+  
+  /**
+   * Leniently read the given reader as a Collection.
+   * @param in Reader
+   * @param diagnostics Diagnostics
+   * @return Collection 
+   * @see IO#readAsCollection(InputStream, Diagnostics)
+   **/
+  public Collection readAsCollection(Reader in, Diagnostics diagnostics) {
+    return readAs(in, Collection.class, diagnostics);
+  }
+  
+  /**
+   * Leniently read the given string as a Collection.
+   * @param in String
+   * @param diagnostics Diagnostics
+   * @return Collection 
+   * @see IO#readAsCollection(InputStream, Diagnostics)
+   **/
+  public Collection readAsCollection(String in, Diagnostics diagnostics) {
+    return readAs(in, Collection.class, diagnostics);
+  }
+  
+  /**
+   * Incrementally read the given input stream. The stream may contain
+   * a JSON array of objects, a sequence of newline delimited objects 
+   * or Collection objects, in which case the members of the "items" 
+   * property are returned individually. Objects are parsed only as 
+   * the iterator is advanced.
+   * @param in InputStream
+   * @return java.util.Iterator&lt;ASObject>
+   */
+  public Iterator<ASObject> stream(InputStream in) {
+    return gson.stream(in);
+  }
+  
+  /**
+   * Incrementally read the given reader.
+   * @param in Reader
+   * @return java.util.Iterator&lt;ASObject>
+   * @see IO#stream(InputStream)
+   */
+  public Iterator<ASObject> stream(Reader in) {
+    return gson.stream(in);
+  }
+  
+  /**
+   * Incrementally and leniently read the given input stream. Items 
+   * that cannot be read are skipped and recorded in the given 
+   * Diagnostics rather than terminating the iteration.
+   * @param in InputStream
+   * @param diagnostics Diagnostics
+   * @return java.util.Iterator&lt;ASObject>
+   * @see IO#stream(InputStream)
+   */
+  public Iterator<ASObject> stream(InputStream in, Diagnostics diagnostics) {
+    return gson.stream(in, diagnostics);
+  }
+  
+  /**
+   * Incrementally and leniently read the given reader.
+   * @param in Reader
+   * @param diagnostics Diagnostics
+   * @return java.util.Iterator&lt;ASObject>
+   * @see IO#stream(InputStream, Diagnostics)
+   */
+  public Iterator<ASObject> stream(Reader in, Diagnostics diagnostics) {
+    return gson.stream(in, diagnostics);
+  }
+  
+  /**
+   * Return a single-subscriber Publisher that emits the objects read 
+   * from the given input stream as they are requested. Items are
+   * emitted on the thread that calls Subscription.request
+   * @param in InputStream
+   * @return Flow.Publisher&lt;ASObject>
+   * @see IO#stream(InputStream)
+   */
+  public Flow.Publisher<ASObject> publisher(InputStream in) {
+    return publisher(in, null);
+  }
+  
+  /**
+   * Return a single-subscriber Publisher that emits the objects read 
+   * from the given input stream as they are requested. Items are 
+   * emitted using the given executor
+   * @param in InputStream
+   * @param executor Executor
+   * @return Flow.Publisher&lt;ASObject>
+   */
+  public Flow.Publisher<ASObject> publisher(
+    InputStream in, 
+    Executor executor) {
+    return new IteratorPublisher<ASObject>(stream(in), executor);
+  }
+  
+  /**
+   * Return a single-subscriber Publisher that emits the objects read 
+   * from the given reader as they are requested.
+   * @param in Reader
+   * @return Flow.Publisher&lt;ASObject>
+   */
+  public Flow.Publisher<ASObject> publisher(Reader in) {
+    return publisher(in, null);
+  }
+  
+  /**
+   * Return a single-subscriber Publisher that emits the objects read 
+   * from the given reader as they are requested using the given executor.
+   * @param in Reader
+   * @param executor Executor
+   * @return Flow.Publisher&lt;ASObject>
+   */
+  public Flow.Publisher<ASObject> publisher(
+    Reader in, 
+    Executor executor) {
+    return new IteratorPublisher<ASObject>(stream(in), executor);
+  }
+  
+  /**
+   * Return a single-subscriber Publisher that emits the objects read 
+   * from the given channel as they are requested.
+   * @param in ReadableByteChannel
+   * @return Flow.Publisher&lt;ASObject>
+   */
+  public Flow.Publisher<ASObject> publisher(ReadableByteChannel in) {
+    return publisher(in, null);
+  }
+  
+  /**
+   * Return a single-subscriber Publisher that emits the objects read 
+   * from the given channel as they are requested using the given executor.
+   * @param in ReadableByteChannel
+   * @param executor Executor
+   * @return Flow.Publisher&lt;ASObject>
+   */
+  public Flow.Publisher<ASObject> publisher(
+    ReadableByteChannel in, 
+    Executor executor) {
+    return publisher(Channels.newInputStream(in), executor);
+  }
+  
+  /**
+   * Return a Subscriber that writes each received object to the 
+   * given output stream as newline delimited JSON, requesting at 
+   * most 64 items ahead of what has been written.
+   * @param out OutputStream
+   * @return WritableSubscriber
+   */
+  public WritableSubscriber subscriber(OutputStream out) {
+    return subscriber(out, 64);
+  }
+  
+  /**
+   * Return a Subscriber that writes each received object to the 
+   * given output stream as newline delimited JSON, requesting at 
+   * most bufferSize items ahead of what has been written.
+   * @param out OutputStream
+   * @param bufferSize int
+   * @return WritableSubscriber
+   */
+  public WritableSubscriber subscriber(OutputStream out, int bufferSize) {
+    return subscriber(
+      new OutputStreamWriter(out, Charsets.UTF_8), 
+      bufferSize);
+  }
+  
+  /**
+   * Return a Subscriber that writes each received object to the 
+   * given writer as newline delimited JSON, requesting at most 
+   * 64 items ahead of what has been written.
+   * @param out Writer
+   * @return WritableSubscriber
+   */
+  public WritableSubscriber subscriber(Writer out) {
+    return subscriber(out, 64);
+  }
+  
+  /**
+   * Return a Subscriber that writes each received object to the 
+   * given writer as newline delimited JSON, requesting at most 
+   * bufferSize items ahead of what has been written.
+   * @param out Writer
+   * @param bufferSize int
+   * @return WritableSubscriber
+   */
+  public WritableSubscriber subscriber(Writer out, int bufferSize) {
+    return new WritableSubscriber(this, out, bufferSize);
+  }
 }
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.activitystreams;
+
+import com.google.gson.JsonParseException;
+
+/**
+ * Thrown when a document being parsed exceeds one of the read 
+ * limits configured on the IO.Builder. The limits are enforced 
+ * while the input is being read so that oversized or hostile 
+ * documents are rejected before they are fully buffered.
+ * 
+ * <pre>
+ *   IO io = IO.make()
+ *     .maxDepth(32)
+ *     .maxDocumentBytes(1024 * 1024)
+ *     .maxCollectionItems(10000)
+ *     .get();
+ * </pre>
+ * @author james
+ * @version $Revision: 1.0 $
+ */
+public final class LimitExceededException 
+  extends JsonParseException {
+
+  private static final long serialVersionUID = 2413857207683407395L;
+
+  /**
+   * The individual read limits
+   */
+  public static enum Limit {
+    /** Maximum nesting depth of objects and arrays **/
+    DEPTH,
+    /** Maximum size of the document **/
+    DOCUMENT_SIZE,
+    /** Maximum length of any single string, name or number **/
+    STRING_LENGTH,
+    /** Maximum number of members of any single array **/
+    ARRAY_ITEMS,
+    /** Maximum number of members of a Collection's items array **/
+    COLLECTION_ITEMS
+  }
+  
+  private final Limit limit;
+  private final long max;
+  
+  /**
+   * Constructor for LimitExceededException.
+   * @param limit Limit
+   * @param max long
+   */
+  public LimitExceededException(Limit limit, long max) {
+    super(String.format("Read limit %s (%d) exceeded", limit, max));
+    this.limit = limit;
+    this.max = max;
+  }
+  
+  /**
+   * The limit that was exceeded
+   * @return Limit
+   */
+  public Limit limit() {
+    return limit;
+  }
+  
+  /**
+   * The configured maximum value of the limit that was exceeded
+   * @return long
+   */
+  public long max() {
+    return max;
+  }
+}
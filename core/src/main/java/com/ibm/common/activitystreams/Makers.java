@@ -25,6 +25,7 @@ import java.util.Map;
 
 import static com.google.common.collect.ImmutableMap.copyOf;
 import com.ibm.common.activitystreams.internal.Schema;
+import com.ibm.common.activitystreams.util.BuilderPool;
 
 /**
  * Utility class for creating Makers for all of the various objects.
@@ -73,6 +74,15 @@ public final class Makers {
     return new Collection.Builder();
   }
   
+  /**
+   * Make a new BuilderPool for reusing Activity, ASObject and 
+   * Collection builders on a single producer thread
+   * @return BuilderPool
+   **/
+  public static BuilderPool builderPool() {
+    return new BuilderPool(16);
+  }
+  
   /**
    * Make a new ASObject.Builder
    * @return ASObject.Builder 
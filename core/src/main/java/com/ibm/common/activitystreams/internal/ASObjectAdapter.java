@@ -43,6 +43,7 @@ import com.google.gson.JsonSerializationContext;
 import com.ibm.common.activitystreams.ASObject;
 import com.ibm.common.activitystreams.Activity;
 import com.ibm.common.activitystreams.Collection;
+import com.ibm.common.activitystreams.LimitExceededException;
 import com.ibm.common.activitystreams.LinkValue;
 import com.ibm.common.activitystreams.Makers;
 import com.ibm.common.activitystreams.TypeValue;
@@ -212,11 +213,45 @@ public class ASObjectAdapter
       }
     }
     
+    ReadContext ctx = ReadContext.current();
     for (Entry<String,JsonElement> entry : obj.entrySet()) {
       String name = entry.getKey();
       if (name.equalsIgnoreCase("objectType")) continue;
-      Class<?> _class = propMap.get(name);
       JsonElement val = entry.getValue();
+      if (ctx == null) {
+        setProperty(builder, propMap, name, val, context);
+        continue;
+      }
+      ctx.push("." + name);
+      try {
+        setProperty(builder, propMap, name, val, context);
+      } catch (LimitExceededException e) {
+        throw e;
+      } catch (RuntimeException e) {
+        ctx.report(val, e);
+      } finally {
+        ctx.pop();
+      }
+    }
+    return builder.get();
+    
+  }
+  
+  /**
+   * Method setProperty.
+   * @param builder ASObject.AbstractBuilder<?,?>
+   * @param propMap Model
+   * @param name String
+   * @param val JsonElement
+   * @param context JsonDeserializationContext
+   */
+  private void setProperty(
+    ASObject.AbstractBuilder<?,?> builder,
+    Model propMap,
+    String name,
+    JsonElement val,
+    JsonDeserializationContext context) {
+      Class<?> _class = propMap.get(name);
       if (val.isJsonPrimitive())
         builder.set(
           name,
@@ -241,9 +276,6 @@ public class ASObjectAdapter
             propMap.has(name) ? 
               propMap.get(name):
               ASObject.class));
-    }
-    return builder.get();
-    
   }
   
   /**
@@ -275,7 +307,38 @@ public class ASObjectAdapter
     Class<?> _class, 
     JsonDeserializationContext context, 
     ImmutableList.Builder<Object> list) {
+    ReadContext ctx = ReadContext.current();
+    int n = 0;
     for (JsonElement mem : arr) {
+      if (ctx == null) {
+        processMember(mem, _class, context, list);
+        continue;
+      }
+      ctx.push("[" + n++ + "]");
+      try {
+        processMember(mem, _class, context, list);
+      } catch (LimitExceededException e) {
+        throw e;
+      } catch (RuntimeException e) {
+        ctx.report(mem, e);
+      } finally {
+        ctx.pop();
+      }
+    }
+  }
+  
+  /**
+   * Method processMember.
+   * @param mem JsonElement
+   * @param _class Class<?>
+   * @param context JsonDeserializationContext
+   * @param list ImmutableList.Builder<Object>
+   */
+  private void processMember(
+    JsonElement mem, 
+    Class<?> _class, 
+    JsonDeserializationContext context, 
+    ImmutableList.Builder<Object> list) {
       if (mem.isJsonPrimitive())
         list.add(
           _class != null ? 
@@ -296,7 +359,6 @@ public class ASObjectAdapter
             _class,
             context,
             builder()));
-    }
   }
   
   public static final Converter<JsonPrimitive,Object> primConverter = 
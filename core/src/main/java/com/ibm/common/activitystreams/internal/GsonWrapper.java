@@ -37,6 +37,7 @@ import static com.ibm.common.activitystreams.internal.Adapters.RANGE;
 import static com.ibm.common.activitystreams.internal.Adapters.PERIOD;
 import static com.ibm.common.activitystreams.internal.Adapters.forEnum;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
@@ -45,6 +46,7 @@ import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Date;
+import java.util.Iterator;
 
 import org.joda.time.DateTime;
 import org.joda.time.ReadableDuration;
@@ -55,17 +57,25 @@ import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Range;
 import com.google.common.collect.Table;
 import com.google.common.net.MediaType;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
 import com.google.gson.internal.LazilyParsedNumber;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 import com.ibm.common.activitystreams.ASObject;
 import com.ibm.common.activitystreams.ActionsValue;
 import com.ibm.common.activitystreams.Activity;
 import com.ibm.common.activitystreams.Collection;
+import com.ibm.common.activitystreams.Diagnostics;
+import com.ibm.common.activitystreams.LimitExceededException.Limit;
 import com.ibm.common.activitystreams.LinkValue;
 import com.ibm.common.activitystreams.NLV;
 import com.ibm.common.activitystreams.TypeValue;
@@ -95,6 +105,11 @@ public final class GsonWrapper {
     private String charset = "UTF-8";
     private boolean pretty;
     private Schema schema = null; // default
+    private int maxDepth = ReadLimits.UNLIMITED;
+    private long maxDocumentBytes = Long.MAX_VALUE;
+    private int maxStringLength = ReadLimits.UNLIMITED;
+    private int maxArrayItems = ReadLimits.UNLIMITED;
+    private int maxCollectionItems = ReadLimits.UNLIMITED;
     private ImmutableList.Builder<AdapterEntry<?>> adapters =
       ImmutableList.builder();
     
@@ -163,6 +178,56 @@ public final class GsonWrapper {
       return prettyPrint(true);
     }
     
+    /**
+     * Method maxDepth.
+     * @param max int
+    
+     * @return Builder */
+    public Builder maxDepth(int max) {
+      this.maxDepth = max;
+      return this;
+    }
+    
+    /**
+     * Method maxDocumentBytes.
+     * @param max long
+    
+     * @return Builder */
+    public Builder maxDocumentBytes(long max) {
+      this.maxDocumentBytes = max;
+      return this;
+    }
+    
+    /**
+     * Method maxStringLength.
+     * @param max int
+    
+     * @return Builder */
+    public Builder maxStringLength(int max) {
+      this.maxStringLength = max;
+      return this;
+    }
+    
+    /**
+     * Method maxArrayItems.
+     * @param max int
+    
+     * @return Builder */
+    public Builder maxArrayItems(int max) {
+      this.maxArrayItems = max;
+      return this;
+    }
+    
+    /**
+     * Method maxCollectionItems.
+     * @param max int
+    
+     * @return Builder */
+    public Builder maxCollectionItems(int max) {
+      this.maxCollectionItems = max;
+      return this;
+    }
+    
     /**
      * Method get.
     
@@ -200,6 +265,7 @@ public final class GsonWrapper {
   
   private final Gson gson;
   private final String charset;
+  private final ReadLimits limits;
   
   /**
    * Constructor for GsonWrapper.
@@ -221,6 +287,12 @@ public final class GsonWrapper {
       b.setPrettyPrinting();
     this.gson = b.create();
     this.charset = builder.charset;
+    this.limits = new ReadLimits(
+      builder.maxDepth,
+      builder.maxDocumentBytes,
+      builder.maxStringLength,
+      builder.maxArrayItems,
+      builder.maxCollectionItems);
   }
   
   /**
@@ -323,7 +395,9 @@ public final class GsonWrapper {
    * @return A */
   public <A extends ASObject>A readAs(InputStream in, Class<? extends A> type) {
     try {
-      return readAs(new InputStreamReader(in, charset), type);
+      return read(
+        new InputStreamReader(limits.wrap(in), charset), 
+        type);
     } catch (Throwable t) {
       throw Throwables.propagate(t);
     }
@@ -336,6 +410,148 @@ public final class GsonWrapper {
   
    * @return A */
   public <A extends ASObject>A readAs(Reader in, Class<? extends A> type) {
-    return (A)gson.fromJson(in, type);
+    return read(limits.wrap(in), type);
+  }
+  
+  /**
+   * Method readAs. Properties and items that cannot be read are 
+   * dropped and recorded in the given Diagnostics
+   * @param in InputStream
+   * @param type Class<? extends A>
+   * @param diagnostics Diagnostics
+  
+   * @return A */
+  public <A extends ASObject>A readAs(
+    InputStream in, 
+    Class<? extends A> type, 
+    Diagnostics diagnostics) {
+    try {
+      return readLenient(
+        new InputStreamReader(limits.wrap(in), charset), 
+        type, 
+        diagnostics);
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+  }
+  
+  /**
+   * Method readAs. Properties and items that cannot be read are 
+   * dropped and recorded in the given Diagnostics
+   * @param in Reader
+   * @param type Class<? extends A>
+   * @param diagnostics Diagnostics
+  
+   * @return A */
+  public <A extends ASObject>A readAs(
+    Reader in, 
+    Class<? extends A> type, 
+    Diagnostics diagnostics) {
+    return readLenient(limits.wrap(in), type, diagnostics);
+  }
+  
+  private <A extends ASObject>A readLenient(
+    Reader in, 
+    Class<? extends A> type, 
+    Diagnostics diagnostics) {
+    ReadContext prev = 
+      ReadContext.enter(diagnostics, "$");
+    try {
+      return read(in, type);
+    } finally {
+      ReadContext.exit(prev);
+    }
+  }
+  
+  /**
+   * Method read.
+   * @param in Reader
+   * @param type Class<? extends A>
+  
+   * @return A */
+  @SuppressWarnings("unchecked")
+  private <A extends ASObject>A read(Reader in, Class<? extends A> type) {
+    if (limits.unlimited())
+      return (A)gson.fromJson(in, type);
+    JsonReader reader = limits.reader(in, false);
+    A a = (A)gson.fromJson(reader, type);
+    try {
+      if (a != null && reader.peek() != JsonToken.END_DOCUMENT)
+        throw new JsonIOException("JSON document was not fully consumed.");
+    } catch (MalformedJsonException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+    return a;
+  }
+  
+  /**
+   * Method stream.
+   * @param in InputStream
+  
+   * @return Iterator<ASObject> */
+  public Iterator<ASObject> stream(InputStream in) {
+    try {
+      return stream(
+        new InputStreamReader(in, charset));
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+  }
+  
+  /**
+   * Method stream. The document size limit does not apply to streams,
+   * nor do the item limits apply to the array being streamed; all 
+   * other limits apply to each individual streamed object.
+   * @param in Reader
+  
+   * @return Iterator<ASObject> */
+  public Iterator<ASObject> stream(Reader in) {
+    return stream(in, null);
+  }
+  
+  /**
+   * Method stream. Items that cannot be read are skipped and recorded
+   * in the given Diagnostics
+   * @param in InputStream
+   * @param diagnostics Diagnostics
+  
+   * @return Iterator<ASObject> */
+  public Iterator<ASObject> stream(
+    InputStream in, 
+    Diagnostics diagnostics) {
+    try {
+      return stream(
+        new InputStreamReader(in, charset),
+        diagnostics);
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+  }
+  
+  /**
+   * Method stream. Items that cannot be read are skipped and recorded
+   * in the given Diagnostics
+   * @param in Reader
+   * @param diagnostics Diagnostics
+  
+   * @return Iterator<ASObject> */
+  public Iterator<ASObject> stream(
+    Reader in, 
+    Diagnostics diagnostics) {
+    return new StreamingReader(
+      gson, 
+      limits.reader(in, true), 
+      diagnostics);
+  }
+  
+  /**
+   * Returns the number of times each of the configured read limits
+   * has been exceeded.
+  
+   * @return ImmutableMap&lt;Limit,Long> */
+  public ImmutableMap<Limit,Long> limitViolations() {
+    return limits.violations();
   }
 }
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.activitystreams.internal;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.common.activitystreams.util.Flow;
+
+/**
+ * A single-subscriber Publisher that pulls items from an Iterator 
+ * only as they are requested by the Subscriber. If an Executor is
+ * given, items are emitted on the executor, otherwise they are 
+ * emitted on the thread calling Subscription.request.
+ * @author james
+ * @version $Revision: 1.0 $
+ */
+public final class IteratorPublisher<T>
+  implements Flow.Publisher<T> {
+
+  private final Iterator<? extends T> source;
+  private final Executor executor;
+  private final AtomicBoolean subscribed = 
+    new AtomicBoolean(false);
+  
+  /**
+   * Constructor for IteratorPublisher.
+   * @param source Iterator&lt;? extends T>
+   * @param executor Executor (may be null)
+   */
+  public IteratorPublisher(
+    Iterator<? extends T> source, 
+    Executor executor) {
+    this.source = checkNotNull(source);
+    this.executor = executor;
+  }
+  
+  public void subscribe(Flow.Subscriber<? super T> subscriber) {
+    checkNotNull(subscriber);
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(CANCELLED);
+      subscriber.onError(
+        new IllegalStateException(
+          "This Publisher only supports a single Subscriber"));
+      return;
+    }
+    subscriber.onSubscribe(new IteratorSubscription(subscriber));
+  }
+  
+  private static final Flow.Subscription CANCELLED = 
+    new Flow.Subscription() {
+      public void request(long n) {}
+      public void cancel() {}
+    };
+  
+  private final class IteratorSubscription
+    implements Flow.Subscription, Runnable {
+
+    private final Flow.Subscriber<? super T> subscriber;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean cancelled = false;
+    private volatile Throwable error;
+    private boolean done = false;
+    
+    IteratorSubscription(Flow.Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+    }
+    
+    /**
+     * A non-positive request is an error; it is signalled by run(), 
+     * like every other signal, so that it never overlaps onNext or 
+     * follows onComplete
+     */
+    public void request(long n) {
+      if (n <= 0) {
+        if (error == null)
+          error = new IllegalArgumentException(
+            "The number of requested items must be positive");
+        drain();
+        return;
+      }
+      long r, u;
+      do {
+        r = requested.get();
+        u = r + n;
+        if (u < 0) u = Long.MAX_VALUE;
+      } while(!requested.compareAndSet(r, u));
+      drain();
+    }
+
+    public void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        drain();
+      }
+    }
+    
+    private void drain() {
+      if (wip.getAndIncrement() == 0) {
+        if (executor != null)
+          executor.execute(this);
+        else run();
+      }
+    }
+    
+    public void run() {
+      int missed = 1;
+      do {
+        long r = requested.get();
+        long e = 0;
+        while (e != r && !done) {
+          if (stopped())
+            return;
+          T next;
+          try {
+            if (!source.hasNext()) {
+              finish();
+              subscriber.onComplete();
+              return;
+            }
+            next = source.next();
+          } catch (Throwable t) {
+            finish();
+            subscriber.onError(t);
+            return;
+          }
+          subscriber.onNext(next);
+          e++;
+        }
+        if (stopped())
+          return;
+        if (e != 0 && r != Long.MAX_VALUE)
+          requested.addAndGet(-e);
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+    
+    /**
+     * Finish if the subscription has been cancelled or a request was
+     * invalid, signalling the error in the latter case
+     */
+    private boolean stopped() {
+      if (done)
+        return true;
+      Throwable t = error;
+      if (t != null) {
+        finish();
+        subscriber.onError(t);
+        return true;
+      }
+      if (cancelled) {
+        finish();
+        return true;
+      }
+      return false;
+    }
+    
+    private void finish() {
+      if (done) return;
+      done = true;
+      if (source instanceof Closeable) {
+        try {
+          ((Closeable)source).close();
+        } catch (Throwable t) {}
+      }
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.activitystreams.internal;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import com.google.gson.stream.JsonReader;
+import com.ibm.common.activitystreams.LimitExceededException.Limit;
+
+/**
+ * A JsonReader that enforces the nesting depth, string length and 
+ * array item limits of a ReadLimits instance as tokens are consumed.
+ * @author james
+ * @version $Revision: 1.0 $
+ */
+final class LimitingJsonReader 
+  extends JsonReader {
+
+  private static final byte OBJECT = 0;
+  private static final byte ARRAY = 1;
+  private static final byte ITEMS = 2;
+  private static final byte EXEMPT = 3;
+  
+  private final ReadLimits limits;
+  private final boolean streaming;
+  private byte[] kinds = new byte[32];
+  private int[] counts = new int[32];
+  private int depth = 0;
+  private String lastName;
+  
+  /**
+   * Constructor for LimitingJsonReader.
+   * @param in Reader
+   * @param limits ReadLimits
+   * @param streaming boolean
+   */
+  LimitingJsonReader(
+    Reader in, 
+    ReadLimits limits, 
+    boolean streaming) {
+      super(in);
+      this.limits = limits;
+      this.streaming = streaming;
+  }
+  
+  private void value() {
+    if (depth == 0) return;
+    int n = ++counts[depth-1];
+    byte kind = kinds[depth-1];
+    if (kind == ITEMS && n > limits.maxCollectionItems)
+      throw limits.exceeded(
+        Limit.COLLECTION_ITEMS, 
+        limits.maxCollectionItems);
+    if ((kind == ITEMS || kind == ARRAY) && n > limits.maxArrayItems)
+      throw limits.exceeded(
+        Limit.ARRAY_ITEMS, 
+        limits.maxArrayItems);
+  }
+  
+  private void push(byte kind) {
+    value();
+    if (depth >= limits.maxDepth)
+      throw limits.exceeded(Limit.DEPTH, limits.maxDepth);
+    if (depth == kinds.length) {
+      kinds = Arrays.copyOf(kinds, depth * 2);
+      counts = Arrays.copyOf(counts, depth * 2);
+    }
+    kinds[depth] = kind;
+    counts[depth++] = 0;
+  }
+  
+  private byte arrayKind() {
+    boolean items = depth > 0 && 
+      kinds[depth-1] == OBJECT && 
+      "items".equals(lastName);
+    if (streaming && (depth == 0 || (depth == 1 && items)))
+      return EXEMPT;
+    return items ? ITEMS : ARRAY;
+  }
+  
+  private String checkLength(String s) {
+    if (s.length() > limits.maxStringLength)
+      throw limits.exceeded(
+        Limit.STRING_LENGTH, 
+        limits.maxStringLength);
+    return s;
+  }
+  
+  @Override
+  public void beginArray() throws IOException {
+    super.beginArray();
+    push(arrayKind());
+  }
+
+  @Override
+  public void endArray() throws IOException {
+    super.endArray();
+    depth--;
+  }
+
+  @Override
+  public void beginObject() throws IOException {
+    super.beginObject();
+    push(OBJECT);
+  }
+
+  @Override
+  public void endObject() throws IOException {
+    super.endObject();
+    depth--;
+  }
+
+  @Override
+  public String nextName() throws IOException {
+    return lastName = checkLength(super.nextName());
+  }
+
+  @Override
+  public String nextString() throws IOException {
+    String s = checkLength(super.nextString());
+    value();
+    return s;
+  }
+
+  @Override
+  public boolean nextBoolean() throws IOException {
+    boolean b = super.nextBoolean();
+    value();
+    return b;
+  }
+
+  @Override
+  public void nextNull() throws IOException {
+    super.nextNull();
+    value();
+  }
+
+  @Override
+  public double nextDouble() throws IOException {
+    double d = super.nextDouble();
+    value();
+    return d;
+  }
+
+  @Override
+  public long nextLong() throws IOException {
+    long l = super.nextLong();
+    value();
+    return l;
+  }
+
+  @Override
+  public int nextInt() throws IOException {
+    int i = super.nextInt();
+    value();
+    return i;
+  }
+
+  @Override
+  public void skipValue() throws IOException {
+    super.skipValue();
+    value();
+  }
+  
+}
@@ -34,6 +34,7 @@ import com.google.gson.JsonParseException;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.LimitExceededException;
 import com.ibm.common.activitystreams.LinkValue;
 import com.ibm.common.activitystreams.LinkValue.SimpleLinkValue;
 import com.ibm.common.activitystreams.TypeValue;
@@ -100,11 +101,30 @@ final class LinkValueAdapter
     if (el.isJsonArray()) {
       LinkValue.ArrayLinkValue.Builder builder = 
         linkValues();
-      for (JsonElement aryel : el.getAsJsonArray())
-        builder.add(
-          context.<LinkValue>deserialize(
-            aryel, 
-            LinkValue.class));
+      ReadContext ctx = ReadContext.current();
+      int n = 0;
+      for (JsonElement aryel : el.getAsJsonArray()) {
+        if (ctx == null) {
+          builder.add(
+            context.<LinkValue>deserialize(
+              aryel, 
+              LinkValue.class));
+          continue;
+        }
+        ctx.push("[" + n++ + "]");
+        try {
+          builder.add(
+            context.<LinkValue>deserialize(
+              aryel, 
+              LinkValue.class));
+        } catch (LimitExceededException e) {
+          throw e;
+        } catch (RuntimeException e) {
+          ctx.report(aryel, e);
+        } finally {
+          ctx.pop();
+        }
+      }
       return builder.get();
     } else if (el.isJsonObject()) {
       JsonObject obj = el.getAsJsonObject();
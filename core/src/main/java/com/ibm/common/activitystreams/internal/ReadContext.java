@@ -0,0 +1,106 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.activitystreams.internal;
+
+import java.util.Arrays;
+
+import com.google.gson.JsonElement;
+import com.ibm.common.activitystreams.Diagnostics;
+
+/**
+ * Tracks the JSON path and the Diagnostics collector for a lenient 
+ * read on the current thread. When no lenient read is in progress,
+ * current() returns null and the adapters behave strictly.
+ * @author james
+ * @version $Revision: 1.0 $
+ */
+final class ReadContext {
+
+  private static final ThreadLocal<ReadContext> current = 
+    new ThreadLocal<ReadContext>();
+  
+  /**
+   * The lenient read context for the current thread, if any
+   * @return ReadContext
+   */
+  static ReadContext current() {
+    return current.get();
+  }
+  
+  /**
+   * Begin a lenient read on the current thread
+   * @param diagnostics Diagnostics
+   * @param root String The path of the value being read
+   * @return ReadContext The previous context, to be passed to exit
+   */
+  static ReadContext enter(Diagnostics diagnostics, String root) {
+    ReadContext prev = current.get();
+    current.set(new ReadContext(diagnostics, root));
+    return prev;
+  }
+  
+  /**
+   * End a lenient read on the current thread
+   * @param prev ReadContext
+   */
+  static void exit(ReadContext prev) {
+    if (prev != null)
+      current.set(prev);
+    else
+      current.remove();
+  }
+  
+  private final Diagnostics diagnostics;
+  private String[] path = new String[16];
+  private int depth = 0;
+  
+  private ReadContext(Diagnostics diagnostics, String root) {
+    this.diagnostics = diagnostics;
+    push(root);
+  }
+  
+  void push(String segment) {
+    if (depth == path.length)
+      path = Arrays.copyOf(path, depth * 2);
+    path[depth++] = segment;
+  }
+  
+  void pop() {
+    path[--depth] = null;
+  }
+  
+  String path() {
+    StringBuilder buf = new StringBuilder();
+    for (int n = 0; n < depth; n++)
+      buf.append(path[n]);
+    return buf.toString();
+  }
+  
+  /**
+   * Record a value at the current path that could not be read
+   * @param value JsonElement
+   * @param error Throwable
+   */
+  void report(JsonElement value, Throwable error) {
+    diagnostics.report(path(), value.toString(), error);
+  }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.activitystreams.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.AtomicLongMap;
+import com.ibm.common.activitystreams.LimitExceededException;
+import com.ibm.common.activitystreams.LimitExceededException.Limit;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Holds the read limits for a GsonWrapper and counts the number of
+ * times each has been exceeded.
+ * @author james
+ * @version $Revision: 1.0 $
+ */
+final class ReadLimits {
+
+  static final int UNLIMITED = Integer.MAX_VALUE;
+  
+  final int maxDepth;
+  final long maxDocumentBytes;
+  final int maxStringLength;
+  final int maxArrayItems;
+  final int maxCollectionItems;
+  private final boolean unlimited;
+  private final AtomicLongMap<Limit> violations = 
+    AtomicLongMap.create();
+  
+  /**
+   * Constructor for ReadLimits.
+   */
+  ReadLimits(
+    int maxDepth, 
+    long maxDocumentBytes, 
+    int maxStringLength, 
+    int maxArrayItems, 
+    int maxCollectionItems) {
+    checkArgument(maxDepth > 0);
+    checkArgument(maxDocumentBytes > 0);
+    checkArgument(maxStringLength > 0);
+    checkArgument(maxArrayItems > 0);
+    checkArgument(maxCollectionItems > 0);
+    this.maxDepth = maxDepth;
+    this.maxDocumentBytes = maxDocumentBytes;
+    this.maxStringLength = maxStringLength;
+    this.maxArrayItems = maxArrayItems;
+    this.maxCollectionItems = maxCollectionItems;
+    this.unlimited = 
+      maxDepth == UNLIMITED && 
+      maxDocumentBytes == Long.MAX_VALUE &&
+      maxStringLength == UNLIMITED && 
+      maxArrayItems == UNLIMITED && 
+      maxCollectionItems == UNLIMITED;
+  }
+  
+  /**
+   * True if no limits have been configured
+   * @return boolean
+   */
+  boolean unlimited() {
+    return unlimited;
+  }
+  
+  /**
+   * Record a limit violation and return the exception to throw
+   * @param limit Limit
+   * @param max long
+   * @return LimitExceededException
+   */
+  LimitExceededException exceeded(Limit limit, long max) {
+    violations.incrementAndGet(limit);
+    return new LimitExceededException(limit, max);
+  }
+  
+  /**
+   * The number of times each limit has been exceeded
+   * @return ImmutableMap&lt;Limit,Long>
+   */
+  ImmutableMap<Limit,Long> violations() {
+    return ImmutableMap.copyOf(violations.asMap());
+  }
+  
+  /**
+   * Return a JsonReader that enforces the depth, string and item limits.
+   * @param in Reader
+   * @param streaming boolean True if the outermost array (or the 
+   *        items array of the outermost object) is being streamed
+   *        and therefore should not be subject to the item limits
+   * @return JsonReader
+   */
+  JsonReader reader(Reader in, boolean streaming) {
+    return unlimited ?
+      new JsonReader(in) :
+      new LimitingJsonReader(in, this, streaming);
+  }
+  
+  /**
+   * Wrap the input stream so that reading more than the maximum
+   * number of bytes fails
+   * @param in InputStream
+   * @return InputStream
+   */
+  InputStream wrap(InputStream in) {
+    if (maxDocumentBytes == Long.MAX_VALUE)
+      return in;
+    return new FilterInputStream(in) {
+      private long count = 0;
+      private void count(long n) {
+        if (n > 0 && (count += n) > maxDocumentBytes)
+          throw exceeded(Limit.DOCUMENT_SIZE, maxDocumentBytes);
+      }
+      public int read() throws IOException {
+        int r = super.read();
+        if (r != -1) count(1);
+        return r;
+      }
+      public int read(byte[] b, int off, int len) throws IOException {
+        int r = super.read(b, off, len);
+        count(r);
+        return r;
+      }
+      public long skip(long n) throws IOException {
+        long r = super.skip(n);
+        count(r);
+        return r;
+      }
+    };
+  }
+  
+  /**
+   * Wrap the reader so that reading more than the maximum number of 
+   * characters fails. When reading from a Reader, the document size 
+   * limit is measured in characters rather than bytes.
+   * @param in Reader
+   * @return Reader
+   */
+  Reader wrap(Reader in) {
+    if (maxDocumentBytes == Long.MAX_VALUE)
+      return in;
+    return new FilterReader(in) {
+      private long count = 0;
+      private void count(long n) {
+        if (n > 0 && (count += n) > maxDocumentBytes)
+          throw exceeded(Limit.DOCUMENT_SIZE, maxDocumentBytes);
+      }
+      public int read() throws IOException {
+        int r = super.read();
+        if (r != -1) count(1);
+        return r;
+      }
+      public int read(char[] b, int off, int len) throws IOException {
+        int r = super.read(b, off, len);
+        count(r);
+        return r;
+      }
+      public long skip(long n) throws IOException {
+        long r = super.skip(n);
+        count(r);
+        return r;
+      }
+    };
+  }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.activitystreams.internal;
+
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.internal.Streams;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.Diagnostics;
+import com.ibm.common.activitystreams.LimitExceededException;
+
+/**
+ * Incrementally reads ASObject instances from a JSON stream. The 
+ * stream may contain a JSON array of objects, a sequence of newline
+ * (or whitespace) delimited objects, or Collection objects whose
+ * "items" members are returned one at a time. Only a single item
+ * is held in memory at any given time.
+ * @author james
+ * @version $Revision: 1.0 $
+ */
+final class StreamingReader
+  extends AbstractIterator<ASObject>
+  implements Closeable {
+
+  private final Gson gson;
+  private final JsonReader reader;
+  private boolean inArray = false;
+  private boolean inItems = false;
+  private final Diagnostics diagnostics;
+  private int index = 0;
+  private int documents = 0;
+  
+  /**
+   * Constructor for StreamingReader.
+   * @param gson Gson
+   * @param reader JsonReader
+   * @param diagnostics Diagnostics Optional. If provided, items that 
+   *        cannot be read are recorded and skipped
+   */
+  StreamingReader(
+    Gson gson, 
+    JsonReader reader, 
+    Diagnostics diagnostics) {
+    this.gson = gson;
+    this.reader = reader;
+    this.diagnostics = diagnostics;
+    this.reader.setLenient(true);
+  }
+  
+  @Override
+  protected ASObject computeNext() {
+    try {
+      while(true) {
+        if (inArray || inItems) {
+          if (reader.hasNext()) {
+            ASObject obj = readObject();
+            if (obj != null)
+              return obj;
+            continue;
+          }
+          reader.endArray();
+          if (inItems) {
+            while(reader.hasNext()) {
+              reader.nextName();
+              reader.skipValue();
+            }
+            reader.endObject();
+            inItems = false;
+          } else inArray = false;
+          continue;
+        }
+        JsonToken token = reader.peek();
+        switch(token) {
+        case END_DOCUMENT:
+          close();
+          return endOfData();
+        case BEGIN_ARRAY:
+          reader.beginArray();
+          inArray = true;
+          index = 0;
+          break;
+        case BEGIN_OBJECT:
+          ASObject obj = readHead();
+          if (obj != null)
+            return obj;
+          break;
+        default:
+          throw new JsonParseException(
+            "Expected an object or array but was " + token);
+        }
+      }
+    } catch (IOException e) {
+      throw propagate(e);
+    }
+  }
+  
+  /**
+   * Reads the members of a top level object. If an "items" array is 
+   * found, the remaining members are skipped and the items are 
+   * streamed individually, otherwise the object itself is returned.
+   * @return ASObject or null if the object is a Collection or was skipped
+   */
+  private ASObject readHead() throws IOException {
+    JsonObject head = new JsonObject();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("items".equals(name) && 
+          reader.peek() == JsonToken.BEGIN_ARRAY) {
+        reader.beginArray();
+        inItems = true;
+        index = 0;
+        return null;
+      }
+      head.add(name, Streams.parse(reader));
+    }
+    reader.endObject();
+    return convert(head, "$[" + documents++ + "]");
+  }
+  
+  /**
+   * Reads the next member of an array or items array
+   * @return ASObject or null if the member was skipped 
+   */
+  private ASObject readObject() throws IOException {
+    JsonToken token = reader.peek();
+    String path = 
+      (inItems ? "$.items[" : "$[") + index++ + "]";
+    if (token != JsonToken.BEGIN_OBJECT) {
+      JsonParseException e = 
+        new JsonParseException(
+          "Expected an object but was " + token);
+      if (diagnostics == null) 
+        throw e;
+      diagnostics.report(path, Streams.parse(reader).toString(), e);
+      return null;
+    }
+    return convert(Streams.parse(reader), path);
+  }
+  
+  /**
+   * Converts a parsed item, recording and skipping it if the item 
+   * cannot be read and a Diagnostics collector was provided
+   * @param el JsonElement
+   * @param path String
+   * @return ASObject or null if the item was skipped
+   */
+  private ASObject convert(JsonElement el, String path) {
+    if (diagnostics == null)
+      return gson.fromJson(el, ASObject.class);
+    ReadContext prev = 
+      ReadContext.enter(diagnostics, path);
+    try {
+      return gson.fromJson(el, ASObject.class);
+    } catch (LimitExceededException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      diagnostics.report(path, el.toString(), e);
+      return null;
+    } finally {
+      ReadContext.exit(prev);
+    }
+  }
+
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.activitystreams.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.common.activitystreams.IO;
+import com.ibm.common.activitystreams.Writable;
+import com.ibm.common.activitystreams.util.Flow;
+
+/**
+ * A Subscriber that serializes each received Writable to a Writer
+ * as newline delimited JSON. No more than bufferSize items are ever 
+ * requested ahead of what has been written, so a fast Publisher is 
+ * held back by the speed of the output rather than queueing.
+ * @author james
+ * @version $Revision: 1.0 $
+ */
+public final class WritableSubscriber
+  implements Flow.Subscriber<Writable> {
+
+  private final IO io;
+  private final Writer out;
+  private final int bufferSize;
+  private final int replenish;
+  private final CountDownLatch latch = 
+    new CountDownLatch(1);
+  private Flow.Subscription subscription;
+  private int consumed = 0;
+  private volatile Throwable error;
+  
+  /**
+   * Constructor for WritableSubscriber.
+   * @param io IO
+   * @param out Writer
+   * @param bufferSize int
+   */
+  public WritableSubscriber(IO io, Writer out, int bufferSize) {
+    checkArgument(bufferSize > 0);
+    this.io = checkNotNull(io);
+    this.out = checkNotNull(out);
+    this.bufferSize = bufferSize;
+    this.replenish = Math.max(1, bufferSize - (bufferSize >> 2));
+  }
+  
+  public void onSubscribe(Flow.Subscription subscription) {
+    if (this.subscription != null) {
+      subscription.cancel();
+      return;
+    }
+    this.subscription = subscription;
+    subscription.request(bufferSize);
+  }
+
+  public void onNext(Writable item) {
+    try {
+      io.write(item, out);
+      out.write('\n');
+    } catch (Throwable t) {
+      subscription.cancel();
+      terminate(t);
+      return;
+    }
+    if (++consumed == replenish) {
+      consumed = 0;
+      subscription.request(replenish);
+    }
+  }
+
+  public void onError(Throwable throwable) {
+    terminate(throwable);
+  }
+
+  public void onComplete() {
+    terminate(null);
+  }
+  
+  private void terminate(Throwable t) {
+    if (latch.getCount() == 0) return;
+    try {
+      out.flush();
+    } catch (IOException e) {
+      if (t == null) t = e;
+    }
+    error = t;
+    latch.countDown();
+  }
+  
+  /**
+   * Block until the Publisher has completed or failed
+   * @throws InterruptedException
+   */
+  public void await() throws InterruptedException {
+    latch.await();
+  }
+  
+  /**
+   * Block up to the given length of time waiting for the Publisher
+   * to complete or fail
+   * @param timeout long
+   * @param unit TimeUnit
+   * @return boolean false if the timeout elapsed
+   * @throws InterruptedException
+   */
+  public boolean await(long timeout, TimeUnit unit) 
+    throws InterruptedException {
+    return latch.await(timeout, unit);
+  }
+  
+  /**
+   * True if the Publisher has completed or failed
+   * @return boolean
+   */
+  public boolean isDone() {
+    return latch.getCount() == 0;
+  }
+  
+  /**
+   * The error that terminated the stream, if any
+   * @return Throwable
+   */
+  public Throwable error() {
+    return error;
+  }
+}
@@ -68,6 +68,14 @@ public abstract class AbstractDictionaryObject<X>
       return !isempty;
     }
     
+    /**
+     * Remove all items so that this builder can be reused
+     */
+    protected void clear() {
+      map.clear();
+      isempty = true;
+    }
+    
     /**
      * Sets an item in this dictionary object
      * @param key String
@@ -180,6 +188,7 @@ public abstract class AbstractDictionaryObject<X>
   
   private final ImmutableMap<String,X> map;
   private transient int hash = 1;
+  private transient long size = -1;
   
   /**
    * @param builder AbstractBuilder<X,?,?>
@@ -263,6 +272,18 @@ public abstract class AbstractDictionaryObject<X>
   public Iterator<String> iterator() {
     return map.keySet().iterator();
   }
+  
+  /**
+   * Returns the approximate retained size of this object in bytes.
+   * The value is computed once and memoized.
+   * @return long
+   * @see Sizes
+   */
+  public long estimatedSize() {
+    if (size < 0)
+      size = Sizes.OBJECT + Sizes.estimate(map);
+    return size;
+  }
 
   /**
    * Returns true if the verb appears in the ActionsValue object
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.activitystreams.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayDeque;
+
+import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.Activity;
+import com.ibm.common.activitystreams.Collection;
+import com.ibm.common.activitystreams.Makers;
+
+/**
+ * A small pool of reusable Activity, ASObject and Collection builders
+ * for tight construction loops. Builders acquired from the pool are 
+ * returned to it using release(), which resets them so that their 
+ * backing storage can be reused by the next acquire. 
+ * 
+ * <pre>
+ *   BuilderPool pool = Makers.builderPool();
+ *   for (...) {
+ *     Activity.Builder builder = pool.activity();
+ *     Activity activity = builder.verb("post").actor(...).get();
+ *     pool.release(builder);
+ *     ...
+ *   }
+ * </pre>
+ * 
+ * <p>A BuilderPool is not threadsafe and is intended to be owned by 
+ * a single producer thread. A builder must not be used after it has 
+ * been released.</p>
+ * 
+ * @author james
+ * @version $Revision: 1.0 $
+ */
+public final class BuilderPool {
+
+  private final int maxIdle;
+  private final ArrayDeque<Activity.Builder> activities;
+  private final ArrayDeque<ASObject.Builder> objects;
+  private final ArrayDeque<Collection.Builder> collections;
+  
+  /**
+   * Constructor for BuilderPool.
+   * @param maxIdle int The maximum number of idle builders of each 
+   *        kind retained by the pool
+   */
+  public BuilderPool(int maxIdle) {
+    checkArgument(maxIdle > 0);
+    this.maxIdle = maxIdle;
+    this.activities = new ArrayDeque<Activity.Builder>(maxIdle);
+    this.objects = new ArrayDeque<ASObject.Builder>(maxIdle);
+    this.collections = new ArrayDeque<Collection.Builder>(maxIdle);
+  }
+  
+  /**
+   * Acquire an Activity.Builder
+   * @return Activity.Builder
+   */
+  public Activity.Builder activity() {
+    Activity.Builder builder = activities.poll();
+    return builder != null ? builder : Makers.activity();
+  }
+  
+  /**
+   * Acquire an ASObject.Builder
+   * @return ASObject.Builder
+   */
+  public ASObject.Builder object() {
+    ASObject.Builder builder = objects.poll();
+    return builder != null ? builder : Makers.object();
+  }
+  
+  /**
+   * Acquire a Collection.Builder
+   * @return Collection.Builder
+   */
+  public Collection.Builder collection() {
+    Collection.Builder builder = collections.poll();
+    return builder != null ? builder : Makers.collection();
+  }
+  
+  /**
+   * Reset the builder and return it to the pool
+   * @param builder Activity.Builder
+   */
+  public void release(Activity.Builder builder) {
+    if (activities.size() < maxIdle)
+      activities.push(builder.reset());
+  }
+  
+  /**
+   * Reset the builder and return it to the pool
+   * @param builder ASObject.Builder
+   */
+  public void release(ASObject.Builder builder) {
+    if (builder.getClass() == ASObject.Builder.class && 
+        objects.size() < maxIdle)
+      objects.push(builder.reset());
+  }
+  
+  /**
+   * Reset the builder and return it to the pool
+   * @param builder Collection.Builder
+   */
+  public void release(Collection.Builder builder) {
+    if (collections.size() < maxIdle)
+      collections.push(builder.reset());
+  }
+  
+  /**
+   * Build the Activity and return the builder to the pool
+   * @param builder Activity.Builder
+   * @return Activity
+   */
+  public Activity build(Activity.Builder builder) {
+    Activity activity = builder.get();
+    release(builder);
+    return activity;
+  }
+  
+  /**
+   * Build the ASObject and return the builder to the pool
+   * @param builder ASObject.Builder
+   * @return ASObject
+   */
+  public ASObject build(ASObject.Builder builder) {
+    ASObject object = builder.get();
+    release(builder);
+    return object;
+  }
+  
+  /**
+   * Build the Collection and return the builder to the pool
+   * @param builder Collection.Builder
+   * @return Collection
+   */
+  public Collection build(Collection.Builder builder) {
+    Collection collection = builder.get();
+    release(builder);
+    return collection;
+  }
+}
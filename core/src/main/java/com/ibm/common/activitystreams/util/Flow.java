@@ -0,0 +1,107 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.activitystreams.util;
+
+/**
+ * Minimal Reactive Streams interfaces. These mirror the signatures of
+ * java.util.concurrent.Flow (Java 9+) and org.reactivestreams so that
+ * the library can offer backpressure-aware streaming while remaining
+ * Java 7 compatible. Adapting to either of those APIs is a matter of
+ * a trivial delegating wrapper.
+ * 
+ * <pre>
+ *   IO io = IO.makeDefault();
+ *   Flow.Publisher&lt;ASObject> publisher = io.publisher(in, executor);
+ *   publisher.subscribe(io.subscriber(out));
+ * </pre>
+ * 
+ * @author james
+ * @version $Revision: 1.0 $
+ */
+public final class Flow {
+
+  private Flow() {}
+  
+  /**
+   * A producer of items that are delivered to a Subscriber
+   * only as they are requested.
+   */
+  public static interface Publisher<T> {
+    
+    /**
+     * Add the given Subscriber. Publishers created by the IO 
+     * object read from a single underlying stream and therefore
+     * accept only a single Subscriber.
+     * @param subscriber Subscriber&lt;? super T>
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+    
+  }
+  
+  /**
+   * A receiver of items
+   */
+  public static interface Subscriber<T> {
+    
+    /**
+     * Called once before any other method
+     * @param subscription Subscription
+     */
+    void onSubscribe(Subscription subscription);
+    
+    /**
+     * Called with the next item, never more often than requested
+     * @param item T
+     */
+    void onNext(T item);
+    
+    /**
+     * Called once upon an unrecoverable error
+     * @param throwable Throwable
+     */
+    void onError(Throwable throwable);
+    
+    /**
+     * Called once when no further items will be delivered
+     */
+    void onComplete();
+    
+  }
+  
+  /**
+   * Links a Publisher and a Subscriber
+   */
+  public static interface Subscription {
+    
+    /**
+     * Add n to the number of outstanding items requested
+     * @param n long
+     */
+    void request(long n);
+    
+    /**
+     * Stop receiving items
+     */
+    void cancel();
+    
+  }
+}
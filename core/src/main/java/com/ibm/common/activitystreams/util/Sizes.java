@@ -0,0 +1,137 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.activitystreams.util;
+
+import java.util.Map;
+
+import org.joda.time.ReadableInstant;
+
+import com.google.common.cache.Weigher;
+import com.google.common.primitives.Ints;
+import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.LinkValue;
+import com.ibm.common.activitystreams.NLV;
+import com.ibm.common.activitystreams.TypeValue;
+import com.ibm.common.activitystreams.ValueType;
+
+/**
+ * Utility methods for approximating the retained heap size of 
+ * Activity Streams objects and their property values. The estimates
+ * assume a 64-bit JVM with compressed references and are intended 
+ * for bounding caches, not for precise accounting. Immutable ASObject
+ * instances memoize their estimated size.
+ * 
+ * <pre>
+ *   CacheBuilder.newBuilder()
+ *     .maximumWeight(16 * 1024 * 1024)
+ *     .weigher(Sizes.weigher())
+ *     .build();
+ * </pre>
+ * @author james
+ * @version $Revision: 1.0 $
+ */
+public final class Sizes {
+
+  private Sizes() {}
+  
+  /** Approximate size of an object header plus a few fields **/
+  public static final int OBJECT = 16;
+  static final int REFERENCE = 4;
+  static final int MAP = 48;
+  static final int MAP_ENTRY = 32;
+  static final int LIST = 24;
+  static final int STRING = 40;
+  static final int BOXED = 16;
+  static final int DATETIME = 32;
+  
+  private static final Weigher<Object,Object> WEIGHER = 
+    new Weigher<Object,Object>() {
+      public int weigh(Object key, Object value) {
+        return Ints.saturatedCast(estimate(key) + estimate(value));
+      }
+  };
+  
+  /**
+   * A cache Weigher that weighs each entry by the estimated size 
+   * of its key and value
+   * @return Weigher&lt;Object,Object>
+   */
+  public static Weigher<Object,Object> weigher() {
+    return WEIGHER;
+  }
+  
+  /**
+   * Estimate the retained size of the given value
+   * @param value Object
+   * @return long
+   */
+  public static long estimate(Object value) {
+    if (value == null || 
+        value instanceof Boolean || 
+        value instanceof Enum)
+      return 0;
+    else if (value instanceof ASObject)
+      return ((ASObject)value).estimatedSize();
+    else if (value instanceof AbstractDictionaryObject)
+      return ((AbstractDictionaryObject<?>)value).estimatedSize();
+    else if (value instanceof CharSequence)
+      return STRING + 2L * ((CharSequence)value).length();
+    else if (value instanceof Number)
+      return BOXED + 8;
+    else if (value instanceof ReadableInstant)
+      return DATETIME;
+    else if (value instanceof LinkValue && 
+             ((LinkValue)value).valueType() == ValueType.SIMPLE)
+      return OBJECT + estimate(((LinkValue.SimpleLinkValue)value).url());
+    else if (value instanceof TypeValue && 
+             ((TypeValue)value).valueType() == ValueType.SIMPLE)
+      return OBJECT + estimate(((TypeValue)value).id());
+    else if (value instanceof NLV.SimpleNLV)
+      return OBJECT + estimate(((NLV.SimpleNLV)value).value());
+    else if (value instanceof NLV.MapNLV)
+      return OBJECT + estimate(((NLV.MapNLV)value).toMap());
+    else if (value instanceof Map)
+      return estimate((Map<?,?>)value);
+    else if (value instanceof Iterable) {
+      long size = LIST;
+      for (Object obj : (Iterable<?>)value)
+        size += REFERENCE + estimate(obj);
+      return size;
+    } 
+    return OBJECT;
+  }
+  
+  /**
+   * Estimate the retained size of the given map
+   * @param map Map&lt;?,?>
+   * @return long
+   */
+  public static long estimate(Map<?,?> map) {
+    long size = MAP;
+    for (Map.Entry<?,?> entry : map.entrySet())
+      size += 
+        MAP_ENTRY + 
+        estimate(entry.getKey()) + 
+        estimate(entry.getValue());
+    return size;
+  }
+}
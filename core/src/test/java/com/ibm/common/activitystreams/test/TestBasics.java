@@ -33,10 +33,14 @@ import org.joda.time.DateTime;
 import org.joda.time.Period;
 import org.junit.Test;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.ibm.common.activitystreams.ASObject;
 import com.ibm.common.activitystreams.ActionsValue;
 import com.ibm.common.activitystreams.Activity;
+import com.ibm.common.activitystreams.Collection;
 import com.ibm.common.activitystreams.IO;
 import com.ibm.common.activitystreams.LinkValue;
 import com.ibm.common.activitystreams.LinkValue.SimpleLinkValue;
@@ -44,6 +48,8 @@ import com.ibm.common.activitystreams.Makers;
 import com.ibm.common.activitystreams.NLV;
 import com.ibm.common.activitystreams.NLV.MapNLV;
 import com.ibm.common.activitystreams.ValueType;
+import com.ibm.common.activitystreams.util.BuilderPool;
+import com.ibm.common.activitystreams.util.Sizes;
 
 public final class TestBasics {
 
@@ -174,4 +180,63 @@ public final class TestBasics {
   }
   
   
+  @Test
+  public void testBuilderReuse() {
+    BuilderPool pool = Makers.builderPool();
+    Activity.Builder builder = pool.activity();
+    Activity first = 
+      pool.build(
+        builder
+          .verb("post")
+          .actor("acct:joe@example.org")
+          .action("like", "http://example.org/like"));
+    Activity.Builder second = pool.activity();
+    assertSame(builder, second);
+    Activity activity = second.verb("share").get();
+    assertEquals("post", first.verb().id());
+    assertEquals("share", activity.verb().id());
+    assertNull(activity.firstActor());
+    assertFalse(activity.has("actions"));
+    
+    Collection.Builder col = pool.collection();
+    assertEquals(1, Iterables.size(col.items(Makers.object()).getAndReset().items()));
+    assertEquals(0, Iterables.size(col.get().items()));
+  }
+  
+  @Test
+  public void testEstimatedSize() {
+    ASObject small = Makers.object().id("urn:a").get();
+    ASObject large = 
+      Makers.object()
+        .id("urn:b")
+        .content(Strings.repeat("x", 10000))
+        .attachments(small)
+        .get();
+    assertTrue(small.estimatedSize() > 0);
+    assertTrue(large.estimatedSize() > 20000 + small.estimatedSize());
+    assertEquals(large.estimatedSize(), large.estimatedSize());
+    assertTrue(
+      Sizes.weigher().weigh("urn:b", large) > 
+      Sizes.weigher().weigh("urn:a", small));
+  }
+
+  @Test
+  public void testWith() {
+    ASObject note = Makers.object().id("urn:note").get();
+    Collection collection = 
+      Makers.collection()
+        .id("urn:col")
+        .items(note)
+        .get();
+    Collection copy = 
+      collection.with(
+        ImmutableMap.of(
+          "displayName", Makers.nlv("Copy"),
+          "items", ImmutableList.of(note, note)));
+    assertEquals("urn:col", copy.id());
+    assertEquals("Copy", copy.displayNameString());
+    assertEquals(2, Iterables.size(copy.items()));
+    assertSame(note, Iterables.get(copy.items(), 0));
+    assertEquals(1, Iterables.size(collection.items()));
+  }
 }
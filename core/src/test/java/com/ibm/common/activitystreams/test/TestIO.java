@@ -21,17 +21,38 @@
  */
 package com.ibm.common.activitystreams.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.joda.time.DateTime;
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.ibm.common.activitystreams.ASObject;
 import com.ibm.common.activitystreams.Activity;
 import com.ibm.common.activitystreams.Collection;
+import com.ibm.common.activitystreams.Diagnostics;
 import com.ibm.common.activitystreams.IO;
+import com.ibm.common.activitystreams.LimitExceededException;
+import com.ibm.common.activitystreams.LimitExceededException.Limit;
 import com.ibm.common.activitystreams.internal.Schema;
+import com.ibm.common.activitystreams.internal.WritableSubscriber;
+import com.ibm.common.activitystreams.util.Flow;
 
 public final class TestIO {
 
@@ -75,4 +96,167 @@ public final class TestIO {
         "{\"objectType\":\"foo\",\"bar\":\"2013-12-12T12:12:12Z\"}");
     assertTrue(obj.get("bar") instanceof DateTime);
   }
+  
+  @Test
+  public void testStream() {
+    IO io = IO.makeDefault();
+    Iterator<ASObject> array = 
+      io.stream(new StringReader("[{\"id\":\"a\"},{\"id\":\"b\"}]"));
+    assertEquals(2, Iterators.size(array));
+    Iterator<ASObject> lines = 
+      io.stream(new StringReader("{\"id\":\"a\"}\n{\"id\":\"b\"}\n{\"id\":\"c\"}"));
+    assertEquals(3, Iterators.size(lines));
+    Iterator<ASObject> items = 
+      io.stream(new StringReader(
+        "{\"totalItems\":2,\"items\":[{\"id\":\"a\"},{\"id\":\"b\"}],\"id\":\"c\"}"));
+    assertEquals("a", items.next().id());
+    assertEquals("b", items.next().id());
+    assertFalse(items.hasNext());
+  }
+  
+  @Test
+  public void testPublisher() throws Exception {
+    IO io = IO.makeDefault();
+    final List<ASObject> received = Lists.newArrayList();
+    final Flow.Subscription[] subscription = new Flow.Subscription[1];
+    final boolean[] complete = new boolean[1];
+    io.publisher(new StringReader("[{\"id\":\"a\"},{\"id\":\"b\"},{\"id\":\"c\"}]"))
+      .subscribe(new Flow.Subscriber<ASObject>() {
+        public void onSubscribe(Flow.Subscription s) {
+          subscription[0] = s;
+        }
+        public void onNext(ASObject item) {
+          received.add(item);
+        }
+        public void onError(Throwable throwable) {}
+        public void onComplete() {
+          complete[0] = true;
+        }
+      });
+    assertTrue(received.isEmpty());
+    subscription[0].request(2);
+    assertEquals(2, received.size());
+    assertFalse(complete[0]);
+    subscription[0].request(2);
+    assertEquals(3, received.size());
+    assertTrue(complete[0]);
+    
+    // an invalid request is signalled on the executor, never after 
+    // a terminal signal
+    final List<Runnable> queued = Lists.newArrayList();
+    final List<Throwable> errors = Lists.newArrayList();
+    io.publisher(
+      new StringReader("[{\"id\":\"a\"}]"), 
+      new Executor() {
+        public void execute(Runnable command) {
+          queued.add(command);
+        }
+      })
+      .subscribe(new Flow.Subscriber<ASObject>() {
+        public void onSubscribe(Flow.Subscription s) {
+          subscription[0] = s;
+        }
+        public void onNext(ASObject item) {}
+        public void onError(Throwable throwable) {
+          errors.add(throwable);
+        }
+        public void onComplete() {
+          errors.add(null);
+        }
+      });
+    subscription[0].request(1);
+    subscription[0].request(0);
+    assertTrue(errors.isEmpty());
+    assertEquals(1, queued.size());
+    queued.get(0).run();
+    assertEquals(1, errors.size());
+    assertTrue(errors.get(0) instanceof IllegalArgumentException);
+    subscription[0].request(-1);
+    assertEquals(1, queued.size());
+    assertEquals(1, errors.size());
+    
+    StringWriter out = new StringWriter();
+    WritableSubscriber subscriber = io.subscriber(out, 1);
+    io.publisher(new StringReader("{\"id\":\"a\"}\n{\"id\":\"b\"}"))
+      .subscribe(subscriber);
+    subscriber.await();
+    assertNull(subscriber.error());
+    assertEquals(
+      ImmutableList.of("a","b"), 
+      ImmutableList.of(
+        io.read(out.toString().split("\n")[0]).id(),
+        io.read(out.toString().split("\n")[1]).id()));
+  }
+  
+  @Test
+  public void testLimits() {
+    IO io = IO.make()
+      .maxDepth(3)
+      .maxDocumentBytes(200)
+      .maxStringLength(10)
+      .maxArrayItems(3)
+      .maxCollectionItems(2)
+      .get();
+    assertEquals("a", io.read("{\"id\":\"a\",\"foo\":{\"bar\":[1,2,3]}}").id());
+    assertLimit(io, "{\"a\":{\"b\":{\"c\":{}}}}", Limit.DEPTH);
+    assertLimit(io, "{\"id\":\"abcdefghijk\"}", Limit.STRING_LENGTH);
+    assertLimit(io, "{\"a\":[1,2,3,4]}", Limit.ARRAY_ITEMS);
+    assertLimit(io, "{\"items\":[{},{},{}]}", Limit.COLLECTION_ITEMS);
+    assertLimit(io, "{\"a\":\"" + Strings.repeat(" ", 200) + "\"}", Limit.DOCUMENT_SIZE);
+    // the limit counts bytes, not characters, when reading a stream:
+    // 100 three-byte characters fit in 200 chars but not in 200 bytes
+    byte[] wide = 
+      ("{\"a\":\"" + Strings.repeat("\u20ac", 100) + "\"}")
+        .getBytes(Charsets.UTF_8);
+    try {
+      io.readAs(
+        new ByteArrayInputStream(wide), 
+        ASObject.class, 
+        Diagnostics.skip());
+      fail();
+    } catch (LimitExceededException e) {
+      assertEquals(Limit.DOCUMENT_SIZE, e.limit());
+    }
+    assertEquals(Long.valueOf(1), io.limitViolations().get(Limit.DEPTH));
+    // the streamed array itself is not subject to the item limits
+    assertEquals(4, Iterators.size(io.stream(new StringReader("[{},{},{},{}]"))));
+  }
+  
+  @Test
+  public void testLenient() {
+    IO io = IO.makeDefault();
+    String json = 
+      "{\"items\":[{\"id\":\"a\"},{\"id\":\"b\",\"published\":\"bogus\"},5]}";
+    try {
+      io.readAsCollection(json);
+      fail();
+    } catch (RuntimeException e) {}
+    Diagnostics diag = Diagnostics.quarantine();
+    Collection col = io.readAsCollection(json, diag);
+    List<ASObject> items = ImmutableList.copyOf(col.items());
+    assertEquals(2, items.size());
+    assertEquals("b", items.get(1).id());
+    assertNull(items.get(1).published());
+    assertEquals(2, diag.size());
+    assertEquals("$.items[1].published", diag.diagnostics().get(0).path());
+    assertEquals("\"bogus\"", diag.diagnostics().get(0).token());
+    assertEquals("$.items[2]", diag.diagnostics().get(1).path());
+    assertEquals("5", diag.diagnostics().get(1).raw());
+    
+    diag = Diagnostics.skip();
+    Iterator<ASObject> stream = 
+      io.stream(new StringReader("[{\"id\":\"a\"},5,{\"id\":\"c\"}]"), diag);
+    assertEquals(2, Iterators.size(stream));
+    assertEquals("$[1]", diag.diagnostics().get(0).path());
+    assertNull(diag.diagnostics().get(0).raw());
+  }
+  
+  private static void assertLimit(IO io, String json, Limit limit) {
+    try {
+      io.read(json);
+      fail();
+    } catch (LimitExceededException e) {
+      assertEquals(limit, e.limit());
+    }
+  }
 }
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.geojson.examples;
+
+import java.util.List;
+import java.util.Random;
+
+import com.ibm.common.geojson.SpatialIndex;
+
+/**
+ * Rough timings for SpatialIndex at the 1M entry scale: STR bulk 
+ * loading, window and nearest queries compared with a linear scan, and
+ * incremental inserts. Run with a heap of at least 1g.
+ * 
+ * @author james
+ */
+public final class SpatialIndexBenchmark {
+
+  private SpatialIndexBenchmark() {}
+  
+  private static final int ENTRIES = 1000000;
+  private static final int QUERIES = 10000;
+  
+  public static void main(String... args) {
+    int entries = args.length > 0 ? Integer.parseInt(args[0]) : ENTRIES;
+    Random random = new Random(42);
+    
+    // small boxes scattered over the whole globe, like Place geometries
+    float[] boxes = new float[entries * 4];
+    for (int n = 0; n < boxes.length; n += 4) {
+      float x = random.nextFloat() * 180 - 90;
+      float y = random.nextFloat() * 360 - 180;
+      boxes[n] = x;
+      boxes[n+1] = y;
+      boxes[n+2] = x + random.nextFloat() * 0.05f;
+      boxes[n+3] = y + random.nextFloat() * 0.05f;
+    }
+    
+    long start = System.nanoTime();
+    SpatialIndex.Builder<Integer> builder = SpatialIndex.make();
+    for (int i = 0; i < entries; i++)
+      builder.add(boxes[i*4], boxes[i*4+1], boxes[i*4+2], boxes[i*4+3], i);
+    SpatialIndex<Integer> index = builder.get();
+    report("bulk load", entries, start);
+    
+    float[][] windows = new float[QUERIES][];
+    for (int q = 0; q < QUERIES; q++) {
+      float x = random.nextFloat() * 180 - 90;
+      float y = random.nextFloat() * 360 - 180;
+      windows[q] = new float[] {x, y, x + 1, y + 1};
+    }
+    
+    start = System.nanoTime();
+    long hits = 0;
+    for (float[] w : windows)
+      hits += index.intersects(w[0], w[1], w[2], w[3]).size();
+    report("intersects (" + hits + " hits)", QUERIES, start);
+    
+    start = System.nanoTime();
+    for (float[] w : windows)
+      index.within(w[0], w[1], w[2], w[3]);
+    report("within", QUERIES, start);
+    
+    start = System.nanoTime();
+    for (float[] w : windows)
+      index.nearest(w[0], w[1], 10);
+    report("nearest (k=10)", QUERIES, start);
+    
+    // verify a sample of queries against a linear scan, and time it
+    int scans = 100;
+    start = System.nanoTime();
+    for (int q = 0; q < scans; q++) {
+      float[] w = windows[q];
+      int expected = 0;
+      for (int n = 0; n < boxes.length; n += 4)
+        if (!(boxes[n] > w[2] || boxes[n+2] < w[0] || 
+              boxes[n+1] > w[3] || boxes[n+3] < w[1]))
+          expected++;
+      List<Integer> found = index.intersects(w[0], w[1], w[2], w[3]);
+      if (found.size() != expected)
+        throw new IllegalStateException(
+          "Expected " + expected + " but found " + found.size());
+    }
+    report("linear scan", scans, start);
+    
+    int inserts = Math.min(entries / 10, 100000);
+    start = System.nanoTime();
+    SpatialIndex<Integer> grown = index;
+    for (int i = 0; i < inserts; i++) {
+      float x = random.nextFloat() * 180 - 90;
+      float y = random.nextFloat() * 360 - 180;
+      grown = grown.insert(x, y, x + 0.01f, y + 0.01f, entries + i);
+    }
+    report("insert", inserts, start);
+    if (grown.size() != entries + inserts || index.size() != entries)
+      throw new IllegalStateException();
+  }
+  
+  private static void report(String label, int count, long start) {
+    double millis = (System.nanoTime() - start) / 1e6;
+    System.out.println(
+      String.format(
+        "%-32s %10d ops %10.1f ms %10.2f us/op", 
+        label, count, millis, millis * 1000 / count));
+  }
+}
@@ -113,6 +113,11 @@ public final class AS1Position
   
   // Java Serialization Support
   
+  @Override
+  protected AS1Position.Builder newBuilder() {
+    return GeoMakers.as1Position();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
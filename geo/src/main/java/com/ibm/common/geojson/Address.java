@@ -165,6 +165,11 @@ public final class Address
   
   // Java Serialization Support
   
+  @Override
+  protected Address.Builder newBuilder() {
+    return GeoMakers.address();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
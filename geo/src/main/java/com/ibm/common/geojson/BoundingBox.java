@@ -23,16 +23,21 @@ package com.ibm.common.geojson;
 
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSortedSet;
-import com.google.common.collect.Iterables;
+import com.google.common.primitives.Floats;
+import com.ibm.common.geojson.Geometry.CoordinateGeometry;
 
 /**
  * A GeoJSON Bounding Box (see http://geojson.org/geojson-spec.html#bounding-boxes)
+ * 
+ * The bounds are stored in a float array: all of the minimum values 
+ * followed by all of the maximum values.
  * @author james
  */
 public final class BoundingBox
@@ -41,18 +46,20 @@ public final class BoundingBox
   public static final class Builder 
     implements Supplier<BoundingBox> {
 
-    private final ImmutableList.Builder<Float> bounds = 
-      ImmutableList.builder();
+    private float[] bounds = new float[6];
+    private int size;
     
     public Builder add(float value) {
-      this.bounds.add(value);
+      if (size == bounds.length)
+        bounds = Arrays.copyOf(bounds, size * 2);
+      bounds[size++] = value;
       return this;
     }
     
     public Builder add(float... values) {
       if (values != null) 
         for (float v : values)
-          this.bounds.add(v);
+          add(v);
       return this;
     }
     
@@ -63,59 +70,193 @@ public final class BoundingBox
     
   }
   
-  private final ImmutableList<Float> bounds;
+  private final float[] bounds;
   
   BoundingBox(Builder builder) {
-    this.bounds = builder.bounds.build();
+    this.bounds = Arrays.copyOf(builder.bounds, builder.size);
+  }
+  
+  private BoundingBox(float[] bounds) {
+    this.bounds = bounds;
   }
 
+  /**
+   * The number of values in this bounding box (twice the number of 
+   * dimensions)
+   * @return int
+   */
+  public int size() {
+    return bounds.length;
+  }
+  
+  /**
+   * Return a single value
+   * @param idx int
+   * @return float
+   */
+  public float get(int idx) {
+    return bounds[idx];
+  }
+  
+  /**
+   * Return a copy of the values
+   * @return float[]
+   */
+  public float[] toArray() {
+    return bounds.clone();
+  }
+  
   @Override
   public Iterator<Float> iterator() {
-    return bounds.iterator();
+    return Floats.asList(bounds).iterator();
   }
   
   public String toString() {
     return Objects.toStringHelper(BoundingBox.class)
-      .addValue(bounds)
+      .addValue(Arrays.toString(bounds))
       .toString();
   }
   
-  private static BoundingBox buildBoundingBox(
-    ImmutableSortedSet<Float> xs,
-    ImmutableSortedSet<Float> ys,
-    ImmutableSortedSet<Float> zs) {
-    BoundingBox.Builder bbox = 
-      new BoundingBox.Builder()
-        .add(xs.first())
-        .add(ys.first());
-    if (!zs.isEmpty())
-      bbox.add(zs.first());
-    bbox.add(xs.last());
-    bbox.add(ys.last());
-    if (!zs.isEmpty())
-      bbox.add(zs.last());
-    return bbox.get();
+  /**
+   * Single pass min/max accumulator over positions. Reads packed 
+   * coordinates directly and never boxes.
+   */
+  private static final class Bounds {
+    
+    private float minx = Float.POSITIVE_INFINITY;
+    private float miny = Float.POSITIVE_INFINITY;
+    private float minz = Float.POSITIVE_INFINITY;
+    private float maxx = Float.NEGATIVE_INFINITY;
+    private float maxy = Float.NEGATIVE_INFINITY;
+    private float maxz = Float.NEGATIVE_INFINITY;
+    private boolean any, hasz;
+    
+    void add(float x, float y) {
+      any = true;
+      if (x < minx) minx = x;
+      if (x > maxx) maxx = x;
+      if (y < miny) miny = y;
+      if (y > maxy) maxy = y;
+    }
+    
+    void add(float x, float y, float z) {
+      add(x,y);
+      hasz = true;
+      if (z < minz) minz = z;
+      if (z > maxz) maxz = z;
+    }
+    
+    void add(Position position) {
+      if (position.hasAltitude())
+        add(position.northing(), position.easting(), position.altitude());
+      else
+        add(position.northing(), position.easting());
+    }
+    
+    void add(Coordinates coords) {
+      if (coords.partCount() == 0)
+        return;
+      int start = coords.partStart(0);
+      int end = coords.partEnd(coords.partCount() - 1);
+      for (int p = start; p < end; p++) {
+        float x = coords.get(p, 0), y = coords.get(p, 1);
+        if (coords.dimensions(p) > 2)
+          add(x, y, coords.get(p, 2));
+        else
+          add(x, y);
+      }
+    }
+    
+    /**
+     * Add the positions of a LineString, MultiPoint or one of the 
+     * collections of them, reading packed coordinates where available
+     */
+    @SuppressWarnings("unchecked")
+    void addAll(Iterable<?> items) {
+      Coordinates coords = 
+        items instanceof CoordinateGeometry ?
+          ((CoordinateGeometry<?,?,?>)items).packed() :
+          null;
+      if (coords != null) {
+        add(coords);
+        return;
+      }
+      for (Object item : items) {
+        if (item instanceof Position)
+          add((Position)item);
+        else if (item instanceof Geometry)
+          add((Geometry<?,?>)item);
+        else if (item instanceof Iterable)
+          addAll((Iterable<Object>)item);
+      }
+    }
+    
+    void add(Geometry<?,?> geometry) {
+      if (geometry == null)
+        return;
+      switch(geometry.type()) {
+      case POINT:
+        for (Position position : (Point)geometry)
+          add(position);
+        break;
+      case LINESTRING:
+      case MULTIPOINT:
+      case MULTILINESTRING:
+      case POLYGON:
+      case MULTIPOLYGON:
+        addAll(geometry);
+        break;
+      case GEOMETRYCOLLECTION:
+        for (Geometry<?,?> geo : ((GeometryCollection)geometry).geometries())
+          add(geo);
+        break;
+      default:
+        break;
+      }
+    }
+    
+    BoundingBox get() {
+      if (!any)
+        throw new NoSuchElementException();
+      return new BoundingBox(
+        hasz ? 
+          new float[] {minx, miny, minz, maxx, maxy, maxz} :
+          new float[] {minx, miny, maxx, maxy});
+    }
   }
   
-  protected static BoundingBox calculateBoundingBoxLineStrings(Iterable<LineString> lineStrings) {
-    ImmutableSortedSet.Builder<Float> xset = 
-      ImmutableSortedSet.naturalOrder();
-    ImmutableSortedSet.Builder<Float> yset = 
-        ImmutableSortedSet.naturalOrder();
-    ImmutableSortedSet.Builder<Float> zset = 
-        ImmutableSortedSet.naturalOrder();
-    for (LineString ls : lineStrings) {
-      for (Position p : ls) {
-        xset.add(p.northing());
-        yset.add(p.easting());
-        if (p.hasAltitude())
-          zset.add(p.altitude());
-      }
+  /**
+   * Return the given object's bounding box, calculating it if the
+   * object does not have one. Returns null if the object has no 
+   * positions.
+   * @param geo GeoObject&lt;?>
+   * @return BoundingBox
+   */
+  public static BoundingBox of(GeoObject<?> geo) {
+    if (geo == null)
+      return null;
+    if (geo.boundingBox() != null)
+      return geo.boundingBox();
+    Bounds bounds = new Bounds();
+    switch(geo.type()) {
+    case FEATURE:
+      bounds.add(((Feature)geo).geometry());
+      break;
+    case FEATURECOLLECTION:
+      for (Feature feature : (FeatureCollection)geo)
+        bounds.add(feature.geometry());
+      break;
+    default:
+      bounds.add((Geometry<?,?>)geo);
+      break;
     }
-    return buildBoundingBox(
-      xset.build(), 
-      yset.build(), 
-      zset.build());
+    return bounds.any ? bounds.get() : null;
+  }
+  
+  protected static BoundingBox calculateBoundingBoxLineStrings(Iterable<LineString> lineStrings) {
+    Bounds bounds = new Bounds();
+    bounds.addAll(lineStrings);
+    return bounds.get();
   }
   
   /**
@@ -124,161 +265,60 @@ public final class BoundingBox
    * @return BoundingBox
    */
   public static BoundingBox calculateBoundingBoxPolygons(Iterable<Polygon> polygons) {
-    ImmutableSortedSet.Builder<Float> xset = 
-      ImmutableSortedSet.naturalOrder();
-    ImmutableSortedSet.Builder<Float> yset = 
-        ImmutableSortedSet.naturalOrder();
-    ImmutableSortedSet.Builder<Float> zset = 
-        ImmutableSortedSet.naturalOrder();  
-    for (Polygon polygon : polygons) {
-      for (LineString line : polygon) {
-        for (Position pos : line) {
-          xset.add(pos.northing());
-          yset.add(pos.easting());
-          if (pos.hasAltitude())
-            zset.add(pos.altitude());          
-        }
-      }
-    }
-    return buildBoundingBox(
-        xset.build(), 
-        yset.build(), 
-        zset.build());
+    Bounds bounds = new Bounds();
+    bounds.addAll(polygons);
+    return bounds.get();
   }
   
   protected static BoundingBox calculateBoundingBoxPositions(Iterable<Position> positions) {
-    ImmutableSortedSet.Builder<Float> xset = 
-      ImmutableSortedSet.naturalOrder();
-    ImmutableSortedSet.Builder<Float> yset = 
-        ImmutableSortedSet.naturalOrder();
-    ImmutableSortedSet.Builder<Float> zset = 
-        ImmutableSortedSet.naturalOrder();
-    for (Position pos : positions) {
-      xset.add(pos.northing());
-      yset.add(pos.easting());
-      if (pos.hasAltitude())
-        zset.add(pos.altitude());
-    }
-    return buildBoundingBox(
-      xset.build(), 
-      yset.build(), 
-      zset.build());
+    Bounds bounds = new Bounds();
+    bounds.addAll(positions);
+    return bounds.get();
   }
 
   protected static BoundingBox calculateBoundingBox(Position position) {
-    BoundingBox.Builder bbox = 
-      new BoundingBox.Builder();
-    bbox.add(position.northing());
-    bbox.add(position.easting());
-    if (position.hasAltitude())
-      bbox.add(position.altitude());
-    return bbox.get();    
-  }
-  
-  private static void addValues(
-    ImmutableSortedSet.Builder<Float> xset,
-    ImmutableSortedSet.Builder<Float> yset,
-    ImmutableSortedSet.Builder<Float> zset,
-    Iterable<Position> positions) {
-    for (Position position : positions) {
-      xset.add(position.northing());
-      yset.add(position.easting());
-      if (position.hasAltitude())
-        zset.add(position.altitude());
-    }
-  }
-  
-  private static void addValuesLineString(
-      ImmutableSortedSet.Builder<Float> xset,
-      ImmutableSortedSet.Builder<Float> yset,
-      ImmutableSortedSet.Builder<Float> zset,
-      Iterable<LineString> lines) {
-    for (LineString ls : lines) {
-      addValues(xset,yset,zset,ls);
-    }
-  }
-  
-  private static void addValuesPolygon(
-      ImmutableSortedSet.Builder<Float> xset,
-      ImmutableSortedSet.Builder<Float> yset,
-      ImmutableSortedSet.Builder<Float> zset,
-      Iterable<Polygon> polygons) {
-    for (Polygon poly : polygons) {
-      addValuesLineString(xset,yset,zset,poly);
-    }
+    Bounds bounds = new Bounds();
+    bounds.add(position);
+    return bounds.get();
   }
   
   protected static BoundingBox calculateBoundingBox(Geometry<?,?> geometry) {
-    return calculateBoundingBoxGeometries(
-      ImmutableList.<Geometry<?,?>>of(geometry));
+    Bounds bounds = new Bounds();
+    bounds.add(geometry);
+    return bounds.get();
   }
   
-  @SuppressWarnings("unchecked")
   protected static BoundingBox calculateBoundingBoxGeometries(
     Iterable<Geometry<?,?>> geometries) {
-      ImmutableSortedSet.Builder<Float> xset = 
-        ImmutableSortedSet.naturalOrder();
-      ImmutableSortedSet.Builder<Float> yset = 
-          ImmutableSortedSet.naturalOrder();
-      ImmutableSortedSet.Builder<Float> zset = 
-          ImmutableSortedSet.naturalOrder();
-      for (Geometry<?,?> geo : geometries) {
-        switch(geo.type()) {
-        case POINT:
-          Point point = (Point) geo;
-          Position position = Iterables.getFirst(point.coordinates(),null);
-          xset.add(position.northing());
-          yset.add(position.easting());
-          if (position.hasAltitude())
-            zset.add(position.altitude());
-          break;
-        case LINESTRING:
-        case MULTIPOINT:
-          addValues(xset,yset,zset,(Iterable<Position>)geo);
-          break;
-        case MULTILINESTRING:
-        case POLYGON:
-          addValuesLineString(xset,yset,zset,(Iterable<LineString>)geo);
-          break;
-        case MULTIPOLYGON:
-          addValuesPolygon(xset,yset,zset,(Iterable<Polygon>)geo);
-          break;
-        default:
-          break; 
-        }
-      }
-      return buildBoundingBox(
-        xset.build(),
-        yset.build(),
-        zset.build());
+    Bounds bounds = new Bounds();
+    for (Geometry<?,?> geo : geometries)
+      bounds.add(geo);
+    return bounds.get();
   }
   
   protected static BoundingBox calculateBoundingBoxFeatures(Iterable<Feature> features) {
-    ImmutableList.Builder<Geometry<?,?>> list = 
-      ImmutableList.builder();
-    for (Feature feature : features) {
-      Geometry<?,?> geometry = feature.geometry();
-      if (geometry != null) 
-        list.add(geometry);
-    }
-    return calculateBoundingBoxGeometries(list.build());
+    Bounds bounds = new Bounds();
+    for (Feature feature : features)
+      bounds.add(feature.geometry());
+    return bounds.get();
   }
   
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
   
+  /**
+   * Keeps the serialized form of earlier releases, so bounding boxes
+   * written by them can still be read
+   */
   private static class SerializedForm implements Serializable {
     private static final long serialVersionUID = -2060301713159936285L;
     private ImmutableList<Float> bounds;
     protected SerializedForm(BoundingBox obj) {
-      this.bounds = obj.bounds;
+      this.bounds = ImmutableList.copyOf(Floats.asList(obj.bounds));
     }
     Object readResolve() throws ObjectStreamException {
-      BoundingBox.Builder builder = 
-        new BoundingBox.Builder();
-      builder.bounds.addAll(bounds);
-      return builder.get();
+      return new BoundingBox(Floats.toArray(bounds));
     }
   }
 }
@@ -0,0 +1,598 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.geojson;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Supplier;
+
+/**
+ * Packed storage for the positions of a LineString, MultiPoint, 
+ * Polygon, MultiLineString or MultiPolygon. 
+ * 
+ * All of the positions are kept in a single float array, stride values 
+ * per position, instead of one Position object per vertex. Positions 
+ * are grouped into parts (a line or a ring) and parts into groups (a 
+ * polygon), both described by offset arrays. Position objects are only 
+ * created when the coordinates are iterated.
+ * 
+ * Positions with fewer values than the stride are padded with NaN.
+ * The number of values each position actually has is recorded 
+ * separately whenever it differs from the stride, so a NaN value is 
+ * never mistaken for padding.
+ * 
+ * <pre>
+ *   Coordinates coords = 
+ *     Coordinates.make()
+ *       .position(0,0)
+ *       .position(0,10)
+ *       .position(10,10)
+ *       .closeRing()
+ *       .endPart()
+ *       .get();
+ * </pre>
+ * 
+ * @author james
+ */
+public final class Coordinates 
+  implements Serializable {
+
+  private static final long serialVersionUID = -3815539046532931553L;
+  
+  private static final int[] EMPTY = new int[] {0};
+  
+  public static Builder make() {
+    return new Builder();
+  }
+  
+  public static final class Builder 
+    implements Supplier<Coordinates> {
+    
+    private float[] values = new float[32];
+    private int size;      // floats used by completed positions
+    private int current;   // values written for the pending position
+    private int stride;
+    private int[] lengths = new int[16]; // values of each position
+    private int[] parts = new int[8];
+    private int partCount;
+    private int[] groups = new int[4];
+    private int groupCount;
+    
+    /**
+     * Write a single value of the pending position. Call endPosition()
+     * once all of the position's values have been written.
+     * @param value float
+     * @return Builder
+     */
+    public Builder value(float value) {
+      if (stride > 0 && current == stride && size > 0)
+        widen(stride + 1);
+      ensure(size + current + 1);
+      values[size + current++] = value;
+      return this;
+    }
+    
+    /**
+     * Complete the pending position
+     * @return Builder
+     */
+    public Builder endPosition() {
+      checkState(current > 0, "A position requires at least one value");
+      if (size == 0 && stride == 0)
+        stride = Math.max(current, 2);
+      else if (current > stride)
+        widen(current);
+      ensure(size + stride);
+      lengths = ensure(lengths, positionCount() + 1);
+      lengths[positionCount()] = Math.max(current, 2);
+      for (; current < stride; current++)
+        values[size + current] = Float.NaN;
+      size += stride;
+      current = 0;
+      return this;
+    }
+    
+    /**
+     * Add a position
+     * @param values float[]
+     * @return Builder
+     */
+    public Builder position(float... values) {
+      for (float v : values)
+        value(v);
+      return endPosition();
+    }
+    
+    /**
+     * Add a position
+     * @param x float
+     * @param y float
+     * @return Builder
+     */
+    public Builder position(float x, float y) {
+      return value(x).value(y).endPosition();
+    }
+    
+    /**
+     * Add a position
+     * @param x float
+     * @param y float
+     * @param z float
+     * @return Builder
+     */
+    public Builder position(float x, float y, float z) {
+      return value(x).value(y).value(z).endPosition();
+    }
+    
+    /**
+     * Add a position
+     * @param position Position
+     * @return Builder
+     */
+    public Builder position(Position position) {
+      return position(position.values());
+    }
+    
+    /**
+     * Add every position of the given coordinates, ignoring their 
+     * parts and groups
+     * @param coordinates Coordinates
+     * @return Builder
+     */
+    public Builder add(Coordinates coordinates) {
+      int s = coordinates.stride;
+      int start = coordinates.parts[0];
+      int end = coordinates.parts[coordinates.parts.length - 1];
+      if (start == end)
+        return this;
+      if (s == stride || (size == 0 && stride == 0)) {
+        stride = s;
+        int count = positionCount();
+        lengths = ensure(lengths, count + end - start);
+        for (int p = start; p < end; p++)
+          lengths[count++] = coordinates.dimensions(p);
+        int len = (end - start) * s;
+        ensure(size + len);
+        System.arraycopy(coordinates.values, start * s, values, size, len);
+        size += len;
+      } else {
+        for (int p = start; p < end; p++) {
+          for (int d = 0, n = coordinates.dimensions(p); d < n; d++)
+            value(coordinates.values[p * s + d]);
+          endPosition();
+        }
+      }
+      return this;
+    }
+    
+    /**
+     * Add every part of the given coordinates as a separate part, 
+     * ignoring their groups
+     * @param coordinates Coordinates
+     * @return Builder
+     */
+    public Builder addParts(Coordinates coordinates) {
+      if (hasPendingPositions())
+        endPart();
+      int base = positionCount() - coordinates.parts[0];
+      add(coordinates);
+      int n = coordinates.parts.length - 1;
+      parts = ensure(parts, partCount + n);
+      for (int i = 1; i <= n; i++)
+        parts[partCount++] = coordinates.parts[i] + base;
+      return this;
+    }
+    
+    /**
+     * Add each of the given positions
+     * @param positions Iterable&lt;Position>
+     * @return Builder
+     */
+    public Builder add(Iterable<Position> positions) {
+      for (Position position : positions)
+        position(position);
+      return this;
+    }
+    
+    /**
+     * If the current part does not end with its first position, 
+     * repeat the first position so that the part forms a linear ring
+     * @return Builder
+     */
+    public Builder closeRing() {
+      int first = partCount > 0 ? parts[partCount - 1] : 0;
+      int last = size / (stride > 0 ? stride : 1) - 1;
+      if (last <= first) 
+        return this;
+      boolean closed = lengths[first] == lengths[last];
+      for (int d = 0; d < stride && closed; d++)
+        closed = equal(
+          values[first * stride + d], 
+          values[last * stride + d]);
+      if (!closed) {
+        ensure(size + stride);
+        lengths = ensure(lengths, last + 2);
+        lengths[last + 1] = lengths[first];
+        System.arraycopy(values, first * stride, values, size, stride);
+        size += stride;
+      }
+      return this;
+    }
+    
+    /**
+     * Complete the current part (a line or ring)
+     * @return Builder
+     */
+    public Builder endPart() {
+      checkState(current == 0, "Pending position");
+      parts = ensure(parts, partCount + 1);
+      parts[partCount++] = positionCount();
+      return this;
+    }
+    
+    /**
+     * Complete the current group of parts (a polygon)
+     * @return Builder
+     */
+    public Builder endGroup() {
+      if (hasPendingPositions())
+        endPart();
+      groups = ensure(groups, groupCount + 1);
+      groups[groupCount++] = partCount;
+      return this;
+    }
+    
+    /**
+     * True if no positions have been added
+     */
+    public boolean isEmpty() {
+      return size == 0;
+    }
+    
+    private int positionCount() {
+      return stride > 0 ? size / stride : 0;
+    }
+    
+    private boolean hasPendingPositions() {
+      return positionCount() > (partCount > 0 ? parts[partCount - 1] : 0);
+    }
+    
+    private boolean hasPendingParts() {
+      return partCount > (groupCount > 0 ? groups[groupCount - 1] : 0);
+    }
+    
+    private void ensure(int capacity) {
+      if (capacity > values.length)
+        values = Arrays.copyOf(
+          values, 
+          Math.max(capacity, values.length * 2));
+    }
+    
+    private static int[] ensure(int[] array, int capacity) {
+      return capacity > array.length ? 
+        Arrays.copyOf(array, Math.max(capacity, array.length * 2)) : 
+        array;
+    }
+    
+    /**
+     * Re-pack the completed positions with a larger stride, padding the
+     * new values with NaN. Only needed when positions of mixed 
+     * dimensions are added.
+     */
+    private void widen(int newStride) {
+      int count = positionCount();
+      float[] packed = new float[Math.max(values.length, (count + 1) * newStride + current)];
+      Arrays.fill(packed, Float.NaN);
+      for (int n = 0; n < count; n++)
+        System.arraycopy(values, n * stride, packed, n * newStride, stride);
+      System.arraycopy(values, size, packed, count * newStride, current);
+      values = packed;
+      stride = newStride;
+      size = count * newStride;
+    }
+    
+    public Coordinates get() {
+      checkState(current == 0, "Pending position");
+      if (hasPendingPositions())
+        endPart();
+      if (hasPendingParts())
+        endGroup();
+      int[] p = new int[partCount + 1];
+      System.arraycopy(parts, 0, p, 1, partCount);
+      int[] g = new int[groupCount + 1];
+      System.arraycopy(groups, 0, g, 1, groupCount);
+      return new Coordinates(
+        Arrays.copyOf(values, size), 
+        stride, 
+        uniform() ? null : Arrays.copyOf(lengths, positionCount()),
+        partCount > 0 ? p : EMPTY, 
+        groupCount > 0 ? g : EMPTY);
+    }
+    
+    private boolean uniform() {
+      for (int n = 0, count = positionCount(); n < count; n++)
+        if (lengths[n] != stride)
+          return false;
+      return true;
+    }
+  }
+  
+  private final float[] values;
+  private final int stride;
+  private final int[] lengths; // values of each position, null if all use the stride
+  private final int[] parts;   // absolute position offsets, one more than parts
+  private final int[] groups;  // offsets into parts, one more than groups
+  
+  private Coordinates(
+    float[] values, 
+    int stride, 
+    int[] lengths,
+    int[] parts, 
+    int[] groups) {
+    this.values = values;
+    this.stride = stride;
+    this.lengths = lengths;
+    this.parts = parts;
+    this.groups = groups;
+  }
+  
+  /**
+   * The number of values stored for each position
+   * @return int
+   */
+  public int stride() {
+    return stride;
+  }
+  
+  /**
+   * The total number of positions
+   * @return int
+   */
+  public int size() {
+    return parts[parts.length - 1] - parts[0];
+  }
+  
+  /**
+   * The number of parts (lines or rings)
+   * @return int
+   */
+  public int partCount() {
+    return parts.length - 1;
+  }
+  
+  /**
+   * The number of groups of parts (polygons)
+   * @return int
+   */
+  public int groupCount() {
+    return groups.length - 1;
+  }
+  
+  /**
+   * The index of the first position of the given part
+   * @param part int
+   * @return int
+   */
+  public int partStart(int part) {
+    checkElementIndex(part, partCount());
+    return parts[part];
+  }
+  
+  /**
+   * The index after the last position of the given part
+   * @param part int
+   * @return int
+   */
+  public int partEnd(int part) {
+    checkElementIndex(part, partCount());
+    return parts[part + 1];
+  }
+  
+  /**
+   * The index of the first part of the given group
+   * @param group int
+   * @return int
+   */
+  public int groupStart(int group) {
+    checkElementIndex(group, groupCount());
+    return groups[group];
+  }
+  
+  /**
+   * The index after the last part of the given group
+   * @param group int
+   * @return int
+   */
+  public int groupEnd(int group) {
+    checkElementIndex(group, groupCount());
+    return groups[group + 1];
+  }
+  
+  /**
+   * Return a single value of a position. Position indices are those 
+   * returned by partStart and partEnd.
+   * @param position int
+   * @param dimension int
+   * @return float (NaN if the position does not have the value)
+   */
+  public float get(int position, int dimension) {
+    return values[position * stride + dimension];
+  }
+  
+  /**
+   * The number of values the given position actually has
+   * @param position int
+   * @return int
+   */
+  public int dimensions(int position) {
+    return lengths != null ? lengths[position] : stride;
+  }
+  
+  /**
+   * Create a Position object for the given position
+   * @param position int
+   * @return Position
+   */
+  public Position position(int position) {
+    int off = position * stride;
+    int dims = dimensions(position);
+    return new Position(
+      values[off], 
+      values[off + 1], 
+      dims > 2 ? values[off + 2] : 0, 
+      dims > 2,
+      dims > 3 ? 
+        Arrays.copyOfRange(values, off + 3, off + dims) : 
+        new float[0]);
+  }
+  
+  /**
+   * True if the given part has at least four positions and its first
+   * and last positions are equal
+   * @param part int
+   * @return boolean
+   */
+  public boolean closed(int part) {
+    int first = partStart(part);
+    int last = partEnd(part) - 1;
+    if (last - first < 3 || dimensions(first) != dimensions(last))
+      return false;
+    for (int d = 0; d < stride; d++)
+      if (!equal(get(first,d),get(last,d)))
+        return false;
+    return true;
+  }
+  
+  /**
+   * A view of every position, in order. Position objects are created
+   * as the view is read and are not retained.
+   * @return List&lt;Position>
+   */
+  public List<Position> positions() {
+    return new Positions(parts[0], parts[parts.length - 1]);
+  }
+  
+  /**
+   * A view of the positions of the given part
+   * @param part int
+   * @return List&lt;Position>
+   */
+  public List<Position> positions(int part) {
+    return new Positions(partStart(part), partEnd(part));
+  }
+  
+  /**
+   * The given part as a single part Coordinates sharing this 
+   * object's buffer
+   * @param part int
+   * @return Coordinates
+   */
+  public Coordinates part(int part) {
+    return new Coordinates(
+      values, 
+      stride, 
+      lengths,
+      new int[] {partStart(part), partEnd(part)},
+      new int[] {0, 1});
+  }
+  
+  /**
+   * The given group as a single group Coordinates sharing this
+   * object's buffer
+   * @param group int
+   * @return Coordinates
+   */
+  public Coordinates group(int group) {
+    int start = groupStart(group);
+    int end = groupEnd(group);
+    return new Coordinates(
+      values, 
+      stride, 
+      lengths,
+      Arrays.copyOfRange(parts, start, end + 1),
+      new int[] {0, end - start});
+  }
+  
+  public String toString() {
+    return Objects.toStringHelper(Coordinates.class)
+      .add("stride", stride)
+      .add("positions", size())
+      .add("parts", partCount())
+      .add("groups", groupCount())
+      .toString();
+  }
+  
+  private static boolean equal(float a, float b) {
+    return Float.floatToIntBits(a) == Float.floatToIntBits(b);
+  }
+  
+  private final class Positions 
+    extends AbstractList<Position> 
+    implements RandomAccess {
+    private final int start, end;
+    Positions(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+    @Override
+    public Position get(int index) {
+      checkElementIndex(index, end - start);
+      return position(start + index);
+    }
+    @Override
+    public int size() {
+      return end - start;
+    }
+  }
+
+  /**
+   * Views produced by part() and group() share the buffer of the 
+   * coordinates they were taken from; only the positions they cover
+   * are written when serialized.
+   */
+  Object writeReplace() throws ObjectStreamException {
+    int start = parts[0];
+    int end = parts[parts.length - 1];
+    if (start == 0 && end * stride == values.length)
+      return this;
+    int[] p = new int[parts.length];
+    for (int n = 0; n < p.length; n++)
+      p[n] = parts[n] - start;
+    return new Coordinates(
+      Arrays.copyOfRange(values, start * stride, end * stride),
+      stride, 
+      lengths != null ? 
+        Arrays.copyOfRange(lengths, start, end) : 
+        null,
+      p, 
+      groups);
+  }
+}
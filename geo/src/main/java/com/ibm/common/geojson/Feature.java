@@ -63,7 +63,7 @@ public final class Feature
     }
     
     protected Builder properties(Map<String,Object> properties) {
-      properties.putAll(properties);
+      this.properties.putAll(properties);
       return this;
     }
     
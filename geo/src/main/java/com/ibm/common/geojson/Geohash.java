@@ -0,0 +1,303 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.geojson;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+/**
+ * Geohash (see http://geohash.org) encoding of latitude and longitude.
+ * 
+ * Cells are handled as long values rather than strings: the 5 bits of 
+ * each base32 character, most significant first, right aligned. A 
+ * hash of n characters therefore uses 5n bits (at most 12 characters,
+ * 60 bits) and its prefix of m characters is hash >>> 5 * (n - m). 
+ * toString and parse convert to and from the usual base32 form.
+ * 
+ * Positions are read with the northing as latitude and the easting 
+ * as longitude, as GeoMakers.position(AS1Position) does.
+ * 
+ * <pre>
+ *   long cell = Geohash.encode(position, 7);
+ *   String hash = Geohash.toString(cell, 7);
+ *   long[] around = Geohash.neighbors(cell, 7);
+ * </pre>
+ * @author james
+ */
+public final class Geohash {
+
+  private Geohash() {}
+  
+  /** The maximum number of characters that fit in a long **/
+  public static final int MAX_PRECISION = 12;
+  
+  private static final char[] BASE32 = 
+    "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+  
+  private static final byte[] DECODE = new byte[128];
+  static {
+    Arrays.fill(DECODE, (byte)-1);
+    for (int n = 0; n < BASE32.length; n++)
+      DECODE[BASE32[n]] = (byte)n;
+  }
+  
+  /**
+   * Encode a latitude and longitude as a hash of the given number of
+   * characters
+   * @param latitude double
+   * @param longitude double
+   * @param precision int 1 to 12
+   * @return long
+   */
+  public static long encode(double latitude, double longitude, int precision) {
+    checkPrecision(precision);
+    int bits = precision * 5;
+    int latBits = bits / 2, lonBits = bits - latBits;
+    return interleave(
+      index(latitude, -90, 180, latBits), 
+      index(normalize(longitude), -180, 360, lonBits), 
+      bits);
+  }
+  
+  /**
+   * @param position Position
+   * @param precision int 1 to 12
+   * @return long
+   */
+  public static long encode(Position position, int precision) {
+    return encode(position.northing(), position.easting(), precision);
+  }
+  
+  /**
+   * @param position AS1Position
+   * @param precision int 1 to 12
+   * @return long
+   */
+  @SuppressWarnings("deprecation")
+  public static long encode(AS1Position position, int precision) {
+    return encode(position.latitude(), position.longitude(), precision);
+  }
+  
+  /**
+   * The bounds of a cell as (min latitude, min longitude, max 
+   * latitude, max longitude)
+   * @param hash long
+   * @param precision int 1 to 12
+   * @return BoundingBox
+   */
+  public static BoundingBox decode(long hash, int precision) {
+    checkPrecision(precision);
+    int bits = precision * 5;
+    int latBits = bits / 2, lonBits = bits - latBits;
+    double dlat = 180d / (1L << latBits);
+    double dlon = 360d / (1L << lonBits);
+    long lat = deinterleave(hash, bits, false);
+    long lon = deinterleave(hash, bits, true);
+    return new BoundingBox.Builder()
+      .add(
+        (float)(-90 + lat * dlat), 
+        (float)(-180 + lon * dlon),
+        (float)(-90 + (lat + 1) * dlat), 
+        (float)(-180 + (lon + 1) * dlon))
+      .get();
+  }
+  
+  /**
+   * The center of a cell
+   * @param hash long
+   * @param precision int 1 to 12
+   * @return Position
+   */
+  public static Position center(long hash, int precision) {
+    BoundingBox bounds = decode(hash, precision);
+    return GeoMakers.position(
+      (bounds.get(0) + bounds.get(2)) / 2, 
+      (bounds.get(1) + bounds.get(3)) / 2);
+  }
+  
+  /**
+   * The cells adjacent to the given one, clockwise from north. 
+   * Longitude wraps at the antimeridian; cells beyond a pole do not
+   * exist, so a cell in the top or bottom row has five neighbors.
+   * @param hash long
+   * @param precision int 1 to 12
+   * @return long[]
+   */
+  public static long[] neighbors(long hash, int precision) {
+    checkPrecision(precision);
+    int bits = precision * 5;
+    int latBits = bits / 2, lonBits = bits - latBits;
+    long lat = deinterleave(hash, bits, false);
+    long lon = deinterleave(hash, bits, true);
+    long rows = 1L << latBits, cols = 1L << lonBits;
+    long[] cells = new long[8];
+    int n = 0;
+    for (int d = 0; d < 8; d++) {
+      long r = lat + ROW[d];
+      if (r < 0 || r >= rows)
+        continue;
+      long c = (lon + COL[d] + cols) & (cols - 1);
+      cells[n++] = interleave(r, c, bits);
+    }
+    return n == 8 ? cells : Arrays.copyOf(cells, n);
+  }
+  
+  private static final int[] ROW = { 1, 1, 0,-1,-1,-1, 0, 1};
+  private static final int[] COL = { 0, 1, 1, 1, 0,-1,-1,-1};
+  
+  /**
+   * The cells covering the bounding rectangle of a circle, or null if
+   * there would be more than the given limit
+   * @param latitude double
+   * @param longitude double
+   * @param meters double radius
+   * @param precision int 1 to 12
+   * @param limit int
+   * @return long[]
+   */
+  public static long[] cover(
+    double latitude, 
+    double longitude, 
+    double meters, 
+    int precision,
+    int limit) {
+    checkPrecision(precision);
+    int bits = precision * 5;
+    int latBits = bits / 2, lonBits = bits - latBits;
+    long rows = 1L << latBits, cols = 1L << lonBits;
+    double dlat = Math.toDegrees(meters / Spatial.EARTH_RADIUS);
+    double minlat = Math.max(-90, latitude - dlat);
+    double maxlat = Math.min(90, latitude + dlat);
+    long r0 = index(minlat, -90, 180, latBits);
+    long r1 = index(maxlat, -90, 180, latBits);
+    long c0, width;
+    double cos = Math.cos(Math.toRadians(Math.max(Math.abs(minlat), Math.abs(maxlat))));
+    double dlon = cos > 0 ? dlat / cos : 360;
+    if (dlon >= 180 || maxlat >= 90 || minlat <= -90) {
+      c0 = 0;
+      width = cols;
+    } else {
+      c0 = index(normalize(longitude - dlon), -180, 360, lonBits);
+      long c1 = index(normalize(longitude + dlon), -180, 360, lonBits);
+      width = ((c1 - c0 + cols) & (cols - 1)) + 1;
+    }
+    long count = (r1 - r0 + 1) * width;
+    if (count > limit)
+      return null;
+    long[] cells = new long[(int)count];
+    int n = 0;
+    for (long r = r0; r <= r1; r++)
+      for (long c = 0; c < width; c++)
+        cells[n++] = interleave(r, (c0 + c) & (cols - 1), bits);
+    return cells;
+  }
+  
+  /**
+   * The base32 form of a hash
+   * @param hash long
+   * @param precision int 1 to 12
+   * @return String
+   */
+  public static String toString(long hash, int precision) {
+    checkPrecision(precision);
+    char[] chars = new char[precision];
+    for (int n = precision - 1; n >= 0; n--, hash >>>= 5)
+      chars[n] = BASE32[(int)(hash & 31)];
+    return new String(chars);
+  }
+  
+  /**
+   * Parse the base32 form of a hash; its precision is its length
+   * @param hash String
+   * @return long
+   */
+  public static long parse(String hash) {
+    checkPrecision(hash.length());
+    long value = 0;
+    for (int n = 0; n < hash.length(); n++) {
+      char c = Character.toLowerCase(hash.charAt(n));
+      int v = c < 128 ? DECODE[c] : -1;
+      checkArgument(v >= 0, "Invalid geohash: %s", hash);
+      value = (value << 5) | v;
+    }
+    return value;
+  }
+  
+  /**
+   * The prefix of a hash at a lower precision
+   * @param hash long
+   * @param precision int
+   * @param prefix int
+   * @return long
+   */
+  public static long prefix(long hash, int precision, int prefix) {
+    checkArgument(prefix > 0 && prefix <= precision);
+    return hash >>> (5 * (precision - prefix));
+  }
+  
+  private static void checkPrecision(int precision) {
+    checkArgument(
+      precision > 0 && precision <= MAX_PRECISION, 
+      "Precision must be between 1 and %s", MAX_PRECISION);
+  }
+  
+  private static double normalize(double longitude) {
+    if (longitude >= -180 && longitude <= 180)
+      return longitude;
+    longitude = (longitude + 180) % 360;
+    return longitude < 0 ? longitude + 180 : longitude - 180;
+  }
+  
+  private static long index(double value, double min, double range, int bits) {
+    long cells = 1L << bits;
+    long idx = (long)Math.floor((value - min) / range * cells);
+    return idx < 0 ? 0 : idx >= cells ? cells - 1 : idx;
+  }
+  
+  /**
+   * Interleave the bits of the row (latitude) and column (longitude)
+   * indexes, starting with the most significant longitude bit
+   */
+  private static long interleave(long lat, long lon, int bits) {
+    long hash = 0;
+    int latBit = bits / 2, lonBit = bits - latBit;
+    for (int n = 0; n < bits; n++) {
+      hash <<= 1;
+      if ((n & 1) == 0)
+        hash |= (lon >>> --lonBit) & 1;
+      else
+        hash |= (lat >>> --latBit) & 1;
+    }
+    return hash;
+  }
+  
+  /**
+   * Recover the row (latitude) or column (longitude) index
+   */
+  private static long deinterleave(long hash, int bits, boolean longitude) {
+    long value = 0;
+    for (int n = longitude ? 0 : 1; n < bits; n += 2)
+      value = (value << 1) | ((hash >>> (bits - 1 - n)) & 1);
+    return value;
+  }
+}
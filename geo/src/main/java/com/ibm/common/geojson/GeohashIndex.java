@@ -0,0 +1,547 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.geojson;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
+import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.LinkValue;
+
+/**
+ * A concurrent proximity index from Geohash cell to object ID, meant 
+ * to be filled incrementally as activities arrive.
+ * 
+ * Each ID is stored, with its latitude and longitude, in the cell of 
+ * the configured precision containing it. Cells are long keys held in 
+ * open addressing tables split into independently locked shards, so 
+ * writers to different shards never contend and readers never block 
+ * one another. near() scans only the cells covering the requested 
+ * radius and filters their entries by great circle distance.
+ * 
+ * Each ID is in at most one cell: the cell of every ID is recorded, 
+ * so putting an ID again moves it to the cell of its new position.
+ * Writes for the same ID are serialized by a lock striped by ID.
+ * 
+ * <pre>
+ *   GeohashIndex index = GeohashIndex.make().precision(6).get();
+ *   index.add(activity);
+ *   List&lt;String> ids = index.near(latitude, longitude, 2000);
+ * </pre>
+ * @author james
+ */
+public final class GeohashIndex {
+
+  public static Builder make() {
+    return new Builder();
+  }
+  
+  public static final class Builder 
+    implements Supplier<GeohashIndex> {
+    
+    private int precision = 6;
+    private int shards = 16;
+    private int maxCells = 1024;
+    
+    /**
+     * The number of Geohash characters per cell (default 6, cells of
+     * roughly 1.2km by 0.6km)
+     * @param precision int 1 to 12
+     * @return Builder
+     */
+    public Builder precision(int precision) {
+      checkArgument(
+        precision > 0 && precision <= Geohash.MAX_PRECISION);
+      this.precision = precision;
+      return this;
+    }
+    
+    /**
+     * The number of independently locked shards (default 16), rounded
+     * up to a power of two
+     * @param shards int
+     * @return Builder
+     */
+    public Builder shards(int shards) {
+      checkArgument(shards > 0 && shards <= 1 << 16);
+      this.shards = shards == 1 ? 1 : Integer.highestOneBit(shards - 1) << 1;
+      return this;
+    }
+    
+    /**
+     * The most cells near() will look up individually (default 1024). 
+     * Larger radii scan every cell in the index instead.
+     * @param cells int
+     * @return Builder
+     */
+    public Builder maxCells(int cells) {
+      checkArgument(cells > 0);
+      this.maxCells = cells;
+      return this;
+    }
+    
+    public GeohashIndex get() {
+      return new GeohashIndex(this);
+    }
+    
+  }
+  
+  private final int precision;
+  private final int maxCells;
+  private final Shard[] shards;
+  private final ConcurrentMap<String,Long> cells = 
+    Maps.newConcurrentMap();
+  private final Striped<Lock> locks = 
+    Striped.lock(64);
+  private final AtomicInteger size = new AtomicInteger();
+  
+  private GeohashIndex(Builder builder) {
+    this.precision = builder.precision;
+    this.maxCells = builder.maxCells;
+    this.shards = new Shard[builder.shards];
+    for (int n = 0; n < shards.length; n++)
+      shards[n] = new Shard();
+  }
+  
+  /**
+   * The number of Geohash characters per cell
+   * @return int
+   */
+  public int precision() {
+    return precision;
+  }
+  
+  /**
+   * The number of IDs in the index
+   * @return int
+   */
+  public int size() {
+    return size.get();
+  }
+  
+  /**
+   * Add an ID at the given position. Returns false if the ID was 
+   * already in the index, in which case its position is updated and,
+   * if need be, it is moved to the cell containing the new position.
+   * @param id String
+   * @param latitude float
+   * @param longitude float
+   * @return boolean
+   */
+  public boolean put(String id, float latitude, float longitude) {
+    checkArgument(id != null);
+    long cell = Geohash.encode(latitude, longitude, precision);
+    Lock lock = locks.get(id);
+    lock.lock();
+    try {
+      Long previous = cells.put(id, cell);
+      if (previous != null && previous != cell)
+        detach(previous, id);
+      Shard shard = shard(cell);
+      shard.lock.writeLock().lock();
+      try {
+        // only an ID already in this cell needs to be looked up
+        Bucket bucket = shard.bucket(cell, true);
+        if (previous != null && previous == cell)
+          bucket.update(id, latitude, longitude);
+        else
+          bucket.add(id, latitude, longitude);
+      } finally {
+        shard.lock.writeLock().unlock();
+      }
+      if (previous != null)
+        return false;
+    } finally {
+      lock.unlock();
+    }
+    size.incrementAndGet();
+    return true;
+  }
+  
+  /**
+   * @param id String
+   * @param position Position
+   * @return boolean
+   */
+  public boolean put(String id, Position position) {
+    return put(id, position.northing(), position.easting());
+  }
+  
+  /**
+   * @param id String
+   * @param position AS1Position
+   * @return boolean
+   */
+  @SuppressWarnings("deprecation")
+  public boolean put(String id, AS1Position position) {
+    return put(id, position.latitude(), position.longitude());
+  }
+  
+  /**
+   * Add an object by its ID and location: a Place by its position or,
+   * failing that, the center of its geo property's bounds; any other
+   * object by the first such Place in its location property. Returns 
+   * false if the object has no ID or no location.
+   * @param obj ASObject
+   * @return boolean
+   */
+  public boolean add(ASObject obj) {
+    float[] location = location(obj);
+    return obj.id() != null && location != null && 
+      put(obj.id(), location[0], location[1]);
+  }
+  
+  /**
+   * Remove an ID from the index, wherever it was put
+   * @param id String
+   * @return boolean
+   */
+  public boolean remove(String id) {
+    if (id == null)
+      return false;
+    Lock lock = locks.get(id);
+    lock.lock();
+    try {
+      Long cell = cells.remove(id);
+      if (cell == null)
+        return false;
+      detach(cell, id);
+    } finally {
+      lock.unlock();
+    }
+    size.decrementAndGet();
+    return true;
+  }
+  
+  /**
+   * Remove an ID if it is in the cell containing the given position
+   * @param id String
+   * @param latitude float
+   * @param longitude float
+   * @return boolean
+   */
+  public boolean remove(String id, float latitude, float longitude) {
+    if (id == null)
+      return false;
+    long cell = Geohash.encode(latitude, longitude, precision);
+    Lock lock = locks.get(id);
+    lock.lock();
+    try {
+      if (!cells.remove(id, cell))
+        return false;
+      detach(cell, id);
+    } finally {
+      lock.unlock();
+    }
+    size.decrementAndGet();
+    return true;
+  }
+  
+  /**
+   * Remove an object from the index by its ID
+   * @param obj ASObject
+   * @return boolean
+   */
+  public boolean remove(ASObject obj) {
+    return remove(obj.id());
+  }
+  
+  /**
+   * Remove an ID from the bucket of the given cell, dropping the 
+   * bucket once it is empty
+   */
+  private void detach(long cell, String id) {
+    Shard shard = shard(cell);
+    shard.lock.writeLock().lock();
+    try {
+      Bucket bucket = shard.bucket(cell, false);
+      if (bucket != null && bucket.remove(id) && bucket.size == 0)
+        shard.remove(cell);
+    } finally {
+      shard.lock.writeLock().unlock();
+    }
+  }
+  
+  /**
+   * The IDs in a cell. A hash of lower precision than the index 
+   * returns nothing; use near() for larger areas.
+   * @param cell long
+   * @return List&lt;String>
+   */
+  public List<String> get(long cell) {
+    Shard shard = shard(cell);
+    shard.lock.readLock().lock();
+    try {
+      Bucket bucket = shard.bucket(cell, false);
+      return bucket != null ? 
+        ImmutableList.copyOf(Arrays.asList(bucket.ids).subList(0, bucket.size)) : 
+        ImmutableList.<String>of();
+    } finally {
+      shard.lock.readLock().unlock();
+    }
+  }
+  
+  /**
+   * The IDs within the given distance, in meters, of a position
+   * @param latitude float
+   * @param longitude float
+   * @param meters double
+   * @return List&lt;String>
+   */
+  public List<String> near(float latitude, float longitude, double meters) {
+    ImmutableList.Builder<String> found = ImmutableList.builder();
+    long[] cells = 
+      Geohash.cover(latitude, longitude, meters, precision, maxCells);
+    if (cells != null) {
+      for (long cell : cells) {
+        Shard shard = shard(cell);
+        shard.lock.readLock().lock();
+        try {
+          Bucket bucket = shard.bucket(cell, false);
+          if (bucket != null)
+            bucket.near(latitude, longitude, meters, found);
+        } finally {
+          shard.lock.readLock().unlock();
+        }
+      }
+    } else {
+      for (Shard shard : shards) {
+        shard.lock.readLock().lock();
+        try {
+          for (Bucket bucket : shard.buckets)
+            if (bucket != null)
+              bucket.near(latitude, longitude, meters, found);
+        } finally {
+          shard.lock.readLock().unlock();
+        }
+      }
+    }
+    return found.build();
+  }
+  
+  /**
+   * @param position Position
+   * @param meters double
+   * @return List&lt;String>
+   */
+  public List<String> near(Position position, double meters) {
+    return near(position.northing(), position.easting(), meters);
+  }
+  
+  /**
+   * @param position AS1Position
+   * @param meters double
+   * @return List&lt;String>
+   */
+  @SuppressWarnings("deprecation")
+  public List<String> near(AS1Position position, double meters) {
+    return near(position.latitude(), position.longitude(), meters);
+  }
+  
+  private Shard shard(long cell) {
+    return shards[(int)(mix(cell) >>> 32) & (shards.length - 1)];
+  }
+  
+  private static long mix(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return key;
+  }
+  
+  /**
+   * Open addressing (linear probing) table from cell to Bucket. Guarded
+   * by its lock.
+   */
+  private static final class Shard {
+    
+    final ReadWriteLock lock = new ReentrantReadWriteLock();
+    long[] keys = new long[16];
+    Bucket[] buckets = new Bucket[16];
+    int size;
+    
+    Bucket bucket(long key, boolean create) {
+      int mask = keys.length - 1;
+      int idx = (int)mix(key) & mask;
+      for (; buckets[idx] != null; idx = (idx + 1) & mask)
+        if (keys[idx] == key)
+          return buckets[idx];
+      if (!create)
+        return null;
+      if ((size + 1) * 4 > keys.length * 3) {
+        grow();
+        return bucket(key, true);
+      }
+      size++;
+      keys[idx] = key;
+      return buckets[idx] = new Bucket();
+    }
+    
+    void remove(long key) {
+      int mask = keys.length - 1;
+      int idx = (int)mix(key) & mask;
+      while (buckets[idx] != null && keys[idx] != key)
+        idx = (idx + 1) & mask;
+      if (buckets[idx] == null)
+        return;
+      size--;
+      // shift back any following entries that probed past this slot
+      for (int next = (idx + 1) & mask; buckets[next] != null; next = (next + 1) & mask) {
+        int home = (int)mix(keys[next]) & mask;
+        if (((next - home) & mask) >= ((next - idx) & mask)) {
+          keys[idx] = keys[next];
+          buckets[idx] = buckets[next];
+          idx = next;
+        }
+      }
+      buckets[idx] = null;
+    }
+    
+    private void grow() {
+      long[] oldKeys = keys;
+      Bucket[] oldBuckets = buckets;
+      keys = new long[oldKeys.length * 2];
+      buckets = new Bucket[oldKeys.length * 2];
+      int mask = keys.length - 1;
+      for (int n = 0; n < oldKeys.length; n++) {
+        if (oldBuckets[n] == null)
+          continue;
+        int idx = (int)mix(oldKeys[n]) & mask;
+        while (buckets[idx] != null)
+          idx = (idx + 1) & mask;
+        keys[idx] = oldKeys[n];
+        buckets[idx] = oldBuckets[n];
+      }
+    }
+  }
+  
+  /**
+   * The IDs in one cell with their positions packed as latitude, 
+   * longitude pairs
+   */
+  private static final class Bucket {
+    
+    String[] ids = new String[2];
+    float[] positions = new float[4];
+    int size;
+    
+    /**
+     * Append an ID that is not yet in the bucket
+     */
+    void add(String id, float latitude, float longitude) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+        positions = Arrays.copyOf(positions, size * 4);
+      }
+      int n = size++;
+      ids[n] = id;
+      positions[n * 2] = latitude;
+      positions[n * 2 + 1] = longitude;
+    }
+    
+    /**
+     * Move an ID already in the bucket to a new position
+     */
+    void update(String id, float latitude, float longitude) {
+      int n = indexOf(id);
+      if (n < 0) {
+        add(id, latitude, longitude);
+        return;
+      }
+      positions[n * 2] = latitude;
+      positions[n * 2 + 1] = longitude;
+    }
+    
+    boolean remove(String id) {
+      int n = indexOf(id);
+      if (n < 0)
+        return false;
+      size--;
+      ids[n] = ids[size];
+      positions[n * 2] = positions[size * 2];
+      positions[n * 2 + 1] = positions[size * 2 + 1];
+      ids[size] = null;
+      return true;
+    }
+    
+    int indexOf(String id) {
+      for (int n = 0; n < size; n++)
+        if (ids[n].equals(id))
+          return n;
+      return -1;
+    }
+    
+    void near(
+      float latitude, 
+      float longitude, 
+      double meters, 
+      ImmutableList.Builder<String> found) {
+      for (int n = 0; n < size; n++)
+        if (Spatial.distance(
+              latitude, longitude, 
+              positions[n * 2], positions[n * 2 + 1]) <= meters)
+          found.add(ids[n]);
+    }
+  }
+  
+  /**
+   * The latitude and longitude of a Place, or of the first Place listed
+   * as an object's location
+   */
+  private static float[] location(ASObject obj) {
+    if (obj instanceof Place) {
+      Place place = (Place) obj;
+      @SuppressWarnings("deprecation")
+      AS1Position position = place.position();
+      if (position != null)
+        return new float[] {position.latitude(), position.longitude()};
+      GeoObject<?> geo = place.geo();
+      BoundingBox bounds = geo != null ? BoundingBox.of(geo) : null;
+      if (bounds == null)
+        return null;
+      int d = bounds.size() / 2;
+      return new float[] {
+        (bounds.get(0) + bounds.get(d)) / 2, 
+        (bounds.get(1) + bounds.get(d + 1)) / 2
+      };
+    }
+    for (LinkValue link : obj.location()) {
+      if (!(link instanceof Place))
+        continue;
+      float[] location = location((Place)link);
+      if (location != null)
+        return location;
+    }
+    return null;
+  }
+}
@@ -58,12 +58,32 @@ public abstract class Geometry<G extends Geometry<G,M>, M>
     @SuppressWarnings("unchecked")
     public Iterable<M> coordinates() {
       Object o = get("coordinates");
-      if (o instanceof Iterable)
+      if (o instanceof Coordinates)
+        return view((Coordinates)o);
+      else if (o instanceof Iterable && !(o instanceof Position))
         return (Iterable<M>)o;
       else
         return ImmutableList.<M>of((M)o);
     }
     
+    /**
+     * Return the packed coordinates of this geometry, or null if the
+     * geometry does not use packed coordinates (e.g. Point)
+     * @return Coordinates
+     */
+    public Coordinates packed() {
+      Object o = get("coordinates");
+      return o instanceof Coordinates ? 
+        (Coordinates)o : null;
+    }
+    
+    /**
+     * Return a lazily evaluated view of the given packed coordinates
+     * @param coordinates Coordinates
+     * @return Iterable&lt;M>
+     */
+    protected abstract Iterable<M> view(Coordinates coordinates);
+    
   }
  
 }
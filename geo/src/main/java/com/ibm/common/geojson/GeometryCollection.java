@@ -103,6 +103,17 @@ public final class GeometryCollection
       .get();
   }
   
+  /**
+   * Return a copy of this geometry simplified with the Douglas-Peucker
+   * algorithm (see Simplifier)
+   * @param tolerance float The maximum distance a removed position may
+   *                  lie from the simplified geometry
+   * @return GeometryCollection
+   */
+  public GeometryCollection simplify(float tolerance) {
+    return Simplifier.douglasPeucker(tolerance).simplify(this);
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
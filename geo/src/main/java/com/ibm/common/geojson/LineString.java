@@ -23,8 +23,6 @@ package com.ibm.common.geojson;
 
 import static com.ibm.common.geojson.BoundingBox.calculateBoundingBoxPositions;
 import static com.google.common.base.Preconditions.checkArgument;
-import static com.google.common.collect.Iterables.concat;
-import static com.google.common.collect.Iterables.getFirst;
 import static com.google.common.collect.Iterables.size;
 import static java.lang.String.format;
 
@@ -32,7 +30,6 @@ import java.io.ObjectStreamException;
 import java.util.Iterator;
 
 import com.google.common.base.Supplier;
-import com.google.common.collect.ImmutableList;
 import com.ibm.common.geojson.Geometry.CoordinateGeometry;
 
 /**
@@ -60,6 +57,9 @@ import com.ibm.common.geojson.Geometry.CoordinateGeometry;
  *   // includes points (1,2), (2,3), (3,4) and (1,2)
  * </pre>
  * 
+ * The positions are stored packed (see Coordinates); Position objects
+ * are only created when the LineString is iterated.
+ * 
  * @author james
  *
  */
@@ -69,8 +69,9 @@ public final class LineString
     public static final class Builder 
       extends CoordinateGeometry.Builder<Position,Iterable<Position>,LineString, Builder> {
 
-    private final ImmutableList.Builder<Position> positions =
-      ImmutableList.builder();
+    private Coordinates.Builder positions =
+      Coordinates.make();
+    private Coordinates packed;
     private boolean ring;
     private final boolean nocheck;
    
@@ -104,7 +105,7 @@ public final class LineString
      * @return Builder
      */
     public Builder add(Position position, Position... positions) {
-      this.positions.add(position);
+      this.positions.position(position);
       if (positions != null) 
         for (Position pos : positions)
           add(pos);
@@ -118,7 +119,8 @@ public final class LineString
      * @return Builder
      */
     public Builder add(float x, float y) {
-      return add(GeoObject.position(x, y));
+      this.positions.position(x, y);
+      return this;
     }
     
     /**
@@ -136,7 +138,23 @@ public final class LineString
      * @return Builder
      */
     public Builder add(Iterable<Position> positions) {
-      this.positions.addAll(positions);
+      if (positions instanceof LineString || positions instanceof MultiPoint)
+        this.positions.add(((CoordinateGeometry<?,?,?>)positions).packed());
+      else
+        this.positions.add(positions);
+      return this;
+    }
+    
+    /**
+     * Use the given packed coordinates as this linestring's positions,
+     * replacing any positions that have already been added. The 
+     * coordinates are shared, not copied.
+     * @param coordinates Coordinates
+     * @return Builder
+     */
+    public Builder packed(Coordinates coordinates) {
+      this.packed = coordinates;
+      this.positions = Coordinates.make();
       return this;
     }
     
@@ -148,7 +166,8 @@ public final class LineString
      * @return Builder
      */
     public Builder add(float x, float y, float z) {
-      return add(GeoObject.position(x,y,z));
+      this.positions.position(x, y, z);
+      return this;
     }
 
     public LineString doGet() {
@@ -157,7 +176,27 @@ public final class LineString
 
     @Override
     protected Iterable<Position> coordinates() {
-      return positions.build();
+      return pack().positions();
+    }
+    
+    @Override
+    public void preGet() {
+      set("coordinates", pack());
+    }
+    
+    private Coordinates pack() {
+      Coordinates coords = packed;
+      if (coords == null) {
+        if (ring)
+          positions.closeRing();
+        coords = positions.get();
+      } else if (ring && coords.size() > 0 && !coords.closed(0)) {
+        coords = Coordinates.make()
+          .add(coords)
+          .closeRing()
+          .get();
+      }
+      return coords;
     }
     
   }
@@ -182,20 +221,14 @@ public final class LineString
     return ring;
   }
 
-  @Override
   /**
-   * Get this LineStrings positions
+   * Get this LineStrings positions. If this is a linear ring, the 
+   * last position repeats the first.
    * @return Iterable&lt;Position>
    */
-  public Iterable<Position> coordinates() {
-    Iterable<Position> pos = super.coordinates();
-    if (!ring)
-      return pos;
-    else {
-      return size(pos) > 0 ? 
-        concat(pos,ImmutableList.of(getFirst(pos,null))) :
-        ImmutableList.<Position>of();
-    }
+  @Override
+  protected Iterable<Position> view(Coordinates coordinates) {
+    return coordinates.positions();
   }
 
   @Override
@@ -210,11 +243,35 @@ public final class LineString
   public LineString makeWithBoundingBox() {
     return new LineString.Builder()
       .from(this)
-      .add(this)
+      .linearRing(ring)
+      .packed(packed())
       .boundingBox(calculateBoundingBoxPositions(this))
       .get();
   }
   
+  /**
+   * Create a LineString over the given packed coordinates without 
+   * copying them. Used for the lazily created members of Polygons and
+   * MultiLineStrings.
+   */
+  static LineString of(Coordinates coordinates, boolean ring) {
+    Builder builder = new Builder(true);
+    builder.ring = ring;
+    builder.packed = coordinates;
+    return builder.get();
+  }
+  
+  /**
+   * Return a copy of this geometry simplified with the Douglas-Peucker
+   * algorithm (see Simplifier)
+   * @param tolerance float The maximum distance a removed position may
+   *                  lie from the simplified geometry
+   * @return LineString
+   */
+  public LineString simplify(float tolerance) {
+    return Simplifier.douglasPeucker(tolerance).simplify(this);
+  }
+  
   // Java Serialization support
 
   Object writeReplace() throws java.io.ObjectStreamException {
@@ -236,8 +293,10 @@ public final class LineString
     @Override
     protected boolean handle(Builder builder, String key, Object val) {
       if ("coordinates".equals(key)) {
-        Iterable<Position> list = (Iterable<Position>) val;
-        builder.positions.addAll(list);
+        if (val instanceof Coordinates)
+          builder.packed = (Coordinates) val;
+        else
+          builder.positions.add((Iterable<Position>) val);
         return true;
       }
       return false;
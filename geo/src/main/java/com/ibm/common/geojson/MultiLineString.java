@@ -24,15 +24,21 @@ package com.ibm.common.geojson;
 import static com.ibm.common.geojson.BoundingBox.calculateBoundingBoxLineStrings;
 
 import java.io.ObjectStreamException;
+import java.util.AbstractList;
 import java.util.Iterator;
+import java.util.RandomAccess;
 
 import com.google.common.base.Supplier;
-import com.google.common.collect.ImmutableList;
 import com.ibm.common.geojson.Geometry.CoordinateGeometry;
 
 /**
  * A GeoJSON MultiLineString object
  * see http://geojson.org/geojson-spec.html#multilinestring
+ * 
+ * The lines are stored packed (see Coordinates), one part per line. 
+ * The LineString objects are only created when the MultiLineString is
+ * iterated; lines whose first and last positions are equal are 
+ * treated as linear rings.
  * @author james
  *
  */
@@ -42,8 +48,9 @@ public final class MultiLineString
   public static final class Builder 
     extends CoordinateGeometry.Builder<LineString,Iterable<LineString>, MultiLineString, Builder> {
 
-    private final ImmutableList.Builder<LineString> strings = 
-      ImmutableList.builder();
+    private Coordinates.Builder strings = 
+      Coordinates.make();
+    private Coordinates packed;
     
     public Builder() {
       type(Type.MULTILINESTRING);
@@ -56,7 +63,7 @@ public final class MultiLineString
      * @return Builder
      */
     public Builder add(LineString line, LineString... lines) {
-      this.strings.add(line);
+      this.strings.add(line.packed()).endPart();
       if (lines != null)
         for (LineString l : lines)
           add(l);
@@ -78,7 +85,21 @@ public final class MultiLineString
      * @return Builder
      */
     public Builder add(Iterable<LineString> lines) {
-      this.strings.addAll(lines);
+      for (LineString line : lines)
+        add(line);
+      return this;
+    }
+    
+    /**
+     * Use the given packed coordinates as the lines, one line per 
+     * part, replacing any lines that have already been added. The
+     * coordinates are shared, not copied.
+     * @param coordinates Coordinates
+     * @return Builder
+     */
+    public Builder packed(Coordinates coordinates) {
+      this.packed = coordinates;
+      this.strings = Coordinates.make();
       return this;
     }
     
@@ -92,7 +113,16 @@ public final class MultiLineString
      */
     @Override
     protected Iterable<LineString> coordinates() {
-      return strings.build();
+      return new Lines(pack());
+    }
+    
+    @Override
+    public void preGet() {
+      set("coordinates", pack());
+    }
+    
+    private Coordinates pack() {
+      return packed != null ? packed : strings.get();
     }
     
   }
@@ -106,6 +136,30 @@ public final class MultiLineString
   public Iterator<LineString> iterator() {
     return coordinates().iterator();
   }
+  
+  @Override
+  protected Iterable<LineString> view(Coordinates coordinates) {
+    return new Lines(coordinates);
+  }
+  
+  private static final class Lines 
+    extends AbstractList<LineString> 
+    implements RandomAccess {
+    private final Coordinates coordinates;
+    Lines(Coordinates coordinates) {
+      this.coordinates = coordinates;
+    }
+    @Override
+    public LineString get(int index) {
+      return LineString.of(
+        coordinates.part(index), 
+        coordinates.closed(index));
+    }
+    @Override
+    public int size() {
+      return coordinates.partCount();
+    }
+  }
 
   /** 
    * Copy this object with a calculated bounding box
@@ -115,11 +169,22 @@ public final class MultiLineString
   protected MultiLineString makeWithBoundingBox() {
     return new MultiLineString.Builder()
       .from(this)
-      .add(this)
+      .packed(packed())
       .boundingBox(
         calculateBoundingBoxLineStrings(this)).get();
   }
 
+  /**
+   * Return a copy of this geometry simplified with the Douglas-Peucker
+   * algorithm (see Simplifier)
+   * @param tolerance float The maximum distance a removed position may
+   *                  lie from the simplified geometry
+   * @return MultiLineString
+   */
+  public MultiLineString simplify(float tolerance) {
+    return Simplifier.douglasPeucker(tolerance).simplify(this);
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
@@ -136,8 +201,10 @@ public final class MultiLineString
     @SuppressWarnings("unchecked")
     protected boolean handle(Builder builder, String key, Object val) {
       if ("coordinates".equals(key)) {
-        Iterable<LineString> list = (Iterable<LineString>) val;
-        builder.strings.addAll(list);
+        if (val instanceof Coordinates)
+          builder.packed = (Coordinates) val;
+        else
+          builder.add((Iterable<LineString>) val);
         return true;
       }
       return false;
@@ -25,7 +25,6 @@ import java.io.ObjectStreamException;
 import java.util.Iterator;
 
 import com.google.common.base.Supplier;
-import com.google.common.collect.ImmutableList;
 import com.ibm.common.geojson.Geometry.CoordinateGeometry;
 
 import static com.ibm.common.geojson.BoundingBox.calculateBoundingBoxPositions;
@@ -42,8 +41,9 @@ public final class MultiPoint
   public static final class Builder 
     extends CoordinateGeometry.Builder<Position,Iterable<Position>,MultiPoint,Builder> {
 
-    protected ImmutableList.Builder<Position> list = 
-      ImmutableList.builder();
+    protected Coordinates.Builder list = 
+      Coordinates.make();
+    private Coordinates packed;
     
     public Builder() {
       type(GeoObject.Type.MULTIPOINT);
@@ -56,9 +56,10 @@ public final class MultiPoint
      * @return Builder
      */
     public Builder add(Position position, Position... positions) {
-      list.add(position);
+      list.position(position);
       if (positions != null)
-        list.add(positions);
+        for (Position pos : positions)
+          list.position(pos);
       return this;
     }
     
@@ -68,7 +69,23 @@ public final class MultiPoint
      * @return Builder
      */
     public Builder add(Iterable<Position> positions) {
-      list.addAll(positions);
+      if (positions instanceof LineString || positions instanceof MultiPoint)
+        list.add(((CoordinateGeometry<?,?,?>)positions).packed());
+      else
+        list.add(positions);
+      return this;
+    }
+    
+    /**
+     * Use the given packed coordinates as the positions, replacing any
+     * positions that have already been added. The coordinates are 
+     * shared, not copied.
+     * @param coordinates Coordinates
+     * @return Builder
+     */
+    public Builder packed(Coordinates coordinates) {
+      this.packed = coordinates;
+      this.list = Coordinates.make();
       return this;
     }
     
@@ -88,7 +105,8 @@ public final class MultiPoint
      * @return Builder
      */
     public Builder add(float x, float y) {
-      return add(GeoObject.position(x, y));
+      list.position(x, y);
+      return this;
     }
     
     /**
@@ -99,12 +117,22 @@ public final class MultiPoint
      * @return Builder
      */
     public Builder add(float x, float y, float z) {
-      return add(GeoObject.position(x,y,z));
+      list.position(x, y, z);
+      return this;
     }
     
     @Override
     protected Iterable<Position> coordinates() {
-      return list.build();
+      return pack().positions();
+    }
+    
+    @Override
+    public void preGet() {
+      set("coordinates", pack());
+    }
+    
+    private Coordinates pack() {
+      return packed != null ? packed : list.get();
     }
     
     @Override
@@ -123,6 +151,11 @@ public final class MultiPoint
   public Iterator<Position> iterator() {
     return coordinates().iterator();
   }
+  
+  @Override
+  protected Iterable<Position> view(Coordinates coordinates) {
+    return coordinates.positions();
+  }
 
   /**
    * Return a copy of this object with a calculated bounding box
@@ -132,7 +165,7 @@ public final class MultiPoint
   protected MultiPoint makeWithBoundingBox() {
     return new MultiPoint.Builder()
       .from(this)
-      .add(this)
+      .packed(packed())
       .boundingBox(calculateBoundingBoxPositions(this)).get();
   }
 
@@ -153,8 +186,10 @@ public final class MultiPoint
     @Override
     protected boolean handle(Builder builder, String key, Object val) {
       if ("coordinates".equals(key)) {
-        Iterable<Position> list = (Iterable<Position>) val;
-        builder.list.addAll(list);
+        if (val instanceof Coordinates)
+          builder.packed = (Coordinates) val;
+        else
+          builder.list.add((Iterable<Position>) val);
         return true;
       }
       return false;
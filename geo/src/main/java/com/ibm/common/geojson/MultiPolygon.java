@@ -24,15 +24,21 @@ package com.ibm.common.geojson;
 import static com.ibm.common.geojson.BoundingBox.calculateBoundingBoxPolygons;
 
 import java.io.ObjectStreamException;
+import java.util.AbstractList;
 import java.util.Iterator;
+import java.util.RandomAccess;
 
 import com.google.common.base.Supplier;
-import com.google.common.collect.ImmutableList;
 import com.ibm.common.geojson.Geometry.CoordinateGeometry;
 
 /**
  * A GeoJSON MultiPolygon object.
  * see http://geojson.org/geojson-spec.html#multipolygon
+ * 
+ * All of the rings of all of the polygons are stored in a single 
+ * packed buffer (see Coordinates), one group of parts per polygon. 
+ * The Polygon objects are only created when the MultiPolygon is 
+ * iterated.
  * @author james
  *
  */
@@ -42,8 +48,9 @@ public final class MultiPolygon
   public static final class Builder 
     extends CoordinateGeometry.Builder<Polygon,Iterable<Polygon>, MultiPolygon, Builder> {
 
-    private final ImmutableList.Builder<Polygon> strings = 
-      ImmutableList.builder();
+    private Coordinates.Builder strings = 
+      Coordinates.make();
+    private Coordinates packed;
     
     public Builder() {
       type(Type.MULTIPOLYGON);
@@ -57,7 +64,7 @@ public final class MultiPolygon
      */
     public Builder add(Polygon poly, Polygon... polys) {
       // TODO: Check hole requirement
-      this.strings.add(poly);
+      this.strings.addParts(poly.packed()).endGroup();
       if (polys != null)
         for (Polygon l : polys)
           add(l);
@@ -79,7 +86,21 @@ public final class MultiPolygon
      * @return Builder
      */
     public Builder add(Iterable<Polygon> polygons) {
-      this.strings.addAll(polygons);
+      for (Polygon poly : polygons)
+        add(poly);
+      return this;
+    }
+    
+    /**
+     * Use the given packed coordinates as the polygons, one polygon 
+     * per group, replacing any polygons that have already been added.
+     * The coordinates are shared, not copied.
+     * @param coordinates Coordinates
+     * @return Builder
+     */
+    public Builder packed(Coordinates coordinates) {
+      this.packed = coordinates;
+      this.strings = Coordinates.make();
       return this;
     }
     
@@ -89,7 +110,16 @@ public final class MultiPolygon
 
     @Override
     protected Iterable<Polygon> coordinates() {
-      return strings.build();
+      return new Polygons(pack());
+    }
+    
+    @Override
+    public void preGet() {
+      set("coordinates", pack());
+    }
+    
+    private Coordinates pack() {
+      return packed != null ? packed : strings.get();
     }
     
   }
@@ -103,6 +133,28 @@ public final class MultiPolygon
   public Iterator<Polygon> iterator() {
     return coordinates().iterator();
   }
+  
+  @Override
+  protected Iterable<Polygon> view(Coordinates coordinates) {
+    return new Polygons(coordinates);
+  }
+  
+  private static final class Polygons 
+    extends AbstractList<Polygon> 
+    implements RandomAccess {
+    private final Coordinates coordinates;
+    Polygons(Coordinates coordinates) {
+      this.coordinates = coordinates;
+    }
+    @Override
+    public Polygon get(int index) {
+      return Polygon.of(coordinates.group(index));
+    }
+    @Override
+    public int size() {
+      return coordinates.groupCount();
+    }
+  }
 
   /**
    * Return a copy of this object with a calculated bounding box
@@ -112,11 +164,22 @@ public final class MultiPolygon
   protected MultiPolygon makeWithBoundingBox() {
     return new MultiPolygon.Builder()
       .from(this)
-      .add(this)
+      .packed(packed())
       .boundingBox(calculateBoundingBoxPolygons(this))
       .get();
   }
 
+  /**
+   * Return a copy of this geometry simplified with the Douglas-Peucker
+   * algorithm (see Simplifier)
+   * @param tolerance float The maximum distance a removed position may
+   *                  lie from the simplified geometry
+   * @return MultiPolygon
+   */
+  public MultiPolygon simplify(float tolerance) {
+    return Simplifier.douglasPeucker(tolerance).simplify(this);
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
@@ -134,8 +197,10 @@ public final class MultiPolygon
     @Override
     protected boolean handle(Builder builder, String key, Object val) {
       if ("coordinates".equals(key)) {
-        Iterable<Polygon> list = (Iterable<Polygon>) val;
-        builder.strings.addAll(list);
+        if (val instanceof Coordinates)
+          builder.packed = (Coordinates) val;
+        else
+          builder.add((Iterable<Polygon>) val);
         return true;
       }
       return false;
@@ -151,6 +151,11 @@ public final class Place extends ASObject {
     return this.<G>get("geo");
   }
   
+  @Override
+  protected Place.Builder newBuilder() {
+    return GeoMakers.place();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
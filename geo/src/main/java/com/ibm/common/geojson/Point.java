@@ -115,6 +115,16 @@ public final class Point
     return coordinates().iterator();
   }
 
+  /**
+   * A Point normally holds a single Position; if it was given packed
+   * coordinates, its positions are read from them
+   * @return Iterable&lt;Position>
+   */
+  @Override
+  protected Iterable<Position> view(Coordinates coordinates) {
+    return coordinates.positions();
+  }
+
 
   @Override
   protected Point makeWithBoundingBox() {
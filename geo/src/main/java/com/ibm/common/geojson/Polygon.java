@@ -25,15 +25,19 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.ibm.common.geojson.BoundingBox.calculateBoundingBoxLineStrings;
 
 import java.io.ObjectStreamException;
+import java.util.AbstractList;
 import java.util.Iterator;
+import java.util.RandomAccess;
 
 import com.google.common.base.Supplier;
-import com.google.common.collect.ImmutableList;
 import com.ibm.common.geojson.Geometry.CoordinateGeometry;
 
 /**
  * A GeoJSON Polygon object
  * see http://geojson.org/geojson-spec.html#polygon
+ * 
+ * The rings are stored packed (see Coordinates); the LineString 
+ * objects are only created when the Polygon is iterated.
  * @author james
  *
  */
@@ -43,8 +47,9 @@ public final class Polygon
   public static final class Builder 
     extends CoordinateGeometry.Builder<LineString, Iterable<LineString>, Polygon, Builder> {
 
-    private final ImmutableList.Builder<LineString> strings = 
-      ImmutableList.builder();
+    private Coordinates.Builder strings = 
+      Coordinates.make();
+    private Coordinates packed;
     
     public Builder() {
       type(Type.POLYGON);
@@ -59,7 +64,7 @@ public final class Polygon
     public Builder add(LineString line, LineString... lines) {
       checkArgument(line.linearRing(), "Polygon coordinates MUST be Linear Rings"); 
       // TODO: Check hole requirement
-      this.strings.add(line);
+      ring(line);
       if (lines != null)
         for (LineString l : lines)
           add(l);
@@ -81,17 +86,47 @@ public final class Polygon
      * @return Builder
      */
     public Builder add(Iterable<LineString> lines) {
-      this.strings.addAll(lines);
+      for (LineString line : lines)
+        ring(line);
       return this;
     }
     
+    /**
+     * Use the given packed coordinates as this polygon's rings, one 
+     * ring per part, replacing any rings that have already been added.
+     * The coordinates are shared, not copied.
+     * @param coordinates Coordinates
+     * @return Builder
+     */
+    public Builder packed(Coordinates coordinates) {
+      this.packed = coordinates;
+      this.strings = Coordinates.make();
+      return this;
+    }
+    
+    private void ring(LineString line) {
+      strings
+        .add(line.packed())
+        .closeRing()
+        .endPart();
+    }
+    
     public Polygon doGet() {
       return new Polygon(this);
     }
 
     @Override
     protected Iterable<LineString> coordinates() {
-      return strings.build();
+      return new Rings(pack());
+    }
+    
+    @Override
+    public void preGet() {
+      set("coordinates", pack());
+    }
+    
+    private Coordinates pack() {
+      return packed != null ? packed : strings.get();
     }
     
   }
@@ -105,16 +140,60 @@ public final class Polygon
   public Iterator<LineString> iterator() {
     return coordinates().iterator();
   }
+  
+  @Override
+  protected Iterable<LineString> view(Coordinates coordinates) {
+    return new Rings(coordinates);
+  }
+  
+  private static final class Rings 
+    extends AbstractList<LineString> 
+    implements RandomAccess {
+    private final Coordinates coordinates;
+    Rings(Coordinates coordinates) {
+      this.coordinates = coordinates;
+    }
+    @Override
+    public LineString get(int index) {
+      return LineString.of(coordinates.part(index), true);
+    }
+    @Override
+    public int size() {
+      return coordinates.partCount();
+    }
+  }
+  
+  /**
+   * Create a Polygon over the given packed coordinates without 
+   * copying them. Used for the lazily created members of 
+   * MultiPolygons.
+   */
+  static Polygon of(Coordinates coordinates) {
+    return new Polygon.Builder()
+      .packed(coordinates)
+      .get();
+  }
 
   @Override
   protected Polygon makeWithBoundingBox() {
     return new Polygon.Builder()
       .from(this)
-      .add(this)
+      .packed(packed())
       .boundingBox(
         calculateBoundingBoxLineStrings(this)).get();
   }
 
+  /**
+   * Return a copy of this geometry simplified with the Douglas-Peucker
+   * algorithm (see Simplifier)
+   * @param tolerance float The maximum distance a removed position may
+   *                  lie from the simplified geometry
+   * @return Polygon
+   */
+  public Polygon simplify(float tolerance) {
+    return Simplifier.douglasPeucker(tolerance).simplify(this);
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
@@ -132,8 +211,10 @@ public final class Polygon
     @Override
     protected boolean handle(Builder builder, String key, Object val) {
       if ("coordinates".equals(key)) {
-        Iterable<LineString> list = (Iterable<LineString>) val;
-        builder.strings.addAll(list);
+        if (val instanceof Coordinates)
+          builder.packed = (Coordinates) val;
+        else
+          builder.add((Iterable<LineString>) val);
         return true;
       }
       return false;
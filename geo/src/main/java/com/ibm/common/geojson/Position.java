@@ -92,6 +92,14 @@ public final class Position
     this.hasz = builder.hasz;
     this.rest = toArray(builder.rest.build());
   }
+  
+  Position(float x, float y, float z, boolean hasz, float[] rest) {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+    this.hasz = hasz;
+    this.rest = rest;
+  }
 
   public float northing() {
     return x;
@@ -113,7 +121,7 @@ public final class Position
     return values().length;
   }
   
-  private float[] values() {
+  float[] values() {
     return hasz? 
       concat(new float[] {x,y,z}, rest) :
       concat(new float[] {x,y}, rest);
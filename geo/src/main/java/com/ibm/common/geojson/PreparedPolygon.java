@@ -0,0 +1,303 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.geojson;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+/**
+ * A Polygon or MultiPolygon prepared for repeated containment and 
+ * intersection tests. 
+ * 
+ * The edges of every ring are copied once into an array sorted by 
+ * their lower easting (y), which is searched as an implicit, balanced
+ * interval tree: each node also records the highest easting reached 
+ * by the edges below it. A position is tested by counting crossings 
+ * with only the edges whose easting range contains it, found in 
+ * logarithmic time, rather than walking every ring, so a test against 
+ * a polygon with thousands of vertices costs about as much as one 
+ * against a handful. Segment tests visit only the edges whose easting
+ * range overlaps the segment's. Each edge is stored exactly once.
+ * 
+ * Instances are immutable and safe to share between threads.
+ * 
+ * <pre>
+ *   PreparedPolygon region = PreparedPolygon.of(polygon);
+ *   for (Point point : points)
+ *     if (region.contains(point)) ...
+ * </pre>
+ * @author james
+ */
+public final class PreparedPolygon {
+
+  /**
+   * Prepare the given Polygon or MultiPolygon, or a GeometryCollection
+   * of them
+   * @param geometry Geometry&lt;?,?>
+   * @return PreparedPolygon
+   */
+  public static PreparedPolygon of(Geometry<?,?> geometry) {
+    return new PreparedPolygon(geometry);
+  }
+  
+  private final Geometry<?,?> geometry;
+  private final float minx, miny, maxx, maxy;
+  private final float[] edges;  // x1,y1,x2,y2 sorted by min(y1,y2)
+  private final float[] reach;  // highest y of each node's subtree
+  private final int edgeCount;
+  
+  private PreparedPolygon(Geometry<?,?> geometry) {
+    this.geometry = geometry;
+    int count = 0;
+    float minx = Float.POSITIVE_INFINITY, miny = Float.POSITIVE_INFINITY;
+    float maxx = Float.NEGATIVE_INFINITY, maxy = Float.NEGATIVE_INFINITY;
+    for (Geometry<?,?> member : Spatial.members(geometry)) {
+      checkArgument(Spatial.polygonal(member), "Not a Polygon: %s", member.type());
+      Coordinates coords = Spatial.coordinates(member);
+      for (int part = 0; part < coords.partCount(); part++) {
+        int start = coords.partStart(part), end = coords.partEnd(part);
+        count += Math.max(0, end - start - 1);
+        for (int p = start; p < end; p++) {
+          float x = coords.get(p,0), y = coords.get(p,1);
+          if (x < minx) minx = x;
+          if (x > maxx) maxx = x;
+          if (y < miny) miny = y;
+          if (y > maxy) maxy = y;
+        }
+      }
+    }
+    this.minx = minx; this.miny = miny;
+    this.maxx = maxx; this.maxy = maxy;
+    this.edgeCount = count;
+    float[] unsorted = new float[count * 4];
+    long[] keys = new long[count];
+    int n = 0;
+    for (Geometry<?,?> member : Spatial.members(geometry)) {
+      Coordinates coords = Spatial.coordinates(member);
+      for (int part = 0; part < coords.partCount(); part++) {
+        int end = coords.partEnd(part);
+        for (int p = coords.partStart(part); p + 1 < end; p++, n++) {
+          float y1 = coords.get(p,1), y2 = coords.get(p+1,1);
+          unsorted[n*4] = coords.get(p,0);
+          unsorted[n*4+1] = y1;
+          unsorted[n*4+2] = coords.get(p+1,0);
+          unsorted[n*4+3] = y2;
+          keys[n] = (long)sortable(Math.min(y1, y2)) << 32 | n;
+        }
+      }
+    }
+    // sorting the keys orders the edges by their lower y without boxing
+    Arrays.sort(keys);
+    this.edges = new float[count * 4];
+    for (n = 0; n < count; n++)
+      System.arraycopy(unsorted, (int)keys[n] * 4, edges, n * 4, 4);
+    this.reach = new float[count];
+    reach(0, count);
+  }
+  
+  /**
+   * An int that orders the same way as the given float
+   */
+  private static int sortable(float f) {
+    int bits = Float.floatToIntBits(f);
+    return bits ^ (bits >> 31 & 0x7fffffff);
+  }
+  
+  /**
+   * Compute the highest y of the subtree rooted at the middle of the
+   * given range of edges
+   */
+  private float reach(int from, int to) {
+    if (from >= to)
+      return Float.NEGATIVE_INFINITY;
+    int mid = (from + to) >>> 1;
+    float r = Math.max(edges[mid*4+1], edges[mid*4+3]);
+    r = Math.max(r, reach(from, mid));
+    r = Math.max(r, reach(mid + 1, to));
+    return reach[mid] = r;
+  }
+  
+  private float low(int edge) {
+    return Math.min(edges[edge*4+1], edges[edge*4+3]);
+  }
+  
+  /**
+   * The prepared geometry
+   * @return Geometry&lt;?,?>
+   */
+  public Geometry<?,?> geometry() {
+    return geometry;
+  }
+  
+  /**
+   * The number of ring edges
+   * @return int
+   */
+  public int edgeCount() {
+    return edgeCount;
+  }
+  
+  /**
+   * True if the position lies inside the polygon and outside its holes
+   * @param x float
+   * @param y float
+   * @return boolean
+   */
+  public boolean contains(float x, float y) {
+    if (edgeCount == 0 || x < minx || x > maxx || y < miny || y > maxy)
+      return false;
+    return crossings(0, edgeCount, x, y);
+  }
+  
+  /**
+   * True if a ray from the position crosses an odd number of the 
+   * edges in the given range whose y range contains the position's
+   */
+  private boolean crossings(int from, int to, float x, float y) {
+    if (from >= to)
+      return false;
+    int mid = (from + to) >>> 1;
+    if (reach[mid] < y)
+      return false;
+    boolean inside = crossings(from, mid, x, y);
+    if (low(mid) > y)
+      return inside;
+    int i = mid * 4;
+    float x1 = edges[i], y1 = edges[i+1];
+    float x2 = edges[i+2], y2 = edges[i+3];
+    if ((y1 > y) != (y2 > y) && 
+        x < (x2 - x1) * (y - y1) / (y2 - y1) + x1)
+      inside = !inside;
+    return inside != crossings(mid + 1, to, x, y);
+  }
+  
+  /**
+   * True if the position lies inside the polygon and outside its holes
+   * @param position Position
+   * @return boolean
+   */
+  public boolean contains(Position position) {
+    return contains(position.northing(), position.easting());
+  }
+  
+  /**
+   * True if every position of the given geometry lies inside the 
+   * polygon, none of its segments cross the polygon's boundary and 
+   * no polygon among them encloses one of the holes
+   * @param other Geometry&lt;?,?>
+   * @return boolean
+   */
+  public boolean contains(Geometry<?,?> other) {
+    if (other == null)
+      return false;
+    for (Geometry<?,?> member : Spatial.members(other)) {
+      Coordinates coords = Spatial.coordinates(member);
+      if (coords.size() == 0)
+        return false;
+      for (int p = Spatial.first(coords); p < Spatial.last(coords); p++)
+        if (!contains(coords.get(p,0), coords.get(p,1)))
+          return false;
+      if (Spatial.paths(member) && segments(coords, true))
+        return false;
+      if (Spatial.polygonal(member))
+        for (Geometry<?,?> polygon : Spatial.members(geometry))
+          if (Spatial.enclosesHole(Spatial.coordinates(polygon), coords))
+            return false;
+    }
+    return true;
+  }
+  
+  /**
+   * True if the given geometry shares at least one position with the 
+   * polygon
+   * @param other Geometry&lt;?,?>
+   * @return boolean
+   */
+  public boolean intersects(Geometry<?,?> other) {
+    if (other == null || edgeCount == 0)
+      return false;
+    for (Geometry<?,?> member : Spatial.members(other)) {
+      Coordinates coords = Spatial.coordinates(member);
+      if (coords.size() == 0)
+        continue;
+      for (int p = Spatial.first(coords); p < Spatial.last(coords); p++)
+        if (contains(coords.get(p,0), coords.get(p,1)))
+          return true;
+      if (Spatial.paths(member) && segments(coords, false))
+        return true;
+      if (Spatial.polygonal(member) && 
+          Spatial.inside(coords, edges[0], edges[1]))
+        return true;
+    }
+    return false;
+  }
+  
+  /**
+   * True if any segment of the given coordinates crosses (proper is 
+   * true) or touches an edge of the polygon. Only the edges whose y 
+   * range overlaps each segment's are visited.
+   */
+  private boolean segments(Coordinates coords, boolean proper) {
+    for (int part = 0; part < coords.partCount(); part++) {
+      int end = coords.partEnd(part);
+      for (int p = coords.partStart(part); p + 1 < end; p++) {
+        float ax = coords.get(p,0), ay = coords.get(p,1);
+        float bx = coords.get(p+1,0), by = coords.get(p+1,1);
+        if (Math.max(ay, by) < miny || Math.min(ay, by) > maxy ||
+            Math.max(ax, bx) < minx || Math.min(ax, bx) > maxx)
+          continue;
+        if (touches(0, edgeCount, ax, ay, bx, by, proper))
+          return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * True if the segment crosses or touches one of the edges in the 
+   * given range whose y range overlaps the segment's
+   */
+  private boolean touches(
+    int from, int to, 
+    float ax, float ay, 
+    float bx, float by, 
+    boolean proper) {
+    if (from >= to)
+      return false;
+    int mid = (from + to) >>> 1;
+    if (reach[mid] < Math.min(ay, by))
+      return false;
+    if (touches(from, mid, ax, ay, bx, by, proper))
+      return true;
+    if (low(mid) > Math.max(ay, by))
+      return false;
+    int i = mid * 4;
+    float cx = edges[i], cy = edges[i+1];
+    float dx = edges[i+2], dy = edges[i+3];
+    if (proper ?
+        Spatial.segmentsCross(ax, ay, bx, by, cx, cy, dx, dy) :
+        Spatial.segmentsIntersect(ax, ay, bx, by, cx, cy, dx, dy))
+      return true;
+    return touches(mid + 1, to, ax, ay, bx, by, proper);
+  }
+}
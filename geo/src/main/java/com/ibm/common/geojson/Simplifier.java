@@ -0,0 +1,467 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.geojson;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Reduces the number of positions in lines and rings for level of 
+ * detail output. Works directly on packed Coordinates: the positions
+ * to keep are marked in a flag array and copied into a new buffer, so
+ * no objects are created per vertex.
+ * 
+ * Two methods are available: Douglas-Peucker, where the tolerance is 
+ * the maximum distance (in coordinate units) a removed position may 
+ * lie from the simplified line, and Visvalingam-Whyatt, where the 
+ * tolerance is the minimum area of the triangle a position must form
+ * with its neighbors to be kept.
+ * 
+ * Rings stay closed and keep at least four positions. The exterior 
+ * ring of a polygon is never removed; a hole that would collapse 
+ * below four positions is smaller than the tolerance and is dropped.
+ * Simplification only looks at x and y; other values of the kept
+ * positions are preserved.
+ * 
+ * <pre>
+ *   Polygon simple = 
+ *     Simplifier.forZoom(8).simplify(polygon);
+ * </pre>
+ * @author james
+ */
+@SuppressWarnings("unchecked")
+public final class Simplifier {
+
+  public static enum Method {
+    DOUGLAS_PEUCKER,
+    VISVALINGAM
+  }
+  
+  /**
+   * Douglas-Peucker simplification with the given distance tolerance
+   * @param tolerance float
+   * @return Simplifier
+   */
+  public static Simplifier douglasPeucker(float tolerance) {
+    return new Simplifier(Method.DOUGLAS_PEUCKER, tolerance);
+  }
+  
+  /**
+   * Visvalingam-Whyatt simplification with the given area tolerance
+   * @param area float
+   * @return Simplifier
+   */
+  public static Simplifier visvalingam(float area) {
+    return new Simplifier(Method.VISVALINGAM, area);
+  }
+  
+  /**
+   * Douglas-Peucker simplification that removes detail smaller than 
+   * a pixel of a 256 pixel web map tile at the given zoom level, 
+   * assuming coordinates in degrees
+   * @param zoom int (0-24)
+   * @return Simplifier
+   */
+  public static Simplifier forZoom(int zoom) {
+    checkArgument(zoom >= 0 && zoom <= 24);
+    return douglasPeucker(360f / (256L << zoom));
+  }
+  
+  private final Method method;
+  private final float tolerance;
+  
+  private Simplifier(Method method, float tolerance) {
+    checkArgument(tolerance >= 0);
+    this.method = method;
+    this.tolerance = tolerance;
+  }
+  
+  public Method method() {
+    return method;
+  }
+  
+  public float tolerance() {
+    return tolerance;
+  }
+  
+  /**
+   * Return a simplified copy of the given object. LineStrings, 
+   * MultiLineStrings, Polygons and MultiPolygons are simplified; 
+   * GeometryCollections, Features and FeatureCollections are copied
+   * with their members simplified; anything else is returned as is.
+   * @param geo G
+   * @return G
+   */
+  public <G extends GeoObject<G>>G simplify(G geo) {
+    if (geo == null)
+      return null;
+    switch(geo.type()) {
+    case LINESTRING: {
+      LineString line = (LineString) geo;
+      return (G)new LineString.Builder()
+        .from(line)
+        .linearRing(line.linearRing())
+        .packed(simplify(line.packed(), false))
+        .get();
+    }
+    case MULTILINESTRING:
+      return (G)new MultiLineString.Builder()
+        .from(geo)
+        .packed(simplify(((MultiLineString)geo).packed(), false))
+        .get();
+    case POLYGON:
+      return (G)new Polygon.Builder()
+        .from(geo)
+        .packed(simplify(((Polygon)geo).packed(), true))
+        .get();
+    case MULTIPOLYGON:
+      return (G)new MultiPolygon.Builder()
+        .from(geo)
+        .packed(simplify(((MultiPolygon)geo).packed(), true))
+        .get();
+    case GEOMETRYCOLLECTION: {
+      ImmutableList.Builder<Geometry<?,?>> list = 
+        ImmutableList.builder();
+      for (Geometry<?,?> geometry : ((GeometryCollection)geo).geometries())
+        list.add(simplifyAny(geometry));
+      return (G)new GeometryCollection.Builder()
+        .from(geo)
+        .add(list.build())
+        .get();
+    }
+    case FEATURE: {
+      Feature feature = (Feature) geo;
+      Geometry<?,?> geometry = feature.geometry();
+      return (G)new Feature.Builder()
+        .from(feature)
+        .properties(feature.properties())
+        .geometry(geometry != null ? simplifyAny(geometry) : null)
+        .get();
+    }
+    case FEATURECOLLECTION: {
+      ImmutableList.Builder<Feature> list = 
+        ImmutableList.builder();
+      for (Feature feature : (FeatureCollection)geo)
+        list.add(simplify(feature));
+      return (G)new FeatureCollection.Builder()
+        .from(geo)
+        .add(list.build())
+        .get();
+    }
+    default:
+      return geo;
+    }
+  }
+  
+  @SuppressWarnings("rawtypes")
+  private Geometry<?,?> simplifyAny(Geometry geometry) {
+    return (Geometry<?,?>)simplify(geometry);
+  }
+  
+  /**
+   * Simplify each part of the given coordinates. Closed parts are 
+   * treated as rings. If polygons is true, the first part of each 
+   * group is an exterior ring and the others are holes.
+   * @param coords Coordinates
+   * @param polygons boolean
+   * @return Coordinates
+   */
+  public Coordinates simplify(Coordinates coords, boolean polygons) {
+    Coordinates.Builder out = Coordinates.make();
+    boolean[] keep = new boolean[16];
+    Work work = new Work();
+    if (polygons && coords.groupCount() > 0) {
+      for (int g = 0; g < coords.groupCount(); g++) {
+        int end = coords.groupEnd(g);
+        for (int p = coords.groupStart(g); p < end; p++)
+          keep = part(coords, p, true, p == coords.groupStart(g), keep, work, out);
+        out.endGroup();
+      }
+    } else {
+      for (int p = 0; p < coords.partCount(); p++)
+        keep = part(coords, p, polygons, polygons, keep, work, out);
+    }
+    return out.get();
+  }
+  
+  /**
+   * Simplify one part into the output buffer. Returns the (possibly
+   * grown) flag array so that it can be reused for the next part.
+   */
+  private boolean[] part(
+    Coordinates coords, 
+    int part, 
+    boolean polygon, 
+    boolean exterior,
+    boolean[] keep, 
+    Work work,
+    Coordinates.Builder out) {
+    int start = coords.partStart(part);
+    int end = coords.partEnd(part);
+    int count = end - start;
+    if (keep.length < count)
+      keep = new boolean[Math.max(count, keep.length * 2)];
+    Arrays.fill(keep, 0, count, false);
+    boolean ring = coords.closed(part);
+    int kept;
+    if (count <= (ring ? 4 : 2)) {
+      Arrays.fill(keep, 0, count, true);
+      kept = count;
+    } else if (method == Method.DOUGLAS_PEUCKER) {
+      kept = douglasPeucker(coords, start, count, ring, !polygon || exterior, keep, work);
+    } else {
+      kept = visvalingam(coords, start, count, ring, !polygon || exterior, keep, work);
+    }
+    if (ring && kept < 4) {
+      if (polygon && !exterior)
+        return keep;
+      if (polygon)
+        Arrays.fill(keep, 0, count, true);
+    }
+    for (int i = 0; i < count; i++) {
+      if (!keep[i]) continue;
+      int p = start + i;
+      for (int d = 0, n = coords.dimensions(p); d < n; d++)
+        out.value(coords.get(p, d));
+      out.endPosition();
+    }
+    out.endPart();
+    return keep;
+  }
+  
+  /**
+   * Scratch arrays reused across the parts of one simplify call
+   */
+  private static final class Work {
+    int[] a = new int[16];
+    int[] b = new int[16];
+    int[] c = new int[16];
+    int[] d = new int[16];
+    float[] f = new float[16];
+    void ensure(int count) {
+      if (a.length < count) {
+        int size = Math.max(count, a.length * 2);
+        a = new int[size];
+        b = new int[size];
+        c = new int[size];
+        d = new int[size];
+        f = new float[size];
+      }
+    }
+  }
+  
+  /**
+   * Douglas-Peucker over one part, using an explicit stack of index 
+   * ranges. If whole is set, a ring keeps at least four positions 
+   * even when the tolerance would remove more.
+   */
+  private int douglasPeucker(
+    Coordinates coords, 
+    int start, 
+    int count, 
+    boolean ring, 
+    boolean whole,
+    boolean[] keep,
+    Work work) {
+    int last = count - 1;
+    keep[0] = keep[last] = true;
+    int kept = 2;
+    work.ensure(count * 2);
+    int[] stack = work.a;
+    int top = 0;
+    if (ring) {
+      // anchor the ring at its first position and the position 
+      // farthest from it, then simplify both halves
+      int far = farthest(coords, start, count);
+      keep[far] = true;
+      kept++;
+      stack[top++] = 0; stack[top++] = far;
+      stack[top++] = far; stack[top++] = last;
+    } else {
+      stack[top++] = 0; stack[top++] = last;
+    }
+    double limit = (double)tolerance * tolerance;
+    while (top > 0) {
+      int to = stack[--top];
+      int from = stack[--top];
+      int index = -1;
+      double max = -1;
+      for (int i = from + 1; i < to; i++) {
+        double d = segmentDistance(coords, start + i, start + from, start + to);
+        if (d > max) {
+          max = d;
+          index = i;
+        }
+      }
+      if (index >= 0 && (max > limit || (ring && whole && kept < 4))) {
+        keep[index] = true;
+        kept++;
+        stack[top++] = from; stack[top++] = index;
+        stack[top++] = index; stack[top++] = to;
+      }
+    }
+    return kept;
+  }
+  
+  /**
+   * Visvalingam-Whyatt: repeatedly remove the position forming the 
+   * smallest triangle with its neighbors. Positions are kept in a 
+   * doubly linked list (prev/next index arrays) and an indexed binary
+   * min-heap of effective areas.
+   */
+  private int visvalingam(
+    Coordinates coords, 
+    int start, 
+    int count, 
+    boolean ring, 
+    boolean whole,
+    boolean[] keep,
+    Work work) {
+    work.ensure(count);
+    int[] prev = work.a, next = work.b, heap = work.c, slot = work.d;
+    float[] area = work.f;
+    int size = 0;
+    for (int i = 0; i < count; i++) {
+      keep[i] = true;
+      prev[i] = i - 1;
+      next[i] = i + 1;
+      if (i > 0 && i < count - 1) {
+        area[i] = triangle(coords, start + i - 1, start + i, start + i + 1);
+        heap[size] = i;
+        slot[i] = size;
+        up(heap, slot, area, size++);
+      }
+    }
+    int kept = count;
+    int min = ring && whole ? 4 : 2;
+    float floor = 0;
+    while (size > 0 && kept > min) {
+      int i = heap[0];
+      if (area[i] >= tolerance)
+        break;
+      // effective areas never decrease as positions are removed
+      floor = Math.max(floor, area[i]);
+      heap[0] = heap[--size];
+      slot[heap[0]] = 0;
+      down(heap, slot, area, 0, size);
+      keep[i] = false;
+      kept--;
+      int p = prev[i], n = next[i];
+      next[p] = n;
+      prev[n] = p;
+      if (p > 0) 
+        update(coords, start, p, prev[p], n, floor, heap, slot, area, size);
+      if (n < count - 1) 
+        update(coords, start, n, p, next[n], floor, heap, slot, area, size);
+    }
+    return kept;
+  }
+  
+  private static void update(
+    Coordinates coords, 
+    int start,
+    int i, 
+    int p, 
+    int n,
+    float floor,
+    int[] heap, 
+    int[] slot, 
+    float[] area, 
+    int size) {
+    float old = area[i];
+    area[i] = Math.max(floor, triangle(coords, start + p, start + i, start + n));
+    if (area[i] < old)
+      up(heap, slot, area, slot[i]);
+    else
+      down(heap, slot, area, slot[i], size);
+  }
+  
+  private static void up(int[] heap, int[] slot, float[] area, int k) {
+    int item = heap[k];
+    while (k > 0) {
+      int parent = (k - 1) >>> 1;
+      if (area[heap[parent]] <= area[item]) break;
+      heap[k] = heap[parent];
+      slot[heap[k]] = k;
+      k = parent;
+    }
+    heap[k] = item;
+    slot[item] = k;
+  }
+  
+  private static void down(int[] heap, int[] slot, float[] area, int k, int size) {
+    if (size == 0) return;
+    int item = heap[k];
+    while (true) {
+      int child = 2 * k + 1;
+      if (child >= size) break;
+      if (child + 1 < size && area[heap[child + 1]] < area[heap[child]])
+        child++;
+      if (area[item] <= area[heap[child]]) break;
+      heap[k] = heap[child];
+      slot[heap[k]] = k;
+      k = child;
+    }
+    heap[k] = item;
+    slot[item] = k;
+  }
+  
+  private static int farthest(Coordinates coords, int start, int count) {
+    int index = 1;
+    double max = -1;
+    float x = coords.get(start, 0), y = coords.get(start, 1);
+    for (int i = 1; i < count - 1; i++) {
+      double dx = coords.get(start + i, 0) - x;
+      double dy = coords.get(start + i, 1) - y;
+      double d = dx * dx + dy * dy;
+      if (d > max) {
+        max = d;
+        index = i;
+      }
+    }
+    return index;
+  }
+  
+  /**
+   * Squared distance from position p to the segment a-b
+   */
+  private static double segmentDistance(Coordinates coords, int p, int a, int b) {
+    double x = coords.get(p, 0), y = coords.get(p, 1);
+    double x1 = coords.get(a, 0), y1 = coords.get(a, 1);
+    double dx = coords.get(b, 0) - x1, dy = coords.get(b, 1) - y1;
+    double len = dx * dx + dy * dy;
+    double t = len > 0 ? ((x - x1) * dx + (y - y1) * dy) / len : 0;
+    t = Math.max(0, Math.min(1, t));
+    double ex = x1 + t * dx - x, ey = y1 + t * dy - y;
+    return ex * ex + ey * ey;
+  }
+  
+  private static float triangle(Coordinates coords, int a, int b, int c) {
+    double ax = coords.get(a, 0), ay = coords.get(a, 1);
+    return (float)Math.abs(
+      (coords.get(b, 0) - ax) * (coords.get(c, 1) - ay) - 
+      (coords.get(c, 0) - ax) * (coords.get(b, 1) - ay)) / 2;
+  }
+}
@@ -0,0 +1,518 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.geojson;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Spatial predicates and distances over Points, LineStrings, Polygons,
+ * their Multi* forms and GeometryCollections. 
+ * 
+ * Tests run on packed coordinates after a bounding box check. Polygon
+ * containment uses the even-odd rule over all of a polygon's rings, 
+ * so positions inside a hole are outside the polygon. For repeated 
+ * tests against the same polygon, use PreparedPolygon.
+ * 
+ * Predicates are planar, in coordinate units. Distances are great 
+ * circle (haversine) distances in meters. They treat the first value
+ * of a position (northing) as latitude and the second (easting) as 
+ * longitude, as GeoMakers.position(AS1Position) does.
+ * 
+ * <pre>
+ *   boolean inside = Spatial.contains(polygon, point);
+ *   double meters = Spatial.distance(point, lineString);
+ * </pre>
+ * @author james
+ */
+public final class Spatial {
+
+  private Spatial() {}
+  
+  /** Mean earth radius in meters **/
+  public static final double EARTH_RADIUS = 6371008.8;
+  
+  /**
+   * True if the given geometry contains the given position. For 
+   * LineStrings the position must lie on the line; for Points it must
+   * be equal.
+   * @param geometry Geometry&lt;?,?>
+   * @param x float
+   * @param y float
+   * @return boolean
+   */
+  public static boolean contains(Geometry<?,?> geometry, float x, float y) {
+    if (geometry == null)
+      return false;
+    if (geometry.type() == GeoObject.Type.GEOMETRYCOLLECTION) {
+      for (Geometry<?,?> member : ((GeometryCollection)geometry).geometries())
+        if (contains(member, x, y))
+          return true;
+      return false;
+    }
+    Coordinates coords = coordinates(geometry);
+    if (polygonal(geometry))
+      return inside(coords, x, y);
+    boolean paths = paths(geometry);
+    for (int part = 0; part < coords.partCount(); part++) {
+      int end = coords.partEnd(part);
+      for (int p = coords.partStart(part); p < end; p++) {
+        int q = paths && p + 1 < end ? p + 1 : p;
+        if (paths && q == p && p > coords.partStart(part))
+          continue;
+        if (onSegment(
+              coords.get(p,0), coords.get(p,1), 
+              coords.get(q,0), coords.get(q,1), 
+              x, y))
+          return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * True if the given geometry contains the given position
+   * @param geometry Geometry&lt;?,?>
+   * @param position Position
+   * @return boolean
+   */
+  public static boolean contains(Geometry<?,?> geometry, Position position) {
+    return contains(geometry, position.northing(), position.easting());
+  }
+  
+  /**
+   * True if every position of the second geometry lies within the 
+   * first and none of its segments cross the first's boundary. Only 
+   * Polygons and MultiPolygons (or collections of them) contain 
+   * anything other than positions.
+   * @param container Geometry&lt;?,?>
+   * @param geometry Geometry&lt;?,?>
+   * @return boolean
+   */
+  public static boolean contains(Geometry<?,?> container, Geometry<?,?> geometry) {
+    if (container == null || geometry == null)
+      return false;
+    if (geometry.type() == GeoObject.Type.GEOMETRYCOLLECTION) {
+      for (Geometry<?,?> member : ((GeometryCollection)geometry).geometries())
+        if (!contains(container, member))
+          return false;
+      return true;
+    }
+    if (container.type() == GeoObject.Type.GEOMETRYCOLLECTION) {
+      for (Geometry<?,?> member : ((GeometryCollection)container).geometries())
+        if (contains(member, geometry))
+          return true;
+      return false;
+    }
+    Coordinates coords = coordinates(geometry);
+    if (!polygonal(container)) {
+      for (int p = first(coords); p < last(coords); p++)
+        if (!contains(container, coords.get(p,0), coords.get(p,1)))
+          return false;
+      return !paths(geometry) && coords.size() > 0;
+    }
+    if (!covers(BoundingBox.of(container), BoundingBox.of(geometry)))
+      return false;
+    Coordinates outer = coordinates(container);
+    for (int p = first(coords); p < last(coords); p++)
+      if (!inside(outer, coords.get(p,0), coords.get(p,1)))
+        return false;
+    if (polygonal(geometry) && enclosesHole(outer, coords))
+      return false;
+    return !paths(geometry) || !crosses(outer, coords, true);
+  }
+  
+  /**
+   * True if the two geometries share at least one position: a segment
+   * of one crosses or touches a segment of the other, or one lies 
+   * inside a polygon of the other
+   * @param a Geometry&lt;?,?>
+   * @param b Geometry&lt;?,?>
+   * @return boolean
+   */
+  public static boolean intersects(Geometry<?,?> a, Geometry<?,?> b) {
+    if (a == null || b == null)
+      return false;
+    if (a.type() == GeoObject.Type.GEOMETRYCOLLECTION) {
+      for (Geometry<?,?> member : ((GeometryCollection)a).geometries())
+        if (intersects(member, b))
+          return true;
+      return false;
+    }
+    if (b.type() == GeoObject.Type.GEOMETRYCOLLECTION)
+      return intersects(b, a);
+    if (!overlaps(BoundingBox.of(a), BoundingBox.of(b)))
+      return false;
+    Coordinates ca = coordinates(a);
+    Coordinates cb = coordinates(b);
+    if (segments(ca, paths(a), cb, paths(b)))
+      return true;
+    if (polygonal(b) && ca.size() > 0 &&
+        inside(cb, ca.get(first(ca),0), ca.get(first(ca),1)))
+      return true;
+    if (polygonal(a) && cb.size() > 0 &&
+        inside(ca, cb.get(first(cb),0), cb.get(first(cb),1)))
+      return true;
+    return false;
+  }
+  
+  /**
+   * The great circle distance in meters between two positions given 
+   * as latitude and longitude in degrees
+   * @return double
+   */
+  public static double distance(
+    double lat1, 
+    double lon1, 
+    double lat2, 
+    double lon2) {
+    double dlat = Math.toRadians(lat2 - lat1);
+    double dlon = Math.toRadians(lon2 - lon1);
+    double h = 
+      Math.sin(dlat / 2) * Math.sin(dlat / 2) + 
+      Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * 
+      Math.sin(dlon / 2) * Math.sin(dlon / 2);
+    return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(h)));
+  }
+  
+  /**
+   * The great circle distance in meters between two positions
+   * @param a Position
+   * @param b Position
+   * @return double
+   */
+  public static double distance(Position a, Position b) {
+    return distance(a.northing(), a.easting(), b.northing(), b.easting());
+  }
+  
+  /**
+   * The distance in meters between the nearest positions of two 
+   * geometries, or zero if they intersect. The nearest position on a
+   * segment is found in a local equirectangular projection, which is 
+   * accurate for segments up to a few hundred kilometers long.
+   * @param a Geometry&lt;?,?>
+   * @param b Geometry&lt;?,?>
+   * @return double
+   */
+  public static double distance(Geometry<?,?> a, Geometry<?,?> b) {
+    if (a == null || b == null)
+      return Double.NaN;
+    if (a.type() == GeoObject.Type.GEOMETRYCOLLECTION) {
+      double min = Double.POSITIVE_INFINITY;
+      for (Geometry<?,?> member : ((GeometryCollection)a).geometries())
+        min = Math.min(min, distance(member, b));
+      return min;
+    }
+    if (b.type() == GeoObject.Type.GEOMETRYCOLLECTION)
+      return distance(b, a);
+    if (intersects(a, b))
+      return 0;
+    Coordinates ca = coordinates(a);
+    Coordinates cb = coordinates(b);
+    return Math.min(
+      nearest(ca, cb, paths(b)), 
+      nearest(cb, ca, paths(a)));
+  }
+  
+  /**
+   * Minimum distance from any position of a to any segment (or, if 
+   * paths is false, any position) of b
+   */
+  private static double nearest(Coordinates a, Coordinates b, boolean paths) {
+    double min = Double.POSITIVE_INFINITY;
+    for (int p = first(a); p < last(a); p++) {
+      double lat = a.get(p,0), lon = a.get(p,1);
+      double scale = Math.cos(Math.toRadians(lat));
+      for (int part = 0; part < b.partCount(); part++) {
+        int end = b.partEnd(part);
+        for (int q = b.partStart(part); q < end; q++) {
+          int r = paths && q + 1 < end ? q + 1 : q;
+          if (paths && r == q && q > b.partStart(part))
+            continue;
+          double x1 = (b.get(q,1) - lon) * scale, y1 = b.get(q,0) - lat;
+          double x2 = (b.get(r,1) - lon) * scale, y2 = b.get(r,0) - lat;
+          double dx = x2 - x1, dy = y2 - y1;
+          double len = dx * dx + dy * dy;
+          double t = len > 0 ? -(x1 * dx + y1 * dy) / len : 0;
+          t = Math.max(0, Math.min(1, t));
+          double nlat = b.get(q,0) + t * (b.get(r,0) - b.get(q,0));
+          double nlon = b.get(q,1) + t * (b.get(r,1) - b.get(q,1));
+          min = Math.min(min, distance(lat, lon, nlat, nlon));
+        }
+      }
+    }
+    return min;
+  }
+  
+  /**
+   * True if segment a-b and segment c-d share at least one position
+   */
+  public static boolean segmentsIntersect(
+    float ax, float ay, 
+    float bx, float by, 
+    float cx, float cy, 
+    float dx, float dy) {
+    int o1 = orientation(ax, ay, bx, by, cx, cy);
+    int o2 = orientation(ax, ay, bx, by, dx, dy);
+    int o3 = orientation(cx, cy, dx, dy, ax, ay);
+    int o4 = orientation(cx, cy, dx, dy, bx, by);
+    if (o1 != o2 && o3 != o4)
+      return true;
+    return 
+      (o1 == 0 && between(ax, ay, bx, by, cx, cy)) ||
+      (o2 == 0 && between(ax, ay, bx, by, dx, dy)) ||
+      (o3 == 0 && between(cx, cy, dx, dy, ax, ay)) ||
+      (o4 == 0 && between(cx, cy, dx, dy, bx, by));
+  }
+  
+  /**
+   * True if segment a-b and segment c-d cross at a single position 
+   * interior to both
+   */
+  static boolean segmentsCross(
+    float ax, float ay, 
+    float bx, float by, 
+    float cx, float cy, 
+    float dx, float dy) {
+    int o1 = orientation(ax, ay, bx, by, cx, cy);
+    int o2 = orientation(ax, ay, bx, by, dx, dy);
+    int o3 = orientation(cx, cy, dx, dy, ax, ay);
+    int o4 = orientation(cx, cy, dx, dy, bx, by);
+    return o1 * o2 < 0 && o3 * o4 < 0;
+  }
+  
+  static int orientation(
+    float ax, float ay, 
+    float bx, float by, 
+    float cx, float cy) {
+    double v = 
+      ((double)bx - ax) * ((double)cy - ay) - 
+      ((double)by - ay) * ((double)cx - ax);
+    return v > 0 ? 1 : v < 0 ? -1 : 0;
+  }
+  
+  private static boolean between(
+    float ax, float ay, 
+    float bx, float by, 
+    float cx, float cy) {
+    return 
+      cx >= Math.min(ax, bx) && cx <= Math.max(ax, bx) &&
+      cy >= Math.min(ay, by) && cy <= Math.max(ay, by);
+  }
+  
+  private static boolean onSegment(
+    float ax, float ay, 
+    float bx, float by, 
+    float x, float y) {
+    return 
+      orientation(ax, ay, bx, by, x, y) == 0 && 
+      between(ax, ay, bx, by, x, y);
+  }
+  
+  /**
+   * Even-odd test of a position against every ring of every polygon 
+   * in the given packed coordinates
+   */
+  static boolean inside(Coordinates coords, float x, float y) {
+    boolean inside = false;
+    for (int part = 0; part < coords.partCount(); part++) {
+      int start = coords.partStart(part);
+      int end = coords.partEnd(part);
+      for (int i = start, j = end - 1; i < end; j = i++) {
+        float xi = coords.get(i,0), yi = coords.get(i,1);
+        float xj = coords.get(j,0), yj = coords.get(j,1);
+        if ((yi > y) != (yj > y) && 
+            x < (xj - xi) * (y - yi) / (yj - yi) + xi)
+          inside = !inside;
+      }
+    }
+    return inside;
+  }
+  
+  /**
+   * True if a vertex of a hole of the polygon rings lies strictly 
+   * inside the candidate polygon, which then encloses that hole 
+   * even though none of its own positions fall in it
+   */
+  static boolean enclosesHole(Coordinates rings, Coordinates candidate) {
+    for (int part = 0; part < rings.partCount(); part++) {
+      if (!hole(rings, part))
+        continue;
+      int end = rings.partEnd(part);
+      for (int p = rings.partStart(part); p < end; p++) {
+        float x = rings.get(p,0), y = rings.get(p,1);
+        if (inside(candidate, x, y) && !boundary(candidate, x, y))
+          return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * True if the given part is an interior ring: any part of a single 
+   * polygon but the first, or any part that does not start a group
+   */
+  private static boolean hole(Coordinates rings, int part) {
+    if (rings.groupCount() == 0)
+      return part > 0;
+    for (int group = 0; group < rings.groupCount(); group++)
+      if (rings.groupStart(group) == part)
+        return false;
+    return true;
+  }
+  
+  /**
+   * True if the position lies on a segment of the rings
+   */
+  private static boolean boundary(Coordinates rings, float x, float y) {
+    for (int part = 0; part < rings.partCount(); part++) {
+      int end = rings.partEnd(part);
+      for (int p = rings.partStart(part); p + 1 < end; p++)
+        if (onSegment(
+              rings.get(p,0), rings.get(p,1), 
+              rings.get(p+1,0), rings.get(p+1,1), 
+              x, y))
+          return true;
+    }
+    return false;
+  }
+  
+  /**
+   * True if any segment (or position) of a shares a position with any 
+   * segment (or position) of b
+   */
+  private static boolean segments(
+    Coordinates a, boolean pathsA, 
+    Coordinates b, boolean pathsB) {
+    for (int pa = 0; pa < a.partCount(); pa++) {
+      int enda = a.partEnd(pa);
+      for (int i = a.partStart(pa); i < enda; i++) {
+        int i2 = pathsA && i + 1 < enda ? i + 1 : i;
+        if (pathsA && i2 == i && i > a.partStart(pa))
+          continue;
+        for (int pb = 0; pb < b.partCount(); pb++) {
+          int endb = b.partEnd(pb);
+          for (int j = b.partStart(pb); j < endb; j++) {
+            int j2 = pathsB && j + 1 < endb ? j + 1 : j;
+            if (pathsB && j2 == j && j > b.partStart(pb))
+              continue;
+            if (segmentsIntersect(
+                  a.get(i,0), a.get(i,1), a.get(i2,0), a.get(i2,1),
+                  b.get(j,0), b.get(j,1), b.get(j2,0), b.get(j2,1)))
+              return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * True if a segment of lines properly crosses an edge of the 
+   * polygon rings
+   */
+  private static boolean crosses(Coordinates rings, Coordinates lines, boolean paths) {
+    for (int pl = 0; pl < lines.partCount(); pl++) {
+      int endl = lines.partEnd(pl);
+      for (int i = lines.partStart(pl); i + 1 < endl; i++) {
+        for (int pr = 0; pr < rings.partCount(); pr++) {
+          int endr = rings.partEnd(pr);
+          for (int j = rings.partStart(pr); j + 1 < endr; j++)
+            if (segmentsCross(
+                  lines.get(i,0), lines.get(i,1), lines.get(i+1,0), lines.get(i+1,1),
+                  rings.get(j,0), rings.get(j,1), rings.get(j+1,0), rings.get(j+1,1)))
+              return true;
+        }
+      }
+    }
+    return false;
+  }
+  
+  static boolean overlaps(BoundingBox a, BoundingBox b) {
+    if (a == null || b == null)
+      return false;
+    int da = a.size() / 2, db = b.size() / 2;
+    return 
+      a.get(0) <= b.get(db) && b.get(0) <= a.get(da) &&
+      a.get(1) <= b.get(db + 1) && b.get(1) <= a.get(da + 1);
+  }
+  
+  static boolean covers(BoundingBox a, BoundingBox b) {
+    if (a == null || b == null)
+      return false;
+    int da = a.size() / 2, db = b.size() / 2;
+    return 
+      a.get(0) <= b.get(0) && a.get(1) <= b.get(1) &&
+      a.get(da) >= b.get(db) && a.get(da + 1) >= b.get(db + 1);
+  }
+  
+  static int first(Coordinates coords) {
+    return coords.partCount() > 0 ? coords.partStart(0) : 0;
+  }
+  
+  static int last(Coordinates coords) {
+    return coords.partCount() > 0 ? 
+      coords.partEnd(coords.partCount() - 1) : 0;
+  }
+  
+  /**
+   * The packed coordinates of a geometry; a Point's single position 
+   * is packed on demand
+   */
+  static Coordinates coordinates(Geometry<?,?> geometry) {
+    if (geometry instanceof Geometry.CoordinateGeometry) {
+      Coordinates coords = 
+        ((Geometry.CoordinateGeometry<?,?,?>)geometry).packed();
+      if (coords != null)
+        return coords;
+    }
+    Coordinates.Builder builder = Coordinates.make();
+    if (geometry.type() == GeoObject.Type.POINT)
+      for (Position position : (Point)geometry)
+        builder.position(position);
+    return builder.get();
+  }
+  
+  static boolean polygonal(Geometry<?,?> geometry) {
+    return 
+      geometry.type() == GeoObject.Type.POLYGON || 
+      geometry.type() == GeoObject.Type.MULTIPOLYGON;
+  }
+  
+  /**
+   * True if consecutive positions of the geometry are connected 
+   */
+  static boolean paths(Geometry<?,?> geometry) {
+    switch(geometry.type()) {
+    case POINT:
+    case MULTIPOINT:
+      return false;
+    default:
+      return true;
+    }
+  }
+  
+  static Iterable<Geometry<?,?>> members(Geometry<?,?> geometry) {
+    return geometry.type() == GeoObject.Type.GEOMETRYCOLLECTION ?
+      ((GeometryCollection)geometry).geometries() :
+      ImmutableList.<Geometry<?,?>>of(geometry);
+  }
+}
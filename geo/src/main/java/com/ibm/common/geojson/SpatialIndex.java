@@ -0,0 +1,691 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.geojson;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.LinkValue;
+
+/**
+ * An immutable R-tree over the two dimensional (x,y) bounding boxes of
+ * GeoJSON objects, Places or any other values. 
+ * 
+ * The Builder bulk loads the tree using Sort-Tile-Recursive packing, 
+ * which produces full, minimally overlapping nodes. insert() adds a 
+ * single entry by copying only the path from the root to the affected 
+ * leaf, returning a new index that shares every other node with this 
+ * one. Because an index is never modified once built, any number of 
+ * threads may query it concurrently; to index values as they arrive,
+ * publish each new index through a volatile field or AtomicReference.
+ * 
+ * Distances used by nearest() are planar, in coordinate units.
+ * 
+ * <pre>
+ *   SpatialIndex&lt;Feature> index = 
+ *     SpatialIndex.features(featureCollection);
+ *   List&lt;Feature> hits = 
+ *     index.intersects(minx, miny, maxx, maxy);
+ * </pre>
+ * @author james
+ */
+@SuppressWarnings("unchecked")
+public final class SpatialIndex<T> {
+
+  public static <T>Builder<T> make() {
+    return new Builder<T>();
+  }
+  
+  /**
+   * Index each Feature in the collection by the bounding box of its
+   * geometry. Features without a geometry are skipped.
+   * @param features Iterable&lt;Feature>
+   * @return SpatialIndex&lt;Feature>
+   */
+  public static SpatialIndex<Feature> features(Iterable<Feature> features) {
+    Builder<Feature> builder = make();
+    for (Feature feature : features)
+      builder.add(feature, feature);
+    return builder.get();
+  }
+  
+  /**
+   * Index each object by its location: a Place by its geo property 
+   * (or, failing that, its position), any other object by the Places 
+   * listed in its location property. Objects without a location are 
+   * skipped.
+   * @param objects Iterable&lt;A>
+   * @return SpatialIndex&lt;A>
+   */
+  public static <A extends ASObject>SpatialIndex<A> objects(Iterable<A> objects) {
+    Builder<A> builder = make();
+    for (A obj : objects)
+      builder.add(obj, obj);
+    return builder.get();
+  }
+  
+  public static final class Builder<T> 
+    implements Supplier<SpatialIndex<T>> {
+    
+    private int nodeCapacity = 16;
+    private float[] boxes = new float[64];
+    private Object[] values = new Object[16];
+    private int size;
+    
+    /**
+     * The maximum number of entries per node (default 16)
+     * @param capacity int
+     * @return Builder
+     */
+    public Builder<T> nodeCapacity(int capacity) {
+      checkArgument(capacity > 1);
+      this.nodeCapacity = capacity;
+      return this;
+    }
+    
+    /**
+     * Add a value with the given bounds
+     * @return Builder
+     */
+    public Builder<T> add(
+      float minx, 
+      float miny, 
+      float maxx, 
+      float maxy, 
+      T value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+        boxes = Arrays.copyOf(boxes, size * 8);
+      }
+      int n = size * 4;
+      boxes[n] = Math.min(minx, maxx);
+      boxes[n+1] = Math.min(miny, maxy);
+      boxes[n+2] = Math.max(minx, maxx);
+      boxes[n+3] = Math.max(miny, maxy);
+      values[size++] = value;
+      return this;
+    }
+    
+    /**
+     * Add a value with the given bounds
+     * @param bbox BoundingBox
+     * @param value T
+     * @return Builder
+     */
+    public Builder<T> add(BoundingBox bbox, T value) {
+      float[] box = box(bbox);
+      return box != null ? 
+        add(box[0], box[1], box[2], box[3], value) : 
+        this;
+    }
+    
+    /**
+     * Add a value using the bounding box of the given GeoJSON object.
+     * Ignored if the object has no positions.
+     * @param geo GeoObject&lt;?>
+     * @param value T
+     * @return Builder
+     */
+    public Builder<T> add(GeoObject<?> geo, T value) {
+      return add(BoundingBox.of(geo), value);
+    }
+    
+    /**
+     * Add a value using the location of the given object (see 
+     * SpatialIndex.objects). Ignored if the object has no location.
+     * @param obj ASObject
+     * @param value T
+     * @return Builder
+     */
+    public Builder<T> add(ASObject obj, T value) {
+      float[] box = box(obj);
+      return box != null ? 
+        add(box[0], box[1], box[2], box[3], value) : 
+        this;
+    }
+    
+    public SpatialIndex<T> get() {
+      return new SpatialIndex<T>(
+        load(boxes, values, size, nodeCapacity), 
+        size, 
+        nodeCapacity);
+    }
+  }
+  
+  /**
+   * A node of the tree. The bounds of the children are kept in a 
+   * single float array, four values (minx, miny, maxx, maxy) per 
+   * child, so that a node can be scanned without dereferencing its 
+   * children.
+   */
+  private static final class Node {
+    final boolean leaf;
+    final float[] boxes;
+    final Object[] children;
+    final float minx, miny, maxx, maxy;
+    Node(boolean leaf, float[] boxes, Object[] children) {
+      this.leaf = leaf;
+      this.boxes = boxes;
+      this.children = children;
+      float x1 = Float.POSITIVE_INFINITY, y1 = x1;
+      float x2 = Float.NEGATIVE_INFINITY, y2 = x2;
+      for (int n = 0; n < boxes.length; n += 4) {
+        x1 = Math.min(x1, boxes[n]);
+        y1 = Math.min(y1, boxes[n+1]);
+        x2 = Math.max(x2, boxes[n+2]);
+        y2 = Math.max(y2, boxes[n+3]);
+      }
+      this.minx = x1;
+      this.miny = y1;
+      this.maxx = x2;
+      this.maxy = y2;
+    }
+    int size() {
+      return children.length;
+    }
+  }
+  
+  private static final Node EMPTY = 
+    new Node(true, new float[0], new Object[0]);
+  
+  private final Node root;
+  private final int size;
+  private final int capacity;
+  
+  private SpatialIndex(Node root, int size, int capacity) {
+    this.root = root;
+    this.size = size;
+    this.capacity = capacity;
+  }
+  
+  /**
+   * The number of entries
+   * @return int
+   */
+  public int size() {
+    return size;
+  }
+  
+  public boolean isEmpty() {
+    return size == 0;
+  }
+  
+  /**
+   * Return every value whose bounds intersect the given bounds
+   * @return List&lt;T>
+   */
+  public List<T> intersects(
+    float minx, 
+    float miny, 
+    float maxx, 
+    float maxy) {
+    List<T> results = new ArrayList<T>();
+    search(root, minx, miny, maxx, maxy, false, results);
+    return results;
+  }
+  
+  /**
+   * Return every value whose bounds intersect the given bounds
+   * @param bbox BoundingBox
+   * @return List&lt;T>
+   */
+  public List<T> intersects(BoundingBox bbox) {
+    float[] box = box(bbox);
+    return box != null ? 
+      intersects(box[0], box[1], box[2], box[3]) : 
+      ImmutableList.<T>of();
+  }
+  
+  /**
+   * Return every value whose bounds contain the given point
+   * @return List&lt;T>
+   */
+  public List<T> intersects(float x, float y) {
+    return intersects(x, y, x, y);
+  }
+  
+  /**
+   * Return every value whose bounds lie entirely within the given 
+   * bounds
+   * @return List&lt;T>
+   */
+  public List<T> within(
+    float minx, 
+    float miny, 
+    float maxx, 
+    float maxy) {
+    List<T> results = new ArrayList<T>();
+    search(root, minx, miny, maxx, maxy, true, results);
+    return results;
+  }
+  
+  /**
+   * Return every value whose bounds lie entirely within the given 
+   * bounds
+   * @param bbox BoundingBox
+   * @return List&lt;T>
+   */
+  public List<T> within(BoundingBox bbox) {
+    float[] box = box(bbox);
+    return box != null ? 
+      within(box[0], box[1], box[2], box[3]) : 
+      ImmutableList.<T>of();
+  }
+  
+  private static <T>void search(
+    Node node,
+    float minx, 
+    float miny, 
+    float maxx, 
+    float maxy,
+    boolean within,
+    List<T> results) {
+    float[] b = node.boxes;
+    for (int i = 0, n = 0; i < node.size(); i++, n += 4) {
+      if (b[n] > maxx || b[n+2] < minx || b[n+1] > maxy || b[n+3] < miny)
+        continue;
+      if (!node.leaf)
+        search((Node)node.children[i], minx, miny, maxx, maxy, within, results);
+      else if (!within || 
+          (b[n] >= minx && b[n+2] <= maxx && b[n+1] >= miny && b[n+3] <= maxy))
+        results.add((T)node.children[i]);
+    }
+  }
+  
+  /**
+   * Return up to k values ordered by the distance from the given 
+   * point to their bounds, nearest first. Values whose bounds contain
+   * the point have a distance of zero.
+   * @param x float
+   * @param y float
+   * @param k int
+   * @return List&lt;T>
+   */
+  public List<T> nearest(float x, float y, int k) {
+    List<T> results = new ArrayList<T>(Math.min(k, size));
+    if (k <= 0 || size == 0)
+      return results;
+    PriorityQueue<Candidate> queue = 
+      new PriorityQueue<Candidate>();
+    queue.add(new Candidate(root, false, 0));
+    while (!queue.isEmpty() && results.size() < k) {
+      Candidate next = queue.poll();
+      if (next.entry) {
+        results.add((T)next.item);
+        continue;
+      }
+      Node node = (Node)next.item;
+      float[] b = node.boxes;
+      for (int i = 0, n = 0; i < node.size(); i++, n += 4)
+        queue.add(
+          new Candidate(
+            node.children[i], 
+            node.leaf, 
+            distance(x, y, b[n], b[n+1], b[n+2], b[n+3])));
+    }
+    return results;
+  }
+  
+  private static final class Candidate 
+    implements Comparable<Candidate> {
+    final Object item;
+    final boolean entry;
+    final double distance;
+    Candidate(Object item, boolean entry, double distance) {
+      this.item = item;
+      this.entry = entry;
+      this.distance = distance;
+    }
+    public int compareTo(Candidate other) {
+      return Double.compare(distance, other.distance);
+    }
+  }
+  
+  private static double distance(
+    float x, 
+    float y, 
+    float minx, 
+    float miny, 
+    float maxx, 
+    float maxy) {
+    double dx = x < minx ? minx - x : x > maxx ? x - maxx : 0;
+    double dy = y < miny ? miny - y : y > maxy ? y - maxy : 0;
+    return dx * dx + dy * dy;
+  }
+  
+  /**
+   * Return a new index containing this index's entries and the given
+   * value. Only the nodes on the path to the leaf receiving the value 
+   * are copied; this index is unchanged.
+   * @return SpatialIndex&lt;T>
+   */
+  public SpatialIndex<T> insert(
+    float minx, 
+    float miny, 
+    float maxx, 
+    float maxy, 
+    T value) {
+    float[] box = new float[] {
+      Math.min(minx, maxx), 
+      Math.min(miny, maxy), 
+      Math.max(minx, maxx), 
+      Math.max(miny, maxy)
+    };
+    Node[] nodes = insert(root, box, value);
+    Node newRoot = nodes.length == 1 ? 
+      nodes[0] : 
+      parent(false, nodes[0], nodes[1]);
+    return new SpatialIndex<T>(newRoot, size + 1, capacity);
+  }
+  
+  /**
+   * Return a new index containing this index's entries and the given
+   * value (see insert(float,float,float,float,T))
+   * @param bbox BoundingBox
+   * @param value T
+   * @return SpatialIndex&lt;T>
+   */
+  public SpatialIndex<T> insert(BoundingBox bbox, T value) {
+    float[] box = box(bbox);
+    return box != null ? 
+      insert(box[0], box[1], box[2], box[3], value) : 
+      this;
+  }
+  
+  /**
+   * Return a new index containing this index's entries and the given
+   * value, indexed by the bounding box of the given GeoJSON object
+   * @param geo GeoObject&lt;?>
+   * @param value T
+   * @return SpatialIndex&lt;T>
+   */
+  public SpatialIndex<T> insert(GeoObject<?> geo, T value) {
+    return insert(BoundingBox.of(geo), value);
+  }
+  
+  /**
+   * Return a new index containing this index's entries and the given
+   * value, indexed by the location of the given object
+   * @param obj ASObject
+   * @param value T
+   * @return SpatialIndex&lt;T>
+   */
+  public SpatialIndex<T> insert(ASObject obj, T value) {
+    float[] box = box(obj);
+    return box != null ? 
+      insert(box[0], box[1], box[2], box[3], value) : 
+      this;
+  }
+  
+  private Node[] insert(Node node, float[] box, Object value) {
+    if (node.leaf)
+      return split(
+        true, 
+        append(node.boxes, box), 
+        append(node.children, value));
+    int best = choose(node, box);
+    Node[] replaced = insert((Node)node.children[best], box, value);
+    float[] boxes = node.boxes.clone();
+    Object[] children = node.children.clone();
+    set(boxes, children, best, replaced[0]);
+    if (replaced.length > 1) {
+      boxes = append(boxes, bounds(replaced[1]));
+      children = append(children, replaced[1]);
+    }
+    return split(false, boxes, children);
+  }
+  
+  /**
+   * Choose the child needing the least enlargement to include the 
+   * box, preferring the smaller child on ties
+   */
+  private static int choose(Node node, float[] box) {
+    int best = 0;
+    double bestGrowth = Double.POSITIVE_INFINITY;
+    double bestArea = Double.POSITIVE_INFINITY;
+    float[] b = node.boxes;
+    for (int i = 0, n = 0; i < node.size(); i++, n += 4) {
+      double area = area(b[n], b[n+1], b[n+2], b[n+3]);
+      double growth = area(
+        Math.min(b[n], box[0]), 
+        Math.min(b[n+1], box[1]), 
+        Math.max(b[n+2], box[2]), 
+        Math.max(b[n+3], box[3])) - area;
+      if (growth < bestGrowth || (growth == bestGrowth && area < bestArea)) {
+        best = i;
+        bestGrowth = growth;
+        bestArea = area;
+      }
+    }
+    return best;
+  }
+  
+  /**
+   * Return a single node, or two nodes if there are more children 
+   * than the node capacity. An overflowing node is split in half 
+   * along the axis on which its children's centers are most spread.
+   */
+  private Node[] split(boolean leaf, float[] boxes, Object[] children) {
+    int count = children.length;
+    if (count <= capacity)
+      return new Node[] {new Node(leaf, boxes, children)};
+    float x1 = Float.POSITIVE_INFINITY, x2 = Float.NEGATIVE_INFINITY;
+    float y1 = x1, y2 = x2;
+    for (int n = 0; n < boxes.length; n += 4) {
+      float cx = boxes[n] + boxes[n+2], cy = boxes[n+1] + boxes[n+3];
+      x1 = Math.min(x1, cx); 
+      x2 = Math.max(x2, cx);
+      y1 = Math.min(y1, cy); 
+      y2 = Math.max(y2, cy);
+    }
+    int[] order = sortByCenter(boxes, 0, count, x2 - x1 >= y2 - y1 ? 0 : 1);
+    int half = count / 2;
+    return new Node[] {
+      node(leaf, boxes, children, order, 0, half),
+      node(leaf, boxes, children, order, half, count)
+    };
+  }
+  
+  private static void set(float[] boxes, Object[] children, int i, Node node) {
+    System.arraycopy(bounds(node), 0, boxes, i * 4, 4);
+    children[i] = node;
+  }
+  
+  private static float[] bounds(Node node) {
+    return new float[] {node.minx, node.miny, node.maxx, node.maxy};
+  }
+  
+  private static Node parent(boolean leaf, Node... nodes) {
+    float[] boxes = new float[nodes.length * 4];
+    for (int i = 0; i < nodes.length; i++)
+      System.arraycopy(bounds(nodes[i]), 0, boxes, i * 4, 4);
+    return new Node(leaf, boxes, nodes);
+  }
+  
+  private static float[] append(float[] array, float[] values) {
+    float[] result = Arrays.copyOf(array, array.length + values.length);
+    System.arraycopy(values, 0, result, array.length, values.length);
+    return result;
+  }
+  
+  private static Object[] append(Object[] array, Object value) {
+    Object[] result = Arrays.copyOf(array, array.length + 1);
+    result[array.length] = value;
+    return result;
+  }
+  
+  private static double area(float minx, float miny, float maxx, float maxy) {
+    return ((double)maxx - minx) * ((double)maxy - miny);
+  }
+  
+  /**
+   * Sort-Tile-Recursive bulk load. Entries are sorted by the x of 
+   * their centers and cut into vertical slices, each slice is sorted
+   * by y and packed into full nodes; the same is repeated on the 
+   * nodes of each level until a single root remains.
+   */
+  private static Node load(
+    float[] boxes, 
+    Object[] items, 
+    int count, 
+    int capacity) {
+    if (count == 0)
+      return EMPTY;
+    boolean leaf = true;
+    while (true) {
+      Node[] nodes = pack(leaf, boxes, items, count, capacity);
+      if (nodes.length == 1)
+        return nodes[0];
+      boxes = new float[nodes.length * 4];
+      for (int i = 0; i < nodes.length; i++)
+        System.arraycopy(bounds(nodes[i]), 0, boxes, i * 4, 4);
+      items = nodes;
+      count = nodes.length;
+      leaf = false;
+    }
+  }
+  
+  private static Node[] pack(
+    boolean leaf, 
+    float[] boxes, 
+    Object[] items, 
+    int count, 
+    int capacity) {
+    int nodeCount = (count + capacity - 1) / capacity;
+    int slices = (int)Math.ceil(Math.sqrt(nodeCount));
+    int sliceSize = slices * capacity;
+    int[] byX = sortByCenter(boxes, 0, count, 0);
+    Node[] nodes = new Node[nodeCount];
+    int n = 0;
+    for (int start = 0; start < count; start += sliceSize) {
+      int end = Math.min(start + sliceSize, count);
+      int[] slice = Arrays.copyOfRange(byX, start, end);
+      int[] byY = sortByCenter(boxes, slice, 1);
+      for (int s = 0; s < byY.length; s += capacity)
+        nodes[n++] = node(leaf, boxes, items, byY, s, Math.min(s + capacity, byY.length));
+    }
+    return n == nodes.length ? nodes : Arrays.copyOf(nodes, n);
+  }
+  
+  private static Node node(
+    boolean leaf, 
+    float[] boxes, 
+    Object[] items, 
+    int[] order, 
+    int start, 
+    int end) {
+    float[] b = new float[(end - start) * 4];
+    Object[] c = new Object[end - start];
+    for (int i = start; i < end; i++) {
+      System.arraycopy(boxes, order[i] * 4, b, (i - start) * 4, 4);
+      c[i - start] = items[order[i]];
+    }
+    return new Node(leaf, b, c);
+  }
+  
+  private static int[] sortByCenter(float[] boxes, int start, int end, int axis) {
+    int[] indices = new int[end - start];
+    for (int i = 0; i < indices.length; i++)
+      indices[i] = start + i;
+    return sortByCenter(boxes, indices, axis);
+  }
+  
+  /**
+   * Sort the given entry indices by the center of their boxes on the
+   * given axis. Each key is packed with its index into a single long
+   * so that the sort is a primitive sort, without boxing.
+   */
+  private static int[] sortByCenter(float[] boxes, int[] indices, int axis) {
+    long[] keys = new long[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      int n = indices[i] * 4 + axis;
+      float center = (boxes[n] + boxes[n+2]) / 2;
+      int bits = Float.floatToIntBits(center);
+      bits ^= (bits >> 31) & 0x7fffffff;
+      keys[i] = ((long)bits << 32) | (indices[i] & 0xffffffffL);
+    }
+    Arrays.sort(keys);
+    int[] sorted = new int[keys.length];
+    for (int i = 0; i < keys.length; i++)
+      sorted[i] = (int)keys[i];
+    return sorted;
+  }
+  
+  private static float[] box(BoundingBox bbox) {
+    if (bbox == null || bbox.size() < 4)
+      return null;
+    int d = bbox.size() / 2;
+    return new float[] {
+      bbox.get(0), 
+      bbox.get(1), 
+      bbox.get(d), 
+      bbox.get(d + 1)
+    };
+  }
+  
+  /**
+   * The bounds of a Place's geo property or position, or the union 
+   * of the bounds of the Places listed as an object's location
+   */
+  private static float[] box(ASObject obj) {
+    if (obj instanceof Place) {
+      Place place = (Place) obj;
+      GeoObject<?> geo = place.geo();
+      if (geo != null)
+        return box(BoundingBox.of(geo));
+      @SuppressWarnings("deprecation")
+      AS1Position position = place.position();
+      if (position != null)
+        return new float[] {
+          position.latitude(), 
+          position.longitude(), 
+          position.latitude(), 
+          position.longitude()
+        };
+      return null;
+    }
+    float[] union = null;
+    for (LinkValue link : obj.location()) {
+      if (!(link instanceof Place))
+        continue;
+      float[] box = box((Place)link);
+      if (box == null)
+        continue;
+      if (union == null)
+        union = box;
+      else {
+        union[0] = Math.min(union[0], box[0]);
+        union[1] = Math.min(union[1], box[1]);
+        union[2] = Math.max(union[2], box[2]);
+        union[3] = Math.max(union[3], box[3]);
+      }
+    }
+    return union;
+  }
+}
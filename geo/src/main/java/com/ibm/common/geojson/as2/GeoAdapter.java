@@ -22,12 +22,13 @@
 package com.ibm.common.geojson.as2;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Iterables.getFirst;
 
 import java.lang.reflect.Type;
-import java.util.Arrays;
 import java.util.Map;
 
 import com.google.common.base.Enums;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -37,6 +38,7 @@ import com.google.gson.JsonSerializationContext;
 import com.ibm.common.activitystreams.internal.Adapter;
 import com.ibm.common.geojson.BoundingBox;
 import com.ibm.common.geojson.CRS;
+import com.ibm.common.geojson.Coordinates;
 import com.ibm.common.geojson.Feature;
 import com.ibm.common.geojson.FeatureCollection;
 import com.ibm.common.geojson.GeoMakers;
@@ -51,11 +53,28 @@ import com.ibm.common.geojson.MultiPolygon;
 import com.ibm.common.geojson.Point;
 import com.ibm.common.geojson.Polygon;
 import com.ibm.common.geojson.Position;
+import com.ibm.common.geojson.Simplifier;
 
 @SuppressWarnings("rawtypes")
 public class GeoAdapter 
   extends Adapter<GeoObject> {
 
+  private final Simplifier simplifier;
+  
+  public GeoAdapter() {
+    this(null);
+  }
+  
+  /**
+   * A GeoAdapter that simplifies LineStrings, MultiLineStrings, 
+   * Polygons and MultiPolygons as they are written. The geometries 
+   * themselves are not modified.
+   * @param simplifier Simplifier
+   */
+  public GeoAdapter(Simplifier simplifier) {
+    this.simplifier = simplifier;
+  }
+
   @Override
   public JsonElement serialize(
     GeoObject geo, 
@@ -66,6 +85,12 @@ public class GeoAdapter
     obj.add("type", context.serialize(geo.type(),GeoObject.Type.class));
     switch(geo.type()) {
     case POINT:
+      obj.add(
+        "coordinates", 
+        context.serialize(
+          getFirst((Point)geo, null), 
+          Iterable.class));
+      break;
     case MULTIPOINT:
     case LINESTRING:
     case MULTILINESTRING:
@@ -73,11 +98,19 @@ public class GeoAdapter
     case POLYGON:
       CoordinateGeometry c = 
         (CoordinateGeometry) geo;
+      Coordinates packed = c.packed();
+      if (packed != null && simplifier != null && geo.type() != GeoObject.Type.MULTIPOINT)
+        packed = simplifier.simplify(
+          packed, 
+          geo.type() == GeoObject.Type.POLYGON || 
+          geo.type() == GeoObject.Type.MULTIPOLYGON);
       obj.add(
         "coordinates", 
-        context.serialize(
-          c.coordinates(), 
-          Iterable.class));
+        packed != null ?
+          write(geo.type(), packed) :
+          context.serialize(
+            c.coordinates(), 
+            Iterable.class));
       break;
     case GEOMETRYCOLLECTION:
       GeometryCollection gc = 
@@ -119,7 +152,10 @@ public class GeoAdapter
     }
     if (geo.boundingBox() != null) {
       BoundingBox bb = geo.boundingBox();
-      obj.add("bbox", context.serialize(bb, Iterable.class));
+      JsonArray bbox = new JsonArray();
+      for (int n = 0; n < bb.size(); n++)
+        bbox.add(new JsonPrimitive(bb.get(n)));
+      obj.add("bbox", bbox);
     }
     if (geo.crs() != null) {
       CRS crs = geo.crs();
@@ -234,71 +270,24 @@ public class GeoAdapter
       } else if ("coordinates".equals(name)) {
         switch(et) {
         case LINESTRING: {
-          LineString.Builder lsb = (LineString.Builder) geo;
-          float[][] positions = context.deserialize(el, float[][].class);
-          boolean ring = ring(positions);
-          if (ring)
-            lsb.linearRing();
-          for (int n = 0; n < positions.length; n++) {
-            if (!ring || (ring && n < positions.length - 1))
-              lsb.add(toPosition(positions[n]));
-          }
+          Coordinates coords = readLine(el);
+          ((LineString.Builder) geo)
+            .linearRing(coords.partCount() > 0 && coords.closed(0))
+            .packed(coords);
           break;
         } 
-        case MULTIPOINT: {
-          MultiPoint.Builder lsb = (MultiPoint.Builder) geo;
-          float[][] positions = context.deserialize(el, float[][].class);
-          for (float[] pos : positions)
-            lsb.add(toPosition(pos));
+        case MULTIPOINT:
+          ((MultiPoint.Builder) geo).packed(readLine(el));
           break;
-        }
-        case MULTILINESTRING: {
-          MultiLineString.Builder mlb = (MultiLineString.Builder) geo;
-          float[][][] positions = context.deserialize(el, float[][][].class);
-          for (float[][] lines : positions) {
-            LineString.Builder lsb = 
-              GeoMakers.linestring();
-            boolean ring = ring(lines);
-            if (ring)
-              lsb.linearRing();
-            for (int n = 0; n < lines.length; n++) {
-              if (!ring || (ring && n < lines.length - 1))
-                lsb.add(toPosition(lines[n]));
-            }
-            for (float[] pos : lines)
-              lsb.add(toPosition(pos));
-            mlb.add(lsb);
-          }
+        case MULTILINESTRING:
+          ((MultiLineString.Builder) geo).packed(readParts(el));
           break;
-        }
-        case POLYGON: {
-          Polygon.Builder mlb = (Polygon.Builder) geo;
-          float[][][] positions = context.deserialize(el, float[][][].class);
-          for (float[][] lines : positions) {
-            LineString.Builder lsb = 
-              GeoMakers.linestring();
-            for (float[] pos : lines)
-              lsb.add(toPosition(pos));
-            mlb.add(lsb);
-          }
+        case POLYGON:
+          ((Polygon.Builder) geo).packed(readParts(el));
           break;
-        }
-        case MULTIPOLYGON: {
-          MultiPolygon.Builder mpb = (MultiPolygon.Builder) geo;
-          float[][][][] positions = context.deserialize(el, float[][][][].class);
-          for (float[][][] polygons : positions) {
-            Polygon.Builder pb = GeoMakers.polygon();
-            for (float[][] lines : polygons) {
-              LineString.Builder lsb = 
-                GeoMakers.linestring();
-              for (float[] pos : lines)
-                lsb.add(toPosition(pos));
-              pb.add(lsb);
-            }
-            mpb.add(pb);
-          }
+        case MULTIPOLYGON:
+          ((MultiPolygon.Builder) geo).packed(readGroups(el));
           break;
-        }
         case POINT:
           Point.Builder pb = (Point.Builder)geo;
           float[] position = context.deserialize(el, float[].class);
@@ -332,21 +321,94 @@ public class GeoAdapter
     return geo.get();
   }
 
-  private static boolean ring(float[][] line) {
-    return ring(first(line),last(line));
+  /**
+   * Write packed coordinates straight to the JSON tree, without 
+   * creating intermediate Position or LineString objects
+   */
+  private static JsonArray write(
+    GeoObject.Type type, 
+    Coordinates coords) {
+    JsonArray array = new JsonArray();
+    switch(type) {
+    case LINESTRING:
+    case MULTIPOINT:
+      for (int part = 0; part < coords.partCount(); part++)
+        writePositions(array, coords, part);
+      break;
+    case POLYGON:
+    case MULTILINESTRING:
+      for (int part = 0; part < coords.partCount(); part++)
+        array.add(writePositions(new JsonArray(), coords, part));
+      break;
+    case MULTIPOLYGON:
+      for (int group = 0; group < coords.groupCount(); group++) {
+        JsonArray polygon = new JsonArray();
+        int end = coords.groupEnd(group);
+        for (int part = coords.groupStart(group); part < end; part++)
+          polygon.add(writePositions(new JsonArray(), coords, part));
+        array.add(polygon);
+      }
+      break;
+    default:
+      break;
+    }
+    return array;
+  }
+  
+  private static JsonArray writePositions(
+    JsonArray array, 
+    Coordinates coords, 
+    int part) {
+    int end = coords.partEnd(part);
+    for (int p = coords.partStart(part); p < end; p++) {
+      JsonArray position = new JsonArray();
+      for (int d = 0, n = coords.dimensions(p); d < n; d++)
+        position.add(new JsonPrimitive(coords.get(p, d)));
+      array.add(position);
+    }
+    return array;
   }
   
-  private static boolean ring(float[] p1, float[] p2) {
-    return Arrays.equals(p1,p2);
+  /**
+   * Read an array of positions straight into a packed buffer
+   */
+  private static Coordinates readLine(JsonElement el) {
+    Coordinates.Builder coords = Coordinates.make();
+    readPositions(coords, el);
+    return coords.get();
   }
   
-  private static float[] first(float[][] line) {
-    if (line.length == 0) return null;
-    return line[0];
+  /**
+   * Read an array of arrays of positions, one part per inner array
+   */
+  private static Coordinates readParts(JsonElement el) {
+    Coordinates.Builder coords = Coordinates.make();
+    for (JsonElement line : el.getAsJsonArray())
+      readPositions(coords, line).endPart();
+    return coords.get();
   }
   
-  private static float[] last(float[][] line) {
-    if (line.length == 0) return null;
-    return line[line.length - 1];
+  /**
+   * Read the coordinates of a MultiPolygon, one group per polygon
+   */
+  private static Coordinates readGroups(JsonElement el) {
+    Coordinates.Builder coords = Coordinates.make();
+    for (JsonElement polygon : el.getAsJsonArray()) {
+      for (JsonElement ring : polygon.getAsJsonArray())
+        readPositions(coords, ring).endPart();
+      coords.endGroup();
+    }
+    return coords.get();
+  }
+  
+  private static Coordinates.Builder readPositions(
+    Coordinates.Builder coords, 
+    JsonElement el) {
+    for (JsonElement position : el.getAsJsonArray()) {
+      for (JsonElement value : position.getAsJsonArray())
+        coords.value(value.getAsFloat());
+      coords.endPosition();
+    }
+    return coords;
   }
 }
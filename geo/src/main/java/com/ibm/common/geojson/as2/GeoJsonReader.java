@@ -0,0 +1,363 @@
+/**
+ * Copyright 2013 OpenSocial Foundation
+ * Copyright 2013 International Business Machines Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Utility library for working with Activity Streams Actions
+ * Requires underscorejs.
+ *
+ * @author James M Snell (jasnell@us.ibm.com)
+ */
+package com.ibm.common.geojson.as2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Enums;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.ibm.common.geojson.BoundingBox;
+import com.ibm.common.geojson.CRS;
+import com.ibm.common.geojson.Coordinates;
+import com.ibm.common.geojson.Feature;
+import com.ibm.common.geojson.GeoMakers;
+import com.ibm.common.geojson.GeoObject;
+import com.ibm.common.geojson.Geometry;
+import com.ibm.common.geojson.GeometryCollection;
+import com.ibm.common.geojson.FeatureCollection;
+import com.ibm.common.geojson.LineString;
+import com.ibm.common.geojson.MultiLineString;
+import com.ibm.common.geojson.MultiPoint;
+import com.ibm.common.geojson.MultiPolygon;
+import com.ibm.common.geojson.Polygon;
+
+/**
+ * Reads GeoJSON token by token. Unlike GeoAdapter, no JSON tree or 
+ * nested float arrays are built: coordinates are written straight 
+ * into packed Coordinates as they are read, and the features of a 
+ * FeatureCollection can be read one at a time.
+ * 
+ * <pre>
+ *   GeoJsonReader reader = new GeoJsonReader(in);
+ *   try {
+ *     for (Feature feature : reader.features()) {
+ *       // ...
+ *     }
+ *   } finally {
+ *     reader.close();
+ *   }
+ * </pre>
+ * 
+ * Feature properties, CRS properties and other members are read as 
+ * plain JSON values (maps, lists, strings, numbers and booleans).
+ * 
+ * @author james
+ */
+@SuppressWarnings({"rawtypes","unchecked"})
+public final class GeoJsonReader 
+  implements Closeable {
+
+  private static final Gson gson = new Gson();
+  
+  private final JsonReader in;
+  private boolean typed; // features() has seen the collection's type
+  
+  public GeoJsonReader(Reader in) {
+    this.in = new JsonReader(in);
+  }
+  
+  public GeoJsonReader(InputStream in) {
+    this(new InputStreamReader(in, Charsets.UTF_8));
+  }
+  
+  /**
+   * Read a single GeoJSON object
+   * @return A
+   */
+  public <A extends GeoObject<?>>A read() {
+    try {
+      return (A)readObject();
+    } catch (IOException e) {
+      throw propagate(e);
+    }
+  }
+  
+  /**
+   * Lazily read the features of a FeatureCollection. Each feature is 
+   * parsed only when the iterator reaches it, so only one feature is 
+   * held in memory at a time. Members of the collection other than 
+   * "type" and "features" are skipped. The object read must be a
+   * FeatureCollection; if its type follows the features, this is 
+   * checked once they have been read. The returned Iterable can only 
+   * be iterated once.
+   * @return Iterable&lt;Feature>
+   */
+  public Iterable<Feature> features() {
+    return new Iterable<Feature>() {
+      boolean used;
+      public Iterator<Feature> iterator() {
+        checkArgument(!used, "The features can only be read once");
+        used = true;
+        try {
+          return featureIterator();
+        } catch (IOException e) {
+          throw propagate(e);
+        }
+      }
+    };
+  }
+  
+  private Iterator<Feature> featureIterator() throws IOException {
+    in.beginObject();
+    if (!readMembers(true)) {
+      endCollection();
+      return Lists.<Feature>newArrayList().iterator();
+    }
+    return new AbstractIterator<Feature>() {
+      protected Feature computeNext() {
+        try {
+          if (in.hasNext())
+            return (Feature)readObject();
+          in.endArray();
+          endCollection();
+          return endOfData();
+        } catch (IOException e) {
+          throw propagate(e);
+        }
+      }
+    };
+  }
+  
+  /**
+   * Read the members of the FeatureCollection, checking its type. If 
+   * features is true, stops at the start of the "features" array and 
+   * returns true; otherwise the remaining members are skipped.
+   */
+  private boolean readMembers(boolean features) throws IOException {
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if ("type".equals(name) && in.peek() == JsonToken.STRING) {
+        String type = in.nextString();
+        checkArgument(
+          "FeatureCollection".equalsIgnoreCase(type), 
+          "Not a FeatureCollection: %s", 
+          type);
+        typed = true;
+      } else if (features && "features".equals(name) && in.peek() == JsonToken.BEGIN_ARRAY) {
+        in.beginArray();
+        return true;
+      } else {
+        in.skipValue();
+      }
+    }
+    return false;
+  }
+  
+  private void endCollection() throws IOException {
+    readMembers(false);
+    in.endObject();
+    checkArgument(typed, "GeoJSON objects must have a type");
+  }
+  
+  public void close() throws IOException {
+    in.close();
+  }
+  
+  /**
+   * Read one GeoJSON object. The members may appear in any order, so 
+   * they are collected first and the object is built at the end.
+   */
+  private GeoObject readObject() throws IOException {
+    String type = null;
+    Coordinates.Builder coords = null;
+    BoundingBox bbox = null;
+    CRS crs = null;
+    Geometry<?,?> geometry = null;
+    List<Geometry<?,?>> geometries = null;
+    List<Feature> features = null;
+    Map<String,Object> properties = null;
+    Map<String,Object> other = Maps.newLinkedHashMap();
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        continue;
+      }
+      if ("type".equals(name)) {
+        type = in.nextString();
+      } else if ("coordinates".equals(name)) {
+        coords = Coordinates.make();
+        readCoordinates(coords);
+      } else if ("bbox".equals(name)) {
+        BoundingBox.Builder bb = new BoundingBox.Builder();
+        in.beginArray();
+        while (in.hasNext())
+          bb.add((float)in.nextDouble());
+        in.endArray();
+        bbox = bb.get();
+      } else if ("crs".equals(name)) {
+        crs = readCrs();
+      } else if ("geometry".equals(name)) {
+        geometry = (Geometry<?,?>)readObject();
+      } else if ("geometries".equals(name)) {
+        geometries = Lists.newArrayList();
+        in.beginArray();
+        while (in.hasNext())
+          geometries.add((Geometry<?,?>)readObject());
+        in.endArray();
+      } else if ("features".equals(name)) {
+        features = Lists.newArrayList();
+        in.beginArray();
+        while (in.hasNext())
+          features.add((Feature)readObject());
+        in.endArray();
+      } else if ("properties".equals(name)) {
+        properties = gson.fromJson(in, Map.class);
+      } else if ("id".equals(name)) {
+        other.put(name, in.nextString());
+      } else {
+        other.put(name, gson.fromJson(in, Object.class));
+      }
+    }
+    in.endObject();
+    
+    checkArgument(type != null, "GeoJSON objects must have a type");
+    GeoObject.Type et = 
+      Enums.getIfPresent(
+        GeoObject.Type.class, 
+        type.toUpperCase()).orNull();
+    checkArgument(et != null, "Unknown GeoJSON type: %s", type);
+    Coordinates packed = coords != null ? 
+      coords.get() : 
+      Coordinates.make().get();
+    GeoObject.Builder geo = null;
+    switch(et) {
+    case POINT:
+      checkArgument(packed.size() > 0, "A Point requires a position");
+      geo = GeoMakers.point().position(packed.position(packed.partStart(0)));
+      break;
+    case MULTIPOINT:
+      geo = GeoMakers.multipoint().packed(packed);
+      break;
+    case LINESTRING:
+      geo = GeoMakers.linestring()
+        .linearRing(packed.partCount() > 0 && packed.closed(0))
+        .packed(packed);
+      break;
+    case MULTILINESTRING:
+      geo = GeoMakers.multiLineString().packed(packed);
+      break;
+    case POLYGON:
+      geo = GeoMakers.polygon().packed(packed);
+      break;
+    case MULTIPOLYGON:
+      geo = GeoMakers.multiPolygon().packed(packed);
+      break;
+    case GEOMETRYCOLLECTION:
+      GeometryCollection.Builder gcb = GeoMakers.geometryCollection();
+      if (geometries != null)
+        gcb.add(geometries);
+      geo = gcb;
+      break;
+    case FEATURE:
+      Feature.Builder fb = GeoMakers.feature().geometry(geometry);
+      if (properties != null)
+        for (Map.Entry<String,Object> entry : properties.entrySet())
+          if (entry.getValue() != null)
+            fb.property(entry.getKey(), entry.getValue());
+      geo = fb;
+      break;
+    case FEATURECOLLECTION:
+      FeatureCollection.Builder fcb = GeoMakers.featureCollection();
+      if (features != null)
+        fcb.add(features);
+      geo = fcb;
+      break;
+    }
+    if (bbox != null)
+      geo.boundingBox(bbox);
+    if (crs != null)
+      geo.crs(crs);
+    for (Map.Entry<String,Object> entry : other.entrySet())
+      geo.set(entry.getKey(), entry.getValue());
+    return geo.get();
+  }
+  
+  /**
+   * Read a (possibly nested) coordinates array into the packed 
+   * buffer. Returns the nesting depth of the array just read: 1 for 
+   * a position, 2 for a line or ring, 3 for a polygon's rings, or 0
+   * for an array that contains no positions. Lines and rings end a 
+   * part, polygons end a group.
+   */
+  private int readCoordinates(Coordinates.Builder coords) throws IOException {
+    in.beginArray();
+    if (in.peek() == JsonToken.END_ARRAY) {
+      // an empty geometry, or an empty part of one, adds nothing
+      in.endArray();
+      return 0;
+    }
+    if (in.peek() == JsonToken.NUMBER) {
+      while (in.hasNext())
+        coords.value((float)in.nextDouble());
+      in.endArray();
+      coords.endPosition();
+      return 1;
+    }
+    int depth = 0;
+    while (in.hasNext())
+      depth = Math.max(depth, readCoordinates(coords));
+    in.endArray();
+    if (depth == 0)
+      return 0;
+    if (depth == 1)
+      coords.endPart();
+    else if (depth == 2)
+      coords.endGroup();
+    return depth + 1;
+  }
+  
+  private CRS readCrs() throws IOException {
+    CRS.Builder cb = new CRS.Builder();
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if ("type".equals(name) && in.peek() == JsonToken.STRING) {
+        cb.type(in.nextString());
+      } else if ("properties".equals(name) && in.peek() == JsonToken.BEGIN_OBJECT) {
+        Map<String,Object> properties = gson.fromJson(in, Map.class);
+        cb.set(properties);
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endObject();
+    return cb.get();
+  }
+}
@@ -31,6 +31,7 @@ import com.ibm.common.geojson.AS1Position;
 import com.ibm.common.geojson.Address;
 import com.ibm.common.geojson.GeoObject;
 import com.ibm.common.geojson.Place;
+import com.ibm.common.geojson.Simplifier;
 
 /**
  * Enables the use of the GeoJSON extensions with Activity Streams 2.0
@@ -44,6 +45,14 @@ import com.ibm.common.geojson.Place;
  *   IO io = IO.makeDefault(GeoModule.instance);
  *   
  * </pre>
+ * 
+ * To reduce the size of geometries written for a given map zoom 
+ * level or tolerance, use a simplifying module:
+ * 
+ * <pre>
+ *   IO io = IO.makeDefault(
+ *     GeoModule.simplifying(Simplifier.forZoom(10)));
+ * </pre>
  * @author james
  *
  */
@@ -52,7 +61,23 @@ public final class GeoModule
   implements Module {
 
   public static final Module instance = 
-    new GeoModule();
+    new GeoModule(null);
+  
+  /**
+   * A GeoModule that simplifies geometries as they are written 
+   * (see Simplifier). Reading is unaffected.
+   * @param simplifier Simplifier
+   * @return Module
+   */
+  public static Module simplifying(Simplifier simplifier) {
+    return new GeoModule(simplifier);
+  }
+  
+  private final Simplifier simplifier;
+  
+  private GeoModule(Simplifier simplifier) {
+    this.simplifier = simplifier;
+  }
   
   public static final Model place = 
     Schema.object.template()
@@ -98,7 +123,7 @@ public final class GeoModule
     final GeoObjectAdapter base = 
       new GeoObjectAdapter(schema);
     final GeoAdapter geo = 
-      new GeoAdapter();
+      new GeoAdapter(simplifier);
     builder.hierarchicalAdapter(Place.class, base)
            .hierarchicalAdapter(Address.class, base)
            .hierarchicalAdapter(AS1Position.class, base)
@@ -0,0 +1,456 @@
+package com.ibm.common.geojson.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.gson.JsonParser;
+import com.ibm.common.activitystreams.IO;
+import com.ibm.common.activitystreams.Makers;
+import com.ibm.common.geojson.BoundingBox;
+import com.ibm.common.geojson.Coordinates;
+import com.ibm.common.geojson.FeatureCollection;
+import com.ibm.common.geojson.GeoMakers;
+import com.ibm.common.geojson.GeoObject;
+import com.ibm.common.geojson.Geohash;
+import com.ibm.common.geojson.GeohashIndex;
+import com.ibm.common.geojson.GeometryCollection;
+import com.ibm.common.geojson.LineString;
+import com.ibm.common.geojson.MultiLineString;
+import com.ibm.common.geojson.MultiPoint;
+import com.ibm.common.geojson.MultiPolygon;
+import com.ibm.common.geojson.Polygon;
+import com.ibm.common.geojson.Position;
+import com.ibm.common.geojson.PreparedPolygon;
+import com.ibm.common.geojson.Simplifier;
+import com.ibm.common.geojson.Spatial;
+import com.ibm.common.geojson.SpatialIndex;
+import com.ibm.common.geojson.as2.GeoJsonReader;
+import com.ibm.common.geojson.as2.GeoModule;
+
+public final class GeoTest {
+
+  private static final IO io = IO.makeDefault(GeoModule.instance);
+
+  @Test
+  public void packedCoordinatesTest() {
+    Coordinates coords =
+      Coordinates.make()
+        .position(1, 2)
+        .position(3, 4, Float.NaN)
+        .position(5, 6, 7)
+        .get();
+    assertEquals(3, coords.stride());
+    // a NaN value is kept, padding is not reported
+    assertEquals(2, coords.dimensions(0));
+    assertEquals(3, coords.dimensions(1));
+    assertEquals(3, coords.dimensions(2));
+    Position position = coords.position(1);
+    assertTrue(position.hasAltitude());
+    assertTrue(Float.isNaN(position.altitude()));
+    assertFalse(coords.position(0).hasAltitude());
+    assertEquals(3, coords.part(0).positions().size());
+
+    Coordinates ring =
+      Coordinates.make()
+        .position(0, 0)
+        .position(0, 10)
+        .position(10, 10)
+        .closeRing()
+        .get();
+    assertEquals(4, ring.size());
+    assertTrue(ring.closed(0));
+  }
+
+  @Test
+  public void boundingBoxSerializationTest() throws Exception {
+    BoundingBox box =
+      new BoundingBox.Builder()
+        .add(1, 2, 3, 4)
+        .get();
+    BoundingBox copy = roundTrip(box);
+    assertEquals(4, copy.size());
+    assertEquals(3f, copy.get(2), 0f);
+    // the serialized form is unchanged from earlier releases
+    ObjectStreamClass form =
+      ObjectStreamClass.lookup(
+        Class.forName(BoundingBox.class.getName() + "$SerializedForm"));
+    assertEquals(-2060301713159936285L, form.getSerialVersionUID());
+    assertEquals(ImmutableList.class, form.getField("bounds").getType());
+  }
+
+  @Test
+  public void boundingBoxTest() {
+    // a single position is both the minimum and the maximum
+    assertArrayEquals(
+      new float[] {1, 2, 1, 2},
+      GeoMakers.point(1, 2).withBoundingBox().boundingBox().toArray(), 
+      0f);
+
+    GeometryCollection geometries =
+      GeoMakers.geometryCollection()
+        .add(
+          GeoMakers.point(1, 2),
+          GeoMakers.linestring().add(-3, 5).add(4, -6).get())
+        .get();
+    assertArrayEquals(
+      new float[] {-3, -6, 4, 5},
+      geometries.withBoundingBox().boundingBox().toArray(),
+      0f);
+
+    FeatureCollection features =
+      GeoMakers.featureCollection()
+        .add(
+          GeoMakers.feature().geometry(GeoMakers.point(7, -1)).get(),
+          GeoMakers.feature().geometry(geometries).get())
+        .get();
+    assertArrayEquals(
+      new float[] {-3, -6, 7, 5},
+      features.withBoundingBox().boundingBox().toArray(),
+      0f);
+
+    // only positions with an altitude contribute to the z range
+    GeometryCollection mixed =
+      GeoMakers.geometryCollection()
+        .add(
+          GeoMakers.linestring().add(0, 0).add(2, 3, 10).get(),
+          GeoMakers.point(-1, 1, -4),
+          GeoMakers.point(5, 5))
+        .get();
+    assertArrayEquals(
+      new float[] {-1, 0, -4, 5, 5, 10},
+      mixed.withBoundingBox().boundingBox().toArray(),
+      0f);
+    assertArrayEquals(
+      new float[] {0, 0, 10, 2, 3, 10},
+      GeoMakers.linestring().add(0, 0).add(2, 3, 10).get()
+        .withBoundingBox().boundingBox().toArray(),
+      0f);
+  }
+
+  @Test
+  public void readerTest() throws Exception {
+    Polygon polygon = read(
+      "{\"type\":\"Polygon\",\"coordinates\":[" +
+        "[[0,0],[0,10],[10,10],[10,0],[0,0]]," +
+        "[[2,2],[2,4],[4,4],[4,2],[2,2]]]}");
+    assertEquals(2, Iterables.size(polygon));
+    assertEquals(5, Iterables.size(Iterables.get(polygon, 1)));
+
+    // written by the GeoJSON adapter and read back
+    String json =
+      io.write(Makers.object().set("location", polygon).get());
+    Polygon copy = read(
+      new JsonParser().parse(json)
+        .getAsJsonObject().get("location").toString());
+    assertEquals(polygon.packed().size(), copy.packed().size());
+    assertEquals(polygon.packed().partCount(), copy.packed().partCount());
+    assertEquals(
+      ImmutableList.copyOf(Iterables.get(polygon, 1)).toString(),
+      ImmutableList.copyOf(Iterables.get(copy, 1)).toString());
+
+    // empty coordinates are an empty geometry
+    MultiPoint empty =
+      read("{\"type\":\"MultiPoint\",\"coordinates\":[]}");
+    assertEquals(0, Iterables.size(empty));
+    MultiLineString none =
+      read("{\"type\":\"MultiLineString\",\"coordinates\":[[]]}");
+    assertEquals(0, Iterables.size(none));
+  }
+
+  @Test
+  public void featuresTest() throws Exception {
+    String features =
+      "\"features\":[" +
+        "{\"type\":\"Feature\",\"properties\":{\"n\":1}," +
+          "\"geometry\":{\"type\":\"Point\",\"coordinates\":[1,2]}}," +
+        "{\"type\":\"Feature\",\"properties\":{\"n\":2}}]";
+    assertEquals(2, Iterables.size(
+      reader("{\"type\":\"FeatureCollection\"," + features + "}")
+        .features()));
+    // the type may follow the features
+    assertEquals(2, Iterables.size(
+      reader("{" + features + ",\"type\":\"FeatureCollection\"}")
+        .features()));
+    try {
+      Iterables.size(
+        reader("{\"type\":\"Feature\"," + features + "}").features());
+      fail();
+    } catch (IllegalArgumentException e) {}
+    try {
+      Iterables.size(reader("{" + features + "}").features());
+      fail();
+    } catch (IllegalArgumentException e) {}
+  }
+
+  @Test
+  public void preparedPolygonTest() {
+    Polygon square =
+      GeoMakers.polygon()
+        .packed(
+          Coordinates.make()
+            .position(0, 0).position(0, 10)
+            .position(10, 10).position(10, 0)
+            .closeRing().endPart()
+            .position(4, 4).position(4, 6)
+            .position(6, 6).position(6, 4)
+            .closeRing().endPart()
+            .get())
+        .get();
+    PreparedPolygon prepared = PreparedPolygon.of(square);
+    // inside the outer ring and inside the hole
+    for (float[] xy : new float[][] {{2, 2}, {5, 5}, {12, 5}, {8, 5}}) {
+      assertEquals(
+        Spatial.contains(square, xy[0], xy[1]),
+        prepared.contains(xy[0], xy[1]));
+    }
+    assertTrue(prepared.contains(2, 2));
+    assertFalse(prepared.contains(5, 5));
+
+    // the positions of a MultiPoint are not joined into segments
+    MultiPoint outside =
+      GeoMakers.multipoint().add(-5, 5).add(15, 5).get();
+    assertFalse(Spatial.intersects(square, outside));
+    assertFalse(prepared.intersects(outside));
+    LineString across =
+      GeoMakers.linestring().add(-5, 5).add(15, 5).get();
+    assertTrue(Spatial.intersects(square, across));
+    assertTrue(prepared.intersects(across));
+
+    // a polygon around the hole has every position in the donut, but 
+    // the hole is not part of the container
+    Polygon ring =
+      GeoMakers.polygon()
+        .packed(
+          Coordinates.make()
+            .position(3, 3).position(3, 7)
+            .position(7, 7).position(7, 3)
+            .closeRing().endPart()
+            .get())
+        .get();
+    Polygon corner =
+      GeoMakers.polygon()
+        .packed(
+          Coordinates.make()
+            .position(1, 1).position(1, 3)
+            .position(3, 3).position(3, 1)
+            .closeRing().endPart()
+            .get())
+        .get();
+    Polygon apart =
+      GeoMakers.polygon()
+        .packed(
+          Coordinates.make()
+            .position(20, 20).position(20, 22)
+            .position(22, 22).position(22, 20)
+            .closeRing().endPart()
+            .get())
+        .get();
+    MultiPolygon donuts = 
+      GeoMakers.multiPolygon().add(apart, square).get();
+    assertFalse(Spatial.contains(square, ring));
+    assertFalse(prepared.contains(ring));
+    assertFalse(Spatial.contains(donuts, ring));
+    assertFalse(PreparedPolygon.of(donuts).contains(ring));
+    assertTrue(Spatial.contains(square, corner));
+    assertTrue(prepared.contains(corner));
+    assertTrue(PreparedPolygon.of(donuts).contains(corner));
+  }
+
+  @Test
+  public void preparedCombTest() {
+    // every tooth spans the full height of the polygon
+    int teeth = 2000;
+    Coordinates.Builder ring =
+      Coordinates.make().position(0, 0);
+    for (int n = 0; n < teeth; n++)
+      ring.position(2 * n, 100)
+          .position(2 * n + 1, 100)
+          .position(2 * n + 1, 1)
+          .position(2 * n + 2, 1);
+    ring.position(2 * teeth, 0).closeRing().endPart();
+    Polygon comb = GeoMakers.polygon().packed(ring.get()).get();
+    PreparedPolygon prepared = PreparedPolygon.of(comb);
+    assertEquals(4 * teeth + 2, prepared.edgeCount());
+    for (int n = 0; n < teeth; n += 97) {
+      assertTrue(prepared.contains(2 * n + 0.5f, 50));
+      assertFalse(prepared.contains(2 * n + 1.5f, 50));
+    }
+    Random random = new Random(1);
+    for (int n = 0; n < 500; n++) {
+      float x = random.nextFloat() * 2 * teeth;
+      float y = random.nextFloat() * 100;
+      assertEquals(
+        Spatial.contains(comb, x, y), 
+        prepared.contains(x, y));
+    }
+  }
+
+  @Test
+  public void geohashTest() {
+    long hash = Geohash.encode(42.6, -5.6, 5);
+    assertEquals("ezs42", Geohash.toString(hash, 5));
+    assertEquals(hash, Geohash.parse("ezs42"));
+    BoundingBox cell = Geohash.decode(hash, 5);
+    assertTrue(cell.get(0) <= 42.6f && 42.6f <= cell.get(2));
+    assertTrue(cell.get(1) <= -5.6f && -5.6f <= cell.get(3));
+  }
+
+  @Test
+  public void geohashIndexTest() {
+    GeohashIndex index = GeohashIndex.make().precision(6).get();
+    assertTrue(index.put("a", 42.6f, -5.6f));
+    assertTrue(index.put("b", 42.601f, -5.601f));
+    assertEquals(
+      ImmutableSet.of("a", "b"),
+      ImmutableSet.copyOf(index.near(42.6f, -5.6f, 500)));
+
+    // putting an ID again moves it out of its old cell
+    assertFalse(index.put("a", 48.85f, 2.35f));
+    assertEquals(2, index.size());
+    assertEquals(
+      ImmutableList.of("b"), index.near(42.6f, -5.6f, 500));
+    assertFalse(
+      index.get(Geohash.encode(42.6, -5.6, 6)).contains("a"));
+    assertEquals(
+      ImmutableList.of("a"), index.near(48.85f, 2.35f, 500));
+
+    assertFalse(index.remove("a", 42.6f, -5.6f));
+    assertTrue(index.remove("a"));
+    assertEquals(1, index.size());
+    assertTrue(index.near(48.85f, 2.35f, 500).isEmpty());
+
+    // putting an ID again within its cell only updates its position
+    long cell = Geohash.encode(42.601, -5.601, 6);
+    for (int n = 0; n < 10000; n++)
+      assertTrue(index.put("d" + n, 42.601f, -5.601f));
+    assertFalse(index.put("b", 42.6011f, -5.6011f));
+    assertEquals(cell, Geohash.encode(42.6011, -5.6011, 6));
+    assertEquals(10001, index.size());
+    assertEquals(10001, index.get(cell).size());
+    assertEquals(1, Iterables.frequency(index.get(cell), "b"));
+  }
+
+  @Test
+  public void spatialIndexTest() {
+    SpatialIndex.Builder<Integer> builder = SpatialIndex.make();
+    Random random = new Random(2);
+    float[][] points = new float[1000][];
+    for (int n = 0; n < points.length; n++) {
+      points[n] = new float[] {
+        random.nextFloat() * 100, random.nextFloat() * 100};
+      builder.add(points[n][0], points[n][1], points[n][0], points[n][1], n);
+    }
+    SpatialIndex<Integer> index = builder.get();
+    assertEquals(points.length, index.size());
+
+    // nearest agrees with the distances computed directly
+    List<Integer> nearest = index.nearest(50, 50, 10);
+    assertEquals(10, nearest.size());
+    double last = 0;
+    for (int n : nearest) {
+      double d = Math.hypot(points[n][0] - 50, points[n][1] - 50);
+      assertTrue(d >= last);
+      last = d;
+    }
+    int closer = 0;
+    for (float[] point : points)
+      if (Math.hypot(point[0] - 50, point[1] - 50) < last)
+        closer++;
+    assertEquals(9, closer);
+
+    // within finds exactly the points inside the box
+    Set<Integer> expected = new HashSet<Integer>();
+    for (int n = 0; n < points.length; n++)
+      if (points[n][0] >= 20 && points[n][0] <= 40 &&
+          points[n][1] >= 60 && points[n][1] <= 90)
+        expected.add(n);
+    assertEquals(
+      expected,
+      new HashSet<Integer>(index.within(20, 60, 40, 90)));
+    assertTrue(index.within(200, 200, 300, 300).isEmpty());
+  }
+
+  @Test
+  public void simplifyTest() {
+    // a straight line with small noise and one large spike
+    Coordinates.Builder builder = Coordinates.make();
+    for (int n = 0; n <= 100; n++)
+      builder.position(n, n == 50 ? 20 : (n % 2) * 0.1f);
+    Coordinates line = builder.get();
+
+    Coordinates exact =
+      Simplifier.douglasPeucker(0).simplify(line, false);
+    assertEquals(line.size(), exact.size());
+
+    float tolerance = 0.5f;
+    Coordinates simple =
+      Simplifier.douglasPeucker(tolerance).simplify(line, false);
+    assertTrue(simple.size() < line.size());
+    assertTrue(simple.size() >= 4);
+    // every dropped position lies within the tolerance of the result
+    for (int p = 0; p < line.size(); p++)
+      assertTrue(
+        distance(simple, line.get(p, 0), line.get(p, 1)) <= tolerance);
+    assertEquals(0f, simple.get(0, 0), 0f);
+    assertEquals(100f, simple.get(simple.size() - 1, 0), 0f);
+
+    Coordinates coarse =
+      Simplifier.douglasPeucker(50).simplify(line, false);
+    assertEquals(2, coarse.size());
+  }
+
+  /**
+   * The distance from a position to the nearest segment of a line
+   */
+  private static double distance(Coordinates line, float x, float y) {
+    double min = Double.POSITIVE_INFINITY;
+    for (int p = 0; p + 1 < line.size(); p++) {
+      double ax = line.get(p, 0), ay = line.get(p, 1);
+      double dx = line.get(p + 1, 0) - ax, dy = line.get(p + 1, 1) - ay;
+      double t = ((x - ax) * dx + (y - ay) * dy) / (dx * dx + dy * dy);
+      t = Math.max(0, Math.min(1, t));
+      min = Math.min(min, Math.hypot(ax + t * dx - x, ay + t * dy - y));
+    }
+    return min;
+  }
+
+  private static GeoJsonReader reader(String json) {
+    return new GeoJsonReader(new StringReader(json));
+  }
+
+  private static <A extends GeoObject<?>>A read(String json) {
+    return reader(json).<A>read();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T roundTrip(T obj) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(out);
+    oos.writeObject(obj);
+    oos.close();
+    ObjectInputStream ois =
+      new ObjectInputStream(
+        new ByteArrayInputStream(out.toByteArray()));
+    return (T)ois.readObject();
+  }
+
+}
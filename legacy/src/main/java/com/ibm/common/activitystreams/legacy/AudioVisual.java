@@ -98,6 +98,11 @@ public final class AudioVisual
   
   // Java Serialization Support
   
+  @Override
+  protected AudioVisual.Builder newBuilder() {
+    return new Builder();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
@@ -274,6 +274,11 @@ public final class Binary
   
   // Java Serialization Support
  
+  @Override
+  protected Binary.Builder newBuilder() {
+    return new Builder();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
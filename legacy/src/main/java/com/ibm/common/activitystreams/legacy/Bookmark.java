@@ -71,6 +71,11 @@ public class Bookmark
   
   // Java Serialization Support
   
+  @Override
+  protected Bookmark.Builder newBuilder() {
+    return new Builder();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
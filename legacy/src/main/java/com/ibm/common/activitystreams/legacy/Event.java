@@ -213,6 +213,11 @@ public class Event
   
   // Java Serialization Support
   
+  @Override
+  protected Event.Builder newBuilder() {
+    return new Builder();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
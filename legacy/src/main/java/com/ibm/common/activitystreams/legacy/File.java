@@ -90,6 +90,11 @@ public class File
   
   // Java Serialization Support
   
+  @Override
+  protected File.Builder newBuilder() {
+    return new Builder();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
@@ -89,6 +89,11 @@ public class Issue
   
   // Java Serialization Support `
   
+  @Override
+  protected Issue.Builder newBuilder() {
+    return new Builder();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
@@ -81,6 +81,11 @@ public class Membership extends ASObject {
   
   // Java Serialization Support
   
+  @Override
+  protected Membership.Builder newBuilder() {
+    return new Builder();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
@@ -120,6 +120,11 @@ public class Question extends ASObject {
   
   // Java Serialization Support
   
+  @Override
+  protected Question.Builder newBuilder() {
+    return new Builder();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
@@ -334,6 +334,11 @@ public class Task
   
   // Java Serialization Support
   
+  @Override
+  protected Task.Builder newBuilder() {
+    return new Builder();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
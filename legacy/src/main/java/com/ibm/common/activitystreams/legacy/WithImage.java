@@ -77,6 +77,11 @@ public class WithImage extends ASObject {
   
   // Java Serialization Support
   
+  @Override
+  protected WithImage.Builder newBuilder() {
+    return new Builder();
+  }
+  
   Object writeReplace() throws java.io.ObjectStreamException {
     return new SerializedForm(this);
   }
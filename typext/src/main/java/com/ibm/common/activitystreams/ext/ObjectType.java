@@ -21,4 +21,9 @@ public final class ObjectType
   private ObjectType(Builder builder) {
     super(builder);
   }
+  
+  @Override
+  protected Builder newBuilder() {
+    return new Builder();
+  }
 }
@@ -22,4 +22,9 @@ public final class Verb
     super(builder);
   }
   
+  @Override
+  protected Builder newBuilder() {
+    return new Builder();
+  }
+  
 }
@@ -0,0 +1,30 @@
+package com.ibm.common.activitystreams.registry;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.ibm.common.activitystreams.TypeValue;
+
+/**
+ * A ResolutionStrategy that can serve already resolved TypeValues 
+ * without blocking and can resolve several TypeValues together.
+ */
+public interface BatchResolutionStrategy 
+  extends ResolutionStrategy {
+
+  /**
+   * Returns the resolved TypeValue if it is immediately available,
+   * or null if resolving it would require a load
+   */
+  TypeValue getIfPresent(TypeValue tv);
+  
+  /**
+   * Returns a Callable that resolves all of the given TypeValues. 
+   * The TypeValues are typically all defined by the same document.
+   * TypeValues that cannot be resolved are omitted from the returned
+   * map; TypeValueRegistry resolves those individually, so that the 
+   * failure of one does not fail the others and its cause is kept.
+   */
+  Callable<Map<TypeValue,TypeValue>> resolverFor(Iterable<TypeValue> tvs);
+  
+}
@@ -1,20 +1,48 @@
 package com.ibm.common.activitystreams.registry;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Throwables.propagate;
+import static com.google.common.util.concurrent.MoreExecutors.getExitingExecutorService;
+import static com.google.common.util.concurrent.MoreExecutors.getExitingScheduledExecutorService;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.base.Supplier;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.AtomicLongMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.ibm.common.activitystreams.ASObject;
 import com.ibm.common.activitystreams.Makers;
 import com.ibm.common.activitystreams.TypeValue;
 import com.ibm.common.activitystreams.ValueType;
+import com.ibm.common.activitystreams.util.Sizes;
 
 public abstract class CachingResolutionStrategy 
-  implements ResolutionStrategy {
+  implements BatchResolutionStrategy {
 
   @SuppressWarnings("unchecked")
   public static abstract class AbstractBuilder
@@ -22,36 +50,229 @@ public abstract class CachingResolutionStrategy
     implements Supplier<C> {
 
     private boolean silentfail = false;
-    private final CacheBuilder<Object,Object> cache = 
-      CacheBuilder.newBuilder()
-        .expireAfterAccess(10, TimeUnit.MINUTES)
-        .expireAfterWrite(10, TimeUnit.MINUTES)
-        .maximumSize(100)
-        .initialCapacity(50);
+    private long maximumSize = 100;
+    private long maximumWeight = -1;
+    private DiskCache disk;
+    private long refreshAfter = -1;
+    private long hardExpiry = TimeUnit.HOURS.toMillis(1);
+    private double refreshJitter = 0.2;
+    private ScheduledExecutorService refreshExecutor;
+    private File hotSetFile;
+    private int hotSetSize;
+    private final ImmutableList.Builder<Receiver<CacheBuilder<Object,Object>>> customizers = 
+      ImmutableList.builder();
 
     public B silentfail() {
       this.silentfail = true;
       return (B)this;
     }
     
+    /**
+     * Bound the cache by number of entries (default 100)
+     */
+    public B maximumSize(long size) {
+      this.maximumSize = size;
+      this.maximumWeight = -1;
+      return (B)this;
+    }
+    
+    /**
+     * Bound the cache by the estimated memory size, in bytes, of the 
+     * cached type values rather than by number of entries
+     */
+    public B maximumWeight(long bytes) {
+      this.maximumWeight = bytes;
+      return (B)this;
+    }
+    
+    /**
+     * Use the given DiskCache as a persistent second tier. Values are 
+     * read from the disk cache before being fetched, and fetched
+     * values are written to it.
+     */
+    public B diskCache(DiskCache disk) {
+      this.disk = disk;
+      return (B)this;
+    }
+    
+    /**
+     * Refresh entries asynchronously once they are older than the given
+     * duration. Until the refresh completes, the existing value 
+     * continues to be served. If refreshing fails, the existing value is
+     * retained until the hard expiry is reached.
+     */
+    public B refreshAfterWrite(long duration, TimeUnit unit) {
+      this.refreshAfter = unit.toMillis(duration);
+      return (B)this;
+    }
+    
+    /**
+     * The maximum age of an entry when refreshAfterWrite is used. 
+     * Entries that could not be refreshed within this period are 
+     * evicted. Default is one hour.
+     */
+    public B hardExpiry(long duration, TimeUnit unit) {
+      this.hardExpiry = unit.toMillis(duration);
+      return (B)this;
+    }
+    
+    /**
+     * Each refresh is delayed by a random amount of up to the given 
+     * fraction of the refresh interval, so that caches populated at 
+     * the same time do not reload at the same time. Default is 0.2
+     */
+    public B refreshJitter(double fraction) {
+      checkArgument(fraction >= 0 && fraction <= 1);
+      this.refreshJitter = fraction;
+      return (B)this;
+    }
+    
+    /**
+     * The executor on which refreshes are performed. By default a 
+     * dedicated single thread is used.
+     */
+    public B refreshExecutor(ScheduledExecutorService executor) {
+      this.refreshExecutor = executor;
+      return (B)this;
+    }
+    
+    /**
+     * On shutdown, write the IDs of the size most frequently resolved 
+     * entries to the given file, most frequent first. A HotSetPreloader 
+     * reading the same file replays them on the next start.
+     */
+    public B hotSet(File file, int size) {
+      this.hotSetFile = file;
+      this.hotSetSize = size;
+      return (B)this;
+    }
+    
+    /**
+     * Customize the cache. The size bound is applied before the 
+     * receiver is called, use maximumSize or maximumWeight to change it.
+     */
     public B customizeCache(Receiver<CacheBuilder<Object,Object>> receiver) {
       if (receiver != null)
-        receiver.receive(cache);
+        customizers.add(receiver);
       return (B)this;
     }
+    
+    CacheBuilder<Object,Object> cacheBuilder() {
+      CacheBuilder<Object,Object> cache = 
+        CacheBuilder.newBuilder()
+          .expireAfterAccess(10, TimeUnit.MINUTES)
+          .initialCapacity(50)
+          .recordStats();
+      if (refreshAfter > 0)
+        cache.refreshAfterWrite(refreshAfter, TimeUnit.MILLISECONDS)
+             .expireAfterWrite(Math.max(hardExpiry, refreshAfter), TimeUnit.MILLISECONDS);
+      else
+        cache.expireAfterWrite(10, TimeUnit.MINUTES);
+      if (maximumWeight >= 0)
+        cache.maximumWeight(maximumWeight)
+             .weigher(Sizes.weigher());
+      else 
+        cache.maximumSize(maximumSize);
+      for (Receiver<CacheBuilder<Object,Object>> receiver : customizers.build())
+        receiver.receive(cache);
+      return cache;
+    }
 
   }
   
   private final LoadingCache<TypeValue,TypeValue> cache;
   private final boolean silentfail;
+  private final DiskCache disk;
+  private final File hotSetFile;
+  private final int hotSetSize;
+  private final AtomicLongMap<TypeValue> hits;
+  private final AtomicBoolean shutdown = 
+    new AtomicBoolean();
+  private volatile ExecutorService replayExecutor;
   
   protected LoadingCache<TypeValue,TypeValue> cache() {
     return cache;
   }
   
   CachingResolutionStrategy(AbstractBuilder<?,?> builder) {
+    this.disk = builder.disk;
     this.cache = initCache(builder);
     this.silentfail = builder.silentfail;
+    this.hotSetFile = builder.hotSetFile;
+    this.hotSetSize = builder.hotSetSize;
+    this.hits = hotSetFile != null ? 
+      AtomicLongMap.<TypeValue>create() : null;
+  }
+  
+  /**
+   * Hit, miss, load time and eviction statistics of the cache
+   */
+  public CacheStats stats() {
+    return cache.stats();
+  }
+  
+  /**
+   * Returns the IDs of up to size cached entries, most frequently 
+   * resolved first. Access frequency is only tracked when a hot set
+   * file has been configured, otherwise the list is empty.
+   */
+  public List<String> hotSet(int size) {
+    if (hits == null)
+      return ImmutableList.of();
+    List<Map.Entry<TypeValue,Long>> entries = 
+      Lists.newArrayList();
+    for (Map.Entry<TypeValue,Long> entry : hits.asMap().entrySet())
+      if (cache.getIfPresent(entry.getKey()) != null)
+        entries.add(entry);
+    Collections.sort(entries, BY_HITS);
+    ImmutableList.Builder<String> ids = 
+      ImmutableList.builder();
+    for (Map.Entry<TypeValue,Long> entry : 
+      entries.subList(0, Math.min(size, entries.size())))
+      ids.add(entry.getKey().id());
+    return ids.build();
+  }
+  
+  private static final Comparator<Map.Entry<TypeValue,Long>> BY_HITS = 
+    new Comparator<Map.Entry<TypeValue,Long>>() {
+      public int compare(
+        Map.Entry<TypeValue,Long> a, 
+        Map.Entry<TypeValue,Long> b) {
+        return b.getValue().compareTo(a.getValue());
+      }
+    };
+  
+  private void recordHit(TypeValue tv) {
+    if (hits == null) return;
+    hits.incrementAndGet(tv);
+    // forget entries that have since been evicted
+    if (hits.size() > 2 * cache.size() + 1000)
+      for (TypeValue key : hits.asMap().keySet())
+        if (cache.getIfPresent(key) == null)
+          hits.remove(key);
+  }
+  
+  /**
+   * Resolve the given TypeValues in the background, one at a time and
+   * in order, skipping those that are already cached
+   */
+  void replay(final TypeValue tv) {
+    ExecutorService executor = replayExecutor;
+    if (executor == null) {
+      synchronized(this) {
+        if ((executor = replayExecutor) == null)
+          replayExecutor = executor = 
+            getExitingExecutorService(
+              (ThreadPoolExecutor)Executors.newFixedThreadPool(1));
+      }
+    }
+    executor.execute(new Runnable() {
+      public void run() {
+        try {
+          cache.get(tv);
+        } catch (Throwable t) {}
+      }
+    });
   }
   
   protected boolean silentfail() {
@@ -59,13 +280,245 @@ public abstract class CachingResolutionStrategy
   }
   
   private LoadingCache<TypeValue,TypeValue> initCache(AbstractBuilder<?,?> builder) {
-    return builder.cache.build(loader());
+    CacheLoader<TypeValue,TypeValue> loader = loader();
+    CacheLoader<TypeValue,TypeValue> reloader = loader;
+    if (disk != null) {
+      reloader = new DiskTierLoader(disk, loader, false);
+      loader = new DiskTierLoader(disk, loader, true);
+    }
+    if (builder.refreshAfter > 0) {
+      ScheduledExecutorService executor = 
+        builder.refreshExecutor != null ?
+          builder.refreshExecutor :
+          getExitingScheduledExecutorService(
+            new ScheduledThreadPoolExecutor(1));
+      loader = new RefreshingLoader(
+        loader, 
+        reloader, 
+        executor, 
+        (long)(builder.refreshAfter * builder.refreshJitter));
+    }
+    return builder.cacheBuilder().build(loader);
+  }
+  
+  /**
+   * Performs refreshes asynchronously, after a random delay, on the 
+   * refresh executor. A refresh that fails or does not produce a 
+   * resolved object completes exceptionally, which leaves the existing
+   * value in place without renewing its write time, so that it is 
+   * still evicted once the hard expiry is reached.
+   */
+  private static final class RefreshingLoader 
+    extends CacheLoader<TypeValue,TypeValue> {
+    
+    private final CacheLoader<TypeValue,TypeValue> loader;
+    private final CacheLoader<TypeValue,TypeValue> reloader;
+    private final ScheduledExecutorService executor;
+    private final long maxDelay;
+    
+    RefreshingLoader(
+      CacheLoader<TypeValue,TypeValue> loader,
+      CacheLoader<TypeValue,TypeValue> reloader,
+      ScheduledExecutorService executor,
+      long maxDelay) {
+      this.loader = loader;
+      this.reloader = reloader;
+      this.executor = executor;
+      this.maxDelay = maxDelay;
+    }
+    
+    @Override
+    public TypeValue load(TypeValue key) throws Exception {
+      return loader.load(key);
+    }
+
+    @Override
+    public ListenableFuture<TypeValue> reload(
+      final TypeValue key, 
+      final TypeValue oldValue) {
+      final SettableFuture<TypeValue> future = 
+        SettableFuture.create();
+      long delay = maxDelay > 0 ? 
+        ThreadLocalRandom.current().nextLong(maxDelay) : 0;
+      executor.schedule(
+        new Runnable() {
+          public void run() {
+            try {
+              TypeValue tv = reloader.load(key);
+              if (tv != null && 
+                  (tv.valueType() == ValueType.OBJECT || 
+                   oldValue.valueType() != ValueType.OBJECT))
+                future.set(tv);
+              else 
+                future.setException(
+                  new UncacheableResponseException());
+            } catch (Throwable t) {
+              future.setException(t);
+            }
+          }
+        }, 
+        delay, 
+        TimeUnit.MILLISECONDS);
+      return future;
+    }
+  }
+  
+  protected DiskCache diskCache() {
+    return disk;
+  }
+  
+  /**
+   * Releases the executors and the disk tier. A failure to write the
+   * hot set is rethrown once everything else has been released.
+   */
+  public void shutdown() {
+    if (!shutdown.compareAndSet(false, true))
+      return;
+    try {
+      if (hotSetFile != null)
+        writeHotSet();
+    } finally {
+      if (replayExecutor != null)
+        replayExecutor.shutdownNow();
+      if (disk != null)
+        disk.close();
+    }
+  }
+  
+  private void writeHotSet() {
+    File tmp = new File(hotSetFile.getPath() + ".tmp");
+    try {
+      Files.write(
+        Joiner.on('\n').join(hotSet(hotSetSize)), 
+        tmp, 
+        Charsets.UTF_8);
+      Files.move(tmp, hotSetFile);
+    } catch (IOException e) {
+      tmp.delete();
+      throw propagate(e);
+    }
+  }
+  
+  /**
+   * The disk tier entry for a freshly resolved value. By default the
+   * value is stored without validators and is considered fresh for the
+   * maxAge of the disk cache; subclasses that know how and when the 
+   * value was fetched should return an entry carrying that information.
+   */
+  protected DiskCache.Entry diskEntry(String id, ASObject value) {
+    return new DiskCache.Entry(
+      id, 
+      value, 
+      System.currentTimeMillis(), 
+      0, null, null);
+  }
+  
+  /**
+   * Revalidate a stale disk tier entry that has HTTP validators, 
+   * returning the refreshed entry, or null if the value has to be 
+   * resolved again. By default stale entries are always resolved again.
+   */
+  protected DiskCache.Entry revalidate(DiskCache.Entry stale) 
+    throws Exception {
+      return null;
+  }
+  
+  private final class DiskTierLoader 
+    extends CacheLoader<TypeValue,TypeValue> {
+    
+    private final DiskCache disk;
+    private final CacheLoader<TypeValue,TypeValue> loader;
+    private final boolean read;
+    
+    DiskTierLoader(
+      DiskCache disk, 
+      CacheLoader<TypeValue,TypeValue> loader,
+      boolean read) {
+      this.disk = disk;
+      this.loader = loader;
+      this.read = read;
+    }
+
+    @Override
+    public TypeValue load(TypeValue key) throws Exception {
+      String id = key != null ? key.id() : null;
+      if (read && id != null && key.valueType() == ValueType.SIMPLE) {
+        DiskCache.Entry entry = disk.get(id);
+        if (entry != null && disk.isFresh(entry))
+          return entry.value();
+        if (entry != null && 
+            (entry.etag() != null || entry.lastModified() != null)) {
+          try {
+            DiskCache.Entry fresh = revalidate(entry);
+            if (fresh != null) {
+              disk.put(fresh);
+              return fresh.value();
+            }
+          } catch (Exception e) {
+            // fall through and resolve the value again
+          }
+        }
+      }
+      TypeValue tv = loader.load(key);
+      if (id != null && tv instanceof ASObject && tv != key) {
+        try {
+          disk.put(diskEntry(id, (ASObject)tv));
+        } catch (RuntimeException e) {
+          // the disk tier is only a cache, keep the resolved value
+        }
+      }
+      return tv;
+    }
+  }
+  
+  /**
+   * Discard the cached value of the given TypeValue, so that it is
+   * resolved again on next use. An entry in the disk tier is kept but
+   * marked stale, without validators.
+   */
+  public void invalidate(TypeValue tv) {
+    if (tv == null) return;
+    cache.invalidate(tv);
+    if (disk != null && tv.id() != null) {
+      DiskCache.Entry entry = disk.get(tv.id());
+      if (entry != null)
+        disk.put(tv.id(), entry.value(), entry.fetched(), 1, null, null);
+    }
   }
   
   public Callable<TypeValue> resolverFor(TypeValue tv) {
     return new Resolver(tv);
   }
   
+  public TypeValue getIfPresent(TypeValue tv) {
+    if (tv == null) return null;
+    if (tv.valueType() == ValueType.OBJECT)
+      return tv;
+    TypeValue found = cache.getIfPresent(tv);
+    if (found != null)
+      recordHit(tv);
+    return found;
+  }
+  
+  public Callable<Map<TypeValue,TypeValue>> resolverFor(
+    final Iterable<TypeValue> tvs) {
+    return new Callable<Map<TypeValue,TypeValue>>() {
+      public Map<TypeValue,TypeValue> call() throws Exception {
+        Map<TypeValue,TypeValue> map = 
+          Maps.newLinkedHashMap();
+        for (TypeValue tv : tvs) {
+          if (map.containsKey(tv)) continue;
+          try {
+            map.put(tv, new Resolver(tv).call());
+          } catch (Exception e) {
+            // omitted; see BatchResolutionStrategy#resolverFor
+          }
+        }
+        return map;
+      }
+    };
+  }
+  
   protected abstract CacheLoader<TypeValue,TypeValue> loader();
 
   public final class Resolver 
@@ -84,7 +537,9 @@ public abstract class CachingResolutionStrategy
         case OBJECT:
           return input;
         case SIMPLE:
-          return cache.get(input);
+          TypeValue tv = cache.get(input);
+          recordHit(input);
+          return tv;
         default:
           throw new IllegalArgumentException();
         }
@@ -98,20 +553,29 @@ public abstract class CachingResolutionStrategy
   }
 
   public Receiver<TypeValue> preloader() {
-    return new CachePreloader(cache());
+    return new CachePreloader(this);
   }
  
   private static final class CachePreloader 
     implements Receiver<TypeValue> {
     
+    private final CachingResolutionStrategy strategy;
     private final LoadingCache<TypeValue,TypeValue> cache;
     
-    CachePreloader(LoadingCache<TypeValue,TypeValue> cache) {
-      this.cache = cache;
+    CachePreloader(CachingResolutionStrategy strategy) {
+      this.strategy = strategy;
+      this.cache = strategy.cache();
     }
 
+    /**
+     * Resolved objects are cached directly. Simple values, such as 
+     * those replayed from a hot set, are resolved in the background
+     * in the order they are received.
+     */
     public void receive(final TypeValue t) {
-      if (t.valueType() == ValueType.OBJECT && t.id() != null) {
+      if (t.valueType() == ValueType.SIMPLE && t.id() != null)
+        strategy.replay(t);
+      else if (t.valueType() == ValueType.OBJECT && t.id() != null) {
         final TypeValue tv = Makers.type(t.id());
         cache.invalidate(tv);
         try {
@@ -4,14 +4,13 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.Set;
 
-import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
-import com.google.common.hash.BloomFilter;
-import com.google.common.hash.Funnels;
+import com.google.common.collect.Sets;
 import com.ibm.common.activitystreams.ASObject;
 import com.ibm.common.activitystreams.Collection;
 import com.ibm.common.activitystreams.IO;
@@ -54,9 +53,9 @@ public final class ClasspathPreloader
   
   public void load(IO io, Receiver<TypeValue> receiver) {
 
-    final BloomFilter<CharSequence> filter = 
+    final Set<String> filter = 
       avoidDuplicates ?
-        BloomFilter.create(Funnels.stringFunnel(Charsets.UTF_8), 1000) : null;
+        Sets.<String>newHashSet() : null;
     
     try {
       for (InputStream in : streams.apply(loader.getResources("typeValues.bin"))) {
@@ -82,10 +81,10 @@ public final class ClasspathPreloader
   private void load(
     Collection col, 
     Receiver<TypeValue> receiver, 
-    BloomFilter<CharSequence> filter) {
+    Set<String> filter) {
     if (col != null && receiver != null)
       for (ASObject obj : col.items())
-        if (obj.id() != null && (filter == null || filter.put(obj.id()))) {
+        if (obj.id() != null && (filter == null || filter.add(obj.id()))) {
           try {
             receiver.receive(obj);
           } catch (Throwable t) {}
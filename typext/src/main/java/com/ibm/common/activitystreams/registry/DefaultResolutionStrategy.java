@@ -1,13 +1,19 @@
 package com.ibm.common.activitystreams.registry;
 
+import static com.google.common.util.concurrent.MoreExecutors.getExitingExecutorService;
 import static com.google.common.util.concurrent.MoreExecutors.platformThreadFactory;
 import static com.google.common.base.Throwables.propagate;
 
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Objects;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableSet;
 import com.ibm.common.activitystreams.ASObject;
 import com.ibm.common.activitystreams.Collection;
@@ -29,6 +35,7 @@ public final class DefaultResolutionStrategy
     extends CachingResolutionStrategy.AbstractBuilder<DefaultResolutionStrategy, Builder> {
 
     private boolean proactive = false;
+    private ExecutorService proactiveExecutor;
     private final HttpFetch.Builder fetcherBuilder = 
       new HttpFetch.Builder();
     private final ImmutableSet.Builder<String> proactiveTypes = 
@@ -42,10 +49,60 @@ public final class DefaultResolutionStrategy
       return this;
     }
     
+    /**
+     * Documents that fail to load are not fetched again until a
+     * backoff period, starting at initial and doubling up to max,
+     * has elapsed.
+     * @see HttpFetch.Builder#backoff(long, long, TimeUnit)
+     */
+    public Builder fetchBackoff(long initial, long max, TimeUnit unit) {
+      fetcherBuilder.backoff(initial, max, unit);
+      return this;
+    }
+
+    /**
+     * Stop contacting a host for the cooldown period after the given
+     * number of consecutive failures.
+     * @see HttpFetch.Builder#circuitBreaker(int, long, TimeUnit)
+     */
+    public Builder circuitBreaker(int failures, long cooldown, TimeUnit unit) {
+      fetcherBuilder.circuitBreaker(failures, cooldown, unit);
+      return this;
+    }
+
+    /**
+     * Limit the number of concurrent fetches to each host. Up to 
+     * maxQueued callers wait at most timeout for their turn, others 
+     * are rejected.
+     * @see HttpFetch.Builder#maxConcurrentPerHost(int)
+     */
+    public Builder fetchConcurrency(
+      int maxConcurrent, 
+      int maxQueued, 
+      long timeout, 
+      TimeUnit unit) {
+      fetcherBuilder
+        .maxConcurrentPerHost(maxConcurrent)
+        .maxQueuedPerHost(maxQueued)
+        .acquireTimeout(timeout, unit);
+      return this;
+    }
+
+    /**
+     * Limit the number of fetches per second sent to each host
+     * @see HttpFetch.Builder#rateLimit(double)
+     */
+    public Builder fetchRateLimit(double permitsPerSecond) {
+      fetcherBuilder.rateLimit(permitsPerSecond);
+      return this;
+    }
+
     /**
      * Tells the loader to proactively cache additional typevalue 
      * identifiers that happen to be discovered when attempting to
-     * resolve a given typevalue.
+     * resolve a given typevalue. Documents are then read incrementally:
+     * the requested typevalue is returned as soon as it has been read
+     * and the rest of the document is cached in the background.
      * @return
      */
     public Builder proactiveCaching() {
@@ -53,6 +110,18 @@ public final class DefaultResolutionStrategy
       return this;
     }
     
+    /**
+     * The executor on which the remainder of a document is read and 
+     * cached once the requested typevalue has been returned. By 
+     * default a pool of up to four daemon threads is used; when all
+     * of them are busy the document is read on the calling thread.
+     * An executor passed here is not shut down with the strategy.
+     */
+    public Builder proactiveExecutor(ExecutorService executor) {
+      this.proactiveExecutor = executor;
+      return this;
+    }
+    
     /**
      * Specifies additional objectType identifiers to watch for when 
      * proactiveCaching is enabled.
@@ -70,15 +139,21 @@ public final class DefaultResolutionStrategy
     
   }
   
+  private static final int PROACTIVE_THREADS = 4;
+  
   private final boolean proactiveCaching;
   private final ImmutableSet<String> proactiveTypes;
   private final HttpFetch fetcher;
+  private final ExecutorService proactiveExecutor;
+  private final boolean ownsProactiveExecutor;
   
   private DefaultResolutionStrategy(Builder builder) {
     super(builder);
     this.proactiveCaching = builder.proactive;
     this.proactiveTypes = builder.proactiveTypes.build();
     this.fetcher = initFetcher(builder);
+    this.proactiveExecutor = initProactiveExecutor(builder);
+    this.ownsProactiveExecutor = builder.proactiveExecutor == null;
     ensureAlwaysShutdown(this);
   }
   
@@ -86,6 +161,53 @@ public final class DefaultResolutionStrategy
     return builder.fetcherBuilder.get();
   }
   
+  private ExecutorService initProactiveExecutor(Builder builder) {
+    if (!builder.proactive)
+      return null;
+    if (builder.proactiveExecutor != null)
+      return builder.proactiveExecutor;
+    return getExitingExecutorService(
+      new ThreadPoolExecutor(
+        0, 
+        PROACTIVE_THREADS, 
+        60L, TimeUnit.SECONDS, 
+        new SynchronousQueue<Runnable>()));
+  }
+  
+  /**
+   * Discard the cached value of the given TypeValue together with the
+   * cached document that defines it
+   */
+  @Override
+  public void invalidate(TypeValue tv) {
+    super.invalidate(tv);
+    if (tv != null && tv.id() != null)
+      fetcher.invalidate(tv.id());
+  }
+  
+  /**
+   * Statistics of the cache of fetched documents
+   */
+  public CacheStats fetchStats() {
+    return fetcher.stats();
+  }
+  
+  /**
+   * Disk tier entries carry the fetch time, expiry and validators of 
+   * the document the value was read from, when that document is still
+   * in the document cache
+   */
+  @Override
+  protected DiskCache.Entry diskEntry(String id, ASObject value) {
+    DiskCache.Entry entry = fetcher.entryFor(id, value);
+    return entry != null ? entry : super.diskEntry(id, value);
+  }
+  
+  @Override
+  protected DiskCache.Entry revalidate(DiskCache.Entry stale) {
+    return fetcher.revalidate(stale);
+  }
+  
   @Override
   protected CacheLoader<TypeValue, TypeValue> loader() {
     return new DefaultCacheLoader();
@@ -103,7 +225,21 @@ public final class DefaultResolutionStrategy
         case OBJECT:
           return key; // type is already resolved
         case SIMPLE:
-          String id = key.id();
+          final String id = key.id();
+          if (proactiveCaching) {
+            ASObject matching = 
+              fetcher.fetch(
+                id, 
+                new Receiver<ASObject>() {
+                  public void receive(ASObject obj) {
+                    proactivelyCache(obj, id, proactiveTypes);
+                  }
+                }, 
+                proactiveExecutor);
+            if (matching != null)
+              return matching;
+            break;
+          }
           ASObject obj = fetcher.fetch(id); // attempt to fetch an object
           ImmutableSet.Builder<TypeValue> additional = 
             ImmutableSet.builder();
@@ -157,26 +293,33 @@ public final class DefaultResolutionStrategy
         matching = obj;
         if (!proactive) break;
       } else if (proactive) {
-        TypeValue objectType = obj.objectType();
-        String id = obj.id();
-        if (objectType != null && id != null && !Objects.equal(lookingFor,id)) {
-          String otid = objectType.id();
-          if (proactiveTypes.contains(otid)) {
-            try {
-              cache().get(
-                Makers.type(id), 
-                new Callable<TypeValue>() {
-                  public TypeValue call() throws Exception {
-                    return obj;
-                  }
-                });
-            } catch (Throwable t) {}
-          }
-        }
+        proactivelyCache(obj, lookingFor, proactiveTypes);
       }
     }
     return matching;
   }
+  
+  private void proactivelyCache(
+    final ASObject obj, 
+    String lookingFor, 
+    Set<String> proactiveTypes) {
+    TypeValue objectType = obj.objectType();
+    String id = obj.id();
+    if (objectType != null && id != null && !Objects.equal(lookingFor,id)) {
+      String otid = objectType.id();
+      if (proactiveTypes.contains(otid)) {
+        try {
+          cache().get(
+            Makers.type(id), 
+            new Callable<TypeValue>() {
+              public TypeValue call() throws Exception {
+                return obj;
+              }
+            });
+        } catch (Throwable t) {}
+      }
+    }
+  }
 
   private static void ensureAlwaysShutdown(
     final ResolutionStrategy strategy) {
@@ -197,5 +340,8 @@ public final class DefaultResolutionStrategy
     try {
       fetcher.shutdown();
     } catch (Throwable t) {}
+    if (proactiveExecutor != null && ownsProactiveExecutor)
+      proactiveExecutor.shutdownNow();
+    super.shutdown();
   }
 }
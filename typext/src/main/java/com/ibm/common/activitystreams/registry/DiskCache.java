@@ -0,0 +1,469 @@
+package com.ibm.common.activitystreams.registry;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.propagate;
+import static com.google.common.util.concurrent.MoreExecutors.getExitingExecutorService;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.IO;
+import com.ibm.common.activitystreams.ext.ExtModule;
+
+/**
+ * A persistent cache of resolved TypeValues, keyed by type ID. Entries
+ * are appended to a log file together with the time they were fetched
+ * and the HTTP validators of the response they came from. The index 
+ * of the log is built lazily on first use, and the log is compacted
+ * in the background once superseded records outnumber live ones.
+ */
+public final class DiskCache 
+  implements Closeable {
+
+  public static Builder make() {
+    return new Builder();
+  }
+  
+  public static final class Builder 
+    implements Supplier<DiskCache> {
+    
+    private File file;
+    private IO io;
+    private long maxAge = TimeUnit.DAYS.toMillis(7);
+    private int compactAfter = 1000;
+    private ExecutorService executor;
+    
+    /**
+     * The log file
+     */
+    public Builder file(File file) {
+      this.file = file;
+      return this;
+    }
+    
+    public Builder file(String path) {
+      return file(new File(path));
+    }
+    
+    public Builder io(IO io) {
+      this.io = io;
+      return this;
+    }
+    
+    /**
+     * How long entries without an explicit expiration are 
+     * considered fresh. Default is seven days.
+     */
+    public Builder maxAge(long duration, TimeUnit unit) {
+      this.maxAge = unit.toMillis(duration);
+      return this;
+    }
+    
+    /**
+     * The minimum number of superseded records before the log 
+     * is compacted. Default is 1000.
+     */
+    public Builder compactAfter(int records) {
+      checkArgument(records > 0);
+      this.compactAfter = records;
+      return this;
+    }
+    
+    /**
+     * The executor used for background compaction
+     */
+    public Builder executor(ExecutorService executor) {
+      this.executor = executor;
+      return this;
+    }
+    
+    public DiskCache get() {
+      return new DiskCache(this);
+    }
+  }
+  
+  /**
+   * A cached TypeValue together with its fetch metadata
+   */
+  public static final class Entry {
+    private final String id;
+    private final long fetched;
+    private final long expires;
+    private final String etag;
+    private final String lastModified;
+    private final ASObject value;
+    
+    public Entry(
+      String id, 
+      ASObject value,
+      long fetched, 
+      long expires, 
+      String etag, 
+      String lastModified) {
+      this.id = checkNotNull(id);
+      this.value = checkNotNull(value);
+      this.fetched = fetched;
+      this.expires = expires;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+    
+    public String id() {
+      return id;
+    }
+    
+    public ASObject value() {
+      return value;
+    }
+    
+    /**
+     * The time, in milliseconds, the value was fetched
+     */
+    public long fetched() {
+      return fetched;
+    }
+    
+    /**
+     * The time, in milliseconds, the value expires or 0 if unknown
+     */
+    public long expires() {
+      return expires;
+    }
+    
+    public String etag() {
+      return etag;
+    }
+    
+    public String lastModified() {
+      return lastModified;
+    }
+  }
+  
+  private static final int MAX_RECORD = 64 * 1024 * 1024;
+  
+  private final File file;
+  private final IO io;
+  private final long maxAge;
+  private final int compactAfter;
+  private final ExecutorService executor;
+  private final ConcurrentMap<String,Long> index = 
+    Maps.newConcurrentMap();
+  private final ReadWriteLock lock = 
+    new ReentrantReadWriteLock();
+  private final AtomicInteger dead = new AtomicInteger();
+  private final AtomicBoolean compacting = new AtomicBoolean();
+  private volatile FileChannel channel;
+  private volatile boolean indexed = false;
+  private long end = 0;
+  
+  private DiskCache(Builder builder) {
+    this.file = checkNotNull(builder.file);
+    this.io = builder.io != null ? 
+      builder.io : 
+      IO.makeDefault(ExtModule.instance);
+    this.maxAge = builder.maxAge;
+    this.compactAfter = builder.compactAfter;
+    this.executor = builder.executor != null ?
+      builder.executor : 
+      getExitingExecutorService(
+        (ThreadPoolExecutor)newFixedThreadPool(1));
+  }
+  
+  /**
+   * True if the entry has not yet expired
+   */
+  public boolean isFresh(Entry entry) {
+    long now = System.currentTimeMillis();
+    return entry.expires() > 0 ?
+      now < entry.expires() :
+      now - entry.fetched() < maxAge;
+  }
+  
+  /**
+   * The number of live entries
+   */
+  public int size() {
+    ensureIndexed();
+    return index.size();
+  }
+  
+  /**
+   * Return the entry for the given ID, or null if there is none. The
+   * entry is returned even if it is no longer fresh so that it can be
+   * revalidated.
+   */
+  public Entry get(String id) {
+    ensureIndexed();
+    lock.readLock().lock();
+    try {
+      Long offset = index.get(id);
+      if (offset == null)
+        return null;
+      return decode(read(channel, offset));
+    } catch (Throwable t) {
+      return null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+  
+  /**
+   * Store the given entry, replacing any existing entry with the same ID
+   */
+  public void put(Entry entry) {
+    ensureIndexed();
+    byte[] record = encode(entry);
+    lock.readLock().lock();
+    try {
+      synchronized(this) {
+        long offset = end;
+        write(channel, offset, record);
+        end += record.length;
+        if (index.put(entry.id(), offset) != null)
+          dead.incrementAndGet();
+      }
+    } catch (IOException e) {
+      throw propagate(e);
+    } finally {
+      lock.readLock().unlock();
+    }
+    maybeCompact();
+  }
+  
+  public void put(
+    String id, 
+    ASObject value, 
+    long fetched, 
+    long expires, 
+    String etag, 
+    String lastModified) {
+    put(new Entry(id, value, fetched, expires, etag, lastModified));
+  }
+  
+  /**
+   * Rewrite the log so that it contains only live records
+   */
+  public void compact() {
+    ensureIndexed();
+    lock.writeLock().lock();
+    try {
+      File tmp = new File(file.getPath() + ".compact");
+      FileChannel out = 
+        FileChannel.open(
+          tmp.toPath(), 
+          StandardOpenOption.CREATE, 
+          StandardOpenOption.WRITE, 
+          StandardOpenOption.TRUNCATE_EXISTING);
+      Map<String,Long> offsets = Maps.newHashMap();
+      long pos = 0;
+      try {
+        for (Map.Entry<String,Long> entry : index.entrySet()) {
+          byte[] payload = read(channel, entry.getValue());
+          byte[] record = frame(payload);
+          write(out, pos, record);
+          offsets.put(entry.getKey(), pos);
+          pos += record.length;
+        }
+        out.force(true);
+      } finally {
+        out.close();
+      }
+      channel.close();
+      Files.move(
+        tmp.toPath(), 
+        file.toPath(), 
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+      channel = open(file);
+      index.putAll(offsets);
+      end = pos;
+      dead.set(0);
+    } catch (IOException e) {
+      throw propagate(e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+  
+  private void maybeCompact() {
+    if (dead.get() >= compactAfter && 
+        dead.get() > index.size() && 
+        compacting.compareAndSet(false, true)) {
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            compact();
+          } catch (Throwable t) {
+          } finally {
+            compacting.set(false);
+          }
+        }
+      });
+    }
+  }
+  
+  public void close() {
+    lock.writeLock().lock();
+    try {
+      if (channel != null)
+        channel.close();
+    } catch (Throwable t) {
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+  
+  /**
+   * Open the log and scan it to build the index. A truncated record
+   * at the end of the log, left by an interrupted write, is discarded.
+   */
+  private void ensureIndexed() {
+    if (indexed) return;
+    lock.writeLock().lock();
+    try {
+      if (indexed) return;
+      File parent = file.getAbsoluteFile().getParentFile();
+      if (parent != null)
+        parent.mkdirs();
+      channel = open(file);
+      long size = channel.size();
+      long pos = 0;
+      ByteBuffer header = ByteBuffer.allocate(4);
+      while (pos + 4 <= size) {
+        header.clear();
+        readFully(channel, header, pos);
+        int len = header.getInt(0);
+        if (len <= 0 || len > MAX_RECORD || pos + 4 + len > size)
+          break;
+        byte[] payload = read(channel, pos);
+        String id = new DataInputStream(
+          new ByteArrayInputStream(payload)).readUTF();
+        if (index.put(id, pos) != null)
+          dead.incrementAndGet();
+        pos += 4 + len;
+      }
+      if (pos < size)
+        channel.truncate(pos);
+      end = pos;
+      indexed = true;
+    } catch (IOException e) {
+      throw propagate(e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+  
+  private static FileChannel open(File file) throws IOException {
+    return FileChannel.open(
+      file.toPath(), 
+      StandardOpenOption.CREATE,
+      StandardOpenOption.READ,
+      StandardOpenOption.WRITE);
+  }
+  
+  private static void readFully(
+    FileChannel channel, 
+    ByteBuffer buf, 
+    long pos) throws IOException {
+    while (buf.hasRemaining()) {
+      int r = channel.read(buf, pos + buf.position());
+      if (r < 0) throw new IOException("Unexpected end of cache file");
+    }
+  }
+  
+  private static byte[] read(FileChannel channel, long pos) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(4);
+    readFully(channel, header, pos);
+    ByteBuffer payload = ByteBuffer.allocate(header.getInt(0));
+    readFully(channel, payload, pos + 4);
+    return payload.array();
+  }
+  
+  private static void write(
+    FileChannel channel, 
+    long pos, 
+    byte[] record) throws IOException {
+    ByteBuffer buf = ByteBuffer.wrap(record);
+    while (buf.hasRemaining())
+      channel.write(buf, pos + buf.position());
+  }
+  
+  private static byte[] frame(byte[] payload) {
+    return ByteBuffer.allocate(4 + payload.length)
+      .putInt(payload.length)
+      .put(payload)
+      .array();
+  }
+  
+  private byte[] encode(Entry entry) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeUTF(entry.id());
+      out.writeLong(entry.fetched());
+      out.writeLong(entry.expires());
+      writeOptional(out, entry.etag());
+      writeOptional(out, entry.lastModified());
+      byte[] json = io.write(entry.value()).getBytes(Charsets.UTF_8);
+      out.writeInt(json.length);
+      out.write(json);
+      out.flush();
+      return frame(bytes.toByteArray());
+    } catch (IOException e) {
+      throw propagate(e);
+    }
+  }
+  
+  private Entry decode(byte[] payload) throws IOException {
+    DataInputStream in = 
+      new DataInputStream(new ByteArrayInputStream(payload));
+    String id = in.readUTF();
+    long fetched = in.readLong();
+    long expires = in.readLong();
+    String etag = readOptional(in);
+    String lastModified = readOptional(in);
+    byte[] json = new byte[in.readInt()];
+    in.readFully(json);
+    return new Entry(
+      id, 
+      io.read(new String(json, Charsets.UTF_8)), 
+      fetched, 
+      expires, 
+      etag, 
+      lastModified);
+  }
+  
+  private static void writeOptional(DataOutputStream out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) out.writeUTF(s);
+  }
+  
+  private static String readOptional(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
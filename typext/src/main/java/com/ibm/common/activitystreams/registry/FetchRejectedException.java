@@ -0,0 +1,15 @@
+package com.ibm.common.activitystreams.registry;
+
+/**
+ * Thrown by HttpFetch when a document is not requested because an
+ * earlier attempt to fetch it failed and its backoff period has not
+ * yet elapsed, because the circuit for its host is open, or because 
+ * the host's concurrency or rate limit could not be acquired in time.
+ */
+public final class FetchRejectedException extends RuntimeException {
+  private static final long serialVersionUID = 3017435461893127406L;
+
+  FetchRejectedException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,87 @@
+package com.ibm.common.activitystreams.registry;
+
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Supplier;
+import com.google.common.io.Files;
+import com.ibm.common.activitystreams.IO;
+import com.ibm.common.activitystreams.Makers;
+import com.ibm.common.activitystreams.TypeValue;
+
+/**
+ * Replays the hot set written by a CachingResolutionStrategy on
+ * shutdown (see CachingResolutionStrategy.AbstractBuilder#hotSet).
+ * After running another preloader, the IDs listed in the file are
+ * handed to the strategy, hottest first, as simple TypeValues; the
+ * strategy resolves them in the background in that order, so the
+ * registry does not wait for them to become ready. A missing hot set
+ * file is ignored, one that cannot be read fails the load.
+ */
+public final class HotSetPreloader
+  implements PreloadStrategy {
+
+  public static Builder make() {
+    return new Builder();
+  }
+
+  public static final class Builder
+    implements Supplier<HotSetPreloader> {
+
+    private File file;
+    private PreloadStrategy delegate =
+      ClasspathPreloader.instance;
+
+    /**
+     * The hot set file
+     */
+    public Builder file(File file) {
+      this.file = file;
+      return this;
+    }
+
+    /**
+     * The preloader run before the hot set is replayed. By default
+     * the ClasspathPreloader is used.
+     */
+    public Builder delegate(PreloadStrategy strategy) {
+      this.delegate = strategy != null ?
+        strategy : PreloadStrategy.none;
+      return this;
+    }
+
+    public HotSetPreloader get() {
+      return new HotSetPreloader(this);
+    }
+
+  }
+
+  private final File file;
+  private final PreloadStrategy delegate;
+
+  private HotSetPreloader(Builder builder) {
+    this.file = builder.file;
+    this.delegate = builder.delegate;
+  }
+
+  public void load(IO io, Receiver<TypeValue> receiver) {
+    delegate.load(io, receiver);
+    if (file == null || !file.isFile())
+      return;
+    List<String> ids;
+    try {
+      ids = Files.readLines(file, Charsets.UTF_8);
+    } catch (IOException e) {
+      throw propagate(e);
+    }
+    for (String id : ids) {
+      id = id.trim();
+      if (!id.isEmpty())
+        receiver.receive(Makers.type(id));
+    }
+  }
+}
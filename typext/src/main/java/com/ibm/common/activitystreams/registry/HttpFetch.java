@@ -3,16 +3,31 @@ package com.ibm.common.activitystreams.registry;
 import static com.google.common.base.Throwables.propagate;
 
 import java.io.InputStream;
+import java.net.URI;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.Header;
+import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
-import org.apache.http.StatusLine;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.http.config.ConnectionConfig;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.config.SocketConfig;
@@ -24,18 +39,26 @@ import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicHeader;
-import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.RateLimiter;
 import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.Collection;
+import com.ibm.common.activitystreams.Diagnostics;
 import com.ibm.common.activitystreams.IO;
 import com.ibm.common.activitystreams.ext.ExtModule;
+import com.ibm.common.activitystreams.util.Sizes;
 
 public final class HttpFetch
   extends CacheLoader<String,ASObject> {
@@ -61,21 +84,161 @@ public final class HttpFetch
     private HttpClientBuilder builder = 
       HttpClients.custom();
     
-    private final CacheBuilder<Object,Object> cache = 
-      CacheBuilder.newBuilder()
-        .expireAfterAccess(10, TimeUnit.MINUTES)
-        .expireAfterWrite(10, TimeUnit.MINUTES)
-        .maximumSize(50)
-        .initialCapacity(50);
+    private long maximumSize = 50;
+    private long maximumWeight = -1;
+    private long defaultMaxAge = TimeUnit.MINUTES.toMillis(10);
+    private final ImmutableList.Builder<Receiver<CacheBuilder<Object,Object>>> customizers = 
+      ImmutableList.builder();
     private HttpClientConnectionManager manager;
+    private long negativeCacheSize = 1000;
+    private long initialBackoff = TimeUnit.SECONDS.toMillis(1);
+    private long maxBackoff = TimeUnit.MINUTES.toMillis(5);
+    private int breakerThreshold = 5;
+    private long breakerCooldown = TimeUnit.SECONDS.toMillis(30);
+    private int maxConcurrentPerHost = 0;
+    private int maxQueuedPerHost = 50;
+    private long acquireTimeout = TimeUnit.SECONDS.toMillis(30);
+    private double defaultRate = 0;
+    private final ImmutableMap.Builder<String,Double> hostRates = 
+      ImmutableMap.builder();
     
+    /**
+     * Customize the cache. The size bound is applied before the 
+     * receiver is called, use maximumSize or maximumWeight to change it.
+     */
     public Builder customizeCache(
       Receiver<CacheBuilder<Object,Object>> receiver) {
       if (receiver != null)
-        receiver.receive(cache);
+        customizers.add(receiver);
+      return this;
+    }
+    
+    /**
+     * Bound the cache by number of fetched documents (default 50)
+     */
+    public Builder maximumSize(long size) {
+      this.maximumSize = size;
+      this.maximumWeight = -1;
       return this;
     }
     
+    /**
+     * Bound the cache by the estimated memory size, in bytes, of the 
+     * fetched documents rather than by number of documents
+     */
+    public Builder maximumWeight(long bytes) {
+      this.maximumWeight = bytes;
+      return this;
+    }
+    
+    /**
+     * How long documents are considered fresh when the response 
+     * carries neither Cache-Control max-age nor Expires. Default is 
+     * ten minutes.
+     */
+    public Builder defaultMaxAge(long duration, TimeUnit unit) {
+      this.defaultMaxAge = unit.toMillis(duration);
+      return this;
+    }
+    
+    /**
+     * Failed documents are not requested again until a backoff period
+     * has elapsed. The period starts at initial and doubles with each 
+     * consecutive failure up to max. Defaults are one second and five 
+     * minutes. An initial backoff of zero disables negative caching.
+     */
+    public Builder backoff(long initial, long max, TimeUnit unit) {
+      this.initialBackoff = unit.toMillis(initial);
+      this.maxBackoff = Math.max(initialBackoff, unit.toMillis(max));
+      return this;
+    }
+    
+    /**
+     * The maximum number of failed documents remembered for backoff 
+     * (default 1000)
+     */
+    public Builder negativeCacheSize(long size) {
+      this.negativeCacheSize = size;
+      return this;
+    }
+    
+    /**
+     * After the given number of consecutive connection failures or 
+     * server errors from a host, no requests are sent to that host
+     * until the cooldown has elapsed, after which a single trial 
+     * request is let through. Defaults are five failures and thirty 
+     * seconds. A threshold of zero disables the circuit breaker.
+     */
+    public Builder circuitBreaker(int failures, long cooldown, TimeUnit unit) {
+      this.breakerThreshold = failures;
+      this.breakerCooldown = unit.toMillis(cooldown);
+      return this;
+    }
+    
+    /**
+     * The maximum number of requests in flight to a single host. 
+     * By default, or when zero, concurrency is bounded only by the 
+     * connection pool (see maxConnectionsPerRoute) and callers do not
+     * queue for a slot.
+     */
+    public Builder maxConcurrentPerHost(int max) {
+      this.maxConcurrentPerHost = max;
+      return this;
+    }
+    
+    /**
+     * The maximum number of callers waiting for a host once its 
+     * concurrency limit is reached (default 50). Further callers are 
+     * rejected immediately with a FetchRejectedException.
+     */
+    public Builder maxQueuedPerHost(int max) {
+      this.maxQueuedPerHost = max;
+      return this;
+    }
+    
+    /**
+     * How long a caller waits for both a concurrency slot and a rate
+     * limit permit before the fetch is rejected (default 30 seconds)
+     */
+    public Builder acquireTimeout(long duration, TimeUnit unit) {
+      this.acquireTimeout = unit.toMillis(duration);
+      return this;
+    }
+    
+    /**
+     * The maximum number of requests per second sent to each host. 
+     * By default requests are not rate limited.
+     */
+    public Builder rateLimit(double permitsPerSecond) {
+      this.defaultRate = permitsPerSecond;
+      return this;
+    }
+    
+    /**
+     * The maximum number of requests per second sent to the given
+     * host, given as host[:port]
+     */
+    public Builder rateLimit(String host, double permitsPerSecond) {
+      hostRates.put(host, permitsPerSecond);
+      return this;
+    }
+    
+    CacheBuilder<Object,Object> cacheBuilder() {
+      CacheBuilder<Object,Object> cache = 
+        CacheBuilder.newBuilder()
+          .expireAfterAccess(1, TimeUnit.HOURS)
+          .initialCapacity(50)
+          .recordStats();
+      if (maximumWeight >= 0)
+        cache.maximumWeight(maximumWeight)
+             .weigher(Document.weigher);
+      else 
+        cache.maximumSize(maximumSize);
+      for (Receiver<CacheBuilder<Object,Object>> receiver : customizers.build())
+        receiver.receive(cache);
+      return cache;
+    }
+    
     public Builder customizeClientBuilder(
       Receiver<HttpClientBuilder> receiver) {
         receiver.receive(builder);
@@ -145,13 +308,207 @@ public final class HttpFetch
     
   }
   
-  private final LoadingCache<String,ASObject> cache;
+  /**
+   * A fetched document together with the caching metadata of the
+   * response it was read from
+   */
+  private static final class Document {
+    
+    static final Weigher<Object,Object> weigher = 
+      new Weigher<Object,Object>() {
+        public int weigh(Object key, Object value) {
+          return Sizes.weigher().weigh(key, ((Document)value).value);
+        }
+    };
+    
+    final ASObject value;
+    final long fetched;
+    final long expires;
+    final boolean store;
+    final String etag;
+    final String lastModified;
+    
+    Document(
+      ASObject value, 
+      long fetched,
+      long expires, 
+      boolean store, 
+      String etag, 
+      String lastModified) {
+      this.value = value;
+      this.fetched = fetched;
+      this.expires = expires;
+      this.store = store;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+    
+    boolean isExpired() {
+      return System.currentTimeMillis() >= expires;
+    }
+  }
+  
+  /**
+   * A failed attempt to fetch a document
+   */
+  private static final class Failure {
+    final int attempts;
+    final long retryAt;
+    final Throwable cause;
+    
+    Failure(int attempts, long retryAt, Throwable cause) {
+      this.attempts = attempts;
+      this.retryAt = retryAt;
+      this.cause = cause;
+    }
+  }
+  
+  /**
+   * Tracks consecutive failures for a single host. Once the threshold
+   * is reached the circuit opens and requests are rejected until the 
+   * cooldown has elapsed, then a single trial request is allowed. 
+   * Its outcome either closes the circuit or opens it again.
+   */
+  private static final class Breaker {
+    private int failures;
+    private long openUntil;
+    private boolean trial;
+    
+    synchronized boolean allow(long now) {
+      if (openUntil == 0)
+        return true;
+      if (now < openUntil || trial)
+        return false;
+      trial = true;
+      return true;
+    }
+    
+    synchronized void success() {
+      failures = 0;
+      openUntil = 0;
+      trial = false;
+    }
+    
+    synchronized void failure(long now, int threshold, long cooldown) {
+      trial = false;
+      if (++failures >= threshold || openUntil != 0)
+        openUntil = now + cooldown;
+    }
+  }
+  
+  /**
+   * Limits the requests made to a single host. Callers wait in a 
+   * bounded fair queue for a concurrency slot and then for a rate 
+   * limit permit, and are rejected once the queue is full or the 
+   * acquire timeout elapses.
+   */
+  private static final class Throttle {
+    private final Semaphore slots;
+    private final RateLimiter rate;
+    private final AtomicInteger waiting = 
+      new AtomicInteger();
+    private final int maxQueued;
+    
+    Throttle(int maxConcurrent, int maxQueued, double rate) {
+      this.slots = maxConcurrent > 0 ? 
+        new Semaphore(maxConcurrent, true) : null;
+      this.rate = rate > 0 ? 
+        RateLimiter.create(rate) : null;
+      this.maxQueued = maxQueued;
+    }
+    
+    void acquire(String url, long timeout) {
+      long deadline = System.nanoTime() + 
+        TimeUnit.MILLISECONDS.toNanos(timeout);
+      try {
+        if (slots != null && !slots.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+          if (waiting.incrementAndGet() > maxQueued) {
+            waiting.decrementAndGet();
+            throw new FetchRejectedException(
+              "Too many requests waiting for " + url, null);
+          }
+          try {
+            if (!slots.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+              throw new FetchRejectedException(
+                "Timed out waiting to fetch " + url, null);
+          } finally {
+            waiting.decrementAndGet();
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new FetchRejectedException(
+          "Interrupted waiting to fetch " + url, e);
+      }
+      if (rate != null) {
+        long remaining = Math.max(0, deadline - System.nanoTime());
+        if (!rate.tryAcquire(1, remaining, TimeUnit.NANOSECONDS)) {
+          release();
+          throw new FetchRejectedException(
+            "Rate limit exceeded for " + url, null);
+        }
+      }
+    }
+    
+    void release() {
+      if (slots != null)
+        slots.release();
+    }
+  }
+  
+  /**
+   * The per-host slot held by a streamed request. The request retains
+   * the lease when it hands the response off to a background reader,
+   * which then releases the slot once it has closed the response.
+   */
+  private static final class Lease {
+    private volatile Throttle throttle;
+    private boolean retained;
+    
+    void retain() {
+      retained = true;
+    }
+    
+    void release() {
+      Throttle throttle = this.throttle;
+      if (throttle != null)
+        throttle.release();
+    }
+  }
+  
+  private final Cache<String,Document> cache;
   private final HttpClientConnectionManager manager;
   private final IO io;
   private final CloseableHttpClient client;
+  private final long defaultMaxAge;
+  private final Cache<String,Failure> failures;
+  private final ConcurrentMap<String,Breaker> breakers;
+  private final long initialBackoff;
+  private final long maxBackoff;
+  private final int breakerThreshold;
+  private final long breakerCooldown;
+  private final ConcurrentMap<String,Throttle> throttles;
+  private final int maxConcurrentPerHost;
+  private final int maxQueuedPerHost;
+  private final long acquireTimeout;
+  private final double defaultRate;
+  private final ImmutableMap<String,Double> hostRates;
 
   HttpFetch(Builder builder) {
+    this.defaultMaxAge = builder.defaultMaxAge;
+    this.initialBackoff = builder.initialBackoff;
+    this.maxBackoff = builder.maxBackoff;
+    this.breakerThreshold = builder.breakerThreshold;
+    this.breakerCooldown = builder.breakerCooldown;
+    this.maxConcurrentPerHost = builder.maxConcurrentPerHost;
+    this.maxQueuedPerHost = builder.maxQueuedPerHost;
+    this.acquireTimeout = builder.acquireTimeout;
+    this.defaultRate = builder.defaultRate;
+    this.hostRates = builder.hostRates.build();
     this.cache = initCache(builder);
+    this.failures = initFailures(builder);
+    this.breakers = initBreakers(builder);
+    this.throttles = initThrottles(builder);
     this.manager = initManager(builder);
     this.io = initIO(builder);
     this.client = initClient(builder);
@@ -199,36 +556,502 @@ public final class HttpFetch
     return pm;
   }
   
-  private LoadingCache<String,ASObject> initCache(Builder builder) {
-    return builder.cache.build(this);
+  private Cache<String,Document> initCache(Builder builder) {
+    return builder.cacheBuilder().build();
+  }
+  
+  private Cache<String,Failure> initFailures(Builder builder) {
+    return CacheBuilder.newBuilder()
+      .maximumSize(builder.negativeCacheSize)
+      .expireAfterWrite(2 * builder.maxBackoff + 1, TimeUnit.MILLISECONDS)
+      .<String,Failure>build();
+  }
+  
+  private ConcurrentMap<String,Throttle> initThrottles(Builder builder) {
+    return CacheBuilder.newBuilder()
+      .maximumSize(builder.negativeCacheSize)
+      .expireAfterAccess(1, TimeUnit.HOURS)
+      .<String,Throttle>build()
+      .asMap();
+  }
+  
+  private ConcurrentMap<String,Breaker> initBreakers(Builder builder) {
+    return CacheBuilder.newBuilder()
+      .maximumSize(builder.negativeCacheSize)
+      .expireAfterAccess(1, TimeUnit.HOURS)
+      .<String,Breaker>build()
+      .asMap();
   }
 
+  /**
+   * Hit, miss, load time and eviction statistics of the document cache
+   */
+  public CacheStats stats() {
+    return cache.stats();
+  }
+  
+  /**
+   * Returns the URL of the document that defines the given identifier,
+   * that is, the identifier without its fragment. Identifiers that 
+   * share a document are fetched only once.
+   */
+  static String documentFor(String id) {
+    int idx = id.indexOf('#');
+    return idx > -1 ? id.substring(0, idx) : id;
+  }
+  
+  /**
+   * Fetch the document that defines the given identifier. Cached 
+   * documents are served until they expire according to the 
+   * Cache-Control or Expires headers of the response, after which they
+   * are revalidated using If-None-Match and If-Modified-Since. A 304
+   * response refreshes the cached document without reparsing it. 
+   * Responses marked no-store, or that Vary on *, are not cached.
+   * Documents that fail to load are not requested again until their
+   * backoff period elapses, and hosts that repeatedly fail are not 
+   * contacted while their circuit is open. When per-host limits have
+   * been configured, requests to each host are limited in concurrency
+   * and rate; callers wait in a bounded queue until the acquire 
+   * timeout. In all of these cases a FetchRejectedException is thrown
+   * instead of fetching.
+   */
   public ASObject fetch(String uri) {
+    final String url = documentFor(uri);
+    try {
+      final boolean[] loaded = new boolean[1];
+      Document doc = cache.get(url, new Callable<Document>() {
+        public Document call() throws Exception {
+          loaded[0] = true;
+          return guardedLoad(url, null);
+        }
+      });
+      if (!loaded[0] && doc.isExpired()) {
+        Document fresh = guardedLoad(url, doc);
+        if (fresh.store)
+          cache.asMap().replace(url, doc, fresh);
+        doc = fresh;
+      }
+      if (!doc.store)
+        cache.asMap().remove(url, doc);
+      return doc.value;
+    } catch (Throwable t) {
+      throw propagate(t);
+    }
+  }
+  
+  /**
+   * Fetch the document that defines the given identifier and read it
+   * incrementally, returning the matching item as soon as it has been 
+   * read rather than after the whole document has been parsed. Every 
+   * other item is passed to the receiver: those read before the match 
+   * on the calling thread, the remainder on the given executor, which
+   * also closes the response once the document has been consumed. If
+   * the executor rejects the task, the remainder is read on the calling
+   * thread before returning. The request keeps its per-host slot until
+   * the response has been closed. Streamed documents are not kept in 
+   * the document cache, so that large registries are never held in 
+   * memory as a whole; the items handed to the receiver are expected 
+   * to be cached instead. As a consequence streamed documents are not
+   * revalidated, and their validators are not available to the disk
+   * tier.
+   * @return The matching item or null if the document does not 
+   *         contain the identifier
+   */
+  public ASObject fetch(
+    final String uri, 
+    final Receiver<ASObject> receiver, 
+    final Executor executor) {
+    final String url = documentFor(uri);
     try {
-      return cache.get(uri);
+      Document doc = cache.getIfPresent(url);
+      if (doc != null && !doc.isExpired()) {
+        ASObject match = null;
+        for (ASObject obj : items(doc.value)) {
+          if (match == null && Objects.equal(uri, obj.id()))
+            match = obj;
+          else receiver.receive(obj);
+        }
+        return match;
+      }
+      final Lease lease = new Lease();
+      return guarded(url, lease, new Callable<ASObject>() {
+        public ASObject call() throws Exception {
+          return stream(url, uri, receiver, executor, lease);
+        }
+      });
+    } catch (Throwable t) {
+      throw propagate(t);
+    }
+  }
+  
+  /**
+   * Discard the cached document that defines the given identifier, so
+   * that it is fetched again on next use
+   */
+  public void invalidate(String uri) {
+    cache.invalidate(documentFor(uri));
+  }
+  
+  /**
+   * The disk cache entry for the given item of a cached document: the 
+   * item together with the time the document was fetched, its expiry
+   * and its validators. Returns null if the document is not cached.
+   */
+  DiskCache.Entry entryFor(String id, ASObject value) {
+    Document doc = cache.getIfPresent(documentFor(id));
+    return doc != null ? 
+      new DiskCache.Entry(
+        id, 
+        value, 
+        doc.fetched, 
+        doc.expires, 
+        doc.etag, 
+        doc.lastModified) : 
+      null;
+  }
+  
+  /**
+   * Revalidate a stale disk cache entry using its validators. A 304 
+   * response returns the entry's value with the new expiry without 
+   * fetching the document again; any other successful response is 
+   * cached like a regular fetch and the item looked up in it. 
+   * @return The refreshed entry or null if the document no longer 
+   *         contains the identifier
+   */
+  DiskCache.Entry revalidate(final DiskCache.Entry entry) {
+    final String url = documentFor(entry.id());
+    try {
+      Document doc = guardedLoad(
+        url, 
+        new Document(
+          null, 
+          entry.fetched(), 
+          entry.expires(), 
+          false, 
+          entry.etag(), 
+          entry.lastModified()));
+      if (doc.value == null)
+        return new DiskCache.Entry(
+          entry.id(), 
+          entry.value(), 
+          doc.fetched, 
+          doc.expires, 
+          doc.etag, 
+          doc.lastModified);
+      if (doc.store)
+        cache.put(url, doc);
+      for (ASObject obj : items(doc.value))
+        if (Objects.equal(entry.id(), obj.id()))
+          return new DiskCache.Entry(
+            entry.id(), 
+            obj, 
+            doc.fetched, 
+            doc.expires, 
+            doc.etag, 
+            doc.lastModified);
+      return null;
     } catch (Throwable t) {
       throw propagate(t);
     }
   }
   
+  private static Iterable<ASObject> items(ASObject obj) {
+    if (obj instanceof Collection)
+      return ((Collection)obj).items();
+    if (obj.has("items"))
+      return obj.<Iterable<ASObject>>get("items");
+    return ImmutableList.of(obj);
+  }
+  
+  private ASObject stream(
+    String url, 
+    String id, 
+    final Receiver<ASObject> receiver, 
+    Executor executor,
+    final Lease lease) 
+      throws Exception {
+    final CloseableHttpResponse resp = 
+      client.execute(new HttpGet(url), new HttpClientContext());
+    boolean handedOff = false;
+    try {
+      int code = resp.getStatusLine().getStatusCode();
+      HttpEntity entity = resp.getEntity();
+      if (code >= 200 && code < 300 && entity != null) {
+        final Iterator<ASObject> items = 
+          io.stream(entity.getContent(), Diagnostics.skip());
+        ASObject match = null;
+        while (match == null && items.hasNext()) {
+          ASObject obj = items.next();
+          if (Objects.equal(id, obj.id()))
+            match = obj;
+          else receiver.receive(obj);
+        }
+        // the document is not cached once read, the items passed to
+        // the receiver are; see fetch(String, Receiver, Executor)
+        if (items.hasNext()) {
+          try {
+            executor.execute(new Runnable() {
+              public void run() {
+                try {
+                  while (items.hasNext())
+                    receiver.receive(items.next());
+                } catch (Throwable t) {
+                  // the requested item has already been returned, the
+                  // rest of the document is only read opportunistically
+                } finally {
+                  closeQuietly(resp);
+                  lease.release();
+                }
+              }
+            });
+            handedOff = true;
+            lease.retain();
+          } catch (RejectedExecutionException e) {
+            // no background thread is available, finish reading the
+            // document on the calling thread
+            while (items.hasNext())
+              receiver.receive(items.next());
+          }
+        }
+        return match;
+      }
+      EntityUtils.consumeQuietly(entity);
+      if (code >= 500)
+        throw new HttpResponseException(
+          code, resp.getStatusLine().getReasonPhrase());
+      throw new UncacheableResponseException();
+    } finally {
+      if (!handedOff)
+        closeQuietly(resp);
+    }
+  }
+  
+  private static void closeQuietly(CloseableHttpResponse resp) {
+    try {
+      resp.close();
+    } catch (Throwable t) {}
+  }
+  
   @Override
   public ASObject load(String key) throws Exception {
-    HttpContext context = new HttpClientContext();
-    HttpGet get = new HttpGet(key);
-    HttpResponse resp = client.execute(get, context);
-    StatusLine status = resp.getStatusLine();
-    int code = status.getStatusCode();
-    if (code >= 200 && code < 300) {
-      HttpEntity entity = resp.getEntity();
-      if (entity != null) {
-        // attempt parse
-        Optional<ASObject> parsed = 
-          parse(entity.getContent());
-        if (parsed.isPresent())
-          return parsed.get();
+    return load(documentFor(key), null).value;
+  }
+  
+  private Document guardedLoad(
+    final String url, 
+    final Document stale) 
+      throws Exception {
+    return guarded(url, new Callable<Document>() {
+      public Document call() throws Exception {
+        return load(url, stale);
+      }
+    });
+  }
+  
+  /**
+   * Runs the given request subject to the backoff, circuit breaker and
+   * per-host limits of the document's host
+   */
+  private <T>T guarded(String url, Callable<T> request) throws Exception {
+    return guarded(url, null, request);
+  }
+  
+  /**
+   * Runs the given request as guarded(String, Callable) does, except 
+   * that the per-host slot is left to the lease if the request 
+   * retains it
+   */
+  private <T>T guarded(
+    String url, 
+    Lease lease, 
+    Callable<T> request) 
+      throws Exception {
+    long now = System.currentTimeMillis();
+    Failure failure = failures.getIfPresent(url);
+    if (failure != null && now < failure.retryAt)
+      throw new FetchRejectedException(
+        "Backing off from " + url, failure.cause);
+    String host = hostOf(url);
+    Throttle throttle = throttleFor(host);
+    if (throttle != null)
+      throttle.acquire(url, acquireTimeout);
+    if (lease != null)
+      lease.throttle = throttle;
+    try {
+      Breaker breaker = breakerFor(host);
+      if (breaker != null && !breaker.allow(System.currentTimeMillis()))
+        throw new FetchRejectedException(
+          "Circuit open for " + url, null);
+      boolean settled = false;
+      try {
+        T result = request.call();
+        failures.invalidate(url);
+        settled = true;
+        if (breaker != null)
+          breaker.success();
+        return result;
+      } catch (Exception e) {
+        settled = true;
+        now = System.currentTimeMillis();
+        if (initialBackoff > 0) {
+          int attempts = failure != null ? failure.attempts + 1 : 1;
+          long delay = 
+            initialBackoff << Math.min(attempts - 1, 30);
+          failures.put(
+            url, 
+            new Failure(
+              attempts, 
+              now + Math.min(maxBackoff, delay > 0 ? delay : maxBackoff), 
+              e));
+        }
+        if (breaker != null) {
+          // the host answered, so it counts towards closing the circuit
+          if (e instanceof UncacheableResponseException)
+            breaker.success();
+          else 
+            breaker.failure(now, breakerThreshold, breakerCooldown);
+        }
+        throw e;
+      } finally {
+        // an Error must not leave a half-open circuit waiting for 
+        // the outcome of its trial request forever
+        if (!settled && breaker != null)
+          breaker.failure(
+            System.currentTimeMillis(), 
+            breakerThreshold, 
+            breakerCooldown);
+      }
+    } finally {
+      if (throttle != null && (lease == null || !lease.retained))
+        throttle.release();
+    }
+  }
+  
+  private static String hostOf(String url) {
+    try {
+      return URI.create(url).getAuthority();
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+  
+  private Breaker breakerFor(String host) {
+    if (breakerThreshold <= 0 || host == null)
+      return null;
+    Breaker breaker = breakers.get(host);
+    if (breaker == null) {
+      Breaker existing = 
+        breakers.putIfAbsent(host, breaker = new Breaker());
+      if (existing != null)
+        breaker = existing;
+    }
+    return breaker;
+  }
+  
+  private Throttle throttleFor(String host) {
+    if (host == null)
+      return null;
+    Double rate = hostRates.get(host);
+    if (rate == null)
+      rate = defaultRate;
+    if (maxConcurrentPerHost <= 0 && rate <= 0)
+      return null;
+    Throttle throttle = throttles.get(host);
+    if (throttle == null) {
+      Throttle existing = 
+        throttles.putIfAbsent(
+          host, 
+          throttle = new Throttle(
+            maxConcurrentPerHost, 
+            maxQueuedPerHost, 
+            rate));
+      if (existing != null)
+        throttle = existing;
+    }
+    return throttle;
+  }
+  
+  private Document load(String url, Document stale) throws Exception {
+    HttpGet get = new HttpGet(url);
+    if (stale != null) {
+      if (stale.etag != null)
+        get.setHeader(HttpHeaders.IF_NONE_MATCH, stale.etag);
+      if (stale.lastModified != null)
+        get.setHeader(HttpHeaders.IF_MODIFIED_SINCE, stale.lastModified);
+    }
+    CloseableHttpResponse resp = 
+      client.execute(get, new HttpClientContext());
+    try {
+      int code = resp.getStatusLine().getStatusCode();
+      if (code == HttpStatus.SC_NOT_MODIFIED && stale != null)
+        return document(stale.value, resp, stale);
+      if (code >= 200 && code < 300) {
+        HttpEntity entity = resp.getEntity();
+        if (entity != null) {
+          // attempt parse
+          Optional<ASObject> parsed = 
+            parse(entity.getContent());
+          if (parsed.isPresent())
+            return document(parsed.get(), resp, null);
+        }
+      }
+      EntityUtils.consumeQuietly(resp.getEntity());
+      if (code >= 500)
+        throw new HttpResponseException(
+          code, resp.getStatusLine().getReasonPhrase());
+      throw new UncacheableResponseException();
+    } finally {
+      resp.close();
+    }
+  }
+  
+  private Document document(
+    ASObject value, 
+    HttpResponse resp, 
+    Document stale) {
+    long now = System.currentTimeMillis();
+    boolean store = true;
+    long maxAge = -1;
+    for (Header header : resp.getHeaders(HttpHeaders.CACHE_CONTROL)) {
+      for (HeaderElement el : header.getElements()) {
+        String name = el.getName().toLowerCase(Locale.ENGLISH);
+        if ("no-store".equals(name))
+          store = false;
+        else if ("no-cache".equals(name))
+          maxAge = 0;
+        else if ("max-age".equals(name) && maxAge != 0) {
+          try {
+            maxAge = Math.max(0, Long.parseLong(el.getValue())) * 1000;
+          } catch (NumberFormatException e) {
+            maxAge = 0;
+          }
+        }
+      }
+    }
+    for (Header header : resp.getHeaders(HttpHeaders.VARY))
+      if (header.getValue().contains("*"))
+        store = false;
+    long expires = now + defaultMaxAge;
+    if (maxAge >= 0)
+      expires = now + maxAge;
+    else {
+      Header header = resp.getFirstHeader(HttpHeaders.EXPIRES);
+      if (header != null) {
+        Date date = DateUtils.parseDate(header.getValue());
+        expires = date != null ? date.getTime() : now;
       }
     }
-    throw new UncacheableResponseException();
+    Header etag = resp.getFirstHeader(HttpHeaders.ETAG);
+    Header lastModified = resp.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+    return new Document(
+      value, 
+      now,
+      expires, 
+      store,
+      etag != null ? etag.getValue() : 
+        stale != null ? stale.etag : null,
+      lastModified != null ? lastModified.getValue() : 
+        stale != null ? stale.lastModified : null);
   }
   
   private Optional<ASObject> parse(InputStream in) {
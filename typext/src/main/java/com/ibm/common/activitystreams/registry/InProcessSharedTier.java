@@ -0,0 +1,62 @@
+package com.ibm.common.activitystreams.registry;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Reference SharedTier that keeps entries in memory. Every
+ * TieredResolutionStrategy given the same instance behaves as a
+ * separate node sharing one tier, which makes it possible to test
+ * read-through, write-behind and invalidation without external
+ * services.
+ */
+public final class InProcessSharedTier
+  implements SharedTier {
+
+  private final Cache<String,byte[]> entries;
+  private final Set<Receiver<String>> subscribers =
+    new CopyOnWriteArraySet<Receiver<String>>();
+
+  public InProcessSharedTier() {
+    this(10000);
+  }
+
+  public InProcessSharedTier(long maximumSize) {
+    this.entries =
+      CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .<String,byte[]>build();
+  }
+
+  public byte[] get(String id) {
+    return entries.getIfPresent(id);
+  }
+
+  public void put(String id, byte[] value) {
+    entries.put(id, value);
+  }
+
+  public void invalidate(String id) {
+    entries.invalidate(id);
+    for (Receiver<String> receiver : subscribers) {
+      try {
+        receiver.receive(id);
+      } catch (Throwable t) {}
+    }
+  }
+
+  public void subscribe(Receiver<String> receiver) {
+    subscribers.add(receiver);
+  }
+
+  public void unsubscribe(Receiver<String> receiver) {
+    subscribers.remove(receiver);
+  }
+
+  public long size() {
+    return entries.size();
+  }
+}
@@ -0,0 +1,296 @@
+package com.ibm.common.activitystreams.registry;
+
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.Collection;
+import com.ibm.common.activitystreams.IO;
+import com.ibm.common.activitystreams.TypeValue;
+
+/**
+ * Preloads typeValues.bin and typeValues.json resources from the
+ * classpath, opening and parsing all of them concurrently. Results
+ * are merged in a fixed order regardless of which resource finishes
+ * first: resources are taken in class loader order, all .bin resources
+ * before all .json resources (as with the ClasspathPreloader), and the
+ * first definition of an ID wins. Duplicate IDs are detected exactly.
+ * The time taken by each resource is reported to an optional listener
+ * and kept for inspection through timings().
+ */
+public final class ParallelPreloader
+  implements PreloadStrategy {
+
+  public static Builder make() {
+    return new Builder();
+  }
+
+  public static final class Builder
+    implements Supplier<ParallelPreloader> {
+
+    private ClassLoader loader =
+      Thread.currentThread().getContextClassLoader();
+    private ExecutorService executor;
+    private int threads =
+      Runtime.getRuntime().availableProcessors();
+    private Receiver<Timing> listener;
+
+    public Builder classLoader(ClassLoader loader) {
+      this.loader = loader != null ?
+        loader : Thread.currentThread().getContextClassLoader();
+      return this;
+    }
+
+    /**
+     * The executor used to parse resources. By default a pool of
+     * up to threads() threads is created for each load and shut down
+     * once the load completes.
+     */
+    public Builder executor(ExecutorService executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * The maximum number of resources parsed at once when no
+     * executor is given. Defaults to the number of processors.
+     */
+    public Builder threads(int threads) {
+      this.threads = Math.max(1, threads);
+      return this;
+    }
+
+    /**
+     * Receives the Timing of each resource as it is merged
+     */
+    public Builder listener(Receiver<Timing> listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    public ParallelPreloader get() {
+      return new ParallelPreloader(this);
+    }
+
+  }
+
+  /**
+   * The outcome of loading a single resource
+   */
+  public static final class Timing {
+    private final URL url;
+    private final long parseMillis;
+    private final int loaded;
+    private final int duplicates;
+    private final Throwable error;
+
+    Timing(
+      URL url,
+      long parseMillis,
+      int loaded,
+      int duplicates,
+      Throwable error) {
+      this.url = url;
+      this.parseMillis = parseMillis;
+      this.loaded = loaded;
+      this.duplicates = duplicates;
+      this.error = error;
+    }
+
+    public URL url() {
+      return url;
+    }
+
+    /**
+     * Time spent opening and parsing the resource
+     */
+    public long parseMillis() {
+      return parseMillis;
+    }
+
+    /**
+     * Number of TypeValues passed on to the receiver
+     */
+    public int loaded() {
+      return loaded;
+    }
+
+    /**
+     * Number of TypeValues skipped because an earlier resource
+     * already defined them
+     */
+    public int duplicates() {
+      return duplicates;
+    }
+
+    /**
+     * The error that prevented the resource from being read, if any
+     */
+    public Throwable error() {
+      return error;
+    }
+
+    public String toString() {
+      return url + ": " +
+        (error != null ?
+          "failed (" + error + ")" :
+          loaded + " loaded, " + duplicates + " duplicates") +
+        " in " + parseMillis + "ms";
+    }
+  }
+
+  private final ClassLoader loader;
+  private final ExecutorService executor;
+  private final int threads;
+  private final Receiver<Timing> listener;
+  private volatile List<Timing> timings =
+    Collections.emptyList();
+
+  private ParallelPreloader(Builder builder) {
+    this.loader = builder.loader;
+    this.executor = builder.executor;
+    this.threads = builder.threads;
+    this.listener = builder.listener;
+  }
+
+  /**
+   * The timings of the most recent load, one per resource in merge
+   * order
+   */
+  public List<Timing> timings() {
+    return timings;
+  }
+
+  public void load(final IO io, Receiver<TypeValue> receiver) {
+    ImmutableList<URL> urls;
+    try {
+      urls = ImmutableList.<URL>builder()
+        .addAll(resources("typeValues.bin"))
+        .addAll(resources("typeValues.json"))
+        .build();
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+    if (urls.isEmpty())
+      return;
+    ExecutorService exec =
+      executor != null ?
+        executor :
+        Executors.newFixedThreadPool(Math.min(threads, urls.size()));
+    try {
+      ImmutableList.Builder<Future<Parsed>> futures =
+        ImmutableList.builder();
+      for (final URL url : urls)
+        futures.add(exec.submit(new Callable<Parsed>() {
+          public Parsed call() throws Exception {
+            return parse(url, io);
+          }
+        }));
+      Set<String> seen = Sets.newHashSet();
+      ImmutableList.Builder<Timing> results =
+        ImmutableList.builder();
+      for (Future<Parsed> future : futures.build()) {
+        Parsed parsed = get(future);
+        int loaded = 0, duplicates = 0;
+        if (parsed.col != null && receiver != null)
+          for (ASObject obj : parsed.col.items()) {
+            String id = obj.id();
+            if (id == null) continue;
+            if (!seen.add(id)) {
+              duplicates++;
+              continue;
+            }
+            try {
+              receiver.receive(obj);
+              loaded++;
+            } catch (Throwable t) {}
+          }
+        Timing timing =
+          new Timing(
+            parsed.url,
+            parsed.millis,
+            loaded,
+            duplicates,
+            parsed.error);
+        results.add(timing);
+        if (listener != null)
+          listener.receive(timing);
+      }
+      timings = results.build();
+    } finally {
+      if (executor == null)
+        exec.shutdownNow();
+    }
+  }
+
+  private List<URL> resources(String name) throws Exception {
+    ImmutableList.Builder<URL> list =
+      ImmutableList.builder();
+    Enumeration<URL> e = loader.getResources(name);
+    while (e.hasMoreElements())
+      list.add(e.nextElement());
+    return list.build();
+  }
+
+  private static Parsed get(Future<Parsed> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private static final class Parsed {
+    final URL url;
+    final Collection col;
+    final long millis;
+    final Throwable error;
+    Parsed(URL url, Collection col, long millis, Throwable error) {
+      this.url = url;
+      this.col = col;
+      this.millis = millis;
+      this.error = error;
+    }
+  }
+
+  private static Parsed parse(URL url, IO io) {
+    long start = System.nanoTime();
+    Collection col = null;
+    Throwable error = null;
+    try {
+      InputStream in = url.openStream();
+      try {
+        col = url.getPath().endsWith(".bin") ?
+          (Collection) new ObjectInputStream(in).readObject() :
+          io.readAsCollection(in);
+      } finally {
+        in.close();
+      }
+    } catch (Throwable t) {
+      error = t;
+    }
+    return new Parsed(
+      url,
+      col,
+      TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+      error);
+  }
+}
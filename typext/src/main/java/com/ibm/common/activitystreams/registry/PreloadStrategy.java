@@ -10,4 +10,12 @@ public interface PreloadStrategy {
 
   void load(IO io, Receiver<TypeValue> receiver);
   
+  /**
+   * Preloads nothing. A TypeValueRegistry using this strategy is 
+   * ready as soon as it is created.
+   */
+  public static final PreloadStrategy none = 
+    new PreloadStrategy() {
+      public void load(IO io, Receiver<TypeValue> receiver) {}
+    };
 }
@@ -0,0 +1,38 @@
+package com.ibm.common.activitystreams.registry;
+
+/**
+ * A cache of resolved TypeValues shared by several nodes, used as the
+ * second tier of a TieredResolutionStrategy. Values are opaque byte
+ * arrays produced by the strategy's compact binary encoding, so
+ * implementations only need to store and return bytes by ID.
+ * Implementations must be thread safe.
+ */
+public interface SharedTier {
+
+  /**
+   * Returns the encoded value for the given ID, or null if the
+   * shared tier does not have it
+   */
+  byte[] get(String id);
+
+  /**
+   * Stores the encoded value for the given ID. Called from the
+   * strategy's write-behind executor, never on the resolving thread.
+   */
+  void put(String id, byte[] value);
+
+  /**
+   * Removes the given ID and notifies every subscribed node,
+   * including nodes in other processes, that it has been invalidated
+   */
+  void invalidate(String id);
+
+  /**
+   * Subscribes to invalidations. The receiver is called with the ID
+   * of each invalidated entry.
+   */
+  void subscribe(Receiver<String> receiver);
+
+  void unsubscribe(Receiver<String> receiver);
+
+}
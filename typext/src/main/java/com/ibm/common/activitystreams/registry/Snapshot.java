@@ -0,0 +1,271 @@
+package com.ibm.common.activitystreams.registry;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Enumeration;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.UnsignedBytes;
+import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.IO;
+
+/**
+ * A read only, indexed snapshot of a registry. The snapshot holds a
+ * table of type IDs sorted by their UTF-8 encoding, each pointing at
+ * the encoded object that defines the type. Lookups binary search the
+ * table and decode only the matching object, so opening a snapshot
+ * costs the same regardless of the number of types it contains.
+ * Snapshots on the file system are memory-mapped. The header is
+ * checked against the size of the snapshot when it is opened, the
+ * offsets of an entry whenever the entry is read.
+ *
+ * Layout (big endian):
+ * <pre>
+ *   int magic, int version, int count
+ *   count * { int idOffset, int idLength, int valueOffset, int valueLength }
+ *   data (UTF-8 IDs and JSON encoded objects, offsets are relative
+ *         to the start of the data)
+ * </pre>
+ */
+public final class Snapshot {
+
+  /**
+   * The name of snapshot resources found on the classpath
+   */
+  public static final String RESOURCE = "typeValues.snapshot";
+
+  private static final int MAGIC = 0x41535456; // "ASTV"
+  private static final int VERSION = 1;
+  private static final int HEADER = 12;
+  private static final int ENTRY = 16;
+
+  /**
+   * Compile the given objects into a snapshot. Objects without an
+   * ID are ignored. If an ID occurs more than once, the first
+   * object wins.
+   */
+  public static void write(
+    Iterable<ASObject> objects,
+    IO io,
+    OutputStream out)
+      throws IOException {
+    checkNotNull(io);
+    Map<byte[],byte[]> entries =
+      Maps.newTreeMap(UnsignedBytes.lexicographicalComparator());
+    for (ASObject obj : objects) {
+      String id = obj.id();
+      if (id == null) continue;
+      byte[] key = id.getBytes(Charsets.UTF_8);
+      if (entries.containsKey(key)) continue;
+      ByteArrayOutputStream value = new ByteArrayOutputStream();
+      io.write(obj, value);
+      entries.put(key, value.toByteArray());
+    }
+    DataOutputStream dout = new DataOutputStream(out);
+    dout.writeInt(MAGIC);
+    dout.writeInt(VERSION);
+    dout.writeInt(entries.size());
+    int offset = 0;
+    for (Map.Entry<byte[],byte[]> entry : entries.entrySet()) {
+      dout.writeInt(offset);
+      dout.writeInt(entry.getKey().length);
+      offset += entry.getKey().length;
+      dout.writeInt(offset);
+      dout.writeInt(entry.getValue().length);
+      offset += entry.getValue().length;
+    }
+    for (Map.Entry<byte[],byte[]> entry : entries.entrySet()) {
+      dout.write(entry.getKey());
+      dout.write(entry.getValue());
+    }
+    dout.flush();
+  }
+
+  /**
+   * Compile the given objects into a snapshot file
+   */
+  public static void write(
+    Iterable<ASObject> objects,
+    IO io,
+    File file)
+      throws IOException {
+    OutputStream out =
+      new BufferedOutputStream(
+        new FileOutputStream(file));
+    try {
+      write(objects, io, out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Memory-map the given snapshot file
+   */
+  public static Snapshot open(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      return wrap(
+        channel.map(
+          FileChannel.MapMode.READ_ONLY,
+          0,
+          channel.size()));
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Open the snapshot at the given URL. File URLs are memory-mapped,
+   * other snapshots (e.g. those packaged in a jar) are read into
+   * memory without being decoded.
+   */
+  public static Snapshot open(URL url) throws IOException {
+    if ("file".equals(url.getProtocol())) {
+      try {
+        return open(new File(url.toURI()));
+      } catch (URISyntaxException e) {}
+    }
+    InputStream in = url.openStream();
+    try {
+      return wrap(ByteBuffer.wrap(ByteStreams.toByteArray(in)));
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Open every snapshot resource visible to the given class loader.
+   * Resources that cannot be opened are skipped.
+   */
+  public static ImmutableList<Snapshot> classpath(ClassLoader loader) {
+    ImmutableList.Builder<Snapshot> list =
+      ImmutableList.builder();
+    try {
+      Enumeration<URL> urls = loader.getResources(RESOURCE);
+      while (urls.hasMoreElements()) {
+        try {
+          list.add(open(urls.nextElement()));
+        } catch (Throwable t) {}
+      }
+    } catch (IOException e) {
+      throw propagate(e);
+    }
+    return list.build();
+  }
+
+  public static Snapshot wrap(ByteBuffer buffer) {
+    return new Snapshot(buffer);
+  }
+
+  private final ByteBuffer buffer;
+  private final int count;
+  private final int data;
+
+  private Snapshot(ByteBuffer buffer) {
+    if (buffer.remaining() < HEADER ||
+        buffer.getInt(buffer.position()) != MAGIC)
+      throw new IllegalArgumentException("Not a registry snapshot");
+    if (buffer.getInt(buffer.position() + 4) != VERSION)
+      throw new IllegalArgumentException("Unsupported snapshot version");
+    this.buffer = buffer.slice();
+    this.count = this.buffer.getInt(8);
+    if (count < 0 ||
+        HEADER + (long)count * ENTRY > this.buffer.limit())
+      throw new IllegalArgumentException("Truncated snapshot");
+    this.data = HEADER + count * ENTRY;
+  }
+
+  /**
+   * The number of types in the snapshot
+   */
+  public int size() {
+    return count;
+  }
+
+  public boolean contains(String id) {
+    return id != null && find(id.getBytes(Charsets.UTF_8)) > -1;
+  }
+
+  /**
+   * Decode the object that defines the given ID
+   * @return ASObject or null if the snapshot does not contain the ID
+   */
+  public ASObject get(String id, IO io) {
+    if (id == null)
+      return null;
+    int idx = find(id.getBytes(Charsets.UTF_8));
+    if (idx < 0)
+      return null;
+    int entry = HEADER + idx * ENTRY;
+    int length = buffer.getInt(entry + 12);
+    byte[] value =
+      bytes(
+        range(buffer.getInt(entry + 8), length),
+        length);
+    return io.read(new ByteArrayInputStream(value));
+  }
+
+  private int find(byte[] key) {
+    int low = 0, high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int c = compare(mid, key);
+      if (c < 0) low = mid + 1;
+      else if (c > 0) high = mid - 1;
+      else return mid;
+    }
+    return -1;
+  }
+
+  private int compare(int idx, byte[] key) {
+    int entry = HEADER + idx * ENTRY;
+    int length = buffer.getInt(entry + 4);
+    int offset = range(buffer.getInt(entry), length);
+    int n = Math.min(length, key.length);
+    for (int i = 0; i < n; i++) {
+      int c = UnsignedBytes.compare(buffer.get(offset + i), key[i]);
+      if (c != 0) return c;
+    }
+    return length - key.length;
+  }
+
+  /**
+   * Returns the position of the given range of the data, checking
+   * that it lies within the snapshot
+   */
+  private int range(int offset, int length) {
+    if (offset < 0 || length < 0 ||
+        (long)data + offset + length > buffer.limit())
+      throw new IllegalStateException("Corrupt snapshot entry");
+    return data + offset;
+  }
+
+  private byte[] bytes(int offset, int length) {
+    byte[] bytes = new byte[length];
+    ByteBuffer dup = buffer.duplicate();
+    dup.position(offset);
+    dup.get(bytes);
+    return bytes;
+  }
+}
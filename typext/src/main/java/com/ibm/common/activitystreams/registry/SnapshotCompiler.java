@@ -0,0 +1,57 @@
+package com.ibm.common.activitystreams.registry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+
+import com.google.common.collect.ImmutableList;
+import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.Collection;
+import com.ibm.common.activitystreams.IO;
+import com.ibm.common.activitystreams.ext.ExtModule;
+
+/**
+ * Build time tool that compiles registry documents into a Snapshot.
+ * Inputs are either JSON Collections (as used for typeValues.json) or
+ * serialized Collections (as used for typeValues.bin). Unlike the
+ * ClasspathPreloader, inputs that cannot be read fail the build.
+ * <pre>
+ *   java com.ibm.common.activitystreams.registry.SnapshotCompiler \
+ *     target/classes/typeValues.snapshot typeValues.json ...
+ * </pre>
+ */
+public final class SnapshotCompiler {
+
+  private SnapshotCompiler() {}
+
+  public static void main(String... args) throws Exception {
+    if (args.length < 2) {
+      System.err.println(
+        "Usage: SnapshotCompiler <output> <input.json|input.bin>...");
+      System.exit(1);
+    }
+    IO io = IO.makeDefault(ExtModule.instance);
+    ImmutableList.Builder<ASObject> objects =
+      ImmutableList.builder();
+    for (int n = 1; n < args.length; n++)
+      objects.addAll(read(new File(args[n]), io).items());
+    ImmutableList<ASObject> list = objects.build();
+    File output = new File(args[0]);
+    Snapshot.write(list, io, output);
+    System.out.println(
+      "Compiled " + Snapshot.open(output).size() +
+      " types into " + output);
+  }
+
+  private static Collection read(File file, IO io) throws Exception {
+    InputStream in = new FileInputStream(file);
+    try {
+      if (file.getName().endsWith(".bin"))
+        return (Collection) new ObjectInputStream(in).readObject();
+      return io.readAsCollection(in);
+    } finally {
+      in.close();
+    }
+  }
+}
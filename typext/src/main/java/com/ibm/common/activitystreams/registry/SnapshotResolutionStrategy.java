@@ -0,0 +1,225 @@
+package com.ibm.common.activitystreams.registry;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.IO;
+import com.ibm.common.activitystreams.TypeValue;
+import com.ibm.common.activitystreams.ext.ExtModule;
+
+/**
+ * A ResolutionStrategy that serves TypeValues from indexed registry
+ * Snapshots and passes anything the snapshots do not define on to
+ * another strategy. Types are decoded from the snapshot on first use,
+ * so there is nothing to preload; combine it with PreloadStrategy.none
+ * to make the registry ready immediately:
+ * <pre>
+ *   TypeValueRegistry.make()
+ *     .preloader(PreloadStrategy.none)
+ *     .resolver(SnapshotResolutionStrategy.make().get())
+ *     .get();
+ * </pre>
+ */
+public final class SnapshotResolutionStrategy
+  implements BatchResolutionStrategy {
+
+  public static Builder make() {
+    return new Builder();
+  }
+
+  public static final class Builder
+    implements Supplier<SnapshotResolutionStrategy> {
+
+    private final ImmutableList.Builder<Snapshot> snapshots =
+      ImmutableList.builder();
+    private ClassLoader loader =
+      Thread.currentThread().getContextClassLoader();
+    private boolean classpath = true;
+    private IO io;
+    private ResolutionStrategy delegate;
+    private long maximumSize = 1000;
+
+    /**
+     * Use the given snapshot. Snapshots are searched in the order
+     * they are added, before any found on the classpath.
+     */
+    public Builder snapshot(Snapshot snapshot) {
+      snapshots.add(snapshot);
+      return this;
+    }
+
+    /**
+     * The class loader searched for typeValues.snapshot resources
+     */
+    public Builder classLoader(ClassLoader loader) {
+      this.loader = loader != null ?
+        loader : Thread.currentThread().getContextClassLoader();
+      return this;
+    }
+
+    /**
+     * Do not search the classpath for snapshots
+     */
+    public Builder noClasspath() {
+      this.classpath = false;
+      return this;
+    }
+
+    public Builder io(IO io) {
+      this.io = io;
+      return this;
+    }
+
+    /**
+     * The strategy used for types the snapshots do not define.
+     * By default the DefaultResolutionStrategy is used.
+     */
+    public Builder delegate(ResolutionStrategy strategy) {
+      this.delegate = strategy;
+      return this;
+    }
+
+    /**
+     * The maximum number of decoded types kept in memory (default 1000)
+     */
+    public Builder maximumSize(long size) {
+      this.maximumSize = size;
+      return this;
+    }
+
+    public SnapshotResolutionStrategy get() {
+      return new SnapshotResolutionStrategy(this);
+    }
+
+  }
+
+  private final ImmutableList<Snapshot> snapshots;
+  private final IO io;
+  private final ResolutionStrategy delegate;
+  private final Cache<String,ASObject> decoded;
+
+  private SnapshotResolutionStrategy(Builder builder) {
+    this.snapshots = initSnapshots(builder);
+    this.io = initIO(builder);
+    this.delegate = initDelegate(builder);
+    this.decoded =
+      CacheBuilder.newBuilder()
+        .maximumSize(builder.maximumSize)
+        .<String,ASObject>build();
+  }
+
+  private ImmutableList<Snapshot> initSnapshots(Builder builder) {
+    if (builder.classpath)
+      builder.snapshots.addAll(Snapshot.classpath(builder.loader));
+    return builder.snapshots.build();
+  }
+
+  private IO initIO(Builder builder) {
+    if (builder.io != null)
+      return builder.io;
+    return IO.makeDefault(ExtModule.instance);
+  }
+
+  private ResolutionStrategy initDelegate(Builder builder) {
+    if (builder.delegate != null)
+      return builder.delegate;
+    return DefaultResolutionStrategy.makeDefault();
+  }
+
+  /**
+   * Returns the type defined by the snapshots, or null
+   */
+  private TypeValue lookup(TypeValue tv) {
+    String id = tv.id();
+    if (id == null || snapshots.isEmpty())
+      return null;
+    ASObject obj = decoded.getIfPresent(id);
+    if (obj != null)
+      return obj;
+    for (Snapshot snapshot : snapshots) {
+      obj = snapshot.get(id, io);
+      if (obj != null) {
+        decoded.put(id, obj);
+        return obj;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the type if it has already been decoded from a snapshot or
+   * is present in the delegate. Nothing is decoded.
+   */
+  public TypeValue getIfPresent(TypeValue tv) {
+    if (tv == null)
+      return null;
+    TypeValue found = tv.id() != null ?
+      decoded.getIfPresent(tv.id()) : null;
+    if (found != null)
+      return found;
+    return delegate instanceof BatchResolutionStrategy ?
+      ((BatchResolutionStrategy)delegate).getIfPresent(tv) :
+      null;
+  }
+
+  public Callable<TypeValue> resolverFor(final TypeValue tv) {
+    return new Callable<TypeValue>() {
+      public TypeValue call() throws Exception {
+        TypeValue found = tv != null ? lookup(tv) : null;
+        return found != null ?
+          found :
+          delegate.resolverFor(tv).call();
+      }
+    };
+  }
+
+  public Callable<Map<TypeValue,TypeValue>> resolverFor(
+    final Iterable<TypeValue> tvs) {
+    return new Callable<Map<TypeValue,TypeValue>>() {
+      public Map<TypeValue,TypeValue> call() throws Exception {
+        Map<TypeValue,TypeValue> found =
+          Maps.newLinkedHashMap();
+        ImmutableList.Builder<TypeValue> missing =
+          ImmutableList.builder();
+        for (TypeValue tv : tvs) {
+          TypeValue value = tv != null ? lookup(tv) : null;
+          if (value != null)
+            found.put(tv, value);
+          else if (tv != null)
+            missing.add(tv);
+        }
+        List<TypeValue> rest = missing.build();
+        if (rest.isEmpty())
+          return found;
+        if (delegate instanceof BatchResolutionStrategy)
+          found.putAll(
+            ((BatchResolutionStrategy)delegate)
+              .resolverFor(rest).call());
+        else
+          for (TypeValue tv : rest) {
+            try {
+              found.put(tv, delegate.resolverFor(tv).call());
+            } catch (Exception e) {
+              // omitted; see BatchResolutionStrategy#resolverFor
+            }
+          }
+        return found;
+      }
+    };
+  }
+
+  public Receiver<TypeValue> preloader() {
+    return delegate.preloader();
+  }
+
+  public void shutdown() {
+    delegate.shutdown();
+  }
+}
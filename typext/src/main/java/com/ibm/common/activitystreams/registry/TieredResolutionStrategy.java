@@ -0,0 +1,332 @@
+package com.ibm.common.activitystreams.registry;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.util.concurrent.MoreExecutors.getExitingExecutorService;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
+import com.ibm.common.activitystreams.IO;
+import com.ibm.common.activitystreams.Makers;
+import com.ibm.common.activitystreams.TypeValue;
+import com.ibm.common.activitystreams.ValueType;
+import com.ibm.common.activitystreams.ext.ExtModule;
+
+/**
+ * A ResolutionStrategy that layers a small per-node cache (L1) over a
+ * SharedTier (L2) used by every node, in front of another strategy.
+ * Lookups read through L1, then L2, then the delegate. Values resolved
+ * by the delegate are written to L1 immediately and to L2 in the
+ * background, so a vocabulary fetched by one node is served to the
+ * others from the shared tier. Invalidating an ID removes it from L2
+ * and, through the shared tier's broadcast, from the L1 of every node.
+ */
+public final class TieredResolutionStrategy
+  implements BatchResolutionStrategy {
+
+  public static Builder make() {
+    return new Builder();
+  }
+
+  public static final class Builder
+    implements Supplier<TieredResolutionStrategy> {
+
+    private SharedTier shared;
+    private ResolutionStrategy delegate;
+    private IO io;
+    private long maximumSize = 500;
+    private long expireAfterWrite = TimeUnit.MINUTES.toMillis(10);
+    private Executor writeBehind;
+
+    /**
+     * The shared (L2) tier. Required.
+     */
+    public Builder shared(SharedTier tier) {
+      this.shared = tier;
+      return this;
+    }
+
+    /**
+     * The strategy used when neither tier has a value. By default
+     * the DefaultResolutionStrategy is used.
+     */
+    public Builder delegate(ResolutionStrategy strategy) {
+      this.delegate = strategy;
+      return this;
+    }
+
+    public Builder io(IO io) {
+      this.io = io;
+      return this;
+    }
+
+    /**
+     * Bound the per-node (L1) cache by number of entries (default 500)
+     */
+    public Builder maximumSize(long size) {
+      this.maximumSize = size;
+      return this;
+    }
+
+    /**
+     * How long values stay in the per-node cache (default 10 minutes)
+     */
+    public Builder expireAfterWrite(long duration, TimeUnit unit) {
+      this.expireAfterWrite = unit.toMillis(duration);
+      return this;
+    }
+
+    /**
+     * The executor on which values are written to the shared tier.
+     * By default a dedicated single thread is used.
+     */
+    public Builder writeBehind(Executor executor) {
+      this.writeBehind = executor;
+      return this;
+    }
+
+    public TieredResolutionStrategy get() {
+      return new TieredResolutionStrategy(this);
+    }
+
+  }
+
+  private final SharedTier shared;
+  private final ResolutionStrategy delegate;
+  private final IO io;
+  private final Cache<String,TypeValue> local;
+  private final Executor writeBehind;
+  private final boolean ownsWriteBehind;
+  private final ConcurrentMap<String,Object> pending =
+    Maps.newConcurrentMap();
+  private final Striped<Lock> locks =
+    Striped.lock(64);
+  private final Receiver<String> invalidations =
+    new Receiver<String>() {
+      public void receive(String id) {
+        local.invalidate(id);
+        invalidateDelegate(id);
+      }
+    };
+
+  private TieredResolutionStrategy(Builder builder) {
+    this.shared = checkNotNull(builder.shared);
+    this.delegate = initDelegate(builder);
+    this.io = initIO(builder);
+    this.writeBehind = initWriteBehind(builder);
+    this.ownsWriteBehind = builder.writeBehind == null;
+    this.local =
+      CacheBuilder.newBuilder()
+        .maximumSize(builder.maximumSize)
+        .expireAfterWrite(builder.expireAfterWrite, TimeUnit.MILLISECONDS)
+        .<String,TypeValue>build();
+    shared.subscribe(invalidations);
+  }
+
+  private ResolutionStrategy initDelegate(Builder builder) {
+    if (builder.delegate != null)
+      return builder.delegate;
+    return DefaultResolutionStrategy.makeDefault();
+  }
+
+  private IO initIO(Builder builder) {
+    if (builder.io != null)
+      return builder.io;
+    return IO.makeDefault(ExtModule.instance);
+  }
+
+  private Executor initWriteBehind(Builder builder) {
+    if (builder.writeBehind != null)
+      return builder.writeBehind;
+    return getExitingExecutorService(
+      (ThreadPoolExecutor)newFixedThreadPool(1));
+  }
+
+  /**
+   * Remove the given TypeValue from this node, from the shared tier
+   * and from every other node subscribed to the shared tier, including
+   * the caches of their delegates. Writes to the shared tier that are
+   * still pending for the TypeValue are dropped.
+   */
+  public void invalidate(TypeValue tv) {
+    if (tv == null || tv.id() == null) return;
+    String id = tv.id();
+    Lock lock = locks.get(id);
+    lock.lock();
+    try {
+      pending.remove(id);
+      local.invalidate(id);
+      shared.invalidate(id);
+    } finally {
+      lock.unlock();
+    }
+    invalidateDelegate(id);
+  }
+
+  private void invalidateDelegate(String id) {
+    if (delegate instanceof CachingResolutionStrategy)
+      ((CachingResolutionStrategy)delegate).invalidate(Makers.type(id));
+    else if (delegate instanceof TieredResolutionStrategy)
+      ((TieredResolutionStrategy)delegate).invalidate(Makers.type(id));
+  }
+
+  public TypeValue getIfPresent(TypeValue tv) {
+    if (tv == null || tv.id() == null)
+      return null;
+    TypeValue found = local.getIfPresent(tv.id());
+    if (found != null)
+      return found;
+    return delegate instanceof BatchResolutionStrategy ?
+      ((BatchResolutionStrategy)delegate).getIfPresent(tv) :
+      null;
+  }
+
+  /**
+   * Returns the value from either tier, reading through L2 into L1,
+   * or null if neither has it
+   */
+  private TypeValue lookup(TypeValue tv) {
+    String id = tv.id();
+    TypeValue found = local.getIfPresent(id);
+    if (found != null)
+      return found;
+    byte[] bytes = null;
+    try {
+      bytes = shared.get(id);
+      if (bytes == null)
+        return null;
+      found = TypeValueCodec.decode(bytes, io);
+    } catch (Exception e) {
+      // the shared tier is an optimization, fall through to the
+      // delegate and drop an entry that could not be decoded
+      if (bytes != null)
+        evict(id);
+      return null;
+    }
+    local.put(id, found);
+    return found;
+  }
+
+  private void evict(String id) {
+    try {
+      shared.invalidate(id);
+    } catch (Exception e) {}
+  }
+
+  private void store(final String id, final TypeValue value) {
+    if (id == null || value == null ||
+        value.valueType() != ValueType.OBJECT)
+      return;
+    local.put(id, value);
+    final Object token = new Object();
+    pending.put(id, token);
+    try {
+      writeBehind.execute(new Runnable() {
+        public void run() {
+          Lock lock = locks.get(id);
+          lock.lock();
+          try {
+            // skip writes superseded by a later one or invalidated
+            if (pending.remove(id, token))
+              shared.put(id, TypeValueCodec.encode(value, io));
+          } catch (Exception e) {
+            // the shared tier is an optimization, L1 still has the value
+          } finally {
+            lock.unlock();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      pending.remove(id, token);
+    }
+  }
+
+  public Callable<TypeValue> resolverFor(final TypeValue tv) {
+    return new Callable<TypeValue>() {
+      public TypeValue call() throws Exception {
+        if (tv == null || tv.valueType() != ValueType.SIMPLE)
+          return tv;
+        TypeValue found = lookup(tv);
+        if (found != null)
+          return found;
+        found = delegate.resolverFor(tv).call();
+        store(tv.id(), found);
+        return found;
+      }
+    };
+  }
+
+  public Callable<Map<TypeValue,TypeValue>> resolverFor(
+    final Iterable<TypeValue> tvs) {
+    return new Callable<Map<TypeValue,TypeValue>>() {
+      public Map<TypeValue,TypeValue> call() throws Exception {
+        Map<TypeValue,TypeValue> found = Maps.newLinkedHashMap();
+        ImmutableList.Builder<TypeValue> missing =
+          ImmutableList.builder();
+        for (TypeValue tv : tvs) {
+          if (tv == null) continue;
+          TypeValue value =
+            tv.valueType() == ValueType.SIMPLE ? lookup(tv) : tv;
+          if (value != null)
+            found.put(tv, value);
+          else
+            missing.add(tv);
+        }
+        List<TypeValue> rest = missing.build();
+        if (rest.isEmpty())
+          return found;
+        Map<TypeValue,TypeValue> resolved = Maps.newLinkedHashMap();
+        if (delegate instanceof BatchResolutionStrategy)
+          resolved.putAll(
+            ((BatchResolutionStrategy)delegate)
+              .resolverFor(rest).call());
+        else
+          for (TypeValue tv : rest) {
+            try {
+              resolved.put(tv, delegate.resolverFor(tv).call());
+            } catch (Exception e) {
+              // omitted; see BatchResolutionStrategy#resolverFor
+            }
+          }
+        for (Map.Entry<TypeValue,TypeValue> entry : resolved.entrySet())
+          store(entry.getKey().id(), entry.getValue());
+        found.putAll(resolved);
+        return found;
+      }
+    };
+  }
+
+  public Receiver<TypeValue> preloader() {
+    final Receiver<TypeValue> receiver = delegate.preloader();
+    return new Receiver<TypeValue>() {
+      public void receive(TypeValue t) {
+        if (t != null && t.id() != null &&
+            t.valueType() == ValueType.OBJECT)
+          local.put(t.id(), t);
+        receiver.receive(t);
+      }
+    };
+  }
+
+  public void shutdown() {
+    shared.unsubscribe(invalidations);
+    if (writeBehind instanceof ExecutorService && ownsWriteBehind)
+      ((ExecutorService)writeBehind).shutdown();
+    delegate.shutdown();
+  }
+}
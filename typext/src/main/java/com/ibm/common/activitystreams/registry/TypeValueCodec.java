@@ -0,0 +1,69 @@
+package com.ibm.common.activitystreams.registry;
+
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.IO;
+import com.ibm.common.activitystreams.Makers;
+import com.ibm.common.activitystreams.TypeValue;
+import com.ibm.common.activitystreams.ValueType;
+
+/**
+ * Compact binary encoding of TypeValues for the shared tier. A single
+ * tag byte is followed either by the ID of a simple TypeValue or by
+ * the deflated JSON form of a resolved object.
+ */
+final class TypeValueCodec {
+
+  private static final byte SIMPLE = 0;
+  private static final byte OBJECT = 1;
+
+  private TypeValueCodec() {}
+
+  static byte[] encode(TypeValue tv, IO io) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      if (tv.valueType() == ValueType.OBJECT) {
+        out.writeByte(OBJECT);
+        DeflaterOutputStream deflate =
+          new DeflaterOutputStream(out);
+        io.write((ASObject)tv, deflate);
+        deflate.finish();
+      } else {
+        out.writeByte(SIMPLE);
+        out.writeUTF(tv.id());
+      }
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw propagate(e);
+    }
+  }
+
+  static TypeValue decode(byte[] value, IO io) {
+    try {
+      DataInputStream in =
+        new DataInputStream(
+          new ByteArrayInputStream(value));
+      switch(in.readByte()) {
+      case SIMPLE:
+        return Makers.type(in.readUTF());
+      case OBJECT:
+        return io.read(new InflaterInputStream(in));
+      default:
+        throw new IllegalArgumentException();
+      }
+    } catch (IOException e) {
+      throw propagate(e);
+    }
+  }
+}
@@ -4,10 +4,17 @@ import static com.google.common.base.Throwables.propagate;
 import static com.google.common.util.concurrent.Futures.immediateFuture;
 import static com.google.common.util.concurrent.Futures.immediateCancelledFuture;
 import static com.google.common.util.concurrent.Futures.addCallback;
+import static com.google.common.util.concurrent.Futures.successfulAsList;
+import static com.google.common.util.concurrent.Futures.transform;
 import static com.google.common.util.concurrent.MoreExecutors.getExitingExecutorService;
 import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
 import static java.util.concurrent.Executors.newFixedThreadPool;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -17,11 +24,18 @@ import java.util.concurrent.TimeoutException;
 
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.Monitor;
+import com.google.common.util.concurrent.SettableFuture;
+import com.ibm.common.activitystreams.ASObject;
 import com.ibm.common.activitystreams.IO;
+import com.ibm.common.activitystreams.LinkValue;
+import com.ibm.common.activitystreams.LinkValue.ArrayLinkValue;
 import com.ibm.common.activitystreams.Makers;
 import com.ibm.common.activitystreams.TypeValue;
 import com.ibm.common.activitystreams.ValueType;
@@ -176,19 +190,15 @@ public final class TypeValueRegistry
   
   private final ResolutionStrategy strategy;
   private final ListeningExecutorService executor;
-  private Status readyStatus = Status.LOADING;
-  private Throwable loadError = null;
+  private volatile Status readyStatus = Status.LOADING;
+  private volatile Throwable loadError = null;
   private final ListenableFuture<?> loader;
   private final IO io;
+  private final ConcurrentMap<TypeValue,ListenableFuture<TypeValue>> inflight = 
+    Maps.newConcurrentMap();
   
-  private final Monitor monitor = new Monitor();
-  private final Monitor.Guard ready = 
-    new Monitor.Guard(monitor) {
-      @Override
-      public boolean isSatisfied() {
-        return readyStatus != Status.LOADING;
-      }
-    };
+  private final CountDownLatch ready = 
+    new CountDownLatch(1);
   
   private TypeValueRegistry(Builder builder) {
     this.strategy = builder.strategy;
@@ -205,6 +215,11 @@ public final class TypeValueRegistry
   
   private ListenableFuture<?> preload(Builder builder) {
     final PreloadStrategy strategy = builder.preloader;
+    if (strategy == PreloadStrategy.none) {
+      readyStatus = Status.READY;
+      ready.countDown();
+      return immediateFuture(null);
+    }
     final Receiver<TypeValue> receiver = this.strategy.preloader();
     ListenableFuture<?> future = 
       executor.submit(new Runnable() {
@@ -216,21 +231,13 @@ public final class TypeValueRegistry
       future, 
       new FutureCallback<Object>() {
         public void onSuccess(Object result) {
-          monitor.enter();
-          try {
-            readyStatus = Status.READY;
-          } finally {
-            monitor.leave();
-          }
+          readyStatus = Status.READY;
+          ready.countDown();
         }
         public void onFailure(Throwable t) {
-          monitor.enter();
-          try {
-            readyStatus = Status.ERROR;
-            loadError = t;
-          } finally {
-            monitor.leave();
-          }
+          loadError = t;
+          readyStatus = Status.ERROR;
+          ready.countDown();
         }
       });
     return future;
@@ -319,11 +326,12 @@ public final class TypeValueRegistry
   public Future<TypeValue>resolveNoWait(TypeValue tv) {
     try {
       if (tv == null) return immediateCancelledFuture();
-      return tv.valueType() == ValueType.OBJECT || isToken(tv) ?
-        immediateFuture(tv) : 
+      TypeValue resolved = resolveNow(tv);
+      return resolved != null ?
+        immediateFuture(resolved) : 
         executor.submit(strategy.resolverFor(tv));
-    } catch (Throwable t) {
-      throw propagate(t);
+    } catch (Exception e) {
+      throw propagate(e);
     }
   }
   
@@ -336,14 +344,13 @@ public final class TypeValueRegistry
   public Future<TypeValue> resolve(TypeValue tv) {
     try {
       if (tv == null) return immediateCancelledFuture();
-      if (tv.valueType() == ValueType.OBJECT || isToken(tv))
-        return immediateFuture(tv);
-      monitor.enterWhen(ready);
+      TypeValue resolved = resolveNow(tv);
+      if (resolved != null)
+        return immediateFuture(resolved);
+      awaitReady();
       return executor.submit(strategy.resolverFor(tv));
-    } catch (Throwable t) {
-      throw propagate(t);
-    } finally {
-      monitor.leave();
+    } catch (Exception e) {
+      throw propagate(e);
     }
   }
   
@@ -361,23 +368,302 @@ public final class TypeValueRegistry
     TimeUnit unit) {
     try {
       if (tv == null) return immediateCancelledFuture();
-      if (tv.valueType() == ValueType.OBJECT || isToken(tv))
-        return immediateFuture(tv);
-      if (monitor.enterWhen(ready, timeout, unit)) {
+      TypeValue resolved = resolveNow(tv);
+      if (resolved != null)
+        return immediateFuture(resolved);
+      if (readyStatus != Status.LOADING || ready.await(timeout, unit)) {
         return executor.submit(strategy.resolverFor(tv));
       } else throw new IllegalStateException();
-    } catch (Throwable t) {
-      throw propagate(t);
-    } finally {
-      monitor.leave();
+    } catch (Exception e) {
+      throw propagate(e);
     }
   }
 
-  private boolean isToken(TypeValue value) {
+  /**
+   * Resolve all of the given TypeValues. Duplicate identifiers are 
+   * resolved once, values that are already available are returned 
+   * without using the executor, and the remaining values are grouped
+   * by the document that defines them so that each document is 
+   * fetched only once. Concurrent requests for the same identifier 
+   * share a single resolution. TypeValues that cannot be resolved are
+   * omitted from the map rather than failing the whole batch; use 
+   * resolve() to see why an individual value failed. Will block 
+   * indefinitely until the preload process is complete
+   * @param tvs
+   * @return ListenableFuture&lt;Map&lt;TypeValue,TypeValue>>
+   */
+  public ListenableFuture<Map<TypeValue,TypeValue>> resolveAll(
+    Iterable<TypeValue> tvs) {
+    Map<TypeValue,ListenableFuture<TypeValue>> futures = 
+      resolveEach(tvs);
+    final List<TypeValue> keys = 
+      ImmutableList.copyOf(futures.keySet());
+    return transform(
+      successfulAsList(futures.values()), 
+      new Function<List<TypeValue>,Map<TypeValue,TypeValue>>() {
+        public Map<TypeValue,TypeValue> apply(List<TypeValue> values) {
+          ImmutableMap.Builder<TypeValue,TypeValue> map = 
+            ImmutableMap.builder();
+          for (int n = 0; n < keys.size(); n++)
+            if (values.get(n) != null)
+              map.put(keys.get(n), values.get(n));
+          return map.build();
+        }
+      });
+  }
+  
+  /**
+   * Starts resolving each of the given TypeValues as described for
+   * resolveAll and returns the future result of each
+   */
+  private Map<TypeValue,ListenableFuture<TypeValue>> resolveEach(
+    Iterable<TypeValue> tvs) {
+    try {
+      awaitReady();
+    } catch (InterruptedException e) {
+      throw propagate(e);
+    }
+    BatchResolutionStrategy batch = 
+      strategy instanceof BatchResolutionStrategy ?
+        (BatchResolutionStrategy) strategy : null;
+    Map<TypeValue,ListenableFuture<TypeValue>> futures = 
+      Maps.newLinkedHashMap();
+    Map<String,Map<TypeValue,SettableFuture<TypeValue>>> groups = 
+      Maps.newLinkedHashMap();
+    for (TypeValue tv : tvs) {
+      if (tv == null || futures.containsKey(tv)) continue;
+      TypeValue resolved = resolveNow(tv);
+      if (resolved != null) {
+        futures.put(tv, immediateFuture(resolved));
+        continue;
+      }
+      SettableFuture<TypeValue> future = SettableFuture.create();
+      ListenableFuture<TypeValue> existing = 
+        inflight.putIfAbsent(tv, future);
+      if (existing != null) {
+        futures.put(tv, existing);
+        continue;
+      }
+      futures.put(tv, future);
+      String document = 
+        HttpFetch.documentFor(String.valueOf(tv.id()));
+      Map<TypeValue,SettableFuture<TypeValue>> group = 
+        groups.get(document);
+      if (group == null)
+        groups.put(document, group = Maps.newLinkedHashMap());
+      group.put(tv, future);
+    }
+    for (Map<TypeValue,SettableFuture<TypeValue>> group : groups.values())
+      resolveGroup(batch, group);
+    return futures;
+  }
+  
+  /**
+   * Returns a copy of the given object in which every simple TypeValue 
+   * found anywhere in the object graph (objectType, verb, and any 
+   * other TypeValue property, including those of objects nested in 
+   * LinkValues, arrays and Collection items) is replaced by its 
+   * resolved value. All of the TypeValues are resolved together as a
+   * single deduplicated batch. TypeValues that cannot be resolved are
+   * left as they are. Objects that contain nothing to replace are 
+   * reused rather than copied.
+   * @param obj
+   * @return ListenableFuture&lt;A>
+   */
+  public <A extends ASObject>ListenableFuture<A> enrich(final A obj) {
+    Set<TypeValue> tvs = Sets.newLinkedHashSet();
+    collect(obj, tvs);
+    if (tvs.isEmpty())
+      return immediateFuture(obj);
+    Map<TypeValue,ListenableFuture<TypeValue>> futures = 
+      resolveEach(tvs);
+    final List<TypeValue> keys = 
+      ImmutableList.copyOf(futures.keySet());
+    return transform(
+      successfulAsList(futures.values()), 
+      new Function<List<TypeValue>,A>() {
+        @SuppressWarnings("unchecked")
+        public A apply(List<TypeValue> values) {
+          Map<TypeValue,TypeValue> resolved = Maps.newHashMap();
+          for (int n = 0; n < keys.size(); n++) {
+            TypeValue tv = values.get(n);
+            if (tv != null && tv.valueType() == ValueType.OBJECT)
+              resolved.put(keys.get(n), tv);
+          }
+          return (A)replace(obj, resolved);
+        }
+      });
+  }
+  
+  private static boolean isSimpleType(Object value) {
+    return value instanceof TypeValue && 
+      !(value instanceof ASObject) &&
+      ((TypeValue)value).valueType() == ValueType.SIMPLE;
+  }
+  
+  private static void collect(Object value, Set<TypeValue> tvs) {
+    if (isSimpleType(value))
+      tvs.add((TypeValue)value);
+    else if (value instanceof ASObject) {
+      ASObject obj = (ASObject) value;
+      for (String key : obj)
+        collect(obj.get(key), tvs);
+    } else if (value instanceof Iterable)
+      for (Object item : (Iterable<?>)value)
+        collect(item, tvs);
+  }
+  
+  /**
+   * Returns the given value with resolved TypeValues substituted, 
+   * or the value itself if nothing within it was replaced
+   */
+  private static Object replace(
+    Object value, 
+    Map<TypeValue,TypeValue> resolved) {
+    if (isSimpleType(value)) {
+      TypeValue tv = resolved.get(value);
+      return tv != null ? tv : value;
+    } else if (value instanceof ASObject) {
+      ASObject obj = (ASObject) value;
+      Map<String,Object> changes = null;
+      for (String key : obj) {
+        Object current = obj.get(key);
+        Object updated = replace(current, resolved);
+        if (updated != current) {
+          if (changes == null)
+            changes = Maps.newLinkedHashMap();
+          changes.put(key, updated);
+        }
+      }
+      return changes != null ? obj.with(changes) : obj;
+    } else if (value instanceof ArrayLinkValue) {
+      ImmutableList<Object> items = 
+        replaceAll((Iterable<?>)value, resolved);
+      if (items == null)
+        return value;
+      ArrayLinkValue.Builder builder = 
+        ArrayLinkValue.make();
+      for (Object item : items)
+        builder.add((LinkValue)item);
+      return builder.get();
+    } else if (value instanceof List) {
+      ImmutableList<Object> items = 
+        replaceAll((Iterable<?>)value, resolved);
+      return items != null ? items : value;
+    }
+    return value;
+  }
+  
+  /**
+   * Returns the items with resolved TypeValues substituted, or null
+   * if none of the items changed
+   */
+  private static ImmutableList<Object> replaceAll(
+    Iterable<?> items, 
+    Map<TypeValue,TypeValue> resolved) {
+    ImmutableList.Builder<Object> list = 
+      ImmutableList.builder();
+    boolean changed = false;
+    for (Object item : items) {
+      Object updated = replace(item, resolved);
+      changed |= updated != item;
+      list.add(updated);
+    }
+    return changed ? list.build() : null;
+  }
+  
+  /**
+   * Resolves a group of TypeValues defined by the same document. With 
+   * a BatchResolutionStrategy the group is resolved together; anything
+   * the batch does not return, or everything if the batch itself 
+   * fails, is then resolved individually so that each future completes
+   * with its own value or the exception that prevented it.
+   */
+  private void resolveGroup(
+    BatchResolutionStrategy batch,
+    final Map<TypeValue,SettableFuture<TypeValue>> group) {
+    if (batch == null) {
+      for (Map.Entry<TypeValue,SettableFuture<TypeValue>> entry : group.entrySet())
+        resolveOne(entry.getKey(), entry.getValue());
+      return;
+    }
+    addCallback(
+      executor.submit(
+        batch.resolverFor(ImmutableList.copyOf(group.keySet()))),
+      new FutureCallback<Map<TypeValue,TypeValue>>() {
+        public void onSuccess(Map<TypeValue,TypeValue> result) {
+          for (Map.Entry<TypeValue,SettableFuture<TypeValue>> entry : group.entrySet()) {
+            TypeValue tv = result.get(entry.getKey());
+            if (tv != null) {
+              inflight.remove(entry.getKey(), entry.getValue());
+              entry.getValue().set(tv);
+            } else resolveOne(entry.getKey(), entry.getValue());
+          }
+        }
+        public void onFailure(Throwable t) {
+          for (Map.Entry<TypeValue,SettableFuture<TypeValue>> entry : group.entrySet())
+            resolveOne(entry.getKey(), entry.getValue());
+        }
+      });
+  }
+  
+  private void resolveOne(
+    final TypeValue tv, 
+    final SettableFuture<TypeValue> future) {
+    addCallback(
+      executor.submit(strategy.resolverFor(tv)),
+      new FutureCallback<TypeValue>() {
+        public void onSuccess(TypeValue result) {
+          inflight.remove(tv, future);
+          future.set(result);
+        }
+        public void onFailure(Throwable t) {
+          inflight.remove(tv, future);
+          future.setException(t);
+        }
+      });
+  }
+  
+  /**
+   * Block until the preload process has completed. Once the registry
+   * is no longer loading this is a single volatile read.
+   */
+  private void awaitReady() throws InterruptedException {
+    if (readyStatus == Status.LOADING)
+      ready.await();
+  }
+  
+  /**
+   * Returns the resolved value if it can be determined without 
+   * blocking (the value is an object, a token, or is already 
+   * cached by the strategy), or null otherwise
+   */
+  private TypeValue resolveNow(TypeValue tv) {
+    if (tv.valueType() == ValueType.OBJECT || isToken(tv))
+      return tv;
+    return strategy instanceof BatchResolutionStrategy ?
+      ((BatchResolutionStrategy)strategy).getIfPresent(tv) : 
+      null;
+  }
+  
+  private static final boolean[] TOKEN = new boolean[128];
+  static {
+    for (char c = 'A'; c <= 'Z'; c++) TOKEN[c] = true;
+    for (char c = 'a'; c <= 'z'; c++) TOKEN[c] = true;
+    for (char c = '0'; c <= '9'; c++) TOKEN[c] = true;
+    for (char c : "!#$%&'*+-.^_`|~".toCharArray()) TOKEN[c] = true;
+  }
+  
+  private static boolean isToken(TypeValue value) {
     String id = value.id();
-    return id != null ?
-      id.matches("[A-Za-z0-9\\!\\#\\$\\%\\&\\'\\*\\+\\-\\.\\^\\_\\`\\|\\~]+") :
-      false;
+    if (id == null || id.isEmpty()) 
+      return false;
+    for (int n = 0; n < id.length(); n++) {
+      char c = id.charAt(n);
+      if (c >= 128 || !TOKEN[c])
+        return false;
+    }
+    return true;
   }
   
   public Future<TypeValue> apply(TypeValue input) {
@@ -1,12 +1,63 @@
 package com.ibm.common.activitystreams.ext.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.ibm.common.activitystreams.ASObject;
+import com.ibm.common.activitystreams.Activity;
+import com.ibm.common.activitystreams.Collection;
 import com.ibm.common.activitystreams.IO;
+import com.ibm.common.activitystreams.Makers;
 import com.ibm.common.activitystreams.TypeValue;
+import com.ibm.common.activitystreams.ValueType;
 import com.ibm.common.activitystreams.ext.ExtModule;
+import com.ibm.common.activitystreams.registry.DefaultResolutionStrategy;
+import com.ibm.common.activitystreams.registry.DiskCache;
+import com.ibm.common.activitystreams.registry.HotSetPreloader;
+import com.ibm.common.activitystreams.registry.InProcessSharedTier;
+import com.ibm.common.activitystreams.registry.ParallelPreloader;
+import com.ibm.common.activitystreams.registry.PreloadStrategy;
+import com.ibm.common.activitystreams.registry.Receiver;
+import com.ibm.common.activitystreams.registry.ResolutionStrategy;
+import com.ibm.common.activitystreams.registry.Snapshot;
+import com.ibm.common.activitystreams.registry.SnapshotResolutionStrategy;
+import com.ibm.common.activitystreams.registry.TieredResolutionStrategy;
 import com.ibm.common.activitystreams.registry.TypeValueRegistry;
 
 public class ExtTest {
@@ -25,4 +76,902 @@ public class ExtTest {
     System.out.println(object.get().valueType());
   }
   
+  @Test
+  public void resolveAllTest() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    TypeValueRegistry tvr = 
+      TypeValueRegistry.make()
+        .preloader(PreloadStrategy.none)
+        .resolver(echo(calls, null))
+        .get();
+    
+    Map<TypeValue,TypeValue> resolved = 
+      tvr.resolveAll(
+        ImmutableList.of(
+          Makers.type("http://example.org/types#a"),
+          Makers.type("http://example.org/types#b"),
+          Makers.type("http://example.org/types#a"),
+          Makers.type("post"))).get();
+    
+    assertEquals(3, resolved.size());
+    assertEquals(2, calls.get());
+    assertEquals(ValueType.OBJECT, resolved.get(Makers.type("http://example.org/types#b")).valueType());
+    assertEquals(ValueType.SIMPLE, resolved.get(Makers.type("post")).valueType());
+  }
+  
+  @Test
+  public void resolveAllPartialFailureTest() throws Exception {
+    TypeValueRegistry tvr = 
+      TypeValueRegistry.make()
+        .preloader(PreloadStrategy.none)
+        .resolver(echo(new AtomicInteger(), null))
+        .get();
+    
+    Map<TypeValue,TypeValue> resolved = 
+      tvr.resolveAll(
+        ImmutableList.of(
+          Makers.type("http://example.org/types#a"),
+          Makers.type("http://example.org/types#bad"),
+          Makers.type("http://example.org/other#c"))).get();
+    
+    assertEquals(2, resolved.size());
+    assertTrue(resolved.containsKey(Makers.type("http://example.org/other#c")));
+    try {
+      tvr.resolve("http://example.org/types#bad").get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+  
+  @Test
+  public void enrichTest() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    TypeValueRegistry tvr = 
+      TypeValueRegistry.make()
+        .preloader(PreloadStrategy.none)
+        .resolver(echo(calls, "resolved"))
+        .get();
+    ASObject generator = Makers.object().id("urn:generator").get();
+    Activity activity = 
+      Makers.activity()
+        .verb("urn:types:like")
+        .actor(Makers.object().objectType("urn:types:person"))
+        .object(
+          Makers.collection()
+            .items(
+              Makers.object().objectType("urn:types:person").get(),
+              Makers.object().objectType("urn:types:note").get()))
+        .generator(generator)
+        .get();
+    Activity enriched = tvr.enrich(activity).get();
+    assertEquals(3, calls.get());
+    assertEquals(ValueType.OBJECT, enriched.verb().valueType());
+    assertEquals(
+      ValueType.OBJECT, 
+      ((ASObject)enriched.firstActor()).objectType().valueType());
+    for (ASObject item : ((Collection)enriched.firstObject()).items())
+      assertEquals(ValueType.OBJECT, item.objectType().valueType());
+    assertSame(generator, enriched.firstGenerator());
+    assertEquals(ValueType.SIMPLE, activity.verb().valueType());
+  }
+  
+  @Test
+  public void tieredTest() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    ResolutionStrategy origin = echo(calls, "resolved");
+    InProcessSharedTier shared = new InProcessSharedTier();
+    TieredResolutionStrategy first = 
+      TieredResolutionStrategy.make()
+        .shared(shared)
+        .delegate(origin)
+        .writeBehind(MoreExecutors.sameThreadExecutor())
+        .get();
+    TieredResolutionStrategy second = 
+      TieredResolutionStrategy.make()
+        .shared(shared)
+        .delegate(origin)
+        .writeBehind(MoreExecutors.sameThreadExecutor())
+        .get();
+    TypeValue tv = Makers.type("urn:types:shared");
+    assertEquals(ValueType.OBJECT, first.resolverFor(tv).call().valueType());
+    assertEquals(1, shared.size());
+    TypeValue fromShared = second.resolverFor(tv).call();
+    assertEquals("resolved", ((ASObject)fromShared).displayNameString());
+    assertEquals(1, calls.get());
+    assertTrue(second.getIfPresent(tv) != null);
+    // invalidation is broadcast to every node
+    first.invalidate(tv);
+    assertEquals(null, second.getIfPresent(tv));
+    assertEquals(0, shared.size());
+    second.resolverFor(tv).call();
+    assertEquals(2, calls.get());
+  }
+  
+  @Test
+  public void tieredWriteBehindTest() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    ResolutionStrategy origin = echo(calls, "resolved");
+    final List<Runnable> queued = Lists.newArrayList();
+    InProcessSharedTier shared = new InProcessSharedTier();
+    TieredResolutionStrategy tiered = 
+      TieredResolutionStrategy.make()
+        .shared(shared)
+        .delegate(origin)
+        .writeBehind(new Executor() {
+          public void execute(Runnable command) {
+            queued.add(command);
+          }
+        })
+        .get();
+    TypeValue tv = Makers.type("urn:types:pending");
+    
+    // a write still queued when the value is invalidated is dropped
+    tiered.resolverFor(tv).call();
+    assertEquals(1, queued.size());
+    tiered.invalidate(tv);
+    for (Runnable write : queued) write.run();
+    queued.clear();
+    assertEquals(0, shared.size());
+    
+    // an entry that cannot be decoded is evicted from the shared tier
+    shared.put(tv.id(), "not a type value".getBytes(Charsets.UTF_8));
+    assertEquals(
+      "resolved", 
+      ((ASObject)tiered.resolverFor(tv).call()).displayNameString());
+    assertEquals(2, calls.get());
+    assertEquals(null, shared.get(tv.id()));
+    for (Runnable write : queued) write.run();
+    assertEquals(1, shared.size());
+    
+    // the preloader keeps only resolved values
+    tiered.preloader().receive(Makers.type("urn:types:simple"));
+    assertEquals(null, tiered.getIfPresent(Makers.type("urn:types:simple")));
+  }
+  
+  @Test
+  public void tieredDelegateInvalidationTest() throws Exception {
+    final AtomicInteger requests = new AtomicInteger();
+    HttpServer server = serve("/types", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        respond(exchange, verb(urlOf(exchange)));
+      }
+    });
+    try {
+      TieredResolutionStrategy tiered = 
+        TieredResolutionStrategy.make()
+          .shared(new InProcessSharedTier())
+          .delegate(DefaultResolutionStrategy.make().get())
+          .writeBehind(MoreExecutors.sameThreadExecutor())
+          .get();
+      TypeValue tv = Makers.type(urlOf(server, "/types"));
+      assertEquals(ValueType.OBJECT, tiered.resolverFor(tv).call().valueType());
+      assertEquals(1, requests.get());
+      // invalidation reaches the delegate's own caches
+      tiered.invalidate(tv);
+      assertEquals(ValueType.OBJECT, tiered.resolverFor(tv).call().valueType());
+      assertEquals(2, requests.get());
+      tiered.shutdown();
+    } finally {
+      stop(server);
+    }
+  }
+  
+  @Test
+  public void diskCacheTest() throws Exception {
+    File file = File.createTempFile("typevalues", ".log");
+    file.deleteOnExit();
+    DiskCache disk = DiskCache.make().file(file).io(io).get();
+    disk.put("urn:a", Makers.object().id("urn:a").displayName("A").get(), 
+      System.currentTimeMillis(), 0, "\"1\"", null);
+    disk.put("urn:b", Makers.object().id("urn:b").get(), 
+      System.currentTimeMillis(), 0, null, null);
+    disk.put("urn:a", Makers.object().id("urn:a").displayName("A2").get(), 
+      System.currentTimeMillis(), 0, "\"2\"", null);
+    disk.close();
+    
+    disk = DiskCache.make().file(file).io(io).get();
+    assertEquals(2, disk.size());
+    DiskCache.Entry entry = disk.get("urn:a");
+    assertEquals("A2", entry.value().displayNameString());
+    assertEquals("\"2\"", entry.etag());
+    assertTrue(disk.isFresh(entry));
+    long before = file.length();
+    disk.compact();
+    assertTrue(file.length() < before);
+    assertEquals("urn:b", disk.get("urn:b").id());
+    disk.close();
+  }
+  
+  @Test
+  public void snapshotTest() throws Exception {
+    File file = File.createTempFile("typevalues", ".snapshot");
+    file.deleteOnExit();
+    Snapshot.write(
+      io.readAsCollection(
+        getClass().getResourceAsStream("/typeValues.json")).items(), 
+      io, 
+      file);
+    Snapshot snapshot = Snapshot.open(file);
+    assertEquals(2, snapshot.size());
+    assertTrue(snapshot.contains("urn:example:types:bar"));
+    assertEquals(null, snapshot.get("urn:example:types:baz", io));
+    
+    TypeValueRegistry tvr = 
+      TypeValueRegistry.make()
+        .preloader(PreloadStrategy.none)
+        .resolver(
+          SnapshotResolutionStrategy.make()
+            .noClasspath()
+            .snapshot(snapshot)
+            .delegate(ResolutionStrategy.nonop)
+            .get())
+        .get();
+    assertEquals(TypeValueRegistry.Status.READY, tvr.readyStatus());
+    TypeValue foo = tvr.resolve("urn:example:verbs:foo").get();
+    assertEquals(ValueType.OBJECT, foo.valueType());
+    assertEquals("Foo", ((ASObject)foo).displayNameString());
+    assertEquals(
+      ValueType.SIMPLE, 
+      tvr.resolve("urn:example:verbs:baz").get().valueType());
+    
+    // a header claiming more entries than the file holds is rejected
+    byte[] bytes = Files.toByteArray(file);
+    ByteBuffer.wrap(bytes).putInt(8, 1000);
+    try {
+      Snapshot.wrap(ByteBuffer.wrap(bytes));
+      fail();
+    } catch (IllegalArgumentException e) {}
+  }
+  
+  @Test
+  public void parallelPreloaderTest() throws Exception {
+    File first = Files.createTempDir();
+    File second = Files.createTempDir();
+    Files.write(
+      "{\"objectType\":\"collection\",\"items\":[" + 
+      "{\"objectType\":\"verb\",\"id\":\"urn:a\",\"displayName\":\"first\"}]}", 
+      new File(first, "typeValues.json"), 
+      Charsets.UTF_8);
+    Files.write(
+      "{\"objectType\":\"collection\",\"items\":[" + 
+      "{\"objectType\":\"verb\",\"id\":\"urn:a\",\"displayName\":\"second\"}," + 
+      "{\"objectType\":\"verb\",\"id\":\"urn:b\"}]}", 
+      new File(second, "typeValues.json"), 
+      Charsets.UTF_8);
+    Files.write("not json", new File(second, "typeValues.bin"), Charsets.UTF_8);
+    URLClassLoader loader = 
+      new URLClassLoader(
+        new URL[] {first.toURI().toURL(), second.toURI().toURL()}, 
+        null);
+    ParallelPreloader preloader = 
+      ParallelPreloader.make().classLoader(loader).get();
+    final Map<String,TypeValue> received = Maps.newHashMap();
+    preloader.load(io, new Receiver<TypeValue>() {
+      public void receive(TypeValue t) {
+        received.put(t.id(), t);
+      }
+    });
+    assertEquals(2, received.size());
+    assertEquals(
+      "first", 
+      ((ASObject)received.get("urn:a")).displayNameString());
+    assertEquals(3, preloader.timings().size());
+    assertTrue(preloader.timings().get(0).error() != null);
+    assertEquals(1, preloader.timings().get(1).loaded());
+    assertEquals(1, preloader.timings().get(2).duplicates());
+    loader.close();
+  }
+  
+  @Test
+  public void conditionalFetchTest() throws Exception {
+    final AtomicInteger full = new AtomicInteger();
+    final AtomicInteger notModified = new AtomicInteger();
+    HttpServer server = serve("/types", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Cache-Control", "max-age=0");
+        exchange.getResponseHeaders().add("ETag", "\"v1\"");
+        if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+          notModified.incrementAndGet();
+          exchange.sendResponseHeaders(304, -1);
+          exchange.close();
+        } else {
+          full.incrementAndGet();
+          String base = urlOf(exchange);
+          respond(exchange, 
+            "{\"objectType\":\"collection\",\"items\":[" + 
+            verb(base + "#a") + "," + verb(base + "#b") + "]}");
+        }
+      }
+    });
+    String base = urlOf(server, "/types");
+    try {
+      TypeValueRegistry tvr = 
+        TypeValueRegistry.make()
+          .preloader(PreloadStrategy.none)
+          .resolver(DefaultResolutionStrategy.make().get())
+          .get();
+      assertEquals(ValueType.OBJECT, tvr.resolve(base + "#a").get().valueType());
+      assertEquals(ValueType.OBJECT, tvr.resolve(base + "#b").get().valueType());
+      assertEquals(1, full.get());
+      assertEquals(1, notModified.get());
+    } finally {
+      stop(server);
+    }
+  }
+
+  @Test
+  public void diskRevalidationTest() throws Exception {
+    final AtomicInteger full = new AtomicInteger();
+    final AtomicInteger notModified = new AtomicInteger();
+    HttpServer server = serve("/types", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Cache-Control", "max-age=0");
+        exchange.getResponseHeaders().add("ETag", "\"v1\"");
+        if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+          notModified.incrementAndGet();
+          exchange.sendResponseHeaders(304, -1);
+          exchange.close();
+        } else {
+          full.incrementAndGet();
+          respond(exchange, verb(urlOf(exchange)));
+        }
+      }
+    });
+    String base = urlOf(server, "/types");
+    File file = File.createTempFile("typevalues", ".log");
+    file.deleteOnExit();
+    try {
+      DefaultResolutionStrategy strategy =
+        DefaultResolutionStrategy.make()
+          .diskCache(DiskCache.make().file(file).io(io).get())
+          .get();
+      TypeValueRegistry tvr =
+        TypeValueRegistry.make()
+          .preloader(PreloadStrategy.none)
+          .resolver(strategy)
+          .get();
+      assertEquals(ValueType.OBJECT, tvr.resolve(base).get().valueType());
+      strategy.shutdown();
+
+      DiskCache disk = DiskCache.make().file(file).io(io).get();
+      DiskCache.Entry entry = disk.get(base);
+      assertEquals("\"v1\"", entry.etag());
+      assertTrue(entry.expires() > 0);
+      assertTrue(!disk.isFresh(entry));
+
+      // the stale entry is revalidated rather than fetched again
+      strategy =
+        DefaultResolutionStrategy.make()
+          .diskCache(disk)
+          .get();
+      tvr =
+        TypeValueRegistry.make()
+          .preloader(PreloadStrategy.none)
+          .resolver(strategy)
+          .get();
+      assertEquals(ValueType.OBJECT, tvr.resolve(base).get().valueType());
+      assertEquals(1, full.get());
+      assertEquals(1, notModified.get());
+      strategy.shutdown();
+    } finally {
+      stop(server);
+    }
+  }
+
+  @Test
+  public void diskWriteFailureTest() throws Exception {
+    HttpServer server = serve("/types", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        respond(exchange, verb(urlOf(exchange)));
+      }
+    });
+    String base = urlOf(server, "/types");
+    File file = File.createTempFile("typevalues", ".log");
+    file.deleteOnExit();
+    try {
+      // a closed cache fails every write
+      DiskCache disk = DiskCache.make().file(file).io(io).get();
+      assertEquals(0, disk.size());
+      disk.close();
+      try {
+        disk.put(base, Makers.object().id(base).get(), 0, 0, null, null);
+        fail();
+      } catch (RuntimeException e) {}
+
+      DefaultResolutionStrategy strategy =
+        DefaultResolutionStrategy.make()
+          .diskCache(disk)
+          .get();
+      TypeValueRegistry tvr =
+        TypeValueRegistry.make()
+          .preloader(PreloadStrategy.none)
+          .resolver(strategy)
+          .get();
+      assertEquals(ValueType.OBJECT, tvr.resolve(base).get().valueType());
+      strategy.shutdown();
+    } finally {
+      stop(server);
+    }
+  }
+
+  @Test
+  public void refreshTest() throws Exception {
+    final AtomicInteger requests = new AtomicInteger();
+    HttpServer server = serve("/verbs", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        exchange.getResponseHeaders().add("Cache-Control", "no-store");
+        respond(exchange, verb(urlOf(exchange)));
+      }
+    });
+    String base = urlOf(server, "/verbs");
+    FakeTicker ticker = new FakeTicker();
+    ScheduledExecutorService refresher = 
+      Executors.newSingleThreadScheduledExecutor();
+    try {
+      TypeValueRegistry tvr = 
+        TypeValueRegistry.make()
+          .preloader(PreloadStrategy.none)
+          .resolver(
+            DefaultResolutionStrategy.make()
+              .refreshAfterWrite(1, TimeUnit.MINUTES)
+              .refreshJitter(0)
+              .refreshExecutor(refresher)
+              .customizeCache(ticker)
+              .get())
+          .get();
+      assertEquals(ValueType.OBJECT, tvr.resolve(base).get().valueType());
+      assertEquals(1, requests.get());
+      ticker.advance(2, TimeUnit.MINUTES);
+      // the stale value is served while the refresh happens in the background
+      assertEquals(ValueType.OBJECT, tvr.resolve(base).get().valueType());
+      awaitIdle(refresher);
+      assertEquals(2, requests.get());
+    } finally {
+      refresher.shutdownNow();
+      stop(server);
+    }
+  }
+  
+  @Test
+  public void hardExpiryTest() throws Exception {
+    final AtomicBoolean failing = new AtomicBoolean();
+    HttpServer server = serve("/verbs", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        if (failing.get()) {
+          exchange.sendResponseHeaders(503, -1);
+          exchange.close();
+        } else {
+          exchange.getResponseHeaders().add("Cache-Control", "no-store");
+          respond(exchange, verb(urlOf(exchange)));
+        }
+      }
+    });
+    String base = urlOf(server, "/verbs");
+    FakeTicker ticker = new FakeTicker();
+    ScheduledExecutorService refresher = 
+      Executors.newSingleThreadScheduledExecutor();
+    try {
+      TypeValueRegistry tvr = 
+        TypeValueRegistry.make()
+          .preloader(PreloadStrategy.none)
+          .resolver(
+            DefaultResolutionStrategy.make()
+              .refreshAfterWrite(1, TimeUnit.MINUTES)
+              .hardExpiry(5, TimeUnit.MINUTES)
+              .refreshJitter(0)
+              .refreshExecutor(refresher)
+              .customizeCache(ticker)
+              .get())
+          .get();
+      assertEquals(ValueType.OBJECT, tvr.resolve(base).get().valueType());
+      failing.set(true);
+      ticker.advance(2, TimeUnit.MINUTES);
+      assertEquals(ValueType.OBJECT, tvr.resolve(base).get().valueType());
+      awaitIdle(refresher);
+      // the failed refresh keeps the existing value...
+      assertEquals(ValueType.OBJECT, tvr.resolve(base).get().valueType());
+      awaitIdle(refresher);
+      // ...but only until the hard expiry of the original write
+      ticker.advance(4, TimeUnit.MINUTES);
+      try {
+        tvr.resolve(base).get();
+        fail();
+      } catch (ExecutionException e) {}
+    } finally {
+      refresher.shutdownNow();
+      stop(server);
+    }
+  }
+  
+  @Test
+  public void backoffTest() throws Exception {
+    final AtomicInteger requests = new AtomicInteger();
+    HttpServer server = serve("/down", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        exchange.sendResponseHeaders(503, -1);
+        exchange.close();
+      }
+    });
+    String base = urlOf(server, "/down");
+    try {
+      TypeValueRegistry tvr = 
+        TypeValueRegistry.make()
+          .preloader(PreloadStrategy.none)
+          .resolver(
+            DefaultResolutionStrategy.make()
+              .fetchBackoff(1, 1, TimeUnit.MINUTES)
+              .circuitBreaker(2, 1, TimeUnit.MINUTES)
+              .get())
+          .get();
+      // failed documents are not requested again while backing off
+      for (int n = 0; n < 3; n++)
+        resolveQuietly(tvr, base + "/a#x");
+      assertEquals(1, requests.get());
+      // the second consecutive failure opens the circuit for the host
+      resolveQuietly(tvr, base + "/b#x");
+      resolveQuietly(tvr, base + "/c#x");
+      resolveQuietly(tvr, base + "/d#x");
+      assertEquals(2, requests.get());
+    } finally {
+      stop(server);
+    }
+  }
+  
+  @Test
+  public void hostLimitTest() throws Exception {
+    final AtomicInteger requests = new AtomicInteger();
+    final CountDownLatch received = new CountDownLatch(1);
+    final CountDownLatch proceed = new CountDownLatch(1);
+    HttpServer server = serve("/slow", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        received.countDown();
+        try {
+          proceed.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {}
+        respond(exchange, verb(urlOf(exchange)));
+      }
+    });
+    final String base = urlOf(server, "/slow");
+    try {
+      final TypeValueRegistry tvr = 
+        TypeValueRegistry.make()
+          .preloader(PreloadStrategy.none)
+          .executor(Executors.newCachedThreadPool())
+          .resolver(
+            DefaultResolutionStrategy.make()
+              .fetchConcurrency(1, 0, 1, TimeUnit.SECONDS)
+              .silentfail()
+              .get())
+          .get();
+      Thread first = new Thread(new Runnable() {
+        public void run() {
+          resolveQuietly(tvr, base + "/a");
+        }
+      });
+      first.start();
+      assertTrue(received.await(5, TimeUnit.SECONDS));
+      // the single slot is taken and no one may queue for it
+      assertEquals(
+        ValueType.SIMPLE, 
+        tvr.resolve(base + "/b").get().valueType());
+      proceed.countDown();
+      first.join();
+      assertEquals(1, requests.get());
+      assertEquals(
+        ValueType.OBJECT, 
+        tvr.resolve(base + "/a").get().valueType());
+    } finally {
+      stop(server);
+    }
+  }
+  
+  @Test
+  public void streamingProactiveTest() throws Exception {
+    final AtomicInteger requests = new AtomicInteger();
+    HttpServer server = serve("/vocab", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        respond(exchange, vocabulary(urlOf(exchange), 1000));
+      }
+    });
+    String base = urlOf(server, "/vocab");
+    ExecutorService reader = Executors.newSingleThreadExecutor();
+    try {
+      DefaultResolutionStrategy strategy = 
+        DefaultResolutionStrategy.make()
+          .proactiveCaching()
+          .proactiveExecutor(reader)
+          .maximumSize(2000)
+          .get();
+      TypeValueRegistry tvr = 
+        TypeValueRegistry.make()
+          .preloader(PreloadStrategy.none)
+          .resolver(strategy)
+          .get();
+      assertEquals(
+        ValueType.OBJECT, 
+        tvr.resolve(base + "#v10").get().valueType());
+      // items before the match are cached by the caller, the rest 
+      // are cached in the background
+      assertEquals(
+        ValueType.OBJECT, 
+        strategy.getIfPresent(Makers.type(base + "#v5")).valueType());
+      awaitIdle(reader);
+      assertEquals(
+        ValueType.OBJECT, 
+        strategy.getIfPresent(Makers.type(base + "#v999")).valueType());
+      assertEquals(1, requests.get());
+      // the caller's executor outlives the strategy
+      strategy.shutdown();
+      assertTrue(!reader.isShutdown());
+    } finally {
+      reader.shutdownNow();
+      stop(server);
+    }
+  }
+
+  @Test
+  public void streamingHandOffTest() throws Exception {
+    HttpServer server = serve("/vocab", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        respond(exchange, vocabulary(urlOf(exchange), 100));
+      }
+    });
+    String base = urlOf(server, "/vocab");
+    ExecutorService rejecting = Executors.newSingleThreadExecutor();
+    rejecting.shutdown();
+    ExecutorService single = Executors.newSingleThreadExecutor();
+    try {
+      // without a background thread the rest is read by the caller
+      DefaultResolutionStrategy strategy =
+        DefaultResolutionStrategy.make()
+          .proactiveCaching()
+          .proactiveExecutor(rejecting)
+          .get();
+      TypeValueRegistry tvr =
+        TypeValueRegistry.make()
+          .preloader(PreloadStrategy.none)
+          .resolver(strategy)
+          .get();
+      assertEquals(
+        ValueType.OBJECT,
+        tvr.resolve(base + "/a#v10").get().valueType());
+      assertEquals(
+        ValueType.OBJECT,
+        strategy.getIfPresent(Makers.type(base + "/a#v99")).valueType());
+
+      // the background reader holds the per-host slot until it is done
+      final CountDownLatch blocked = new CountDownLatch(1);
+      single.execute(new Runnable() {
+        public void run() {
+          try {
+            blocked.await();
+          } catch (InterruptedException e) {}
+        }
+      });
+      strategy =
+        DefaultResolutionStrategy.make()
+          .proactiveCaching()
+          .proactiveExecutor(single)
+          .fetchConcurrency(1, 0, 100, TimeUnit.MILLISECONDS)
+          .get();
+      tvr =
+        TypeValueRegistry.make()
+          .preloader(PreloadStrategy.none)
+          .resolver(strategy)
+          .get();
+      assertEquals(
+        ValueType.OBJECT,
+        tvr.resolve(base + "/b#v10").get().valueType());
+      try {
+        tvr.resolve(base + "/c#v10").get();
+        fail();
+      } catch (ExecutionException e) {}
+      blocked.countDown();
+      awaitIdle(single);
+      assertEquals(
+        ValueType.OBJECT,
+        strategy.getIfPresent(Makers.type(base + "/b#v99")).valueType());
+      assertEquals(
+        ValueType.OBJECT,
+        tvr.resolve(base + "/d#v10").get().valueType());
+    } finally {
+      single.shutdownNow();
+      stop(server);
+    }
+  }
+
+  @Test
+  public void hotSetTest() throws Exception {
+    final AtomicInteger requests = new AtomicInteger();
+    final CountDownLatch replayed = new CountDownLatch(1);
+    HttpServer server = serve("/hot", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        if (requests.incrementAndGet() == 3)
+          replayed.countDown();
+        respond(exchange, verb(urlOf(exchange)));
+      }
+    });
+    String base = urlOf(server, "/hot");
+    File file = File.createTempFile("hotset", ".txt");
+    file.delete();
+    file.deleteOnExit();
+    try {
+      DefaultResolutionStrategy first = 
+        DefaultResolutionStrategy.make()
+          .hotSet(file, 1)
+          .get();
+      TypeValueRegistry tvr = 
+        TypeValueRegistry.make()
+          .preloader(PreloadStrategy.none)
+          .resolver(first)
+          .get();
+      for (int n = 0; n < 3; n++)
+        tvr.resolve(base + "/a").get();
+      tvr.resolve(base + "/b").get();
+      assertEquals(2, first.stats().loadCount());
+      assertEquals(2, first.stats().hitCount());
+      assertEquals(2, first.fetchStats().missCount());
+      first.shutdown();
+      assertEquals(
+        ImmutableList.of(base + "/a"), 
+        Files.readLines(file, Charsets.UTF_8));
+      
+      DefaultResolutionStrategy second = 
+        DefaultResolutionStrategy.make().get();
+      TypeValueRegistry.make()
+        .preloader(
+          HotSetPreloader.make()
+            .file(file)
+            .delegate(PreloadStrategy.none)
+            .get())
+        .resolver(second)
+        .get();
+      // the replayed load is joined rather than fetched again
+      assertTrue(replayed.await(5, TimeUnit.SECONDS));
+      TypeValue a = Makers.type(base + "/a");
+      assertEquals(ValueType.OBJECT, second.resolverFor(a).call().valueType());
+      assertEquals(3, requests.get());
+      second.shutdown();
+      
+      // failures to write the hot set are reported
+      DefaultResolutionStrategy third = 
+        DefaultResolutionStrategy.make()
+          .hotSet(new File(file, "missing"), 1)
+          .get();
+      try {
+        third.shutdown();
+        fail();
+      } catch (RuntimeException e) {
+        assertTrue(e.getCause() instanceof IOException);
+      }
+    } finally {
+      stop(server);
+    }
+  }
+  
+  /**
+   * A strategy that resolves every ID to an object with that ID and 
+   * the given display name, counting the resolutions. IDs ending in 
+   * "#bad" fail with an IllegalStateException.
+   */
+  private static ResolutionStrategy echo(
+    final AtomicInteger calls, 
+    final String displayName) {
+      return new ResolutionStrategy() {
+        public Receiver<TypeValue> preloader() {
+          return ResolutionStrategy.nonop.preloader();
+        }
+        public Callable<TypeValue> resolverFor(final TypeValue tv) {
+          return new Callable<TypeValue>() {
+            public TypeValue call() {
+              calls.incrementAndGet();
+              if (tv.id().endsWith("#bad"))
+                throw new IllegalStateException("boom");
+              ASObject.AbstractBuilder<?,?> object = 
+                Makers.object().id(tv.id());
+              if (displayName != null)
+                object.displayName(displayName);
+              return object.get();
+            }
+          };
+        }
+        public void shutdown() {}
+      };
+  }
+  
+  private static final class FakeTicker 
+    extends Ticker 
+    implements Receiver<CacheBuilder<Object,Object>> {
+    private final AtomicLong nanos = new AtomicLong();
+    public long read() {
+      return nanos.get();
+    }
+    void advance(long duration, TimeUnit unit) {
+      nanos.addAndGet(unit.toNanos(duration));
+    }
+    public void receive(CacheBuilder<Object,Object> cache) {
+      cache.ticker(this);
+    }
+  }
+  
+  /**
+   * Waits for the tasks already submitted to a single threaded 
+   * executor, or scheduled on it without delay, to complete
+   */
+  private static void awaitIdle(ExecutorService executor) 
+    throws Exception {
+      executor.submit(new Runnable() {
+        public void run() {}
+      }).get(5, TimeUnit.SECONDS);
+  }
+  
+  /**
+   * Starts a server on an ephemeral port that passes the requests for
+   * the given path to the handler
+   */
+  private static HttpServer serve(String path, HttpHandler handler) 
+    throws IOException {
+      HttpServer server = 
+        HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      server.setExecutor(Executors.newCachedThreadPool());
+      server.createContext(path, handler);
+      server.start();
+      return server;
+  }
+  
+  private static void stop(HttpServer server) {
+    server.stop(0);
+    ((ExecutorService)server.getExecutor()).shutdownNow();
+  }
+  
+  private static String urlOf(HttpServer server, String path) {
+    return "http://localhost:" + server.getAddress().getPort() + path;
+  }
+  
+  /**
+   * The URL of the requested document, without its query
+   */
+  private static String urlOf(HttpExchange exchange) {
+    return "http://localhost:" + 
+      exchange.getLocalAddress().getPort() + 
+      exchange.getRequestURI().getPath();
+  }
+  
+  private static void respond(HttpExchange exchange, String json) 
+    throws IOException {
+      byte[] body = json.getBytes("UTF-8");
+      exchange.sendResponseHeaders(200, body.length);
+      exchange.getResponseBody().write(body);
+      exchange.close();
+  }
+  
+  private static String verb(String id) {
+    return "{\"objectType\":\"verb\",\"id\":\"" + id + "\"}";
+  }
+  
+  /**
+   * A collection of count verbs defined by the document at base
+   */
+  private static String vocabulary(String base, int count) {
+    StringBuilder buf = 
+      new StringBuilder("{\"objectType\":\"collection\",\"items\":[");
+    for (int n = 0; n < count; n++) {
+      if (n > 0) buf.append(',');
+      buf.append(verb(base + "#v" + n));
+    }
+    return buf.append("]}").toString();
+  }
+  
+  private static void resolveQuietly(TypeValueRegistry tvr, String id) {
+    try {
+      tvr.resolve(id).get();
+    } catch (Throwable t) {}
+  }
+  
 }